@@ -0,0 +1,114 @@
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Summarizes the banking events of a flight recording downloaded from
+ * GET /profiling/recording/download. Prints count and latency percentiles per
+ * operation and outcome, then the slowest operations with the garbage
+ * collection pause time that overlapped each one. Run as a single-file
+ * program:
+ *
+ *   java scripts/JfrSummary.java securetrust.jfr [slowest]
+ */
+public class JfrSummary {
+
+    private static final String BANKING = "com.securetrust.BankingOperation";
+    private static final String PASSWORD = "com.securetrust.PasswordHash";
+    private static final String GC_PAUSE = "jdk.GCPhasePause";
+
+    private record Operation(String name, String accountType, String outcome, int rows, double amount,
+                             Instant start, Duration duration, String thread) {
+        Instant end() {
+            return start.plus(duration);
+        }
+    }
+
+    private record Pause(Instant start, Instant end) { }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: JfrSummary <recording.jfr> [slowest]");
+            System.exit(2);
+        }
+        int slowest = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        List<Operation> operations = new ArrayList<>();
+        List<Pause> pauses = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(Path.of(args[0]))) {
+            String type = event.getEventType().getName();
+            String thread = event.getThread() != null ? event.getThread().getJavaName() : "?";
+            switch (type) {
+                case BANKING -> operations.add(new Operation(event.getString("operation"),
+                    event.getString("accountType"), event.getString("outcome"), event.getInt("rows"),
+                    event.getDouble("amount"), event.getStartTime(), event.getDuration(), thread));
+                case PASSWORD -> operations.add(new Operation("PASSWORD_" + event.getString("operation"),
+                    null, event.getString("outcome"), 0, 0, event.getStartTime(), event.getDuration(), thread));
+                case GC_PAUSE -> pauses.add(new Pause(event.getStartTime(), event.getEndTime()));
+                default -> { }
+            }
+        }
+        if (operations.isEmpty()) {
+            System.out.println("No banking events in " + args[0]
+                + " (was the recording started through /profiling/recording/start?)");
+            return;
+        }
+
+        Map<String, List<Operation>> groups = new TreeMap<>();
+        for (Operation operation : operations) {
+            groups.computeIfAbsent(operation.name() + " " + operation.outcome(), key -> new ArrayList<>())
+                .add(operation);
+        }
+        System.out.printf("%-28s %7s %10s %10s %10s %10s %8s%n",
+            "operation / outcome", "count", "p50 ms", "p95 ms", "p99 ms", "max ms", "rows");
+        for (Map.Entry<String, List<Operation>> group : groups.entrySet()) {
+            List<Operation> members = group.getValue();
+            double[] millis = members.stream().mapToDouble(o -> o.duration().toNanos() / 1e6).sorted().toArray();
+            System.out.printf("%-28s %7d %10.2f %10.2f %10.2f %10.2f %8d%n", group.getKey(), millis.length,
+                percentile(millis, 0.50), percentile(millis, 0.95), percentile(millis, 0.99),
+                millis[millis.length - 1], members.stream().mapToLong(Operation::rows).sum());
+        }
+
+        pauses.sort(Comparator.comparing(Pause::start));
+        System.out.printf("%nSlowest %d operations%n", Math.min(slowest, operations.size()));
+        System.out.printf("%-24s %-14s %-11s %-9s %10s %6s %10s  %s%n",
+            "start", "operation", "account", "outcome", "ms", "rows", "gc ms", "thread");
+        operations.stream()
+            .sorted(Comparator.comparing(Operation::duration).reversed())
+            .limit(slowest)
+            .forEach(o -> System.out.printf("%-24s %-14s %-11s %-9s %10.2f %6d %10.2f  %s%n",
+                o.start().truncatedTo(ChronoUnit.MILLIS), o.name(),
+                o.accountType() != null ? o.accountType() : "-", o.outcome(), o.duration().toNanos() / 1e6,
+                o.rows(), overlap(o, pauses) / 1e6, o.thread()));
+    }
+
+    private static double percentile(double[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    // Nanoseconds of GC pause inside the operation
+    private static long overlap(Operation operation, List<Pause> pauses) {
+        long total = 0;
+        for (Pause pause : pauses) {
+            if (!pause.start().isBefore(operation.end())) {
+                break;
+            }
+            Instant from = pause.start().isAfter(operation.start()) ? pause.start() : operation.start();
+            Instant to = pause.end().isBefore(operation.end()) ? pause.end() : operation.end();
+            if (from.isBefore(to)) {
+                total += Duration.between(from, to).toNanos();
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,112 @@
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop HTTP load generator for scripts/load-benchmark.sh.
+ *
+ * Logs in as the demo administrator, then keeps the given number of connections
+ * busy with GET requests for the given duration, one virtual thread per
+ * connection. With a fifth argument the requests are form POSTs of that body
+ * instead, and redirects count as success. The LOGIN environment variable
+ * replaces the login form body, e.g. to load pages as a customer. Run as a
+ * single-file program:
+ *
+ *   java scripts/LoadGenerator.java http://localhost:8080 /transactions 1000 30
+ *   java scripts/LoadGenerator.java http://localhost:8080 /transactions/deposit 32 30 'accountNumber=CHQ001&amount=1'
+ */
+public class LoadGenerator {
+
+    // Latency histogram: 100 microsecond buckets up to 60 seconds
+    private static final long BUCKET_NANOS = 100_000;
+    private static final int HISTOGRAM_BUCKETS = 600_000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("usage: LoadGenerator <base-url> <path> <connections> <seconds> [form-body]");
+            System.exit(2);
+        }
+        String baseUrl = args[0];
+        URI target = URI.create(baseUrl + args[1]);
+        int connections = Integer.parseInt(args[2]);
+        Duration duration = Duration.ofSeconds(Long.parseLong(args[3]));
+
+        ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .cookieHandler(new CookieManager())
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        login(client, baseUrl);
+
+        HttpRequest request = args.length > 4
+                ? HttpRequest.newBuilder(target).timeout(Duration.ofSeconds(60))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString(args[4])).build()
+                : HttpRequest.newBuilder(target).timeout(Duration.ofSeconds(60)).GET().build();
+        int okStatus = args.length > 4 ? 302 : 200;
+        long deadline = System.nanoTime() + duration.toNanos();
+        LongAdder errors = new LongAdder();
+        LongAdder completed = new LongAdder();
+        AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+        for (int i = 0; i < connections; i++) {
+            workers.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() != okStatus) {
+                            errors.increment();
+                            continue;
+                        }
+                    } catch (Exception e) {
+                        errors.increment();
+                        continue;
+                    }
+                    long bucket = (System.nanoTime() - start) / BUCKET_NANOS;
+                    histogram.incrementAndGet((int) Math.min(bucket, HISTOGRAM_BUCKETS - 1));
+                    completed.increment();
+                }
+                return null;
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(duration.toSeconds() + 120, TimeUnit.SECONDS);
+
+        System.out.printf("connections %6d   %8.1f req/s   p50 %7.1f ms   p99 %7.1f ms   errors %d%n",
+                connections, completed.sum() / (double) duration.toSeconds(),
+                percentile(histogram, completed.sum(), 0.50), percentile(histogram, completed.sum(), 0.99),
+                errors.sum());
+        System.exit(0);
+    }
+
+    private static void login(HttpClient client, String baseUrl) throws Exception {
+        HttpRequest login = HttpRequest.newBuilder(URI.create(baseUrl + "/login"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(System.getenv().getOrDefault("LOGIN",
+                        "email=admin%40securetrust.com&password=Admin123%21")))
+                .build();
+        client.send(login, HttpResponse.BodyHandlers.discarding());
+    }
+
+    private static double percentile(AtomicLongArray histogram, long total, double p) {
+        long rank = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            seen += histogram.get(i);
+            if (seen >= rank && rank > 0) {
+                return (i + 1) * BUCKET_NANOS / 1_000_000.0;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in downstream consumer for the socket outbox sink
+ * (securetrust.outbox.sink=socket). Accepts one relay connection at a time,
+ * acknowledges each batch and checks the delivery guarantees: every event id
+ * is counted once, redelivered ids are reported as duplicates, and an
+ * account's events must arrive in increasing id order. With a drop interval
+ * every n-th batch is left unacknowledged and the connection closed, so the
+ * relay has to deliver it again. Run as a single-file program:
+ *
+ *   java scripts/OutboxConsumer.java [port] [drop-every-n-batches]
+ */
+public class OutboxConsumer {
+
+    private static final Pattern EVENT_ID = Pattern.compile("\"eventId\":(\\d+)");
+    private static final Pattern ACCOUNT = Pattern.compile("\"account\":\"([^\"]*)\"");
+
+    private static final Set<Long> seen = new HashSet<>();
+    private static final Map<String, Long> lastByAccount = new HashMap<>();
+    private static long events;
+    private static long duplicates;
+    private static long outOfOrder;
+    private static long batches;
+    private static long dropped;
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 9099;
+        int dropEvery = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+
+        Thread reporter = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                report();
+            }
+        });
+        reporter.setDaemon(true);
+        reporter.start();
+
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("Listening on " + port + (dropEvery > 0 ? ", dropping every " + dropEvery
+                + "th batch" : ""));
+            while (true) {
+                try (Socket socket = server.accept()) {
+                    System.out.println("Relay connected from " + socket.getRemoteSocketAddress());
+                    serve(socket, dropEvery);
+                } catch (IOException e) {
+                    System.out.println("Connection lost: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void serve(Socket socket, int dropEvery) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+            StandardCharsets.UTF_8));
+        Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        List<String> batch = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith("END ")) {
+                batch.add(line);
+                continue;
+            }
+            synchronized (OutboxConsumer.class) {
+                batches++;
+                if (dropEvery > 0 && batches % dropEvery == 0) {
+                    dropped++;
+                    System.out.println("Dropping batch of " + batch.size() + " ending at " + line.substring(4));
+                    return;
+                }
+                for (String event : batch) {
+                    accept(event);
+                }
+            }
+            batch.clear();
+            writer.write("ACK " + line.substring(4) + "\n");
+            writer.flush();
+        }
+    }
+
+    private static void accept(String event) {
+        Matcher id = EVENT_ID.matcher(event);
+        Matcher account = ACCOUNT.matcher(event);
+        if (!id.find() || !account.find()) {
+            throw new IllegalArgumentException("Malformed event: " + event);
+        }
+        long eventId = Long.parseLong(id.group(1));
+        if (!seen.add(eventId)) {
+            duplicates++;
+            return;
+        }
+        events++;
+        Long last = lastByAccount.put(account.group(1), eventId);
+        if (last != null && last > eventId) {
+            outOfOrder++;
+            System.out.println("Out of order on " + account.group(1) + ": " + eventId + " after " + last);
+        }
+    }
+
+    private static synchronized void report() {
+        System.out.printf("events=%d duplicates=%d outOfOrder=%d accounts=%d batches=%d dropped=%d%n",
+            events, duplicates, outOfOrder, lastByAccount.size(), batches, dropped);
+    }
+}
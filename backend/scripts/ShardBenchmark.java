@@ -0,0 +1,132 @@
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Write load for scripts/shard-benchmark.sh.
+ *
+ * Logs in as the demo administrator and opens one savings account for each of
+ * the given number of new customers, which the application spreads over its
+ * shards. Then keeps the given number of connections busy for the given
+ * duration with deposits to random accounts, one virtual thread per
+ * connection, and prints the throughput. With TRANSFERS set, every request is
+ * a transfer between two random accounts instead, most of which are on
+ * different shards once there are several. Run as a single-file program:
+ *
+ *   java scripts/ShardBenchmark.java http://localhost:8080 200 64 30
+ */
+public class ShardBenchmark {
+
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+    private static final Pattern ACCOUNT = Pattern.compile("\"accountNumbers\":\\[\"([^\"]+)\"");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4 || Integer.parseInt(args[1]) < 2) {
+            System.err.println("usage: ShardBenchmark <base-url> <accounts (at least 2)> <connections> <seconds>");
+            System.exit(2);
+        }
+        String baseUrl = args[0];
+        int accountCount = Integer.parseInt(args[1]);
+        int connections = Integer.parseInt(args[2]);
+        Duration duration = Duration.ofSeconds(Long.parseLong(args[3]));
+        boolean transfers = System.getenv("TRANSFERS") != null;
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .cookieHandler(new CookieManager())
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        post(client, baseUrl, "/login", "email=admin%40securetrust.com&password=Admin123%21");
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        List<String> accounts = new ArrayList<>();
+        for (int i = 0; i < accountCount; i++) {
+            accounts.add(openAccount(client, baseUrl, "bench-" + run + "-" + i + "@example.com"));
+        }
+
+        ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+        long deadline = System.nanoTime() + duration.toNanos();
+        LongAdder completed = new LongAdder();
+        LongAdder errors = new LongAdder();
+        for (int i = 0; i < connections; i++) {
+            workers.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    int first = random.nextInt(accounts.size());
+                    String from = accounts.get(first);
+                    String to = accounts.get((first + 1 + random.nextInt(accounts.size() - 1)) % accounts.size());
+                    String body = transfers
+                            ? "fromAccount=" + from + "&toAccount=" + to + "&amount=1"
+                            : "accountNumber=" + from + "&amount=1";
+                    try {
+                        String path = transfers ? "/transactions/transfer" : "/transactions/deposit";
+                        if (post(client, baseUrl, path, body).statusCode() == 302) {
+                            completed.increment();
+                        } else {
+                            errors.increment();
+                        }
+                    } catch (Exception e) {
+                        errors.increment();
+                    }
+                }
+                return null;
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(duration.toSeconds() + 120, TimeUnit.SECONDS);
+
+        System.out.printf("%s   accounts %5d   connections %4d   %8.1f req/s   errors %d%n",
+                transfers ? "transfers" : "deposits", accountCount, connections,
+                completed.sum() / (double) duration.toSeconds(), errors.sum());
+        System.exit(0);
+    }
+
+    // A new customer with one savings account, funded for the transfers; returns its number
+    private static String openAccount(HttpClient client, String baseUrl, String email) throws Exception {
+        // Customer IDs are taken from the clock's milliseconds
+        Thread.sleep(2);
+        post(client, baseUrl, "/customers/add", "customerType=INDIVIDUAL&firstName=Bench&surname=Mark"
+                + "&password=Bench123%21&email=" + URLEncoder.encode(email, StandardCharsets.UTF_8));
+        String id = await(client, baseUrl, email, ID);
+        post(client, baseUrl, "/accounts/open", "customerId=" + id + "&accountType=SAVINGS&initialDeposit=1000000");
+        return await(client, baseUrl, email, ACCOUNT);
+    }
+
+    // The search index catches up with new customers and accounts after they commit
+    private static String await(HttpClient client, String baseUrl, String email, Pattern field) throws Exception {
+        URI search = URI.create(baseUrl + "/customers/search?limit=1&q="
+                + URLEncoder.encode(email, StandardCharsets.UTF_8));
+        for (int attempt = 0; attempt < 200; attempt++) {
+            String hits = client.send(HttpRequest.newBuilder(search).GET().build(),
+                    HttpResponse.BodyHandlers.ofString()).body();
+            Matcher matcher = field.matcher(hits);
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+            Thread.sleep(50);
+        }
+        throw new IllegalStateException("Customer " + email + " was not created");
+    }
+
+    private static HttpResponse<Void> post(HttpClient client, String baseUrl, String path, String body)
+            throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(60))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build(), HttpResponse.BodyHandlers.discarding());
+    }
+}
@@ -0,0 +1,84 @@
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.securetrust.risk.VelocityGuard;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency of VelocityGuard.authorize under concurrent debits, measured per call.
+ *
+ * Threads debit a mix of hot and cold accounts; a share of the debits is
+ * declined so both the allow and the decline path are exercised. Run from the
+ * backend directory after mvn compile:
+ *
+ *   java -cp target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *        scripts/VelocityBenchmark.java [threads] [calls-per-thread]
+ */
+public class VelocityBenchmark {
+
+    private static final int ACCOUNTS = 10_000;
+    private static final int HOT_ACCOUNTS = 16;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int calls = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+
+        // Decline logging would dominate the measurement; the application logs them at INFO
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        VelocityGuard guard = new VelocityGuard(null, null, true, Duration.ofHours(24), Duration.ofHours(1),
+            500, 5_000_000, 20_000);
+
+        // Warm-up so the JIT has compiled the hot path before measuring
+        run(guard, Math.min(threads, 8), 200_000);
+        long[] latencies = run(guard, threads, calls);
+
+        Arrays.sort(latencies);
+        System.out.printf("threads %d, %d calls: p50 %.1f us  p99 %.1f us  p99.9 %.1f us  max %.1f us%n",
+            threads, latencies.length, micros(latencies, 0.50), micros(latencies, 0.99),
+            micros(latencies, 0.999), latencies[latencies.length - 1] / 1000.0);
+    }
+
+    private static long[] run(VelocityGuard guard, int threads, int calls) throws InterruptedException {
+        long[] latencies = new long[threads * calls];
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int offset = t * calls;
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < calls; i++) {
+                    String account = "ACC" + (random.nextInt(4) == 0
+                        ? random.nextInt(HOT_ACCOUNTS) : random.nextInt(ACCOUNTS));
+                    String payee = random.nextInt(10) == 0 ? "REF" + random.nextInt(ACCOUNTS) : null;
+                    double amount = 10 + random.nextInt(30_000);
+                    long begin = System.nanoTime();
+                    try {
+                        guard.authorize(account, amount, payee);
+                    } catch (IllegalArgumentException declined) {
+                        // Declines are part of the measured path
+                    }
+                    latencies[offset + i] = System.nanoTime() - begin;
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return latencies;
+    }
+
+    private static double micros(long[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, percentile * sorted.length)] / 1000.0;
+    }
+}
@@ -0,0 +1,68 @@
+#!/usr/bin/env bash
+#
+# Write-path benchmark: one commit per operation vs group commit.
+#
+# Starts the application once per mode on a fresh database and drives
+# POST /transactions/deposit with an increasing number of concurrent
+# connections using scripts/LoadGenerator.java, printing throughput and
+# p50/p99 latency per step so the two curves can be compared.
+#
+# Usage: scripts/group-commit-benchmark.sh [seconds-per-step]   (run from the backend directory)
+#
+# CONNECTIONS, MAX_BATCH and MAX_WAIT_MICROS override the steps and the group
+# commit settings.
+
+set -euo pipefail
+
+SECONDS_PER_RUN=${1:-20}
+CONNECTIONS=${CONNECTIONS:-"1 4 16 64 256"}
+MAX_BATCH=${MAX_BATCH:-64}
+MAX_WAIT_MICROS=${MAX_WAIT_MICROS:-500}
+PORT=${PORT:-18080}
+BASE_URL="http://localhost:${PORT}"
+WORK_DIR=$(mktemp -d)
+APP_PID=
+trap '[ -n "$APP_PID" ] && kill "$APP_PID" 2>/dev/null; rm -rf "$WORK_DIR"' EXIT
+
+start_app() {
+    local log=$1; shift
+    rm -rf "$WORK_DIR/data"
+    (cd "$WORK_DIR" && exec java -jar "$WORK_DIR/app.jar" --server.port="$PORT" "$@" > "$log" 2>&1) &
+    APP_PID=$!
+    until curl -sf -o /dev/null "$BASE_URL/login"; do
+        if ! kill -0 "$APP_PID" 2>/dev/null; then
+            echo "application exited during startup, see log:" >&2
+            tail -20 "$log" >&2
+            exit 1
+        fi
+        sleep 0.2
+    done
+}
+
+stop_app() {
+    kill "$APP_PID"
+    wait "$APP_PID" 2>/dev/null || true
+    APP_PID=
+}
+
+run_mode() {
+    local label=$1; shift
+    echo "== $label"
+    start_app "$WORK_DIR/$label.log" "$@"
+    # Warm-up: JIT, connection pool
+    java scripts/LoadGenerator.java "$BASE_URL" /transactions/deposit 8 10 'accountNumber=CHQ001&amount=1' > /dev/null
+    for connections in $CONNECTIONS; do
+        java scripts/LoadGenerator.java "$BASE_URL" /transactions/deposit "$connections" "$SECONDS_PER_RUN" \
+            'accountNumber=CHQ001&amount=1'
+    done
+    stop_app
+}
+
+echo "Building jar..."
+mvn -B -q package -DskipTests
+cp target/bank-web-1.0.0.jar "$WORK_DIR/app.jar"
+
+echo "POST /transactions/deposit, ${SECONDS_PER_RUN}s per step"
+run_mode one-commit-per-operation --securetrust.group-commit.enabled=false
+run_mode group-commit --securetrust.group-commit.enabled=true \
+    --securetrust.group-commit.max-batch="$MAX_BATCH" --securetrust.group-commit.max-wait-micros="$MAX_WAIT_MICROS"
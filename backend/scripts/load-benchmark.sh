@@ -0,0 +1,67 @@
+#!/usr/bin/env bash
+#
+# Throughput benchmark: platform-thread vs virtual-thread request execution.
+#
+# Starts the application once per mode and drives a database-backed page with
+# 1k and 10k concurrent connections using scripts/LoadGenerator.java. Both modes
+# get the same Tomcat connection limits, so the thread model is the only
+# difference. The virtual run is started with -Djdk.tracePinnedThreads=short and
+# the number of pinned-carrier stack traces it logged is reported at the end.
+#
+# Needs JDK 21 and an open-file limit above 2x the largest connection count.
+#
+# Usage: scripts/load-benchmark.sh [seconds-per-run] [path]   (run from the backend directory)
+
+set -euo pipefail
+
+SECONDS_PER_RUN=${1:-30}
+TARGET_PATH=${2:-/transactions}
+CONNECTIONS=${CONNECTIONS:-"1000 10000"}
+PORT=${PORT:-18080}
+BASE_URL="http://localhost:${PORT}"
+WORK_DIR=$(mktemp -d)
+APP_PID=
+trap '[ -n "$APP_PID" ] && kill "$APP_PID" 2>/dev/null; rm -rf "$WORK_DIR"' EXIT
+
+start_app() {
+    local log=$1; shift
+    (cd "$WORK_DIR" && exec java "$@" -jar "$WORK_DIR/app.jar" --server.port="$PORT" \
+        --server.tomcat.max-connections=20000 --server.tomcat.accept-count=1000 > "$log" 2>&1) &
+    APP_PID=$!
+    until curl -sf -o /dev/null "$BASE_URL/login"; do
+        if ! kill -0 "$APP_PID" 2>/dev/null; then
+            echo "application exited during startup, see log:" >&2
+            tail -20 "$log" >&2
+            exit 1
+        fi
+        sleep 0.2
+    done
+}
+
+stop_app() {
+    kill "$APP_PID"
+    wait "$APP_PID" 2>/dev/null || true
+    APP_PID=
+}
+
+run_mode() {
+    local label=$1; shift
+    local log="$WORK_DIR/$label.log"
+    echo "== $label"
+    start_app "$log" "$@"
+    # Warm-up: JIT, template cache and connection pool
+    java scripts/LoadGenerator.java "$BASE_URL" "$TARGET_PATH" 50 10 > /dev/null
+    for connections in $CONNECTIONS; do
+        java scripts/LoadGenerator.java "$BASE_URL" "$TARGET_PATH" "$connections" "$SECONDS_PER_RUN"
+    done
+    stop_app
+}
+
+echo "Building jar..."
+mvn -B -q package -DskipTests
+cp target/bank-web-1.0.0.jar "$WORK_DIR/app.jar"
+
+echo "GET $TARGET_PATH, ${SECONDS_PER_RUN}s per run"
+run_mode platform
+run_mode virtual -Djdk.tracePinnedThreads=short -Dspring.profiles.active=virtual
+echo "pinned-carrier traces logged in virtual mode: $(grep -c '<== monitors' "$WORK_DIR/virtual.log" || true)"
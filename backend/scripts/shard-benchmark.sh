@@ -0,0 +1,86 @@
+#!/usr/bin/env bash
+#
+# Write-path benchmark: the ledger on one database vs sharded over several.
+#
+# Starts the application once per shard count with the sharded profile, each
+# shard a local H2 database of its own, and drives deposits to ACCOUNTS
+# accounts of new customers, spread over the shards by placement, with
+# scripts/ShardBenchmark.java at an increasing number of concurrent
+# connections. Then the same for transfers between random accounts, which
+# commit in two phases when the accounts are on different shards (velocity
+# limits off, since every account sends many). Prints throughput per step so
+# the curves for each shard count can be compared.
+#
+# Usage: scripts/shard-benchmark.sh [seconds-per-step]   (run from the backend directory)
+#
+# SHARDS, CONNECTIONS and ACCOUNTS override the shard counts, the steps and
+# the number of accounts.
+
+set -euo pipefail
+
+SECONDS_PER_RUN=${1:-20}
+SHARDS=${SHARDS:-"1 2 4"}
+CONNECTIONS=${CONNECTIONS:-"16 64 256"}
+ACCOUNTS=${ACCOUNTS:-200}
+PORT=${PORT:-18080}
+BASE_URL="http://localhost:${PORT}"
+WORK_DIR=$(mktemp -d)
+APP_PID=
+trap '[ -n "$APP_PID" ] && kill "$APP_PID" 2>/dev/null; rm -rf "$WORK_DIR"' EXIT
+
+start_app() {
+    local log=$1; shift
+    rm -rf "$WORK_DIR/data"
+    (cd "$WORK_DIR" && exec java -jar "$WORK_DIR/app.jar" --server.port="$PORT" \
+        --securetrust.warm-up.enabled=false "$@" > "$log" 2>&1) &
+    APP_PID=$!
+    # Ready, not just listening: the demo data is seeded after Tomcat starts
+    until curl -sf -o /dev/null "$BASE_URL/health/readiness"; do
+        if ! kill -0 "$APP_PID" 2>/dev/null; then
+            echo "application exited during startup, see log:" >&2
+            tail -20 "$log" >&2
+            exit 1
+        fi
+        sleep 0.2
+    done
+}
+
+stop_app() {
+    kill "$APP_PID"
+    wait "$APP_PID" 2>/dev/null || true
+    APP_PID=
+}
+
+# The databases after the home shard, for a ledger of $1 shards
+shard_urls() {
+    local urls=
+    for ((shard = 1; shard < $1; shard++)); do
+        urls+="${urls:+,}jdbc:h2:file:./data/bankdb-shard${shard}"
+    done
+    echo "$urls"
+}
+
+run_shards() {
+    local shards=$1
+    echo "== $shards shard(s)"
+    start_app "$WORK_DIR/shards-$shards.log" --spring.profiles.active=sharded \
+        --securetrust.sharding.urls="$(shard_urls "$shards")" --securetrust.velocity.enabled=false
+    # Warm-up: JIT, connection pools
+    java scripts/ShardBenchmark.java "$BASE_URL" "$ACCOUNTS" 8 10 > /dev/null
+    for connections in $CONNECTIONS; do
+        java scripts/ShardBenchmark.java "$BASE_URL" "$ACCOUNTS" "$connections" "$SECONDS_PER_RUN"
+    done
+    for connections in $CONNECTIONS; do
+        TRANSFERS=1 java scripts/ShardBenchmark.java "$BASE_URL" "$ACCOUNTS" "$connections" "$SECONDS_PER_RUN"
+    done
+    stop_app
+}
+
+echo "Building jar..."
+mvn -B -q package -DskipTests
+cp target/bank-web-1.0.0.jar "$WORK_DIR/app.jar"
+
+echo "${ACCOUNTS} accounts, ${SECONDS_PER_RUN}s per step"
+for shards in $SHARDS; do
+    run_shards "$shards"
+done
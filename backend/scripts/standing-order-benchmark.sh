@@ -0,0 +1,115 @@
+#!/usr/bin/env bash
+#
+# Standing order scheduler benchmark: a large schedule with a month-start spike.
+#
+# Seeds ORDERS active standing orders into a fresh database: SPIKE of them fall
+# due at the same instant, while the application is down, the rest are spread
+# over the following 30 days. Then starts the application (velocity
+# limits off, since every order pays from the same demo account) and samples
+# GET /standing-orders/scheduler until the spike has been paid, printing the
+# orders held in memory, the due backlog, its lag, payment throughput and the
+# process RSS, followed by the loader's read times.
+#
+# Usage: scripts/standing-order-benchmark.sh   (run from the backend directory)
+#
+# ORDERS, SPIKE, MAX_LOADED, WORKERS and BATCH_SIZE override the defaults.
+
+set -euo pipefail
+
+ORDERS=${ORDERS:-5000000}
+SPIKE=${SPIKE:-100000}
+MAX_LOADED=${MAX_LOADED:-200000}
+WORKERS=${WORKERS:-2}
+BATCH_SIZE=${BATCH_SIZE:-50}
+PORT=${PORT:-18080}
+BASE_URL="http://localhost:${PORT}"
+WORK_DIR=$(mktemp -d)
+APP_PID=
+trap '[ -n "$APP_PID" ] && kill "$APP_PID" 2>/dev/null; rm -rf "$WORK_DIR"' EXIT
+
+start_app() {
+    (cd "$WORK_DIR" && exec java -jar "$WORK_DIR/app.jar" --server.port="$PORT" \
+        --securetrust.warm-up.enabled=false "$@" > "$WORK_DIR/app.log" 2>&1) &
+    APP_PID=$!
+    # Ready, not just listening: the demo data is seeded after Tomcat starts
+    until curl -sf -o /dev/null "$BASE_URL/health/readiness"; do
+        if ! kill -0 "$APP_PID" 2>/dev/null; then
+            echo "application exited during startup, see log:" >&2
+            tail -20 "$WORK_DIR/app.log" >&2
+            exit 1
+        fi
+        sleep 0.2
+    done
+}
+
+stop_app() {
+    kill "$APP_PID"
+    wait "$APP_PID" 2>/dev/null || true
+    APP_PID=
+}
+
+field() {
+    sed -n "s/.*\"$1\":\([^,}]*\).*/\1/p"
+}
+
+echo "Building jar..."
+mvn -B -q package -DskipTests
+cp target/bank-web-1.0.0.jar "$WORK_DIR/app.jar"
+(cd "$WORK_DIR" && unzip -q -j app.jar 'BOOT-INF/lib/h2-*.jar' && mv h2-*.jar h2.jar)
+
+echo "Creating the demo database..."
+start_app --securetrust.standing-orders.enabled=false
+stop_app
+
+echo "Seeding $ORDERS standing orders, $SPIKE of them due together..."
+seed_start=$(date +%s)
+# Committed in chunks: one huge transaction would have H2 keep every row's undo entry
+chunks=""
+for (( first = 1; first <= ORDERS; first += 100000 )); do
+    last=$(( first + 99999 < ORDERS ? first + 99999 : ORDERS ))
+    chunks+="
+    INSERT INTO standing_order (from_account_id, to_account_id, amount, frequency, first_run_at, next_run_at,
+                                status, created_at)
+        SELECT s.from_id, s.to_id, 0.01, 'MONTHLY', d.due, d.due, 'ACTIVE', LOCALTIMESTAMP
+        FROM (SELECT CASE WHEN x <= $SPIKE THEN spike_at
+                          ELSE DATEADD('SECOND', 1 + CAST(RAND() * 2592000 AS INT), spike_at) END due
+              FROM SYSTEM_RANGE($first, $last), seed) d, seed s;"
+done
+java -cp "$WORK_DIR/h2.jar" org.h2.tools.Shell -url "jdbc:h2:$WORK_DIR/data/bankdb" -user sa -password "" -sql "
+    CREATE TEMPORARY TABLE seed AS
+        SELECT (SELECT id FROM account ORDER BY balance DESC LIMIT 1) from_id,
+               (SELECT id FROM account ORDER BY balance DESC LIMIT 1 OFFSET 1) to_id,
+               LOCALTIMESTAMP(0) spike_at;
+    $chunks
+    SELECT COUNT(*) orders, MIN(next_run_at) first_due FROM standing_order;" > "$WORK_DIR/seed.log"
+if grep -q 'Exception\|Error' "$WORK_DIR/seed.log"; then
+    cat "$WORK_DIR/seed.log" >&2
+    exit 1
+fi
+echo "seeded in $(( $(date +%s) - seed_start )) s"
+
+echo "Starting with max-loaded $MAX_LOADED, $WORKERS workers, batches of $BATCH_SIZE..."
+start_app --securetrust.velocity.enabled=false \
+    --securetrust.standing-orders.max-loaded="$MAX_LOADED" \
+    --securetrust.standing-orders.workers="$WORKERS" \
+    --securetrust.standing-orders.batch-size="$BATCH_SIZE" \
+    --logging.level.com.securetrust.standingorder=DEBUG
+curl -s -c "$WORK_DIR/cookies" -o /dev/null -d 'email=admin@securetrust.com&password=Admin123!' "$BASE_URL/login"
+
+printf '%8s %9s %9s %9s %10s %9s %8s\n' seconds held ready "lag ms" completed "per s" "rss MB"
+start=$(date +%s)
+previous=0
+while true; do
+    sleep 5
+    status=$(curl -s -b "$WORK_DIR/cookies" "$BASE_URL/standing-orders/scheduler")
+    completed=$(field completed <<< "$status")
+    rss=$(awk '/VmRSS/ { print int($2 / 1024) }' "/proc/$APP_PID/status")
+    printf '%8d %9s %9s %9s %10s %9d %8s\n' $(( $(date +%s) - start )) "$(field held <<< "$status")" \
+        "$(field ready <<< "$status")" "$(field lagMillis <<< "$status")" "$completed" \
+        $(( (completed - previous) / 5 )) "$rss"
+    previous=$completed
+    [ "$completed" -ge "$SPIKE" ] && break
+done
+echo "Loader reads:"
+grep -o 'Loaded .*' "$WORK_DIR/app.log" | head -20
+stop_app
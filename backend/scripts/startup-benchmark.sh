@@ -0,0 +1,65 @@
+#!/usr/bin/env bash
+#
+# Startup benchmark: time from JVM launch to the first successful HTTP request.
+#
+# Compares the default build (fat jar, schema migrations, demo seeding) with the
+# fast-startup production build (mvn -Pprod: Spring AOT + CDS archive).
+#
+# Usage: scripts/startup-benchmark.sh [runs]   (run from the backend directory)
+
+set -euo pipefail
+
+RUNS=${1:-5}
+PORT=${PORT:-18080}
+URL="http://localhost:${PORT}/login"
+WORK_DIR=$(mktemp -d)
+trap 'rm -rf "$WORK_DIR"' EXIT
+
+now_ms() { date +%s%3N; }
+
+# Launches "$@" in the work dir and prints milliseconds until $URL answers 200
+time_to_first_request() {
+    local start pid elapsed
+    start=$(now_ms)
+    (cd "$WORK_DIR" && exec "$@" --server.port="$PORT" > "$WORK_DIR/app.log" 2>&1) &
+    pid=$!
+    until curl -sf -o /dev/null "$URL"; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            echo "application exited during startup, see log:" >&2
+            tail -20 "$WORK_DIR/app.log" >&2
+            exit 1
+        fi
+        sleep 0.05
+    done
+    elapsed=$(( $(now_ms) - start ))
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+    echo "$elapsed"
+}
+
+# Runs a mode RUNS times and prints min/avg
+bench() {
+    local label=$1; shift
+    local total=0 min=999999 t
+    for _ in $(seq "$RUNS"); do
+        t=$(time_to_first_request "$@")
+        total=$(( total + t ))
+        (( t < min )) && min=$t
+    done
+    printf '%-40s min %6d ms   avg %6d ms\n' "$label" "$min" $(( total / RUNS ))
+}
+
+echo "Building default jar..."
+mvn -B -q package -DskipTests
+cp target/bank-web-1.0.0.jar "$WORK_DIR/default.jar"
+
+echo "Building prod jar (AOT + CDS)..."
+mvn -B -q -Pprod package -DskipTests
+mkdir -p "$WORK_DIR/prod"
+cp -r target/bank-web-1.0.0.jar target/app.jsa target/lib "$WORK_DIR/prod/"
+
+echo "Time to first successful request over $RUNS runs:"
+# The default run also creates the schema the prod profile validates against
+bench "default (fat jar)" java -jar "$WORK_DIR/default.jar"
+bench "prod (AOT + CDS + lazy init)" java -XX:SharedArchiveFile="$WORK_DIR/prod/app.jsa" -Xlog:cds=off \
+    -Dspring.aot.enabled=true -Dspring.profiles.active=prod -jar "$WORK_DIR/prod/bank-web-1.0.0.jar"
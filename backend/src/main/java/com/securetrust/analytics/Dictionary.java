@@ -0,0 +1,66 @@
+package com.securetrust.analytics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only string dictionary for a columnar store. Code 0 stands for
+ * {@code null}. Codes are assigned by the single writer; readers may call
+ * {@link #size()} and {@link #label(int)} at any time and see every code
+ * published before the size they read.
+ */
+final class Dictionary {
+
+    static final String NONE = "(none)";
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] labels = new String[16];
+    private volatile int size;
+
+    Dictionary() {
+        labels[0] = NONE;
+        size = 1;
+    }
+
+    /**
+     * Code of {@code value}, adding it if new. Writer thread only.
+     */
+    int encode(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        int next = size;
+        String[] current = labels;
+        if (next == current.length) {
+            current = Arrays.copyOf(current, next * 2);
+            labels = current;
+        }
+        current[next] = value;
+        size = next + 1;
+        codes.put(value, next);
+        return next;
+    }
+
+    /**
+     * Code of an existing value, or -1 when it has never been seen.
+     */
+    int find(String value) {
+        if (value == null) {
+            return 0;
+        }
+        return codes.getOrDefault(value, -1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    String label(int code) {
+        return labels[code];
+    }
+}
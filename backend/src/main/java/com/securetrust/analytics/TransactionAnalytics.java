@@ -0,0 +1,640 @@
+package com.securetrust.analytics;
+
+import com.securetrust.archive.ArchivedTransaction;
+import com.securetrust.archive.TransactionArchive;
+import com.securetrust.config.StartupOrder;
+import com.securetrust.dictionary.LedgerDictionary;
+import com.securetrust.event.AccountChangedEvent;
+import com.securetrust.event.CustomerChangedEvent;
+import com.securetrust.event.LedgerChangedEvent;
+import com.securetrust.model.AccountType;
+import com.securetrust.model.CustomerType;
+import com.securetrust.model.TransactionType;
+import com.securetrust.sharding.Shards;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * In-memory columnar copy of the ledger for ad-hoc reporting.
+ *
+ * Each transaction is reduced to five primitive columns (epoch day, type,
+ * dictionary-encoded category, account code and amount in cents) held in
+ * fixed-size chunks, about 21 bytes a row. Branch, account type and customer
+ * type live once per account in a small dimension table, so reports can group
+ * and filter on them without widening the rows. The store is filled on first
+ * use (or at startup with {@code securetrust.analytics.preload}) from the
+ * {@link TransactionArchive} and the transaction table, and afterwards only
+ * the rows committed since the last read are appended, so reports never query
+ * the live table.
+ *
+ * A report compiles its filters into lookup masks and its group-by into a
+ * dense integer key, then scans the chunks on a fixed pool of workers, each
+ * adding into its own counters; chunks whose date range misses the requested
+ * range are skipped whole. Rows deleted from the table after they were read
+ * stay in the store until the application restarts.
+ */
+@Component
+public class TransactionAnalytics {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionAnalytics.class);
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int PUBLISH_EVERY = 4096;
+    private static final int MAX_GROUPS = 1 << 16;
+    private static final int FETCH_SIZE = 1000;
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    /**
+     * Attributes a report can group by.
+     */
+    public enum Dimension {
+        TYPE,
+        CATEGORY,
+        BRANCH,
+        ACCOUNT_TYPE,
+        CUSTOMER_TYPE,
+        DAY,
+        MONTH
+    }
+
+    /**
+     * A report request. Dates are inclusive {@code from}, exclusive {@code to} and
+     * may be {@code null} for an open end; an empty filter set matches everything.
+     */
+    public record Query(LocalDate from, LocalDate to, List<Dimension> groupBy, Set<TransactionType> types,
+                        Set<String> categories, Set<String> branches, Set<AccountType> accountTypes,
+                        Set<CustomerType> customerTypes) { }
+
+    /**
+     * One group of a report, {@code key} holding a label per group-by dimension.
+     */
+    public record Group(List<String> key, long count, double inflow, double outflow, double net) { }
+
+    /**
+     * Report result; {@code rows} is the size of the store that was scanned.
+     */
+    public record Result(List<Dimension> groupBy, List<Group> groups, long rows, long matched,
+                         double elapsedMillis) { }
+
+    private record Accounts(Map<Long, Integer> codes, int[] branches, byte[] accountTypes, byte[] customerTypes,
+                            int count) { }
+
+    private static final class Chunk {
+        final int[] days = new int[CHUNK_SIZE];
+        final byte[] types = new byte[CHUNK_SIZE];
+        final int[] categories = new int[CHUNK_SIZE];
+        final int[] accounts = new int[CHUNK_SIZE];
+        final long[] cents = new long[CHUNK_SIZE];
+        // Only ever widen, so a reader racing the writer skips conservatively
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+    }
+
+    // Per-worker sums, indexed by group key
+    private static final class Partial {
+        final long[] counts;
+        final long[] inflows;
+        final long[] outflows;
+        long matched;
+
+        Partial(int groups) {
+            counts = new long[groups];
+            inflows = new long[groups];
+            outflows = new long[groups];
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionArchive archive;
+    private final LedgerDictionary ledgerDictionary;
+    private final Shards shards;
+    private final boolean preload;
+    private final int workers;
+    private final ExecutorService executor;
+
+    private final ReentrantLock writer = new ReentrantLock();
+    private final Dictionary categories = new Dictionary();
+    private final Dictionary branches = new Dictionary();
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile Accounts accounts = new Accounts(Map.of(), new int[0], new byte[0], new byte[0], 0);
+    private volatile int size;
+    private volatile int minDay = Integer.MAX_VALUE;
+    private volatile int maxDay = Integer.MIN_VALUE;
+    private volatile boolean loaded;
+    private volatile boolean ledgerStale;
+    private volatile boolean accountsStale;
+
+    // Writer state
+    private int pending;
+    private long lastId;
+    // Highest account id looked for in the dimension table, and whether it was
+    // re-read for a missing account in the current load or append pass
+    private long maxAccountId;
+    private boolean accountsReread;
+    private long skipped;
+
+    public TransactionAnalytics(JdbcTemplate jdbcTemplate, TransactionArchive archive, LedgerDictionary ledgerDictionary,
+                                Shards shards,
+                                @Value("${securetrust.analytics.preload:false}") boolean preload,
+                                @Value("${securetrust.analytics.workers:0}") int workers) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.archive = archive;
+        this.ledgerDictionary = ledgerDictionary;
+        this.shards = shards;
+        this.preload = preload;
+        this.workers = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("analytics-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newFixedThreadPool(this.workers, threadFactory);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(StartupOrder.LOAD)
+    public void preload() {
+        if (preload) {
+            ensureCurrent();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLedgerChanged(LedgerChangedEvent event) {
+        ledgerStale = true;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountChanged(AccountChangedEvent event) {
+        accountsStale = true;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCustomerChanged(CustomerChangedEvent event) {
+        accountsStale = true;
+    }
+
+    /**
+     * Count, inflow and outflow of the transactions matching {@code query},
+     * grouped by its dimensions in key order. Groups without transactions are left out.
+     */
+    public Result report(Query query) {
+        shards.requireSingle("Transaction analytics");
+        long start = System.nanoTime();
+        List<Dimension> groupBy = query.groupBy() == null ? List.of() : List.copyOf(new LinkedHashSet<>(query.groupBy()));
+        ensureCurrent();
+
+        // Rows first: every code a published row uses is then covered by the dictionaries read after
+        int rows = size;
+        Chunk[] snapshot = chunks;
+        Accounts dimensions = accounts;
+        int categoryCount = categories.size();
+        int branchCount = branches.size();
+
+        int fromDay = query.from() != null ? (int) query.from().toEpochDay() : minDay;
+        int toDay = query.to() != null ? (int) query.to().toEpochDay() : maxDay + 1;
+        if (query.from() != null && query.to() != null && !query.from().isBefore(query.to())) {
+            throw new IllegalArgumentException("Start of the range must be before its end");
+        }
+        if (rows == 0 || fromDay >= toDay) {
+            return new Result(groupBy, List.of(), rows, 0, (System.nanoTime() - start) / 1e6);
+        }
+        int span = toDay - fromDay;
+
+        boolean[] typeMask = mask(TYPES.length, query.types(), TransactionType::ordinal);
+        boolean[] categoryMask = new boolean[categoryCount];
+        if (query.categories() == null || query.categories().isEmpty()) {
+            Arrays.fill(categoryMask, true);
+        } else {
+            for (String category : query.categories()) {
+                int code = categories.find(category);
+                if (code >= 0 && code < categoryCount) {
+                    categoryMask[code] = true;
+                }
+            }
+        }
+        boolean[] accountMask = accountMask(dimensions, branchCount, query);
+
+        // Mixed-radix group key; the first dimension is the most significant
+        int[] typeKey = new int[TYPES.length];
+        int[] categoryKey = new int[categoryCount];
+        int[] accountKey = new int[dimensions.count()];
+        int[] dayKey = new int[span];
+        int[] cardinalities = new int[groupBy.size()];
+        long groups = 1;
+        for (int d = groupBy.size() - 1; d >= 0; d--) {
+            int stride = (int) groups;
+            Dimension dimension = groupBy.get(d);
+            switch (dimension) {
+                case TYPE -> {
+                    cardinalities[d] = TYPES.length;
+                    for (int t = 0; t < TYPES.length; t++) {
+                        typeKey[t] += t * stride;
+                    }
+                }
+                case CATEGORY -> {
+                    cardinalities[d] = categoryCount;
+                    for (int c = 0; c < categoryCount; c++) {
+                        categoryKey[c] += c * stride;
+                    }
+                }
+                case BRANCH -> {
+                    cardinalities[d] = branchCount;
+                    for (int a = 0; a < dimensions.count(); a++) {
+                        accountKey[a] += dimensions.branches()[a] * stride;
+                    }
+                }
+                case ACCOUNT_TYPE -> {
+                    cardinalities[d] = AccountType.values().length;
+                    for (int a = 0; a < dimensions.count(); a++) {
+                        accountKey[a] += dimensions.accountTypes()[a] * stride;
+                    }
+                }
+                case CUSTOMER_TYPE -> {
+                    cardinalities[d] = CustomerType.values().length;
+                    for (int a = 0; a < dimensions.count(); a++) {
+                        accountKey[a] += dimensions.customerTypes()[a] * stride;
+                    }
+                }
+                case DAY -> {
+                    cardinalities[d] = span;
+                    for (int day = 0; day < span; day++) {
+                        dayKey[day] += day * stride;
+                    }
+                }
+                case MONTH -> {
+                    YearMonth first = YearMonth.from(LocalDate.ofEpochDay(fromDay));
+                    cardinalities[d] = (int) first.until(YearMonth.from(LocalDate.ofEpochDay(toDay - 1)),
+                        ChronoUnit.MONTHS) + 1;
+                    for (int day = 0; day < span; day++) {
+                        int month = (int) first.until(YearMonth.from(LocalDate.ofEpochDay(fromDay + day)),
+                            ChronoUnit.MONTHS);
+                        dayKey[day] += month * stride;
+                    }
+                }
+            }
+            groups *= cardinalities[d];
+            if (groups > MAX_GROUPS) {
+                throw new IllegalArgumentException("Report would have more than " + MAX_GROUPS
+                    + " groups; narrow the date range or group by month");
+            }
+        }
+
+        int groupCount = (int) groups;
+        int chunkCount = (rows + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+        int tasks = Math.min(workers, chunkCount);
+        Partial total;
+        if (tasks <= 1) {
+            total = new Partial(groupCount);
+            scan(snapshot, 0, chunkCount, rows, fromDay, span, typeMask, categoryMask, accountMask,
+                typeKey, categoryKey, accountKey, dayKey, total);
+        } else {
+            List<Future<Partial>> futures = new ArrayList<>(tasks);
+            for (int k = 0; k < tasks; k++) {
+                int firstChunk = (int) ((long) chunkCount * k / tasks);
+                int lastChunk = (int) ((long) chunkCount * (k + 1) / tasks);
+                futures.add(executor.submit(() -> {
+                    Partial partial = new Partial(groupCount);
+                    scan(snapshot, firstChunk, lastChunk, rows, fromDay, span, typeMask, categoryMask,
+                        accountMask, typeKey, categoryKey, accountKey, dayKey, partial);
+                    return partial;
+                }));
+            }
+            total = merge(futures);
+        }
+
+        List<Group> result = new ArrayList<>();
+        for (int key = 0; key < groupCount; key++) {
+            if (total.counts[key] == 0) {
+                continue;
+            }
+            List<String> labels = new ArrayList<>(groupBy.size());
+            int rest = key;
+            for (int d = groupBy.size() - 1; d >= 0; d--) {
+                labels.add(0, label(groupBy.get(d), rest % cardinalities[d], fromDay));
+                rest /= cardinalities[d];
+            }
+            result.add(new Group(labels, total.counts[key], total.inflows[key] / 100.0, total.outflows[key] / 100.0,
+                (total.inflows[key] - total.outflows[key]) / 100.0));
+        }
+        return new Result(groupBy, result, rows, total.matched, (System.nanoTime() - start) / 1e6);
+    }
+
+    private static void scan(Chunk[] chunks, int firstChunk, int lastChunk, int rows, int fromDay, int span,
+                             boolean[] typeMask, boolean[] categoryMask, boolean[] accountMask,
+                             int[] typeKey, int[] categoryKey, int[] accountKey, int[] dayKey, Partial partial) {
+        long[] counts = partial.counts;
+        long[] inflows = partial.inflows;
+        long[] outflows = partial.outflows;
+        boolean[] credit = new boolean[TYPES.length];
+        for (TransactionType type : TYPES) {
+            credit[type.ordinal()] = type.isCredit();
+        }
+        long matched = 0;
+        for (int c = firstChunk; c < lastChunk; c++) {
+            Chunk chunk = chunks[c];
+            if (chunk.maxDay < fromDay || chunk.minDay >= fromDay + span) {
+                continue;
+            }
+            int end = Math.min(CHUNK_SIZE, rows - (c << CHUNK_BITS));
+            int[] days = chunk.days;
+            byte[] types = chunk.types;
+            int[] categoryColumn = chunk.categories;
+            int[] accountColumn = chunk.accounts;
+            long[] cents = chunk.cents;
+            for (int i = 0; i < end; i++) {
+                int day = days[i] - fromDay;
+                if (day < 0 || day >= span) {
+                    continue;
+                }
+                int type = types[i];
+                int category = categoryColumn[i];
+                int account = accountColumn[i];
+                if (!typeMask[type] || !categoryMask[category] || !accountMask[account]) {
+                    continue;
+                }
+                int key = typeKey[type] + categoryKey[category] + accountKey[account] + dayKey[day];
+                counts[key]++;
+                if (credit[type]) {
+                    inflows[key] += cents[i];
+                } else {
+                    outflows[key] += cents[i];
+                }
+                matched++;
+            }
+        }
+        partial.matched = matched;
+    }
+
+    private static Partial merge(List<Future<Partial>> futures) {
+        Partial total = null;
+        for (Future<Partial> future : futures) {
+            Partial partial;
+            try {
+                partial = future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Analytics scan failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Analytics scan interrupted", e);
+            }
+            if (total == null) {
+                total = partial;
+                continue;
+            }
+            for (int key = 0; key < total.counts.length; key++) {
+                total.counts[key] += partial.counts[key];
+                total.inflows[key] += partial.inflows[key];
+                total.outflows[key] += partial.outflows[key];
+            }
+            total.matched += partial.matched;
+        }
+        return total;
+    }
+
+    private static <T> boolean[] mask(int length, Set<T> selected, ToIntFunction<T> ordinal) {
+        boolean[] mask = new boolean[length];
+        if (selected == null || selected.isEmpty()) {
+            Arrays.fill(mask, true);
+        } else {
+            selected.forEach(value -> mask[ordinal.applyAsInt(value)] = true);
+        }
+        return mask;
+    }
+
+    private boolean[] accountMask(Accounts dimensions, int branchCount, Query query) {
+        boolean[] branchMask = new boolean[branchCount];
+        if (query.branches() == null || query.branches().isEmpty()) {
+            Arrays.fill(branchMask, true);
+        } else {
+            for (String branch : query.branches()) {
+                int code = branches.find(branch);
+                if (code >= 0 && code < branchCount) {
+                    branchMask[code] = true;
+                }
+            }
+        }
+        boolean[] accountTypeMask = mask(AccountType.values().length, query.accountTypes(), AccountType::ordinal);
+        boolean[] customerTypeMask = mask(CustomerType.values().length, query.customerTypes(), CustomerType::ordinal);
+        boolean[] mask = new boolean[dimensions.count()];
+        for (int a = 0; a < mask.length; a++) {
+            mask[a] = branchMask[dimensions.branches()[a]] && accountTypeMask[dimensions.accountTypes()[a]]
+                && customerTypeMask[dimensions.customerTypes()[a]];
+        }
+        return mask;
+    }
+
+    private String label(Dimension dimension, int index, int fromDay) {
+        return switch (dimension) {
+            case TYPE -> TYPES[index].name();
+            case CATEGORY -> categories.label(index);
+            case BRANCH -> branches.label(index);
+            case ACCOUNT_TYPE -> AccountType.values()[index].name();
+            case CUSTOMER_TYPE -> CustomerType.values()[index].name();
+            case DAY -> LocalDate.ofEpochDay(fromDay + index).toString();
+            case MONTH -> YearMonth.from(LocalDate.ofEpochDay(fromDay)).plusMonths(index).toString();
+        };
+    }
+
+    // ---- Loading ----
+
+    private void ensureCurrent() {
+        if (loaded && !ledgerStale && !accountsStale) {
+            return;
+        }
+        writer.lock();
+        try {
+            if (!loaded) {
+                ledgerStale = false;
+                accountsStale = false;
+                load();
+                loaded = true;
+                return;
+            }
+            if (accountsStale) {
+                accountsStale = false;
+                loadAccounts();
+            }
+            if (ledgerStale) {
+                ledgerStale = false;
+                accountsReread = false;
+                int before = size;
+                appendHotRows("SELECT id, account_id, type, amount, category_id, transaction_date FROM transaction "
+                    + "WHERE id > ? ORDER BY id", lastId);
+                log.debug("Analytics store appended {} transactions", size - before);
+            }
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    /**
+     * Archived months first, then the table from the archive horizon on. If a
+     * month is archived while the table is being read its rows may have been
+     * missed, so the load starts over.
+     */
+    private void load() {
+        long start = System.currentTimeMillis();
+        LocalDateTime horizon;
+        do {
+            chunks = new Chunk[0];
+            size = 0;
+            pending = 0;
+            lastId = 0;
+            skipped = 0;
+            accountsReread = false;
+            minDay = Integer.MAX_VALUE;
+            maxDay = Integer.MIN_VALUE;
+            horizon = archive.archivedBefore();
+            loadAccounts();
+
+            if (horizon != null) {
+                long horizonMillis = Timestamp.valueOf(horizon).getTime();
+                archive.forEach(row -> {
+                    if (row.transactionDate() < horizonMillis) {
+                        appendArchived(row);
+                    }
+                });
+            }
+            appendHotRows("SELECT id, account_id, type, amount, category_id, transaction_date FROM transaction "
+                + "WHERE transaction_date >= ?", Timestamp.valueOf(horizon != null ? horizon : BEGINNING));
+        } while (!Objects.equals(horizon, archive.archivedBefore()));
+
+        log.info("Analytics store loaded {} transactions of {} accounts in {} ms ({} skipped)",
+            size, accounts.count(), System.currentTimeMillis() - start, skipped);
+    }
+
+    private void appendArchived(ArchivedTransaction row) {
+        append(row.id(), row.accountId(), row.type().ordinal(), row.amount(), row.category(),
+            new Timestamp(row.transactionDate()).toLocalDateTime().toLocalDate().toEpochDay());
+        if (pending % PUBLISH_EVERY == 0) {
+            publish();
+        }
+    }
+
+    private void appendHotRows(String sql, Object parameter) {
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            statement.setObject(1, parameter);
+            return statement;
+        }, (ResultSet rs) -> {
+            append(rs.getLong(1), rs.getLong(2), TransactionType.fromCode(rs.getInt(3)).ordinal(), rs.getDouble(4),
+                ledgerDictionary.category(rs.getObject(5, Integer.class)),
+                rs.getTimestamp(6).toLocalDateTime().toLocalDate().toEpochDay());
+            if (pending % PUBLISH_EVERY == 0) {
+                publish();
+            }
+        });
+        publish();
+    }
+
+    private void append(long id, long accountId, int type, double amount, String category, long epochDay) {
+        Integer account = accounts.codes().get(accountId);
+        // Opened after the dimension table was read. Ids it has already looked
+        // for are mostly deleted accounts, whose archived rows stay: those
+        // re-read it once per pass, not once per row
+        if (account == null && (accountId > maxAccountId || !accountsReread)) {
+            loadAccounts();
+            accountsReread = true;
+            maxAccountId = Math.max(maxAccountId, accountId);
+            account = accounts.codes().get(accountId);
+        }
+        if (account == null) {
+            skipped++;
+            return;
+        }
+        int index = pending & (CHUNK_SIZE - 1);
+        if (index == 0 && (pending >>> CHUNK_BITS) == chunks.length) {
+            Chunk[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[chunks.length] = new Chunk();
+            chunks = grown;
+        }
+        Chunk chunk = chunks[pending >>> CHUNK_BITS];
+        int day = (int) epochDay;
+        chunk.days[index] = day;
+        chunk.types[index] = (byte) type;
+        chunk.categories[index] = categories.encode(category);
+        chunk.accounts[index] = account;
+        chunk.cents[index] = Math.round(amount * 100);
+        chunk.minDay = Math.min(chunk.minDay, day);
+        chunk.maxDay = Math.max(chunk.maxDay, day);
+        if (day < minDay) {
+            minDay = day;
+        }
+        if (day > maxDay) {
+            maxDay = day;
+        }
+        lastId = Math.max(lastId, id);
+        pending++;
+    }
+
+    private void publish() {
+        size = pending;
+    }
+
+    /**
+     * Re-read the account dimension table, keeping the codes already assigned.
+     */
+    private void loadAccounts() {
+        Accounts current = accounts;
+        Map<Long, Integer> codes = new HashMap<>(current.codes());
+        List<long[]> rows = new ArrayList<>();
+        jdbcTemplate.query("SELECT a.id, a.branch, a.account_type, c.customer_type "
+            + "FROM account a JOIN customer c ON c.id = a.customer_id", (ResultSet rs) -> {
+                long id = rs.getLong(1);
+                maxAccountId = Math.max(maxAccountId, id);
+                int code = codes.computeIfAbsent(id, key -> codes.size());
+                String customerType = rs.getString(4);
+                rows.add(new long[] {code, branches.encode(rs.getString(2)),
+                    AccountType.valueOf(rs.getString(3)).ordinal(),
+                    customerType != null ? CustomerType.valueOf(customerType).ordinal() : 0});
+            });
+        int count = codes.size();
+        int[] branchCodes = Arrays.copyOf(current.branches(), count);
+        byte[] accountTypes = Arrays.copyOf(current.accountTypes(), count);
+        byte[] customerTypes = Arrays.copyOf(current.customerTypes(), count);
+        for (long[] row : rows) {
+            int code = (int) row[0];
+            branchCodes[code] = (int) row[1];
+            accountTypes[code] = (byte) row[2];
+            customerTypes[code] = (byte) row[3];
+        }
+        accounts = new Accounts(codes, branchCodes, accountTypes, customerTypes, count);
+    }
+}
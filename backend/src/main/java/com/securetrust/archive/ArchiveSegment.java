@@ -0,0 +1,397 @@
+package com.securetrust.archive;
+
+import com.securetrust.model.TransactionType;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One month of archived transactions in a single immutable file.
+ *
+ * Rows are grouped into one block per account. Within a block each field is
+ * stored as its own column (ids and dates delta-encoded, amounts as cents where
+ * exact, strings through a block-local dictionary) and the block as a whole is
+ * deflated. A trailing index maps account ids to their block together with the
+ * block's row count, date range and net movement, so reading an account's
+ * history touches only its own block and balance arithmetic needs no block at
+ * all.
+ *
+ * <pre>
+ * magic | block... | index entries | entry count (int) | index offset (long) | magic
+ * </pre>
+ */
+final class ArchiveSegment {
+
+    private static final int MAGIC = 0x53545841; // "STXA"
+    private static final int FOOTER_BYTES = 4 + 8 + 4;
+    private static final int ENTRY_BYTES = 8 + 8 + 4 + 4 + 8 + 8 + 8;
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    /**
+     * Index entry of one account's block. {@code net} is the sum of credits less
+     * debits in the block.
+     */
+    record Entry(long accountId, long offset, int length, int rows, long minDate, long maxDate, double net) { }
+
+    private final Path file;
+    private final long[] accountIds;
+    private final Entry[] entries;
+
+    private ArchiveSegment(Path file, Entry[] entries) {
+        this.file = file;
+        this.entries = entries;
+        this.accountIds = Arrays.stream(entries).mapToLong(Entry::accountId).toArray();
+    }
+
+    static ArchiveSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer footer = read(channel, size - FOOTER_BYTES, FOOTER_BYTES);
+            int count = footer.getInt();
+            long indexOffset = footer.getLong();
+            if (footer.getInt() != MAGIC) {
+                throw new IOException("Not a transaction archive: " + file);
+            }
+
+            ByteBuffer index = read(channel, indexOffset, count * ENTRY_BYTES);
+            Entry[] entries = new Entry[count];
+            for (int i = 0; i < count; i++) {
+                entries[i] = new Entry(index.getLong(), index.getLong(), index.getInt(), index.getInt(),
+                    index.getLong(), index.getLong(), index.getDouble());
+            }
+            return new ArchiveSegment(file, entries);
+        }
+    }
+
+    Path file() {
+        return file;
+    }
+
+    int accounts() {
+        return entries.length;
+    }
+
+    Entry entry(int position) {
+        return entries[position];
+    }
+
+    Entry find(long accountId) {
+        int position = Arrays.binarySearch(accountIds, accountId);
+        return position >= 0 ? entries[position] : null;
+    }
+
+    long rows() {
+        long rows = 0;
+        for (Entry entry : entries) {
+            rows += entry.rows();
+        }
+        return rows;
+    }
+
+    /**
+     * Rows of the block in date order.
+     */
+    List<ArchivedTransaction> read(Entry entry) throws IOException {
+        byte[] compressed;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            compressed = read(channel, entry.offset(), entry.length()).array();
+        }
+        return decode(entry.accountId(), entry.rows(), inflate(compressed));
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated transaction archive");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static byte[] inflate(byte[] compressed) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] chunk = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new IOException("Truncated archive block");
+                }
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt archive block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static List<ArchivedTransaction> decode(long accountId, int rows, byte[] block) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(block));
+        long[] ids = new long[rows];
+        long[] dates = new long[rows];
+        long previousId = 0;
+        long previousDate = 0;
+        for (int i = 0; i < rows; i++) {
+            previousId += readSigned(in);
+            ids[i] = previousId;
+        }
+        for (int i = 0; i < rows; i++) {
+            previousDate += readSigned(in);
+            dates[i] = previousDate;
+        }
+        byte[] types = new byte[rows];
+        in.readFully(types);
+        double[] amounts = readAmounts(in, rows);
+        boolean[] hasBalance = new boolean[rows];
+        int balances = 0;
+        for (int i = 0; i < rows; i++) {
+            hasBalance[i] = in.readBoolean();
+            if (hasBalance[i]) {
+                balances++;
+            }
+        }
+        double[] balanceValues = readAmounts(in, balances);
+        String[] descriptions = readStrings(in, rows);
+        String[] categories = readStrings(in, rows);
+        String[] references = readStrings(in, rows);
+
+        List<ArchivedTransaction> result = new ArrayList<>(rows);
+        int balance = 0;
+        for (int i = 0; i < rows; i++) {
+            result.add(new ArchivedTransaction(ids[i], accountId, TYPES[types[i]], amounts[i], descriptions[i],
+                categories[i], dates[i], hasBalance[i] ? balanceValues[balance++] : null, references[i]));
+        }
+        return result;
+    }
+
+    private static double[] readAmounts(DataInputStream in, int count) throws IOException {
+        double[] values = new double[count];
+        boolean cents = in.readBoolean();
+        for (int i = 0; i < count; i++) {
+            values[i] = cents ? readSigned(in) / 100.0 : in.readDouble();
+        }
+        return values;
+    }
+
+    private static String[] readStrings(DataInputStream in, int rows) throws IOException {
+        int size = (int) readUnsigned(in);
+        String[] dictionary = new String[size + 1];
+        for (int i = 1; i <= size; i++) {
+            dictionary[i] = in.readUTF();
+        }
+        String[] values = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            values[i] = dictionary[(int) readUnsigned(in)];
+        }
+        return values;
+    }
+
+    private static long readUnsigned(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Truncated archive block");
+            }
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long readSigned(InputStream in) throws IOException {
+        long zigzag = readUnsigned(in);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    /**
+     * Writes a segment. Blocks must be appended in ascending account id order.
+     */
+    static final class Writer implements Closeable {
+
+        private final OutputStream out;
+        private final List<Entry> entries = new ArrayList<>();
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private long position;
+
+        Writer(Path file) throws IOException {
+            this.out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            position = 4;
+        }
+
+        /**
+         * Append one account's rows, already sorted by date and id.
+         */
+        void append(long accountId, List<ArchivedTransaction> rows) throws IOException {
+            if (rows.isEmpty()) {
+                return;
+            }
+            if (!entries.isEmpty() && entries.get(entries.size() - 1).accountId() >= accountId) {
+                throw new IllegalStateException("Archive blocks must be written in account order");
+            }
+            byte[] block = deflate(encode(rows));
+            out.write(block);
+
+            double net = 0;
+            for (ArchivedTransaction row : rows) {
+                net += row.type().isCredit() ? row.amount() : -row.amount();
+            }
+            entries.add(new Entry(accountId, position, block.length, rows.size(),
+                rows.get(0).transactionDate(), rows.get(rows.size() - 1).transactionDate(), net));
+            position += block.length;
+        }
+
+        void finish() throws IOException {
+            DataOutputStream index = new DataOutputStream(out);
+            for (Entry entry : entries) {
+                index.writeLong(entry.accountId());
+                index.writeLong(entry.offset());
+                index.writeInt(entry.length());
+                index.writeInt(entry.rows());
+                index.writeLong(entry.minDate());
+                index.writeLong(entry.maxDate());
+                index.writeDouble(entry.net());
+            }
+            index.writeInt(entries.size());
+            index.writeLong(position);
+            index.writeInt(MAGIC);
+            index.flush();
+            close();
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            out.close();
+        }
+
+        private byte[] deflate(byte[] block) {
+            deflater.reset();
+            deflater.setInput(block);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, block.length / 3));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return compressed.toByteArray();
+        }
+
+        private static byte[] encode(List<ArchivedTransaction> rows) throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(rows.size() * 16);
+            DataOutputStream data = new DataOutputStream(buffer);
+            long previousId = 0;
+            for (ArchivedTransaction row : rows) {
+                writeSigned(data, row.id() - previousId);
+                previousId = row.id();
+            }
+            long previousDate = 0;
+            for (ArchivedTransaction row : rows) {
+                writeSigned(data, row.transactionDate() - previousDate);
+                previousDate = row.transactionDate();
+            }
+            for (ArchivedTransaction row : rows) {
+                data.writeByte(row.type().ordinal());
+            }
+            double[] amounts = new double[rows.size()];
+            List<Double> balances = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                amounts[i] = rows.get(i).amount();
+            }
+            writeAmounts(data, amounts);
+            for (ArchivedTransaction row : rows) {
+                data.writeBoolean(row.balanceAfter() != null);
+                if (row.balanceAfter() != null) {
+                    balances.add(row.balanceAfter());
+                }
+            }
+            writeAmounts(data, balances.stream().mapToDouble(Double::doubleValue).toArray());
+            writeStrings(data, rows, ArchivedTransaction::description);
+            writeStrings(data, rows, ArchivedTransaction::category);
+            writeStrings(data, rows, ArchivedTransaction::referenceAccount);
+            data.flush();
+            return buffer.toByteArray();
+        }
+
+        // Whole cents when every value is exact to the cent, raw doubles otherwise
+        private static void writeAmounts(DataOutputStream data, double[] values) throws IOException {
+            boolean cents = true;
+            for (int i = 0; i < values.length && cents; i++) {
+                cents = Math.round(values[i] * 100) / 100.0 == values[i];
+            }
+            data.writeBoolean(cents);
+            for (int i = 0; i < values.length; i++) {
+                if (cents) {
+                    writeSigned(data, Math.round(values[i] * 100));
+                } else {
+                    data.writeDouble(values[i]);
+                }
+            }
+        }
+
+        private static void writeStrings(DataOutputStream data, List<ArchivedTransaction> rows,
+                                         Function<ArchivedTransaction, String> column)
+                throws IOException {
+            Map<String, Integer> dictionary = new HashMap<>();
+            List<String> values = new ArrayList<>();
+            int[] codes = new int[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                String value = column.apply(rows.get(i));
+                if (value != null) {
+                    codes[i] = dictionary.computeIfAbsent(value, key -> {
+                        values.add(key);
+                        return values.size();
+                    });
+                }
+            }
+            writeUnsigned(data, values.size());
+            for (String value : values) {
+                data.writeUTF(value);
+            }
+            for (int code : codes) {
+                writeUnsigned(data, code);
+            }
+        }
+
+        private static void writeUnsigned(DataOutputStream data, long value) throws IOException {
+            while ((value & ~0x7fL) != 0) {
+                data.writeByte((int) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            data.writeByte((int) value);
+        }
+
+        private static void writeSigned(DataOutputStream data, long value) throws IOException {
+            writeUnsigned(data, (value << 1) ^ (value >> 63));
+        }
+    }
+}
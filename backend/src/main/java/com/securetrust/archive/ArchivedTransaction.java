@@ -0,0 +1,11 @@
+package com.securetrust.archive;
+
+import com.securetrust.model.TransactionType;
+
+/**
+ * A transaction row as stored in the archive. {@code transactionDate} is epoch
+ * milliseconds in the JVM's zone, as written by {@code Timestamp.getTime()}.
+ */
+public record ArchivedTransaction(long id, long accountId, TransactionType type, double amount,
+                                  String description, String category, long transactionDate,
+                                  Double balanceAfter, String referenceAccount) { }
@@ -0,0 +1,354 @@
+package com.securetrust.archive;
+
+import com.securetrust.dictionary.LedgerDictionary;
+import com.securetrust.model.TransactionType;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Cold tier of the transaction table.
+ *
+ * Whole months older than {@code securetrust.archive.age} are copied into one
+ * {@link ArchiveSegment} file per month and then deleted from the
+ * {@code transaction} table, which therefore only holds recent activity. The
+ * archived months always form a contiguous run ending at {@link #archivedBefore()};
+ * readers take rows before that instant from here and everything later from
+ * the table, so the two tiers never overlap.
+ *
+ * A month is written to a temporary file and moved into place before any row
+ * is deleted. If the application stops between the two steps the next run
+ * rewrites the month from the existing segment plus the remaining rows, keeping
+ * each transaction once.
+ */
+@Component
+@Lazy(false)
+public class TransactionArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionArchive.class);
+
+    private static final String PREFIX = "transactions-";
+    private static final String SUFFIX = ".stx";
+    private static final int FETCH_SIZE = 1000;
+    private static final int DELETE_BATCH = 5000;
+
+    /**
+     * Outcome of an archive run.
+     */
+    public record Report(List<String> months, long rows, long elapsedMillis) { }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LedgerDictionary dictionary;
+    private final boolean enabled;
+    private final Path directory;
+    private final Period age;
+    private final NavigableMap<YearMonth, ArchiveSegment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock running = new ReentrantLock();
+
+    public TransactionArchive(JdbcTemplate jdbcTemplate, LedgerDictionary dictionary,
+                              @Value("${securetrust.archive.enabled:false}") boolean enabled,
+                              @Value("${securetrust.archive.directory:./archive}") String directory,
+                              @Value("${securetrust.archive.age:P12M}") Period age) {
+        if (age.isNegative() || age.toTotalMonths() < 1) {
+            throw new IllegalArgumentException("securetrust.archive.age must be at least one month");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.dictionary = dictionary;
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.age = age;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SUFFIX)).toList()) {
+                String name = file.getFileName().toString();
+                YearMonth month = YearMonth.parse(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                segments.put(month, ArchiveSegment.open(file));
+            }
+        }
+        if (!segments.isEmpty()) {
+            log.info("Transaction archive: {} months from {} to {}",
+                segments.size(), segments.firstKey(), segments.lastKey());
+        }
+    }
+
+    /**
+     * Start of the first month still held in the transaction table, or
+     * {@code null} when nothing has been archived.
+     */
+    public LocalDateTime archivedBefore() {
+        Map.Entry<YearMonth, ArchiveSegment> last = segments.lastEntry();
+        return last == null ? null : last.getKey().plusMonths(1).atDay(1).atStartOfDay();
+    }
+
+    /**
+     * Whether every transaction of {@code month} lives in the archive.
+     */
+    public boolean isArchived(YearMonth month) {
+        return segments.containsKey(month);
+    }
+
+    /**
+     * Every archived transaction of an account, oldest first.
+     */
+    public List<ArchivedTransaction> history(long accountId) {
+        List<ArchivedTransaction> rows = new ArrayList<>();
+        for (ArchiveSegment segment : segments.values()) {
+            ArchiveSegment.Entry entry = segment.find(accountId);
+            if (entry != null) {
+                rows.addAll(read(segment, entry));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Archived transactions of an account dated in {@code [from, to)}, oldest first.
+     */
+    public List<ArchivedTransaction> history(long accountId, LocalDateTime from, LocalDateTime to) {
+        long fromMillis = Timestamp.valueOf(from).getTime();
+        long toMillis = Timestamp.valueOf(to).getTime();
+        List<ArchivedTransaction> rows = new ArrayList<>();
+        for (ArchiveSegment segment : segments.subMap(YearMonth.from(from), true, YearMonth.from(to), true).values()) {
+            ArchiveSegment.Entry entry = segment.find(accountId);
+            if (entry == null || entry.maxDate() < fromMillis || entry.minDate() >= toMillis) {
+                continue;
+            }
+            for (ArchivedTransaction row : read(segment, entry)) {
+                if (row.transactionDate() >= fromMillis && row.transactionDate() < toMillis) {
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Net movement (credits less debits) of an account over the archived months
+     * from {@code month} onwards, read from segment indexes only.
+     */
+    public double netFrom(long accountId, YearMonth month) {
+        double net = 0;
+        for (ArchiveSegment segment : segments.tailMap(month, true).values()) {
+            ArchiveSegment.Entry entry = segment.find(accountId);
+            if (entry != null) {
+                net += entry.net();
+            }
+        }
+        return net;
+    }
+
+    /**
+     * Visit every archived transaction, month by month and account by account.
+     */
+    public void forEach(Consumer<ArchivedTransaction> action) {
+        for (ArchiveSegment segment : segments.values()) {
+            for (int i = 0; i < segment.accounts(); i++) {
+                read(segment, segment.entry(i)).forEach(action);
+            }
+        }
+    }
+
+    @Scheduled(cron = "${securetrust.archive.cron:0 30 3 * * *}")
+    public void archiveScheduled() {
+        if (enabled) {
+            archive();
+        }
+    }
+
+    /**
+     * Archive every month that ended more than {@code age} ago and is still in
+     * the transaction table, oldest first. Refused unless
+     * {@code securetrust.archive.enabled} is set, as it deletes ledger rows.
+     */
+    public Report archive() {
+        if (!enabled) {
+            throw new IllegalStateException("Transaction archiving is disabled (securetrust.archive.enabled)");
+        }
+        if (!running.tryLock()) {
+            throw new IllegalStateException("Transaction archiving is already in progress");
+        }
+        try {
+            long start = System.currentTimeMillis();
+            YearMonth cutoff = YearMonth.from(LocalDateTime.now().minus(age));
+            Timestamp oldest = jdbcTemplate.queryForObject(
+                "SELECT MIN(transaction_date) FROM transaction", Timestamp.class);
+            List<String> months = new ArrayList<>();
+            long rows = 0;
+            if (oldest != null) {
+                Files.createDirectories(directory);
+                for (YearMonth month = YearMonth.from(oldest.toLocalDateTime()); month.isBefore(cutoff);
+                     month = month.plusMonths(1)) {
+                    rows += archive(month);
+                    months.add(month.toString());
+                }
+            }
+            Report report = new Report(months, rows, System.currentTimeMillis() - start);
+            if (rows > 0) {
+                log.info("Archived {} transactions from {} in {} ms", rows, months, report.elapsedMillis());
+            }
+            return report;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            running.unlock();
+        }
+    }
+
+    private long archive(YearMonth month) throws IOException {
+        Timestamp from = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+        Timestamp to = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+        Path file = directory.resolve(PREFIX + month + SUFFIX);
+        Path temporary = directory.resolve(PREFIX + month + SUFFIX + ".tmp");
+        ArchiveSegment existing = segments.get(month);
+
+        long rows;
+        try (ArchiveSegment.Writer writer = new ArchiveSegment.Writer(temporary)) {
+            MonthWriter monthWriter = new MonthWriter(writer, existing);
+            jdbcTemplate.query(connection -> {
+                var statement = connection.prepareStatement(
+                    "SELECT id, account_id, type, amount, description_id, category_id, transaction_date, "
+                        + "balance_after, reference_account_id, description FROM transaction "
+                        + "WHERE transaction_date >= ? AND transaction_date < ? "
+                        + "ORDER BY account_id, transaction_date, id",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(FETCH_SIZE);
+                statement.setTimestamp(1, from);
+                statement.setTimestamp(2, to);
+                return statement;
+            }, (ResultSet rs) -> {
+                // Archive files are self-contained: codes are written out as text
+                TransactionType type = TransactionType.fromCode(rs.getInt(3));
+                String referenceAccount = dictionary.accountNumber(rs.getObject(9, Long.class));
+                monthWriter.add(new ArchivedTransaction(rs.getLong(1), rs.getLong(2), type, rs.getDouble(4),
+                    type.describe(dictionary.description(rs.getString(10), rs.getObject(5, Integer.class)),
+                        referenceAccount),
+                    dictionary.category(rs.getObject(6, Integer.class)), rs.getTimestamp(7).getTime(),
+                    rs.getObject(8, Double.class), referenceAccount));
+            });
+            rows = monthWriter.finish();
+            writer.finish();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        segments.put(month, ArchiveSegment.open(file));
+
+        // Readers now take this month from the archive; drop it from the table in short transactions
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(
+                "DELETE FROM transaction WHERE transaction_date >= ? AND transaction_date < ? LIMIT " + DELETE_BATCH,
+                from, to);
+        } while (deleted == DELETE_BATCH);
+        return rows;
+    }
+
+    private List<ArchivedTransaction> read(ArchiveSegment segment, ArchiveSegment.Entry entry) {
+        try {
+            return segment.read(entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + segment.file(), e);
+        }
+    }
+
+    /**
+     * Groups the month's rows (ordered by account) into blocks, folding in the
+     * blocks of an earlier, interrupted run of the same month.
+     */
+    private final class MonthWriter {
+
+        private final ArchiveSegment.Writer writer;
+        private final ArchiveSegment existing;
+        private final List<ArchivedTransaction> block = new ArrayList<>();
+        private int nextExisting;
+        private long accountId = -1;
+        private long rows;
+
+        MonthWriter(ArchiveSegment.Writer writer, ArchiveSegment existing) {
+            this.writer = writer;
+            this.existing = existing;
+        }
+
+        void add(ArchivedTransaction row) {
+            if (row.accountId() != accountId) {
+                flush();
+                accountId = row.accountId();
+                copyExistingBefore(accountId);
+                if (existing != null && nextExisting < existing.accounts()
+                        && existing.entry(nextExisting).accountId() == accountId) {
+                    block.addAll(read(existing, existing.entry(nextExisting++)));
+                }
+            }
+            block.add(row);
+        }
+
+        long finish() {
+            flush();
+            copyExistingBefore(Long.MAX_VALUE);
+            return rows;
+        }
+
+        private void copyExistingBefore(long limit) {
+            while (existing != null && nextExisting < existing.accounts()
+                    && existing.entry(nextExisting).accountId() < limit) {
+                ArchiveSegment.Entry entry = existing.entry(nextExisting++);
+                write(entry.accountId(), read(existing, entry));
+            }
+        }
+
+        private void flush() {
+            if (block.isEmpty()) {
+                return;
+            }
+            // Merged with an earlier block: order by date and keep each id once
+            block.sort((a, b) -> a.transactionDate() != b.transactionDate()
+                ? Long.compare(a.transactionDate(), b.transactionDate()) : Long.compare(a.id(), b.id()));
+            List<ArchivedTransaction> unique = new ArrayList<>(block.size());
+            for (ArchivedTransaction row : block) {
+                if (unique.isEmpty() || unique.get(unique.size() - 1).id() != row.id()) {
+                    unique.add(row);
+                }
+            }
+            write(accountId, unique);
+            block.clear();
+        }
+
+        private void write(long id, List<ArchivedTransaction> accountRows) {
+            try {
+                writer.append(id, accountRows);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rows += accountRows.size();
+        }
+    }
+}
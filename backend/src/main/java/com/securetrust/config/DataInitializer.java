@@ -8,10 +8,12 @@ import com.securetrust.repository.AccountRepository;
 import com.securetrust.repository.CustomerRepository;
 import com.securetrust.service.PasswordService;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
+@ConditionalOnProperty(name = "securetrust.demo-data.enabled", havingValue = "true", matchIfMissing = true)
 public class DataInitializer {
 
     @Bean
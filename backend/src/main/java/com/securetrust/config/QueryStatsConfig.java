@@ -0,0 +1,33 @@
+package com.securetrust.config;
+
+import com.securetrust.monitoring.QueryStatsDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Wires per-request SQL statement counting: the application DataSource is wrapped
+ * in a {@link QueryStatsDataSource}; the counts are reported by the
+ * {@link com.securetrust.monitoring.QueryStatsFilter}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "securetrust.query-stats.enabled", havingValue = "true", matchIfMissing = true)
+public class QueryStatsConfig {
+
+    @Bean
+    static BeanPostProcessor queryStatsDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if ("dataSource".equals(beanName) && bean instanceof DataSource dataSource
+                        && !(bean instanceof QueryStatsDataSource)) {
+                    return new QueryStatsDataSource(dataSource);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package com.securetrust.config;
+
+import com.securetrust.datasource.ReadYourWritesFilter;
+import com.securetrust.datasource.ReplicaRoutingDataSource;
+import com.securetrust.datasource.ReplicationStandIn;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-replica routing. When enabled, {@code @Transactional(readOnly = true)}
+ * work is sent to one of the configured replicas (kept in sync locally by
+ * {@link ReplicationStandIn}) and everything else goes to the primary.
+ */
+@Configuration
+@EnableConfigurationProperties(DataSourceProperties.class)
+@ConditionalOnProperty(name = "securetrust.datasource.replicas.enabled", havingValue = "true")
+public class ReplicaRoutingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource, DataSourceProperties properties,
+                                                      @Value("${securetrust.datasource.replicas.urls}") List<String> urls,
+                                                      @Value("${securetrust.datasource.replicas.max-staleness-ms:5000}") long maxStalenessMillis) {
+        List<ReplicaRoutingDataSource.Replica> replicas = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            String name = "replica-" + (i + 1);
+            replicas.add(new ReplicaRoutingDataSource.Replica(name, replicaDataSource(properties, name, urls.get(i)),
+                replicaDataSource(properties, name + "-standby", standbyUrl(urls.get(i)))));
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, Duration.ofMillis(maxStalenessMillis));
+    }
+
+    private static HikariDataSource replicaDataSource(DataSourceProperties properties, String poolName, String url) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+            .type(HikariDataSource.class)
+            .url(url)
+            .username(properties.getUsername())
+            .password(properties.getPassword())
+            .build();
+        dataSource.setPoolName(poolName);
+        return dataSource;
+    }
+
+    // jdbc:h2:mem:replica1;DB_CLOSE_DELAY=-1 -> jdbc:h2:mem:replica1-standby;DB_CLOSE_DELAY=-1
+    private static String standbyUrl(String url) {
+        int settings = url.indexOf(';');
+        return settings < 0 ? url + "-standby" : url.substring(0, settings) + "-standby" + url.substring(settings);
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    @Bean
+    @Lazy(false)
+    ReplicationStandIn replicationStandIn(HikariDataSource primaryDataSource,
+                                          ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new ReplicationStandIn(primaryDataSource, replicaRoutingDataSource.getReplicas());
+    }
+
+    @Bean
+    FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter() {
+        FilterRegistrationBean<ReadYourWritesFilter> registration = new FilterRegistrationBean<>(new ReadYourWritesFilter());
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 100);
+        return registration;
+    }
+}
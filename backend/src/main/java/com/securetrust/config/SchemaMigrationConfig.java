@@ -0,0 +1,35 @@
+package com.securetrust.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Startup without schema changes. With {@code securetrust.schema.migrate-on-start}
+ * off, Flyway only validates the database against the migrations and startup
+ * fails if any is pending; they are applied beforehand as a separate deploy
+ * step ({@code mvn flyway:migrate}). A sharded ledger validates every shard
+ * in {@link ShardingConfig} instead.
+ *
+ * The setting is read when the application starts, not through a bean
+ * condition: a {@code -Pprod} build fixes bean conditions at build time, and
+ * its CDS training run migrates a throwaway database with the same build.
+ */
+@Configuration
+public class SchemaMigrationConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "securetrust.sharding.enabled", havingValue = "false", matchIfMissing = true)
+    FlywayMigrationStrategy schemaMigrationStrategy(
+            @Value("${securetrust.schema.migrate-on-start:true}") boolean migrate) {
+        return flyway -> {
+            if (migrate) {
+                flyway.migrate();
+            } else {
+                flyway.validate();
+            }
+        };
+    }
+}
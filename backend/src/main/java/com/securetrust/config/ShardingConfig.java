@@ -0,0 +1,146 @@
+package com.securetrust.config;
+
+import com.securetrust.sharding.ShardMap;
+import com.securetrust.sharding.ShardRoutingDataSource;
+import com.securetrust.sharding.Shards;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sharded ledger: one connection pool per shard behind a
+ * {@link ShardRoutingDataSource}, and the migrations applied to (or, with
+ * {@code securetrust.schema.migrate-on-start} off, validated against) every
+ * shard before the application starts. Each shard records its index and hands
+ * out ids from its own range (see {@link ShardMap}); a database listed at the
+ * wrong position fails startup. The ledger dictionaries are then copied from
+ * the home shard to the others, which only ever receive entries from it,
+ * and the foreign key from a transfer to the account it references is dropped.
+ *
+ * Work that needs one database for the whole ledger cannot run sharded:
+ * read replicas, group commit across requests, standing orders, archiving and
+ * the analytics preload must be off, and so must open-in-view, which would
+ * hold a request's first connection, on whichever shard, for all of it.
+ */
+@Configuration
+@EnableConfigurationProperties(DataSourceProperties.class)
+@ConditionalOnProperty(name = "securetrust.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardingConfig.class);
+
+    // Settings that must be off, with their defaults
+    private static final Map<String, Boolean> SINGLE_DATABASE_SETTINGS = Map.of(
+        "securetrust.datasource.replicas.enabled", false,
+        "securetrust.group-commit.enabled", false,
+        "securetrust.standing-orders.enabled", true,
+        "securetrust.archive.enabled", false,
+        "securetrust.analytics.preload", false,
+        "spring.jpa.open-in-view", true);
+
+    public ShardingConfig(Environment environment) {
+        SINGLE_DATABASE_SETTINGS.forEach((property, defaultValue) -> {
+            if (environment.getProperty(property, Boolean.class, defaultValue)) {
+                throw new IllegalStateException(property + " must be false with securetrust.sharding.enabled");
+            }
+        });
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource homeDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("shard-0");
+        return dataSource;
+    }
+
+    // The other shards' pools are configured like the home shard's
+    @Bean
+    ShardRoutingDataSource shardRoutingDataSource(HikariDataSource homeDataSource, Shards shards) {
+        List<DataSource> pools = new ArrayList<>();
+        pools.add(homeDataSource);
+        for (int shard = 1; shard < shards.count(); shard++) {
+            HikariDataSource pool = new HikariDataSource();
+            homeDataSource.copyStateTo(pool);
+            pool.setJdbcUrl(shards.url(shard));
+            pool.setPoolName("shard-" + shard);
+            pools.add(pool);
+        }
+        log.info("Ledger sharded over {} databases", pools.size());
+        return new ShardRoutingDataSource(pools);
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    @Bean
+    FlywayMigrationStrategy shardMigrationStrategy(
+            ShardRoutingDataSource shards, @Value("${securetrust.schema.migrate-on-start:true}") boolean migrate) {
+        return flyway -> {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                Flyway shardFlyway = Flyway.configure()
+                    .configuration(flyway.getConfiguration())
+                    .dataSource(shards.getShard(shard))
+                    .placeholders(Map.of(
+                        "shard-index", String.valueOf(shard),
+                        "shard-first-id", String.valueOf(ShardMap.firstId(shard))))
+                    .load();
+                if (migrate) {
+                    shardFlyway.migrate();
+                } else {
+                    shardFlyway.validate();
+                }
+                Integer index = new JdbcTemplate(shards.getShard(shard))
+                    .queryForObject("SELECT shard_index FROM shard_info", Integer.class);
+                if (index == null || index != shard) {
+                    throw new IllegalStateException("Database " + (shard + 1) + " of securetrust.sharding is shard "
+                        + index + ", not " + shard);
+                }
+                dropReferenceForeignKey(new JdbcTemplate(shards.getShard(shard)));
+            }
+            JdbcTemplate home = new JdbcTemplate(shards.getShard(ShardMap.HOME));
+            for (int shard = 1; shard < shards.size(); shard++) {
+                copyDictionary(home, new JdbcTemplate(shards.getShard(shard)), "transaction_category", "name");
+                copyDictionary(home, new JdbcTemplate(shards.getShard(shard)), "transaction_description", "text");
+            }
+        };
+    }
+
+    // A transfer between shards references an account in another database, so
+    // the reference cannot be a foreign key; closing an account clears the
+    // references to it on every shard itself (Offboarding). The index the key
+    // had is kept for those lookups
+    private static void dropReferenceForeignKey(JdbcTemplate shard) {
+        shard.execute("CREATE INDEX IF NOT EXISTS idx_transaction_reference_account "
+            + "ON transaction (reference_account_id)");
+        shard.execute("ALTER TABLE transaction DROP CONSTRAINT IF EXISTS fk_transaction_reference_account");
+    }
+
+    // Entries are only ever added on the home shard, so its ids are the ones every shard uses
+    private static void copyDictionary(JdbcTemplate home, JdbcTemplate shard, String table, String column) {
+        List<Object[]> entries = home.query("SELECT id, " + column + " FROM " + table,
+            (rs, row) -> new Object[] {rs.getInt(1), rs.getString(2)});
+        shard.batchUpdate("MERGE INTO " + table + " (id, " + column + ") KEY (id) VALUES (?, ?)", entries);
+    }
+}
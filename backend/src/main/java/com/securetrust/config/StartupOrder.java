@@ -0,0 +1,39 @@
+package com.securetrust.config;
+
+import org.springframework.core.Ordered;
+
+/**
+ * Order of the {@link org.springframework.boot.context.event.ApplicationReadyEvent}
+ * listeners, in one place.
+ *
+ * Spring Boot calls the ready listeners one after another and only reports
+ * the application ready for traffic once all of them have returned.
+ * {@link com.securetrust.warmup.WarmUp} holds the event until warm-up is over,
+ * so it runs at {@link #WARM_UP}; every other ready listener takes one of the
+ * earlier constants, or it would not start until warm-up had finished.
+ *
+ * Lazy initialization (the prod profile) does not delay ready listeners, whose
+ * beans are created when the event is published. It does stop
+ * {@code @Scheduled} methods from ever being registered on a bean nothing else
+ * uses, so every bean with one is marked {@code @Lazy(false)}.
+ */
+public final class StartupOrder {
+
+    /**
+     * Opening the account directory, which loads in the background.
+     */
+    public static final int ACCOUNT_DIRECTORY = Ordered.HIGHEST_PRECEDENCE;
+
+    /**
+     * Loading in-memory state and starting background relays and schedulers.
+     */
+    public static final int LOAD = Ordered.LOWEST_PRECEDENCE - 1;
+
+    /**
+     * JIT warm-up, after everything else.
+     */
+    public static final int WARM_UP = Ordered.LOWEST_PRECEDENCE;
+
+    private StartupOrder() {
+    }
+}
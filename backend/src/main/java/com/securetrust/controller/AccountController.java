@@ -5,12 +5,15 @@ import com.securetrust.repository.AccountRepository;
 import com.securetrust.repository.CustomerRepository;
 import com.securetrust.service.AccountService;
 import com.securetrust.service.BankingService;
+import com.securetrust.sharding.Shards;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.util.List;
+
 @Controller
 @RequestMapping("/accounts")
 public class AccountController {
@@ -19,13 +22,16 @@ public class AccountController {
     private final BankingService bankingService;
     private final AccountRepository accountRepository;
     private final CustomerRepository customerRepository;
+    private final Shards shards;
     
     public AccountController(AccountService accountService, BankingService bankingService,
-                            AccountRepository accountRepository, CustomerRepository customerRepository) {
+                            AccountRepository accountRepository, CustomerRepository customerRepository,
+                            Shards shards) {
         this.accountService = accountService;
         this.bankingService = bankingService;
         this.accountRepository = accountRepository;
         this.customerRepository = customerRepository;
+        this.shards = shards;
     }
     
     @GetMapping
@@ -34,8 +40,8 @@ public class AccountController {
             return "redirect:/login";
         }
         
-        var accounts = accountRepository.findAll();
-        var customers = customerRepository.findAll();
+        var accounts = shards.readEach(accountRepository::findAll).stream().flatMap(List::stream).toList();
+        var customers = shards.readEach(customerRepository::findAll).stream().flatMap(List::stream).toList();
         
         model.addAttribute("accounts", accounts);
         model.addAttribute("customers", customers);
@@ -77,8 +83,9 @@ public class AccountController {
         }
         
         try {
-            accountService.closeAccount(accountNumber);
-            redirectAttributes.addFlashAttribute("successMessage", "Account closed successfully!");
+            var job = accountService.closeAccount(accountNumber);
+            redirectAttributes.addFlashAttribute("successMessage",
+                "Account " + accountNumber + " is being closed (job " + job.id() + ")");
         } catch (Exception e) {
             redirectAttributes.addFlashAttribute("errorMessage", e.getMessage());
         }
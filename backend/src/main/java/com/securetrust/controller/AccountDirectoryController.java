@@ -0,0 +1,31 @@
+package com.securetrust.controller;
+
+import com.securetrust.directory.AccountDirectory;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Controller
+public class AccountDirectoryController {
+
+    private final AccountDirectory accountDirectory;
+
+    public AccountDirectoryController(AccountDirectory accountDirectory) {
+        this.accountDirectory = accountDirectory;
+    }
+
+    /**
+     * Whether the account directory is in use, its size and how many lookups it answered.
+     */
+    @GetMapping("/account-directory/status")
+    @ResponseBody
+    public ResponseEntity<?> status(HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(accountDirectory.status());
+    }
+}
@@ -0,0 +1,55 @@
+package com.securetrust.controller;
+
+import com.securetrust.analytics.TransactionAnalytics;
+import com.securetrust.model.AccountType;
+import com.securetrust.model.CustomerType;
+import com.securetrust.model.TransactionType;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+@Controller
+public class AnalyticsController {
+    
+    private final TransactionAnalytics transactionAnalytics;
+    
+    public AnalyticsController(TransactionAnalytics transactionAnalytics) {
+        this.transactionAnalytics = transactionAnalytics;
+    }
+    
+    /**
+     * Ad-hoc inflow/outflow report, e.g.
+     * {@code /analytics/report?groupBy=MONTH,TYPE&from=2026-01-01&customerType=COMPANY}.
+     * Filters take comma-separated values; omitted filters match everything.
+     */
+    @GetMapping("/analytics/report")
+    @ResponseBody
+    public ResponseEntity<?> report(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                    @RequestParam(required = false) List<TransactionAnalytics.Dimension> groupBy,
+                                    @RequestParam(required = false) Set<TransactionType> type,
+                                    @RequestParam(required = false) Set<String> category,
+                                    @RequestParam(required = false) Set<String> branch,
+                                    @RequestParam(required = false) Set<AccountType> accountType,
+                                    @RequestParam(required = false) Set<CustomerType> customerType,
+                                    HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            return ResponseEntity.ok(transactionAnalytics.report(new TransactionAnalytics.Query(from, to, groupBy,
+                type, category, branch, accountType, customerType)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.securetrust.controller;
+
+import com.securetrust.archive.TransactionArchive;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Controller
+public class ArchiveController {
+    
+    private final TransactionArchive transactionArchive;
+    
+    public ArchiveController(TransactionArchive transactionArchive) {
+        this.transactionArchive = transactionArchive;
+    }
+    
+    /**
+     * Archive every eligible month now instead of waiting for the nightly run.
+     */
+    @PostMapping("/archive/run")
+    @ResponseBody
+    public ResponseEntity<?> run(HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            return ResponseEntity.ok(transactionArchive.archive());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+}
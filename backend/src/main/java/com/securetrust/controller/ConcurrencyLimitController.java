@@ -0,0 +1,31 @@
+package com.securetrust.controller;
+
+import com.securetrust.service.ConcurrencyLimiter;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Controller
+public class ConcurrencyLimitController {
+
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    public ConcurrencyLimitController(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * Current limit, operations in flight and rejections of each lane of the concurrency limiter.
+     */
+    @GetMapping("/concurrency-limits/status")
+    @ResponseBody
+    public ResponseEntity<?> status(HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(concurrencyLimiter.status());
+    }
+}
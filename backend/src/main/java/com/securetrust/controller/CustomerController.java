@@ -1,78 +1,136 @@
 package com.securetrust.controller;
 
+import com.securetrust.event.CustomerChangedEvent;
 import com.securetrust.model.AccountType;
 import com.securetrust.model.Customer;
 import com.securetrust.model.CustomerType;
+import com.securetrust.offboarding.Offboarding;
 import com.securetrust.repository.AccountRepository;
 import com.securetrust.repository.CustomerRepository;
-import com.securetrust.repository.TransactionRepository;
+import com.securetrust.search.CustomerSearchIndex;
+import com.securetrust.service.ParallelReads;
 import com.securetrust.service.PasswordService;
+import com.securetrust.service.TransactionHistoryService;
+import com.securetrust.sharding.Shards;
+import com.securetrust.web.AdminTables;
+import com.securetrust.web.FragmentCache;
+import com.securetrust.web.FragmentCache.Widget;
 import jakarta.servlet.http.HttpSession;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.util.List;
+import java.util.Map;
+
 @Controller
 @RequestMapping("/customers")
 public class CustomerController {
     
     private final CustomerRepository customerRepository;
     private final AccountRepository accountRepository;
-    private final TransactionRepository transactionRepository;
+    private final TransactionHistoryService transactionHistoryService;
     private final PasswordService passwordService;
+    private final FragmentCache fragmentCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CustomerSearchIndex searchIndex;
+    private final AdminTables adminTables;
+    private final ParallelReads parallelReads;
+    private final Offboarding offboarding;
+    private final Shards shards;
     
     public CustomerController(CustomerRepository customerRepository, 
                              AccountRepository accountRepository,
-                             TransactionRepository transactionRepository,
-                             PasswordService passwordService) {
+                             TransactionHistoryService transactionHistoryService,
+                             PasswordService passwordService,
+                             FragmentCache fragmentCache,
+                             ApplicationEventPublisher eventPublisher,
+                             CustomerSearchIndex searchIndex,
+                             AdminTables adminTables,
+                             ParallelReads parallelReads,
+                             Offboarding offboarding,
+                             Shards shards) {
         this.customerRepository = customerRepository;
         this.accountRepository = accountRepository;
-        this.transactionRepository = transactionRepository;
+        this.transactionHistoryService = transactionHistoryService;
         this.passwordService = passwordService;
+        this.fragmentCache = fragmentCache;
+        this.eventPublisher = eventPublisher;
+        this.searchIndex = searchIndex;
+        this.adminTables = adminTables;
+        this.parallelReads = parallelReads;
+        this.offboarding = offboarding;
+        this.shards = shards;
     }
     
     @GetMapping
+    @Transactional(readOnly = true)
     public String customersPage(HttpSession session, Model model) {
         if (session.getAttribute("user") == null) {
             return "redirect:/login";
         }
         
-        var customers = customerRepository.findAll();
-        customers.forEach(c -> c.setAccounts(accountRepository.findByCustomerId(c.getId())));
-        
-        // Calculate total accounts
-        int totalAccounts = customers.stream()
-            .mapToInt(c -> c.getAccounts() != null ? c.getAccounts().size() : 0)
-            .sum();
+        // Summary cards are served from the fragment cache until the next committed change;
+        // a missing one is rendered from the primary, so this comes before any query
+        String role = (String) session.getAttribute("userType");
+        fragmentCache.prepare(role, Widget.CUSTOMER_STATS);
         
-        // Calculate total balance
-        double totalBalance = customers.stream()
-            .flatMap(c -> c.getAccounts() != null ? c.getAccounts().stream() : java.util.stream.Stream.empty())
-            .mapToDouble(a -> a.getBalance() != null ? a.getBalance() : 0.0)
-            .sum();
+        // Streamed while the table renders, so the table's empty state and footer use the count
+        model.addAttribute("customers", adminTables.customers());
+        model.addAttribute("customerCount", shards.sumLong(customerRepository::count));
         
-        model.addAttribute("customers", customers);
-        model.addAttribute("totalAccounts", totalAccounts);
-        model.addAttribute("totalBalance", totalBalance);
+        model.addAttribute("customerStatsWidget", fragmentCache.render(Widget.CUSTOMER_STATS, role, () -> Map.of(
+            "customerCount", shards.sumLong(customerRepository::count),
+            "totalAccounts", shards.sumLong(accountRepository::count),
+            "totalBalance", shards.sumDouble(accountRepository::sumBalances))));
         return "customers";
     }
     
+    /**
+     * Typeahead suggestions for the customer search box: prefix match on name,
+     * email, phone, customer ID or account number.
+     */
+    @GetMapping("/search")
+    @ResponseBody
+    public ResponseEntity<List<CustomerSearchIndex.Hit>> search(@RequestParam("q") String query,
+                                                                @RequestParam(defaultValue = "10") int limit,
+                                                                HttpSession session) {
+        if (session.getAttribute("user") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(searchIndex.search(query, limit));
+    }
+    
+    /**
+     * The customer, accounts and transactions are independent reads, run in
+     * parallel on the customer's shard.
+     */
     @GetMapping("/{id}")
     public String customerDetails(@PathVariable Long id, HttpSession session, Model model) {
         if (session.getAttribute("user") == null) {
             return "redirect:/login";
         }
         
-        var customer = customerRepository.findById(id)
-            .orElseThrow(() -> new IllegalArgumentException("Customer not found"));
-        customer.setAccounts(accountRepository.findByCustomerId(id));
-        
-        // Get transactions for customer's accounts
-        var transactions = transactionRepository.findByCustomerId(id);
-        
-        model.addAttribute("customer", customer);
-        model.addAttribute("transactions", transactions);
+        shards.run(shards.ofCustomerId(id), () -> {
+            try (var reads = parallelReads.batch()) {
+                var customerRead = reads.submit(() -> customerRepository.findById(id));
+                var accountsRead = reads.submit(() -> accountRepository.findByCustomerId(id));
+                // Get transactions for customer's accounts
+                var transactionsRead = reads.submit(() -> transactionHistoryService.customerHistory(id, null, null));
+                
+                var customer = customerRead.get()
+                    .orElseThrow(() -> new IllegalArgumentException("Customer not found"));
+                customer.setAccounts(accountsRead.get());
+                
+                model.addAttribute("customer", customer);
+                model.addAttribute("transactions", transactionsRead.get());
+            }
+        });
         model.addAttribute("accountTypes", AccountType.values());
         model.addAttribute("customerTypes", CustomerType.values());
         return "customer-details";
@@ -114,7 +172,9 @@ public class CustomerController {
             customer.setEmail(email);
             customer.setPassword(passwordService.hashPassword(password));
             
-            customerRepository.save(customer);
+            // Placed by its customer ID; the customer's accounts and rows follow it
+            shards.on(shards.placeCustomer(customerId), () -> customerRepository.save(customer));
+            eventPublisher.publishEvent(new CustomerChangedEvent(customer.getId(), CustomerChangedEvent.Change.CREATED));
             redirectAttributes.addFlashAttribute("successMessage", "Customer added successfully!");
         } catch (Exception e) {
             redirectAttributes.addFlashAttribute("errorMessage", e.getMessage());
@@ -137,16 +197,19 @@ public class CustomerController {
         }
         
         try {
-            var existingCustomer = customerRepository.findById(id)
-                .orElseThrow(() -> new IllegalArgumentException("Customer not found"));
-            
-            existingCustomer.setFirstName(firstName);
-            existingCustomer.setSurname(surname);
-            existingCustomer.setAddress(address);
-            existingCustomer.setPhoneNumber(phoneNumber);
-            existingCustomer.setEmail(email);
-            
-            customerRepository.save(existingCustomer);
+            shards.run(shards.ofCustomerId(id), () -> {
+                var existingCustomer = customerRepository.findById(id)
+                    .orElseThrow(() -> new IllegalArgumentException("Customer not found"));
+                
+                existingCustomer.setFirstName(firstName);
+                existingCustomer.setSurname(surname);
+                existingCustomer.setAddress(address);
+                existingCustomer.setPhoneNumber(phoneNumber);
+                existingCustomer.setEmail(email);
+                
+                customerRepository.save(existingCustomer);
+            });
+            eventPublisher.publishEvent(new CustomerChangedEvent(id, CustomerChangedEvent.Change.UPDATED));
             redirectAttributes.addFlashAttribute("successMessage", "Customer updated successfully!");
         } catch (Exception e) {
             redirectAttributes.addFlashAttribute("errorMessage", e.getMessage());
@@ -164,19 +227,10 @@ public class CustomerController {
         }
         
         try {
-            var customer = customerRepository.findById(id)
-                .orElseThrow(() -> new IllegalArgumentException("Customer not found"));
-            
-            // Check if customer has accounts with balance
-            var accounts = accountRepository.findByCustomerId(id);
-            double totalBalance = accounts.stream().mapToDouble(a -> a.getBalance()).sum();
-            
-            if (totalBalance > 0) {
-                throw new IllegalArgumentException("Cannot delete customer with account balance. Please close all accounts first.");
-            }
-            
-            customerRepository.delete(customer);
-            redirectAttributes.addFlashAttribute("successMessage", "Customer deleted successfully!");
+            // Checks the balances; accounts, transactions and the customer go in the background
+            var job = offboarding.deleteCustomer(id);
+            redirectAttributes.addFlashAttribute("successMessage",
+                "Customer is being deleted (job " + job.id() + ")");
         } catch (Exception e) {
             redirectAttributes.addFlashAttribute("errorMessage", e.getMessage());
         }
@@ -1,28 +1,56 @@
 package com.securetrust.controller;
 
+import com.securetrust.directory.AccountDirectory;
 import com.securetrust.repository.AccountRepository;
 import com.securetrust.repository.CustomerRepository;
-import com.securetrust.repository.TransactionRepository;
+import com.securetrust.service.BalanceHistoryService;
+import com.securetrust.service.ParallelReads;
+import com.securetrust.service.TransactionHistoryService;
+import com.securetrust.sharding.Shards;
 import jakarta.servlet.http.HttpSession;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.time.LocalDate;
 
 @Controller
 public class CustomerPortalController {
     
     private final CustomerRepository customerRepository;
     private final AccountRepository accountRepository;
-    private final TransactionRepository transactionRepository;
+    private final TransactionHistoryService transactionHistoryService;
+    private final BalanceHistoryService balanceHistoryService;
+    private final ParallelReads parallelReads;
+    private final AccountDirectory accountDirectory;
+    private final Shards shards;
     
     public CustomerPortalController(CustomerRepository customerRepository,
                                    AccountRepository accountRepository,
-                                   TransactionRepository transactionRepository) {
+                                   TransactionHistoryService transactionHistoryService,
+                                   BalanceHistoryService balanceHistoryService,
+                                   ParallelReads parallelReads,
+                                   AccountDirectory accountDirectory,
+                                   Shards shards) {
         this.customerRepository = customerRepository;
         this.accountRepository = accountRepository;
-        this.transactionRepository = transactionRepository;
+        this.transactionHistoryService = transactionHistoryService;
+        this.balanceHistoryService = balanceHistoryService;
+        this.parallelReads = parallelReads;
+        this.accountDirectory = accountDirectory;
+        this.shards = shards;
     }
     
+    /**
+     * The customer, accounts and transactions are independent reads, run in
+     * parallel on the customer's shard.
+     */
     @GetMapping("/customer-portal")
     public String customerPortal(HttpSession session, Model model) {
         if (session.getAttribute("user") == null) {
@@ -40,29 +68,79 @@ public class CustomerPortalController {
             return "redirect:/login";
         }
         
-        var customerOpt = customerRepository.findById(customerId);
-        if (customerOpt.isEmpty()) {
-            session.invalidate();
-            return "redirect:/login";
+        return shards.on(shards.ofCustomerId(customerId), () -> {
+            try (var reads = parallelReads.batch()) {
+                var customerRead = reads.submit(() -> customerRepository.findById(customerId));
+                var accountsRead = reads.submit(() -> accountRepository.findByCustomerId(customerId));
+                // Get recent transactions
+                var transactionsRead = reads.submit(
+                    () -> transactionHistoryService.customerHistory(customerId, null, null));
+                
+                var customerOpt = customerRead.get();
+                if (customerOpt.isEmpty()) {
+                    session.invalidate();
+                    return "redirect:/login";
+                }
+                
+                var customer = customerOpt.get();
+                var accounts = accountsRead.get();
+                customer.setAccounts(accounts);
+                
+                // Calculate total balance
+                double totalBalance = accounts.stream()
+                        .mapToDouble(a -> a.getBalance())
+                        .sum();
+                
+                model.addAttribute("customer", customer);
+                model.addAttribute("accounts", accounts);
+                model.addAttribute("totalBalance", totalBalance);
+                model.addAttribute("transactions", transactionsRead.get());
+            }
+            
+            return "customer-portal";
+        });
+    }
+    
+    /**
+     * Downsampled balance history for the portal chart. Customers may only read
+     * their own accounts; {@code from} and {@code to} default to the last year.
+     */
+    @GetMapping("/customer-portal/accounts/{accountNumber}/balance-history")
+    @ResponseBody
+    public ResponseEntity<BalanceHistoryService.BalanceSeries> balanceHistory(
+            @PathVariable String accountNumber,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "300") int points,
+            HttpSession session) {
+        if (session.getAttribute("user") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
         
-        var customer = customerOpt.get();
-        var accounts = accountRepository.findByCustomerId(customerId);
-        customer.setAccounts(accounts);
-        
-        // Calculate total balance
-        double totalBalance = accounts.stream()
-                .mapToDouble(a -> a.getBalance())
-                .sum();
-        
-        // Get recent transactions
-        var transactions = transactionRepository.findByCustomerId(customerId);
-        
-        model.addAttribute("customer", customer);
-        model.addAttribute("accounts", accounts);
-        model.addAttribute("totalBalance", totalBalance);
-        model.addAttribute("transactions", transactions);
+        boolean isAdmin = Boolean.TRUE.equals(session.getAttribute("isAdmin"));
+        Long customerId = (Long) session.getAttribute("customerId");
+        // The directory answers without loading the account and its customer
+        int shard;
+        try {
+            shard = shards.ofAccount(accountNumber);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        var entry = accountDirectory.find(accountNumber);
+        Long ownerId = entry != null ? Long.valueOf(entry.customerId())
+            : shards.read(shard, () -> accountRepository.findByAccountNumber(accountNumber)
+                .map(a -> a.getCustomer().getId()).orElse(null));
+        if (ownerId == null || (!isAdmin && !ownerId.equals(customerId))) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
         
-        return "customer-portal";
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusYears(1);
+        try {
+            return ResponseEntity.ok(shards.on(shard, () -> balanceHistoryService.history(accountNumber,
+                start.atStartOfDay(), end.plusDays(1).atStartOfDay(), Math.min(points, 2000))));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 }
@@ -1,46 +1,86 @@
 package com.securetrust.controller;
 
+import com.securetrust.model.AccountType;
 import com.securetrust.repository.*;
+import com.securetrust.service.TransactionHistoryService;
+import com.securetrust.sharding.Shards;
+import com.securetrust.web.AdminTables;
+import com.securetrust.web.FragmentCache;
+import com.securetrust.web.FragmentCache.Widget;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
 @Controller
 public class DashboardController {
     private final CustomerRepository customerRepo;
     private final AccountRepository accountRepo;
     private final TransactionRepository transactionRepo;
+    private final FragmentCache fragmentCache;
+    private final AdminTables adminTables;
+    private final TransactionHistoryService transactionHistoryService;
+    private final Shards shards;
 
     public DashboardController(CustomerRepository customerRepo, 
                               AccountRepository accountRepo,
-                              TransactionRepository transactionRepo) {
+                              TransactionRepository transactionRepo,
+                              FragmentCache fragmentCache,
+                              AdminTables adminTables,
+                              TransactionHistoryService transactionHistoryService,
+                              Shards shards) {
         this.customerRepo = customerRepo;
         this.accountRepo = accountRepo;
         this.transactionRepo = transactionRepo;
+        this.fragmentCache = fragmentCache;
+        this.adminTables = adminTables;
+        this.transactionHistoryService = transactionHistoryService;
+        this.shards = shards;
     }
 
     @GetMapping({"/", "/dashboard"})
+    @Transactional(readOnly = true)
     public String dashboard(HttpSession session, Model model) {
         if (session.getAttribute("user") == null) return "redirect:/login";
 
-        var customers = customerRepo.findAll();
-        var accounts = accountRepo.findAll();
-        customers.forEach(c -> c.setAccounts(accountRepo.findByCustomerId(c.getId())));
-        double total = accounts.stream().mapToDouble(a -> a.getBalance()).sum();
-        
-        // Extract balances for the chart
-        var balances = accounts.stream().map(a -> a.getBalance()).toList();
-        
-        // Get recent transactions
-        var recentTransactions = transactionRepo.findTop10ByOrderByTransactionDateDesc();
-
-        model.addAttribute("customers", customers);
-        model.addAttribute("accounts", accounts);
-        model.addAttribute("totalBalance", total);
-        model.addAttribute("balances", balances);
-        model.addAttribute("recentTransactions", recentTransactions);
-        model.addAttribute("totalAccounts", accounts.size());
+        // Summary widgets are served from the fragment cache until the next committed change;
+        // a missing one is rendered from the primary, so this comes before any query
+        String role = (String) session.getAttribute("userType");
+        fragmentCache.prepare(role, Widget.DASHBOARD_STATS, Widget.RECENT_TRANSACTIONS, Widget.BALANCE_CHART);
+
+        // Streamed while the table renders
+        model.addAttribute("customers", adminTables.customers());
+
+        model.addAttribute("dashboardStatsWidget", fragmentCache.render(Widget.DASHBOARD_STATS, role, () -> Map.of(
+            "customerCount", shards.sumLong(customerRepo::count),
+            "totalAccounts", shards.sumLong(accountRepo::count),
+            "totalBalance", shards.sumDouble(accountRepo::sumBalances),
+            "recentTransactionCount", Math.min(10, shards.sumLong(transactionRepo::count)))));
+        model.addAttribute("recentTransactionsWidget", fragmentCache.render(Widget.RECENT_TRANSACTIONS, role, () -> Map.of(
+            "recentTransactions", transactionHistoryService.recentTransactions())));
+        model.addAttribute("balanceChartWidget", fragmentCache.render(Widget.BALANCE_CHART, role, () -> Map.of(
+            "balances", balancesByAccountType())));
         return "dashboard";
     }
+
+    // Total balance per account type, in the order the chart labels them
+    private List<Double> balancesByAccountType() {
+        Map<AccountType, Double> totals = new EnumMap<>(AccountType.class);
+        for (List<Object[]> rows : shards.readEach(accountRepo::sumBalancesByAccountType)) {
+            for (Object[] row : rows) {
+                totals.merge((AccountType) row[0], (Double) row[1], Double::sum);
+            }
+        }
+        List<Double> balances = new ArrayList<>();
+        for (AccountType type : List.of(AccountType.SAVINGS, AccountType.INVESTMENT, AccountType.CHEQUE)) {
+            balances.add(totals.getOrDefault(type, 0.0));
+        }
+        return balances;
+    }
 }
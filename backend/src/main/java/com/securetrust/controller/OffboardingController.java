@@ -0,0 +1,48 @@
+package com.securetrust.controller;
+
+import com.securetrust.offboarding.Offboarding;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Controller
+public class OffboardingController {
+
+    private final Offboarding offboarding;
+
+    public OffboardingController(Offboarding offboarding) {
+        this.offboarding = offboarding;
+    }
+
+    /**
+     * Queued, running and recently finished account closures and customer deletions.
+     */
+    @GetMapping("/offboarding/jobs")
+    @ResponseBody
+    public ResponseEntity<?> jobs(HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(offboarding.jobs());
+    }
+
+    /**
+     * Progress of one closure or deletion.
+     */
+    @GetMapping("/offboarding/jobs/{id}")
+    @ResponseBody
+    public ResponseEntity<?> job(@PathVariable long id, HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            return ResponseEntity.ok(offboarding.job(id));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+}
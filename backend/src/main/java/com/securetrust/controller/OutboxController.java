@@ -0,0 +1,31 @@
+package com.securetrust.controller;
+
+import com.securetrust.outbox.OutboxRelay;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Controller
+public class OutboxController {
+
+    private final OutboxRelay outboxRelay;
+
+    public OutboxController(OutboxRelay outboxRelay) {
+        this.outboxRelay = outboxRelay;
+    }
+
+    /**
+     * Backlog, throughput and commit-to-delivery lag of the outbox relay.
+     */
+    @GetMapping("/outbox/status")
+    @ResponseBody
+    public ResponseEntity<?> status(HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(outboxRelay.status());
+    }
+}
@@ -0,0 +1,97 @@
+package com.securetrust.controller;
+
+import com.securetrust.profiling.ProfilingRecorder;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+
+@Controller
+public class ProfilingController {
+    
+    private final ProfilingRecorder profilingRecorder;
+    
+    public ProfilingController(ProfilingRecorder profilingRecorder) {
+        this.profilingRecorder = profilingRecorder;
+    }
+    
+    /**
+     * Start a flight recording. {@code maxAge} and {@code duration} are ISO-8601
+     * durations such as {@code PT10M}; omitted bounds take the configured defaults
+     * and an omitted duration records until stopped.
+     */
+    @PostMapping("/profiling/recording/start")
+    @ResponseBody
+    public ResponseEntity<?> start(@RequestParam(required = false) String maxAge,
+                                   @RequestParam(required = false) Long maxSizeMb,
+                                   @RequestParam(required = false) String duration,
+                                   HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            return ResponseEntity.ok(profilingRecorder.start(maxAge != null ? Duration.parse(maxAge) : null,
+                maxSizeMb, duration != null ? Duration.parse(duration) : null));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+    
+    @PostMapping("/profiling/recording/stop")
+    @ResponseBody
+    public ResponseEntity<?> stop(HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            return ResponseEntity.ok(profilingRecorder.stop());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+    
+    @GetMapping("/profiling/recording")
+    @ResponseBody
+    public ResponseEntity<?> status(HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(profilingRecorder.status());
+    }
+    
+    /**
+     * Download what the recording holds so far as a {@code .jfr} file, for JDK
+     * Mission Control or {@code scripts/JfrSummary.java}.
+     */
+    @GetMapping("/profiling/recording/download")
+    @ResponseBody
+    public ResponseEntity<?> download(HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            Path file = profilingRecorder.dump();
+            return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                    ContentDisposition.attachment().filename("securetrust.jfr").build().toString())
+                .body(new FileSystemResource(file));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+}
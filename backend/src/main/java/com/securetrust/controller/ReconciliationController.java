@@ -0,0 +1,35 @@
+package com.securetrust.controller;
+
+import com.securetrust.reconciliation.LedgerReconciliation;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Controller
+public class ReconciliationController {
+    
+    private final LedgerReconciliation ledgerReconciliation;
+    
+    public ReconciliationController(LedgerReconciliation ledgerReconciliation) {
+        this.ledgerReconciliation = ledgerReconciliation;
+    }
+    
+    /**
+     * Reconcile every account against its ledger now and report the discrepancies found.
+     */
+    @PostMapping("/reconciliation/run")
+    @ResponseBody
+    public ResponseEntity<?> run(HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            return ResponseEntity.ok(ledgerReconciliation.run());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+}
@@ -1,24 +1,41 @@
 package com.securetrust.controller;
 
 import com.securetrust.repository.CustomerRepository;
+import com.securetrust.risk.VelocityGuard;
+import com.securetrust.risk.VelocityRules;
+import com.securetrust.service.AuthService;
 import com.securetrust.service.PasswordService;
+import com.securetrust.sharding.Shards;
 import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+
 @Controller
 public class SettingsController {
     
     private final CustomerRepository customerRepository;
     private final PasswordService passwordService;
+    private final VelocityGuard velocityGuard;
+    private final AuthService authService;
+    private final Shards shards;
     
-    public SettingsController(CustomerRepository customerRepository, PasswordService passwordService) {
+    public SettingsController(CustomerRepository customerRepository, PasswordService passwordService,
+                              VelocityGuard velocityGuard, AuthService authService, Shards shards) {
         this.customerRepository = customerRepository;
         this.passwordService = passwordService;
+        this.velocityGuard = velocityGuard;
+        this.authService = authService;
+        this.shards = shards;
     }
     
     @GetMapping("/notifications")
@@ -72,7 +89,7 @@ public class SettingsController {
             redirectAttributes.addFlashAttribute("errorMessage", "Admin password cannot be changed through settings");
         } else {
             // Customer password change
-            var customerOpt = customerRepository.findByEmail(email);
+            var customerOpt = authService.findByEmail(email);
             if (customerOpt.isEmpty()) {
                 redirectAttributes.addFlashAttribute("errorMessage", "Customer not found");
                 return "redirect:/settings";
@@ -85,10 +102,48 @@ public class SettingsController {
             }
             
             customer.setPassword(passwordService.hashPassword(newPassword));
-            customerRepository.save(customer);
+            shards.on(shards.ofCustomerId(customer.getId()), () -> customerRepository.save(customer));
             redirectAttributes.addFlashAttribute("successMessage", "Password updated successfully");
         }
         
         return "redirect:/settings";
     }
+    
+    @GetMapping("/settings/velocity-rules")
+    @ResponseBody
+    public ResponseEntity<VelocityRules> velocityRules(HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(velocityGuard.getRules());
+    }
+    
+    /**
+     * Change the velocity limits at runtime. Omitted parameters keep their current value;
+     * {@code window} is an ISO-8601 duration such as {@code PT24H}.
+     */
+    @PostMapping("/settings/velocity-rules")
+    @ResponseBody
+    public ResponseEntity<?> updateVelocityRules(@RequestParam(required = false) Integer maxDebits,
+                                                 @RequestParam(required = false) Double maxDebitAmount,
+                                                 @RequestParam(required = false) String window,
+                                                 @RequestParam(required = false) Double newPayeeThreshold,
+                                                 HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        
+        VelocityRules current = velocityGuard.getRules();
+        try {
+            VelocityRules updated = new VelocityRules(
+                maxDebits != null ? maxDebits : current.maxDebits(),
+                maxDebitAmount != null ? maxDebitAmount : current.maxDebitAmount(),
+                window != null ? Duration.parse(window) : current.window(),
+                newPayeeThreshold != null ? newPayeeThreshold : current.newPayeeThreshold());
+            velocityGuard.setRules(updated);
+            return ResponseEntity.ok(updated);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
 }
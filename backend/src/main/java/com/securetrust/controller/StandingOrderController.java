@@ -0,0 +1,125 @@
+package com.securetrust.controller;
+
+import com.securetrust.directory.AccountDirectory;
+import com.securetrust.repository.AccountRepository;
+import com.securetrust.standingorder.Frequency;
+import com.securetrust.standingorder.StandingOrder;
+import com.securetrust.standingorder.StandingOrderScheduler;
+import com.securetrust.standingorder.StandingOrderService;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.time.LocalDateTime;
+
+/**
+ * Standing orders as JSON. Customers see and manage the orders of their own
+ * accounts only; admins those of every account.
+ */
+@Controller
+public class StandingOrderController {
+
+    private final StandingOrderService standingOrderService;
+    private final StandingOrderScheduler standingOrderScheduler;
+    private final AccountRepository accountRepository;
+    private final AccountDirectory accountDirectory;
+
+    public StandingOrderController(StandingOrderService standingOrderService,
+                                   StandingOrderScheduler standingOrderScheduler,
+                                   AccountRepository accountRepository,
+                                   AccountDirectory accountDirectory) {
+        this.standingOrderService = standingOrderService;
+        this.standingOrderScheduler = standingOrderScheduler;
+        this.accountRepository = accountRepository;
+        this.accountDirectory = accountDirectory;
+    }
+
+    @PostMapping("/standing-orders")
+    @ResponseBody
+    public ResponseEntity<?> create(@RequestParam String fromAccount,
+                                    @RequestParam String toAccount,
+                                    @RequestParam Double amount,
+                                    @RequestParam Frequency frequency,
+                                    @RequestParam(required = false)
+                                    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime firstRunAt,
+                                    @RequestParam(required = false)
+                                    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endAt,
+                                    @RequestParam(required = false) String description,
+                                    HttpSession session) {
+        if (session.getAttribute("user") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (!mayUse(fromAccount, session)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        try {
+            return ResponseEntity.ok(standingOrderService.create(fromAccount, toAccount, amount, description,
+                frequency, firstRunAt, endAt));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Orders paying from or into {@code account}.
+     */
+    @GetMapping("/standing-orders")
+    @ResponseBody
+    public ResponseEntity<?> list(@RequestParam String account, HttpSession session) {
+        if (session.getAttribute("user") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (!mayUse(account, session)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok(standingOrderService.forAccount(account));
+    }
+
+    @PostMapping("/standing-orders/{id}/cancel")
+    @ResponseBody
+    public ResponseEntity<?> cancel(@PathVariable long id, HttpSession session) {
+        if (session.getAttribute("user") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        StandingOrder order = standingOrderService.find(id);
+        if (order == null || !mayUse(order.fromAccount(), session)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        try {
+            return ResponseEntity.ok(standingOrderService.cancel(id));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Scheduler state: orders held in memory, due backlog and outcome counts.
+     */
+    @GetMapping("/standing-orders/scheduler")
+    @ResponseBody
+    public ResponseEntity<?> scheduler(HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(standingOrderScheduler.status());
+    }
+
+    // Customers only reach their own accounts; anything else looks like it does not exist
+    private boolean mayUse(String accountNumber, HttpSession session) {
+        boolean isAdmin = Boolean.TRUE.equals(session.getAttribute("isAdmin"));
+        Long customerId = (Long) session.getAttribute("customerId");
+        var entry = accountDirectory.find(accountNumber);
+        if (entry != null) {
+            return isAdmin || Long.valueOf(entry.customerId()).equals(customerId);
+        }
+        var account = accountRepository.findByAccountNumber(accountNumber);
+        return account.isPresent() && (isAdmin || account.get().getCustomer().getId().equals(customerId));
+    }
+}
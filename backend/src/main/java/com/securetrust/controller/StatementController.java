@@ -0,0 +1,43 @@
+package com.securetrust.controller;
+
+import com.securetrust.statement.StatementJob;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+
+@Controller
+public class StatementController {
+    
+    private final StatementJob statementJob;
+    
+    public StatementController(StatementJob statementJob) {
+        this.statementJob = statementJob;
+    }
+    
+    /**
+     * Generate (or resume) the statements of {@code month} ({@code yyyy-MM}, default
+     * the previous month) and report the throughput of the run.
+     */
+    @PostMapping("/statements/run")
+    @ResponseBody
+    public ResponseEntity<?> run(@RequestParam(required = false) String month, HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            YearMonth period = month != null ? YearMonth.parse(month) : YearMonth.now().minusMonths(1);
+            return ResponseEntity.ok(statementJob.run(period));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+}
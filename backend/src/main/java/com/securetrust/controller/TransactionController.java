@@ -2,43 +2,72 @@ package com.securetrust.controller;
 
 import com.securetrust.model.Transaction;
 import com.securetrust.repository.AccountRepository;
-import com.securetrust.repository.TransactionRepository;
 import com.securetrust.service.BankingService;
+import com.securetrust.service.TransactionHistoryService;
+import com.securetrust.sharding.Shards;
+import com.securetrust.web.AdminTables;
 import jakarta.servlet.http.HttpSession;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.time.LocalDate;
+import java.util.List;
+
 @Controller
 @RequestMapping("/transactions")
 public class TransactionController {
     
     private final BankingService bankingService;
-    private final TransactionRepository transactionRepository;
     private final AccountRepository accountRepository;
+    private final TransactionHistoryService transactionHistoryService;
+    private final AdminTables adminTables;
+    private final Shards shards;
     
     public TransactionController(BankingService bankingService, 
-                                 TransactionRepository transactionRepository,
-                                 AccountRepository accountRepository) {
+                                 AccountRepository accountRepository,
+                                 TransactionHistoryService transactionHistoryService,
+                                 AdminTables adminTables,
+                                 Shards shards) {
         this.bankingService = bankingService;
-        this.transactionRepository = transactionRepository;
         this.accountRepository = accountRepository;
+        this.transactionHistoryService = transactionHistoryService;
+        this.adminTables = adminTables;
+        this.shards = shards;
     }
     
     @GetMapping
+    @Transactional(readOnly = true)
     public String transactionsPage(HttpSession session, Model model) {
         if (session.getAttribute("user") == null) {
             return "redirect:/login";
         }
         
-        var recentTransactions = transactionRepository.findTop10ByOrderByTransactionDateDesc();
-        var accounts = accountRepository.findAll();
+        var recentTransactions = transactionHistoryService.recentTransactions();
         
         model.addAttribute("transactions", recentTransactions);
-        model.addAttribute("accounts", accounts);
         return "transactions";
     }
+
+    /**
+     * Suggestions for the account pickers: accounts of the customers whose name,
+     * email, phone, customer ID or account number starts with the query.
+     */
+    @GetMapping("/accounts")
+    @ResponseBody
+    public ResponseEntity<List<AdminTables.AccountOption>> accountOptions(@RequestParam("q") String query,
+                                                                         @RequestParam(defaultValue = "10") int limit,
+                                                                         HttpSession session) {
+        if (session.getAttribute("user") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(adminTables.accountOptions(query, limit));
+    }
     
     @PostMapping("/deposit")
     public String deposit(@RequestParam String accountNumber,
@@ -104,20 +133,33 @@ public class TransactionController {
         return "redirect:/transactions";
     }
     
+    /**
+     * Transactions of one account, optionally limited to {@code [from, to]} (ISO dates).
+     * Ranges reaching back past the archive horizon include archived transactions.
+     */
     @GetMapping("/account/{accountNumber}")
+    @Transactional(readOnly = true)
     public String accountTransactions(@PathVariable String accountNumber,
+                                     @RequestParam(required = false)
+                                     @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                     @RequestParam(required = false)
+                                     @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
                                      HttpSession session,
                                      Model model) {
         if (session.getAttribute("user") == null) {
             return "redirect:/login";
         }
         
-        var account = accountRepository.findByAccountNumber(accountNumber)
-            .orElseThrow(() -> new IllegalArgumentException("Account not found"));
-        var transactions = transactionRepository.findByAccountAccountNumberOrderByTransactionDateDesc(accountNumber);
-        
-        model.addAttribute("account", account);
-        model.addAttribute("transactions", transactions);
+        shards.read(shards.ofAccount(accountNumber), () -> {
+            var account = accountRepository.findByAccountNumber(accountNumber)
+                .orElseThrow(() -> new IllegalArgumentException("Account not found"));
+            var transactions = transactionHistoryService.accountHistory(accountNumber,
+                from != null ? from.atStartOfDay() : null, to != null ? to.plusDays(1).atStartOfDay() : null);
+            
+            model.addAttribute("account", account);
+            model.addAttribute("transactions", transactions);
+            return null;
+        });
         return "account-transactions";
     }
 }
@@ -0,0 +1,53 @@
+package com.securetrust.controller;
+
+import com.securetrust.monitoring.StartupLatencyFilter;
+import com.securetrust.warmup.WarmUp;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.Map;
+
+@Controller
+public class WarmUpController {
+    
+    private final ApplicationAvailability availability;
+    private final WarmUp warmUp;
+    private final StartupLatencyFilter startupLatency;
+    
+    public WarmUpController(ApplicationAvailability availability, WarmUp warmUp,
+                            StartupLatencyFilter startupLatency) {
+        this.availability = availability;
+        this.warmUp = warmUp;
+        this.startupLatency = startupLatency;
+    }
+    
+    /**
+     * Readiness probe for load balancers: 503 until startup and warm-up are done.
+     */
+    @GetMapping("/health/readiness")
+    @ResponseBody
+    public ResponseEntity<?> readiness() {
+        ReadinessState state = availability.getReadinessState();
+        return ResponseEntity.status(state == ReadinessState.ACCEPTING_TRAFFIC ? HttpStatus.OK
+            : HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("status", state));
+    }
+    
+    /**
+     * How the warm-up went and the request latency of the first minute after it.
+     */
+    @GetMapping("/warm-up/report")
+    @ResponseBody
+    public ResponseEntity<?> report(HttpSession session) {
+        if (!"admin".equals(session.getAttribute("userType"))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(Map.of("warmUp", warmUp.getReport(),
+            "firstMinute", startupLatency.summaries()));
+    }
+}
@@ -0,0 +1,50 @@
+package com.securetrust.datasource;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Gives each session read-your-writes semantics on top of replica routing.
+ * Mutating requests are pinned to the primary and stamp the session with the
+ * time they finished; later reads from that session only use replicas that
+ * were synced after that stamp.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String LAST_WRITE_ATTRIBUTE = ReadYourWritesFilter.class.getName() + ".lastWrite";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean mutating = !"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod());
+        HttpSession session = request.getSession(false);
+
+        if (mutating) {
+            ReplicaRoutingContext.pinToPrimary();
+        } else if (session != null && session.getAttribute(LAST_WRITE_ATTRIBUTE) instanceof Long lastWrite) {
+            ReplicaRoutingContext.requireSyncedSince(lastWrite);
+        }
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingContext.clear();
+            if (mutating) {
+                HttpSession current = request.getSession(false);
+                if (current != null) {
+                    try {
+                        current.setAttribute(LAST_WRITE_ATTRIBUTE, System.currentTimeMillis());
+                    } catch (IllegalStateException invalidated) {
+                        // Session was invalidated by the request (logout)
+                    }
+                }
+            }
+        }
+    }
+}
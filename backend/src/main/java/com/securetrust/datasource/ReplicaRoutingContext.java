@@ -0,0 +1,62 @@
+package com.securetrust.datasource;
+
+/**
+ * Per-thread routing constraints for the current request.
+ *
+ * A request that writes is pinned to the primary for its whole duration; a
+ * request from a session that wrote recently may only read from replicas that
+ * have caught up with that write (read-your-writes).
+ */
+public final class ReplicaRoutingContext {
+
+    private static final ThreadLocal<ReplicaRoutingContext> CURRENT = new ThreadLocal<>();
+
+    private final boolean primaryOnly;
+    private final long minSyncedAtMillis;
+
+    private ReplicaRoutingContext(boolean primaryOnly, long minSyncedAtMillis) {
+        this.primaryOnly = primaryOnly;
+        this.minSyncedAtMillis = minSyncedAtMillis;
+    }
+
+    /**
+     * Route everything on this thread to the primary.
+     */
+    public static void pinToPrimary() {
+        CURRENT.set(new ReplicaRoutingContext(true, 0));
+    }
+
+    /**
+     * Only allow replicas whose last sync started at or after the given time.
+     */
+    public static void requireSyncedSince(long epochMillis) {
+        CURRENT.set(new ReplicaRoutingContext(false, epochMillis));
+    }
+
+    public static ReplicaRoutingContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind a context captured on another thread (or clear it when null).
+     */
+    public static void bind(ReplicaRoutingContext context) {
+        if (context == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public boolean isPrimaryOnly() {
+        return primaryOnly;
+    }
+
+    public long getMinSyncedAtMillis() {
+        return minSyncedAtMillis;
+    }
+}
@@ -0,0 +1,131 @@
+package com.securetrust.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes read-only transactions to a replica and everything else to the primary.
+ *
+ * A replica is only eligible when its last completed sync is within the
+ * staleness bound and satisfies the caller's {@link ReplicaRoutingContext}.
+ * When no replica qualifies the read falls back to the primary.
+ *
+ * Each replica has two databases: the one reads are sent to and a standby
+ * the next sync is loaded into, which then takes over, so a database is never
+ * reloaded under a reader.
+ *
+ * Must sit behind a {@code LazyConnectionDataSourceProxy}: the read-only flag
+ * is only known once the transaction has started, after the transaction
+ * manager has asked for a connection.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String PRIMARY = "primary";
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxStalenessMillis;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<Replica> replicas, Duration maxStaleness) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.maxStalenessMillis = maxStaleness.toMillis();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // Only the primary is fixed; a replica's database changes with every sync
+        setTargetDataSources(Map.of(PRIMARY, primary));
+        setDefaultTargetDataSource(primary);
+        super.afterPropertiesSet();
+    }
+
+    @Override
+    protected DataSource determineTargetDataSource() {
+        Object key = determineCurrentLookupKey();
+        for (Replica replica : replicas) {
+            if (replica.getName().equals(key)) {
+                return replica.getDataSource();
+            }
+        }
+        return primary;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        ReplicaRoutingContext context = ReplicaRoutingContext.current();
+        if (context != null && context.isPrimaryOnly()) {
+            return PRIMARY;
+        }
+        long minSyncedAt = context != null ? context.getMinSyncedAtMillis() : 0;
+        long now = System.currentTimeMillis();
+
+        int size = replicas.size();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.isUsable(now, maxStalenessMillis, minSyncedAt)) {
+                return replica.getName();
+            }
+        }
+        return PRIMARY;
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * A replica, its serving and standby databases, and the start time of the
+     * sync the serving one was loaded from.
+     */
+    public static final class Replica {
+        private final String name;
+        private volatile DataSource dataSource;
+        private volatile DataSource standby;
+        private volatile long syncedAtMillis = -1;
+
+        public Replica(String name, DataSource dataSource, DataSource standby) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.standby = standby;
+        }
+
+        public String getName() { return name; }
+
+        public DataSource getDataSource() { return dataSource; }
+
+        /**
+         * The database the next sync is loaded into; no new reads are sent to it.
+         */
+        public DataSource getStandby() { return standby; }
+
+        public long getSyncedAtMillis() { return syncedAtMillis; }
+
+        /**
+         * Send reads to the standby, now reflecting the primary as of the given
+         * time, and make the database they went to the standby.
+         */
+        public synchronized void promoteStandby(long epochMillis) {
+            DataSource serving = dataSource;
+            dataSource = standby;
+            standby = serving;
+            syncedAtMillis = epochMillis;
+        }
+
+        boolean isUsable(long now, long maxStalenessMillis, long minSyncedAt) {
+            long syncedAt = syncedAtMillis;
+            return syncedAt >= 0 && now - syncedAt <= maxStalenessMillis && syncedAt >= minSyncedAt;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.securetrust.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local stand-in for database replication: periodically copies a full H2
+ * snapshot of the primary into each replica. Good enough to exercise replica
+ * routing, staleness bounds and read-your-writes on a laptop; a real
+ * deployment would use the database's own replication instead.
+ *
+ * The snapshot goes into the replica's standby database, which takes over
+ * once loaded; the database it replaces keeps serving the reads already on
+ * it and becomes the standby for the next sync. A standby still in use by
+ * such a read is left alone until the read finishes, and the replica skips
+ * that sync.
+ */
+public class ReplicationStandIn {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicationStandIn.class);
+
+    private static final long STANDBY_WAIT_MILLIS = 10_000;
+    private static final long STANDBY_POLL_MILLIS = 10;
+
+    private final DataSource primary;
+    private final List<ReplicaRoutingDataSource.Replica> replicas;
+
+    public ReplicationStandIn(DataSource primary, List<ReplicaRoutingDataSource.Replica> replicas) {
+        this.primary = primary;
+        this.replicas = replicas;
+    }
+
+    /**
+     * Copy the current state of the primary into every replica.
+     */
+    @Scheduled(fixedDelayString = "${securetrust.datasource.replicas.replication-interval-ms:2000}")
+    public void syncAll() {
+        long snapshotAt = System.currentTimeMillis();
+        List<String> script;
+        try {
+            script = snapshotPrimary();
+        } catch (SQLException e) {
+            log.warn("Could not snapshot primary for replication: {}", e.getMessage());
+            return;
+        }
+
+        for (ReplicaRoutingDataSource.Replica replica : replicas) {
+            DataSource standby = replica.getStandby();
+            try {
+                if (!awaitIdle(standby)) {
+                    log.warn("Replica {} standby still has readers after {} ms, skipping this sync",
+                        replica.getName(), STANDBY_WAIT_MILLIS);
+                    continue;
+                }
+                load(standby, script);
+                replica.promoteStandby(snapshotAt);
+            } catch (SQLException e) {
+                log.warn("Replica {} failed to apply snapshot, keeping its previous one: {}",
+                    replica.getName(), e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private List<String> snapshotPrimary() throws SQLException {
+        List<String> statements = new ArrayList<>();
+        try (Connection con = primary.getConnection();
+             Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SCRIPT NOPASSWORDS NOSETTINGS")) {
+            while (rs.next()) {
+                statements.add(rs.getString(1));
+            }
+        }
+        return statements;
+    }
+
+    // Whether the connections reads took from the standby have all been returned
+    private static boolean awaitIdle(DataSource standby) throws InterruptedException {
+        if (!(standby instanceof HikariDataSource pool) || pool.getHikariPoolMXBean() == null) {
+            return true;
+        }
+        long deadline = System.currentTimeMillis() + STANDBY_WAIT_MILLIS;
+        while (pool.getHikariPoolMXBean().getActiveConnections() > 0) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(STANDBY_POLL_MILLIS);
+        }
+        return true;
+    }
+
+    private static void load(DataSource replica, List<String> script) throws SQLException {
+        try (Connection con = replica.getConnection();
+             Statement st = con.createStatement()) {
+            st.execute("DROP ALL OBJECTS");
+            for (String sql : script) {
+                if (sql.startsWith("CREATE USER")) {
+                    continue;
+                }
+                st.execute(sql);
+            }
+        }
+    }
+}
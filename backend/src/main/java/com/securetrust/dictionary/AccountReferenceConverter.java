@@ -0,0 +1,27 @@
+package com.securetrust.dictionary;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores a referenced account number as the account's id.
+ */
+@Converter
+public class AccountReferenceConverter implements AttributeConverter<String, Long> {
+
+    private final LedgerDictionary dictionary;
+
+    public AccountReferenceConverter(LedgerDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public Long convertToDatabaseColumn(String accountNumber) {
+        return dictionary.accountId(accountNumber);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Long id) {
+        return dictionary.accountNumber(id);
+    }
+}
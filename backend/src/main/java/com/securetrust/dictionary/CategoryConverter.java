@@ -0,0 +1,27 @@
+package com.securetrust.dictionary;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores a transaction category as its {@code transaction_category} id.
+ */
+@Converter
+public class CategoryConverter implements AttributeConverter<String, Integer> {
+
+    private final LedgerDictionary dictionary;
+
+    public CategoryConverter(LedgerDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public Integer convertToDatabaseColumn(String category) {
+        return dictionary.categoryId(category);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer id) {
+        return dictionary.category(id);
+    }
+}
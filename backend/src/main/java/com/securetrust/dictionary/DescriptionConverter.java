@@ -0,0 +1,27 @@
+package com.securetrust.dictionary;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores a transaction description as its {@code transaction_description} id.
+ */
+@Converter
+public class DescriptionConverter implements AttributeConverter<String, Integer> {
+
+    private final LedgerDictionary dictionary;
+
+    public DescriptionConverter(LedgerDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public Integer convertToDatabaseColumn(String text) {
+        return dictionary.descriptionId(text);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer id) {
+        return dictionary.description(id);
+    }
+}
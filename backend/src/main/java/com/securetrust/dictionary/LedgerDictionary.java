@@ -0,0 +1,328 @@
+package com.securetrust.dictionary;
+
+import com.securetrust.directory.AccountDirectory;
+import com.securetrust.model.TransactionType;
+import com.securetrust.sharding.ShardMap;
+import com.securetrust.sharding.Shards;
+import jakarta.annotation.PreDestroy;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Codes behind the compact columns of the {@code transaction} table: the
+ * {@code transaction_category} and {@code transaction_description}
+ * dictionaries, and account ids standing in for referenced account numbers.
+ * Descriptions entered with a transaction are stored inline; the description
+ * dictionary codes only the default transfer texts kept when an account is
+ * closed, which recur across every transfer to or from it.
+ *
+ * Both directions are cached in memory; entries never change once assigned,
+ * so a cached value is never stale. Lookups that miss read through the
+ * current transaction's connection, so a row and the codes it refers to are
+ * read from the same database. A new dictionary entry is inserted and
+ * committed on a connection of its own, before the row that uses it, and
+ * survives if that row's transaction rolls back. That connection is one per
+ * database, opened outside the pool: a request already holds a pooled connection
+ * when it needs a new entry, so taking a second one from the pool deadlocks
+ * once as many requests as the pool has connections do so at once.
+ *
+ * Account ids and numbers come from the {@link AccountDirectory} while it is
+ * ready and has the account; the maps here only hold the rest.
+ *
+ * On a sharded ledger every shard holds the same dictionaries: entries are
+ * added on the home shard and copied to the others, under the same id, before
+ * the code is used. A transfer between shards refers to an account on
+ * another shard, which is looked up there on a connection of the same kind.
+ */
+@Component
+public class LedgerDictionary {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AccountDirectory accountDirectory;
+    private final Shards shards;
+    // Not a monitor: inserts block on JDBC and would pin a virtual thread's carrier
+    private final ReentrantLock insertLock = new ReentrantLock();
+    // One per shard, opened on first use; guarded by insertLock
+    private final Connection[] connections;
+    private final Table categories;
+    private final Table descriptions;
+    private final Map<String, Long> accountIds = new ConcurrentHashMap<>();
+    private final Map<Long, String> accountNumbers = new ConcurrentHashMap<>();
+
+    public LedgerDictionary(JdbcTemplate jdbcTemplate, AccountDirectory accountDirectory, Shards shards) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.accountDirectory = accountDirectory;
+        this.shards = shards;
+        this.connections = new Connection[shards.count()];
+        this.categories = new Table("transaction_category", "name");
+        this.descriptions = new Table("transaction_description", "text");
+    }
+
+    public Integer categoryId(String name) {
+        return categories.id(name);
+    }
+
+    public String category(Integer id) {
+        return categories.value(id);
+    }
+
+    public Integer descriptionId(String text) {
+        return descriptions.id(text);
+    }
+
+    public String description(Integer id) {
+        return descriptions.value(id);
+    }
+
+    /**
+     * A row's own description: the inline text, else the kept text its
+     * {@code description_id} codes, else null for the type's default.
+     */
+    public String description(String inline, Integer id) {
+        return inline != null ? inline : descriptions.value(id);
+    }
+
+    public Long accountId(String accountNumber) {
+        if (accountNumber == null) {
+            return null;
+        }
+        AccountDirectory.Entry entry = accountDirectory.find(accountNumber);
+        if (entry != null) {
+            return entry.accountId();
+        }
+        Long id = accountIds.get(accountNumber);
+        if (id == null) {
+            String sql = "SELECT id FROM account WHERE account_number = ?";
+            int shard = shards.ofAccount(accountNumber);
+            List<Long> found = shard == shards.current()
+                ? jdbcTemplate.queryForList(sql, Long.class, accountNumber)
+                : onShard(shard, connection -> queryForList(connection, sql, accountNumber, rs -> rs.getLong(1)));
+            if (found.isEmpty()) {
+                throw new IllegalArgumentException("Account not found: " + accountNumber);
+            }
+            id = found.get(0);
+            remember(id, accountNumber);
+        }
+        return id;
+    }
+
+    /**
+     * Number of the account with this id, or {@code null} once it has been closed.
+     */
+    public String accountNumber(Long id) {
+        if (id == null) {
+            return null;
+        }
+        AccountDirectory.Entry entry = accountDirectory.find(id);
+        if (entry != null) {
+            return entry.accountNumber();
+        }
+        String number = accountNumbers.get(id);
+        if (number == null) {
+            String sql = "SELECT account_number FROM account WHERE id = ?";
+            int shard = shards.isSharded() ? ShardMap.shardOfId(id) : Shards.HOME;
+            if (shard >= shards.count()) {
+                return null;
+            }
+            List<String> found = shard == shards.current()
+                ? jdbcTemplate.queryForList(sql, String.class, id)
+                : onShard(shard, connection -> queryForList(connection, sql, id, rs -> rs.getString(1)));
+            if (found.isEmpty()) {
+                return null;
+            }
+            number = found.get(0);
+            remember(id, number);
+        }
+        return number;
+    }
+
+    /**
+     * Store the default text on up to {@code limit} transfers of {@code type}
+     * that reference an account about to be deleted and have no text of their
+     * own; the reference itself is cleared by the delete, and with it the
+     * account number the text is rebuilt from. One statement, committed on its
+     * own outside a transaction, on the shard the caller is routed to. Returns
+     * the number of rows updated, which is less than {@code limit} once none
+     * are left.
+     */
+    public int keepTransferDescriptions(long accountId, String accountNumber, TransactionType type, int limit) {
+        Integer descriptionId = descriptionId(type.defaultDescription(accountNumber));
+        return jdbcTemplate.update(
+            "UPDATE transaction SET description_id = ? WHERE reference_account_id = ? AND type = ? "
+                + "AND description IS NULL AND description_id IS NULL LIMIT " + limit,
+            descriptionId, accountId, type.getCode());
+    }
+
+    /**
+     * Drop the cached codes of a deleted account.
+     */
+    public void forgetAccount(long accountId, String accountNumber) {
+        accountIds.remove(accountNumber);
+        accountNumbers.remove(accountId);
+    }
+
+    @PreDestroy
+    void close() throws SQLException {
+        insertLock.lock();
+        try {
+            for (int shard = 0; shard < connections.length; shard++) {
+                if (connections[shard] != null) {
+                    connections[shard].close();
+                    connections[shard] = null;
+                }
+            }
+        } finally {
+            insertLock.unlock();
+        }
+    }
+
+    /**
+     * Add an entry on the home shard and copy it to the others; returns its id.
+     */
+    private int insert(Table table, String value) {
+        insertLock.lock();
+        try {
+            int id = onShard(Shards.HOME, connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(table.insert)) {
+                    statement.setString(1, value);
+                    statement.executeUpdate();
+                } catch (SQLException e) {
+                    if (!"23505".equals(e.getSQLState())) {
+                        throw e;
+                    }
+                }
+                return queryForList(connection, table.selectId, value, rs -> rs.getInt(1)).get(0);
+            });
+            for (int shard = 1; shard < connections.length; shard++) {
+                onShard(shard, connection -> {
+                    try (PreparedStatement statement = connection.prepareStatement(table.copy)) {
+                        statement.setInt(1, id);
+                        statement.setString(2, value);
+                        return statement.executeUpdate();
+                    }
+                });
+            }
+            return id;
+        } finally {
+            insertLock.unlock();
+        }
+    }
+
+    // On the shard's connection opened outside the pool, which the lock keeps to one caller at a time
+    private <T> T onShard(int shard, SqlFunction<Connection, T> work) {
+        insertLock.lock();
+        try {
+            if (connections[shard] == null) {
+                connections[shard] = shards.unpooled(shard).getConnection();
+                connections[shard].setAutoCommit(true);
+            }
+            return work.apply(connections[shard]);
+        } catch (SQLException e) {
+            try {
+                if (connections[shard] != null) {
+                    connections[shard].close();
+                }
+            } catch (SQLException ignored) {
+                // Reopened by the next call
+            }
+            connections[shard] = null;
+            throw new DataAccessResourceFailureException("Could not reach the ledger dictionary on shard " + shard, e);
+        } finally {
+            insertLock.unlock();
+        }
+    }
+
+    private static <T> List<T> queryForList(Connection connection, String sql, Object parameter,
+                                            SqlFunction<ResultSet, T> column) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setObject(1, parameter);
+            try (ResultSet rs = statement.executeQuery()) {
+                List<T> values = new ArrayList<>();
+                while (rs.next()) {
+                    values.add(column.apply(rs));
+                }
+                return values;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlFunction<A, T> {
+        T apply(A value) throws SQLException;
+    }
+
+    private void remember(long id, String accountNumber) {
+        accountIds.put(accountNumber, id);
+        accountNumbers.put(id, accountNumber);
+    }
+
+    private final class Table {
+
+        private final String selectId;
+        private final String selectValue;
+        private final String insert;
+        private final String copy;
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final Map<Integer, String> values = new ConcurrentHashMap<>();
+
+        Table(String table, String column) {
+            this.selectId = "SELECT id FROM " + table + " WHERE " + column + " = ?";
+            this.selectValue = "SELECT " + column + " FROM " + table + " WHERE id = ?";
+            this.insert = "INSERT INTO " + table + " (" + column + ") VALUES (?)";
+            this.copy = "MERGE INTO " + table + " (id, " + column + ") KEY (id) VALUES (?, ?)";
+        }
+
+        Integer id(String value) {
+            if (value == null) {
+                return null;
+            }
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = find(value);
+                if (id == null) {
+                    // A concurrent insert of the same value fails on the unique key; the id is re-read either way
+                    id = insert(this, value);
+                }
+                remember(id, value);
+            }
+            return id;
+        }
+
+        String value(Integer id) {
+            if (id == null) {
+                return null;
+            }
+            String value = values.get(id);
+            if (value == null) {
+                List<String> found = jdbcTemplate.queryForList(selectValue, String.class, id);
+                if (found.isEmpty()) {
+                    throw new IllegalStateException("Unknown dictionary code " + id + " (" + selectValue + ")");
+                }
+                value = found.get(0);
+                remember(id, value);
+            }
+            return value;
+        }
+
+        private Integer find(String value) {
+            List<Integer> found = jdbcTemplate.queryForList(selectId, Integer.class, value);
+            return found.isEmpty() ? null : found.get(0);
+        }
+
+        private void remember(Integer id, String value) {
+            ids.put(value, id);
+            values.put(id, value);
+        }
+    }
+}
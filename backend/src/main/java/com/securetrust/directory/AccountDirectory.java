@@ -0,0 +1,408 @@
+package com.securetrust.directory;
+
+import com.securetrust.config.StartupOrder;
+import com.securetrust.event.AccountChangedEvent;
+import com.securetrust.event.CustomerChangedEvent;
+import com.securetrust.model.AccountType;
+import com.securetrust.model.CustomerType;
+import com.securetrust.sharding.ShardMap;
+import com.securetrust.sharding.Shards;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Account number, id, type, owning customer and owner type of every account,
+ * in a memory-mapped {@link DirectoryFile}, so resolving an account takes no
+ * entity load, no query and next to no heap.
+ *
+ * The file survives restarts. One closed cleanly is used as soon as the
+ * application is ready, and checked against the account table (count and id
+ * sum) in the background. One that was not closed cleanly, is missing, or
+ * fails the check is rebuilt from the table by a single query; until then
+ * lookups return null and callers take their usual path. Accounts opened and
+ * closed, and customers changing type, are applied after their transaction
+ * commits, including those committed during a rebuild.
+ *
+ * A lookup that misses (an account opened in a transaction that has not
+ * committed yet, a number longer than a record holds) returns null as well,
+ * so the directory only ever answers for committed accounts. When the
+ * records are used up the file is rewritten without removed records, twice
+ * the size if more than half of them are live.
+ *
+ * On a sharded ledger the directory holds the accounts of every shard, read
+ * from each in turn.
+ */
+@Component
+public class AccountDirectory {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountDirectory.class);
+
+    private static final String ROWS_SQL =
+        "SELECT a.id, a.account_number, a.customer_id, a.account_type, c.customer_type "
+            + "FROM account a JOIN customer c ON c.id = a.customer_id";
+
+    /**
+     * One account. {@code ownerType} is null when the customer has none recorded.
+     */
+    public record Entry(long accountId, String accountNumber, long customerId, AccountType accountType,
+                        CustomerType ownerType) { }
+
+    /**
+     * Directory state; {@code hits} and {@code misses} count lookups while ready.
+     */
+    public record Status(boolean enabled, boolean ready, String file, long fileBytes, int accounts, int records,
+                         int capacity, long hits, long misses, long lastBuildMillis) { }
+
+    private record Change(String accountNumber, Long customerId, boolean removed) { }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Shards shards;
+    private final boolean enabled;
+    private final Path path;
+    private final int initialCapacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Null until usable
+    private volatile DirectoryFile current;
+    // Changes committed while a rebuild reads the table; guarded by writeLock
+    private List<Change> pending;
+    private volatile long lastBuildMillis = -1;
+
+    public AccountDirectory(JdbcTemplate jdbcTemplate, Shards shards,
+                            @Value("${securetrust.account-directory.enabled:true}") boolean enabled,
+                            @Value("${securetrust.account-directory.file:./directory/accounts.dir}") String file,
+                            @Value("${securetrust.account-directory.capacity:100000}") int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("securetrust.account-directory.capacity must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.shards = shards;
+        this.enabled = enabled;
+        this.path = Paths.get(file);
+        this.initialCapacity = capacity;
+    }
+
+    // After demo data is seeded, which happens without events
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(StartupOrder.ACCOUNT_DIRECTORY)
+    public void open() {
+        if (!enabled) {
+            return;
+        }
+        Thread.ofPlatform().name("account-directory").daemon().start(() -> {
+            try {
+                DirectoryFile file = DirectoryFile.open(path);
+                if (file != null && file.closedCleanly()) {
+                    file.markOpen();
+                    writeLock.lock();
+                    try {
+                        pending = new ArrayList<>();
+                        current = file;
+                    } finally {
+                        writeLock.unlock();
+                    }
+                    log.info("Account directory {}: {} accounts", path, file.live());
+                    if (matchesTable(file)) {
+                        writeLock.lock();
+                        try {
+                            pending = null;
+                        } finally {
+                            writeLock.unlock();
+                        }
+                        return;
+                    }
+                    log.warn("Account directory {} does not match the account table, rebuilding", path);
+                } else if (file != null) {
+                    log.info("Account directory {} was not closed cleanly, rebuilding", path);
+                    file.abandon();
+                }
+                rebuild();
+            } catch (IOException | RuntimeException e) {
+                log.warn("Account directory {} unavailable, accounts are looked up in the database", path, e);
+                writeLock.lock();
+                try {
+                    current = null;
+                    pending = null;
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        writeLock.lock();
+        try {
+            DirectoryFile file = current;
+            current = null;
+            if (file != null) {
+                file.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return current != null;
+    }
+
+    /**
+     * The account with this number, or null when it is not in the directory.
+     */
+    public Entry find(String accountNumber) {
+        DirectoryFile file = current;
+        if (file == null || accountNumber == null) {
+            return null;
+        }
+        return count(entry(file.find(accountNumber)));
+    }
+
+    /**
+     * The account with this id, or null when it is not in the directory.
+     */
+    public Entry find(long accountId) {
+        DirectoryFile file = current;
+        if (file == null) {
+            return null;
+        }
+        return count(entry(file.find(accountId)));
+    }
+
+    /**
+     * Visit every account, if the directory is ready; returns whether it was.
+     */
+    public boolean forEach(Consumer<Entry> action) {
+        DirectoryFile file = current;
+        if (file == null) {
+            return false;
+        }
+        file.forEach(record -> action.accept(entry(record)));
+        return true;
+    }
+
+    public Status status() {
+        DirectoryFile file = current;
+        long bytes = 0;
+        try {
+            bytes = Files.exists(path) ? Files.size(path) : 0;
+        } catch (IOException e) {
+            log.debug("Could not size {}", path, e);
+        }
+        return new Status(enabled, file != null, path.toString(), bytes, file != null ? file.live() : 0,
+            file != null ? file.records() : 0, file != null ? file.capacity() : 0, hits.sum(), misses.sum(),
+            lastBuildMillis);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountChanged(AccountChangedEvent event) {
+        apply(new Change(event.accountNumber(), null, event.change() == AccountChangedEvent.Change.CLOSED));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCustomerChanged(CustomerChangedEvent event) {
+        // A deleted customer's accounts are closed one by one before it
+        if (event.change() == CustomerChangedEvent.Change.UPDATED) {
+            apply(new Change(null, event.customerId(), false));
+        }
+    }
+
+    private void apply(Change change) {
+        if (!enabled) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            if (pending != null) {
+                pending.add(change);
+            }
+            if (current != null) {
+                apply(current, change);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void apply(DirectoryFile file, Change change) {
+        if (change.removed()) {
+            file.remove(change.accountNumber());
+            return;
+        }
+        List<DirectoryFile.Record> rows = change.accountNumber() != null
+            ? shards.read(shards.ofAccount(change.accountNumber()), () -> jdbcTemplate.query(
+                ROWS_SQL + " WHERE a.account_number = ?", (rs, row) -> record(rs), change.accountNumber()))
+            : shards.read(shards.ofCustomerId(change.customerId()), () -> jdbcTemplate.query(
+                ROWS_SQL + " WHERE a.customer_id = ?", (rs, row) -> record(rs), change.customerId()));
+        if (change.accountNumber() != null && rows.isEmpty()) {
+            file.remove(change.accountNumber());
+        }
+        for (DirectoryFile.Record record : rows) {
+            if (!file.hasRoom()) {
+                file = grow(file);
+            }
+            file.put(record);
+        }
+    }
+
+    // Called with writeLock held
+    private DirectoryFile grow(DirectoryFile file) {
+        int capacity = file.live() * 2 > file.capacity() ? file.capacity() * 2 : file.capacity();
+        List<DirectoryFile.Record> live = new ArrayList<>(file.live());
+        file.forEach(live::add);
+        DirectoryFile grown = write(live, capacity);
+        try {
+            file.abandon();
+        } catch (IOException e) {
+            log.debug("Could not close the replaced account directory", e);
+        }
+        current = grown;
+        return grown;
+    }
+
+    private void rebuild() throws IOException {
+        writeLock.lock();
+        try {
+            if (pending == null) {
+                pending = new ArrayList<>();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        long start = System.nanoTime();
+        List<DirectoryFile.Record> rows = new ArrayList<>();
+        shards.readEach(() -> jdbcTemplate.query(ROWS_SQL, (rs, row) -> record(rs))).forEach(rows::addAll);
+        writeLock.lock();
+        try {
+            DirectoryFile rebuilt = write(rows, Math.max(initialCapacity, rows.size() * 2));
+            DirectoryFile previous = current;
+            current = rebuilt;
+            for (Change change : pending) {
+                apply(current, change);
+            }
+            pending = null;
+            if (previous != null) {
+                previous.abandon();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        lastBuildMillis = (System.nanoTime() - start) / 1_000_000;
+        log.info("Account directory {} built: {} accounts in {} ms", path, rows.size(), lastBuildMillis);
+    }
+
+    // A new file written beside the old one and moved over it
+    private DirectoryFile write(List<DirectoryFile.Record> records, int capacity) {
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temporary = parent.resolve(path.getFileName() + ".tmp");
+            try (DirectoryFile file = DirectoryFile.create(temporary, capacity)) {
+                records.forEach(file::put);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            DirectoryFile file = DirectoryFile.open(path);
+            file.markOpen();
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean matchesTable(DirectoryFile file) {
+        long[] table = new long[2];
+        // Summed relative to each shard's first id, which keeps the database's sum small;
+        // the total wraps around like the file's
+        for (long[] shard : shards.readEach(() -> {
+            long base = ShardMap.firstId(shards.current());
+            return jdbcTemplate.queryForObject("SELECT COUNT(*), COALESCE(SUM(id - ?), 0) FROM account",
+                (rs, row) -> new long[] {rs.getLong(1), rs.getLong(2), base}, base);
+        })) {
+            table[0] += shard[0];
+            table[1] += shard[0] * shard[2] + shard[1];
+        }
+        writeLock.lock();
+        try {
+            // Changes since the file was opened are in both
+            return table[0] == file.live() && table[1] == file.idSum();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private Entry count(Entry entry) {
+        (entry != null ? hits : misses).increment();
+        return entry;
+    }
+
+    private static Entry entry(DirectoryFile.Record record) {
+        if (record == null) {
+            return null;
+        }
+        return new Entry(record.id(), record.accountNumber(), record.customerId(),
+            accountType(record.accountType()), ownerType(record.ownerType()));
+    }
+
+    private static DirectoryFile.Record record(java.sql.ResultSet rs) throws java.sql.SQLException {
+        String ownerType = rs.getString(5);
+        return new DirectoryFile.Record(rs.getLong(1), rs.getString(2), rs.getLong(3),
+            code(AccountType.valueOf(rs.getString(4))),
+            ownerType != null ? code(CustomerType.valueOf(ownerType)) : 0);
+    }
+
+    // Codes written to the file, fixed so that reordering the enum constants does not change what a file means
+    private static int code(AccountType type) {
+        return switch (type) {
+            case SAVINGS -> 'S';
+            case INVESTMENT -> 'I';
+            case CHEQUE -> 'C';
+        };
+    }
+
+    private static AccountType accountType(int code) {
+        return switch (code) {
+            case 'S' -> AccountType.SAVINGS;
+            case 'I' -> AccountType.INVESTMENT;
+            case 'C' -> AccountType.CHEQUE;
+            default -> null;
+        };
+    }
+
+    private static int code(CustomerType type) {
+        return switch (type) {
+            case INDIVIDUAL -> 'I';
+            case COMPANY -> 'C';
+        };
+    }
+
+    private static CustomerType ownerType(int code) {
+        return switch (code) {
+            case 'I' -> CustomerType.INDIVIDUAL;
+            case 'C' -> CustomerType.COMPANY;
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,381 @@
+package com.securetrust.directory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Account records in one memory-mapped file, with two open-addressing hash
+ * tables over them: one keyed by account number, one by account id.
+ *
+ * <pre>
+ * header (64 bytes) | number slots | id slots | records
+ * </pre>
+ *
+ * A slot holds a record position plus one, 0 when empty and -1 when its
+ * record was removed. Probing is linear. Records are fixed-width and only
+ * ever appended; a removed record is flagged dead and stays until the file is
+ * rewritten, so a reader never sees a record position reused.
+ *
+ * There is one writer at a time (callers hold a lock) and any number of
+ * lock-free readers. A writer fills in a record before it publishes the
+ * record's slots with release semantics, and readers load slots with acquire
+ * semantics and check the record's number or id and live flag, so a reader
+ * sees either the old or the new state of an entry. The header records
+ * whether the file was closed cleanly; one that was not may have missed
+ * changes and must be rebuilt.
+ */
+final class DirectoryFile implements Closeable {
+
+    private static final int MAGIC = 0x53544144; // "STAD"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 64;
+    static final int NUMBER_BYTES = 24;
+    private static final int RECORD_BYTES = 8 + 8 + 1 + 1 + 1 + 1 + NUMBER_BYTES + 4;
+    private static final int STATE_OPEN = 1;
+    private static final int STATE_CLOSED = 2;
+    private static final int EMPTY = 0;
+    private static final int REMOVED = -1;
+
+    // Header fields
+    private static final int MAGIC_AT = 0;
+    private static final int VERSION_AT = 4;
+    private static final int SLOTS_AT = 8;
+    private static final int CAPACITY_AT = 12;
+    private static final int RECORDS_AT = 16;
+    private static final int LIVE_AT = 20;
+    private static final int ID_SUM_AT = 24;
+    private static final int STATE_AT = 32;
+
+    // Record fields
+    private static final int ID = 0;
+    private static final int CUSTOMER_ID = 8;
+    private static final int ACCOUNT_TYPE = 16;
+    private static final int OWNER_TYPE = 17;
+    private static final int LIVE = 18;
+    private static final int NUMBER_LENGTH = 19;
+    private static final int NUMBER = 20;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    /**
+     * One record. Types are stored as fixed one-byte codes, 0 standing for none.
+     */
+    record Record(long id, String accountNumber, long customerId, int accountType, int ownerType) { }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final int capacity;
+    private final int numberSlotsAt;
+    private final int idSlotsAt;
+    private final int recordsAt;
+
+    private DirectoryFile(FileChannel channel, MappedByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slots = buffer.getInt(SLOTS_AT);
+        this.capacity = buffer.getInt(CAPACITY_AT);
+        this.numberSlotsAt = HEADER_BYTES;
+        this.idSlotsAt = numberSlotsAt + 4 * slots;
+        this.recordsAt = idSlotsAt + 4 * slots;
+    }
+
+    /**
+     * Create an empty file with room for {@code capacity} records, replacing any file there.
+     */
+    static DirectoryFile create(Path file, int capacity) throws IOException {
+        int slots = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) << 1;
+        long size = HEADER_BYTES + 8L * slots + (long) RECORD_BYTES * capacity;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Account directory capacity too large: " + capacity);
+        }
+        Files.deleteIfExists(file);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC_AT, MAGIC);
+            buffer.putInt(VERSION_AT, VERSION);
+            buffer.putInt(SLOTS_AT, slots);
+            buffer.putInt(CAPACITY_AT, capacity);
+            buffer.putInt(STATE_AT, STATE_OPEN);
+            return new DirectoryFile(channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Map an existing file, or return null when there is none or it is not a
+     * directory of this version.
+     */
+    static DirectoryFile open(Path file) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) < HEADER_BYTES) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (buffer.getInt(MAGIC_AT) != MAGIC || buffer.getInt(VERSION_AT) != VERSION) {
+                channel.close();
+                return null;
+            }
+            return new DirectoryFile(channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int records() {
+        return buffer.getInt(RECORDS_AT);
+    }
+
+    int live() {
+        return buffer.getInt(LIVE_AT);
+    }
+
+    /**
+     * Sum of the ids of the live records, wrapping; compared with the account table to detect drift.
+     */
+    long idSum() {
+        return buffer.getLong(ID_SUM_AT);
+    }
+
+    boolean closedCleanly() {
+        return buffer.getInt(STATE_AT) == STATE_CLOSED;
+    }
+
+    /**
+     * Mark the file as in use, so a crash before {@link #close} is noticed on the next open.
+     */
+    void markOpen() {
+        buffer.putInt(STATE_AT, STATE_OPEN);
+        buffer.force();
+    }
+
+    Record find(String accountNumber) {
+        byte[] key = accountNumber.getBytes(StandardCharsets.UTF_8);
+        if (key.length > NUMBER_BYTES) {
+            return null;
+        }
+        int mask = slots - 1;
+        for (int slot = mix(accountNumber.hashCode()) & mask, probes = 0; probes < slots;
+             slot = (slot + 1) & mask, probes++) {
+            int value = (int) INT.getAcquire(buffer, numberSlotsAt + 4 * slot);
+            if (value == EMPTY) {
+                return null;
+            }
+            if (value != REMOVED) {
+                int at = recordsAt + RECORD_BYTES * (value - 1);
+                if (buffer.get(at + LIVE) == 1 && numberEquals(at, key)) {
+                    return read(at);
+                }
+            }
+        }
+        return null;
+    }
+
+    Record find(long accountId) {
+        int mask = slots - 1;
+        for (int slot = mix(Long.hashCode(accountId)) & mask, probes = 0; probes < slots;
+             slot = (slot + 1) & mask, probes++) {
+            int value = (int) INT.getAcquire(buffer, idSlotsAt + 4 * slot);
+            if (value == EMPTY) {
+                return null;
+            }
+            if (value != REMOVED) {
+                int at = recordsAt + RECORD_BYTES * (value - 1);
+                if (buffer.get(at + LIVE) == 1 && buffer.getLong(at + ID) == accountId) {
+                    return read(at);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether {@link #put} has room for another record.
+     */
+    boolean hasRoom() {
+        return records() < capacity;
+    }
+
+    /**
+     * Add a record, replacing one with the same number or id. Returns false
+     * when the number does not fit a record; the caller keeps looking such
+     * accounts up elsewhere.
+     */
+    boolean put(Record record) {
+        byte[] key = record.accountNumber().getBytes(StandardCharsets.UTF_8);
+        if (key.length > NUMBER_BYTES) {
+            remove(record.id());
+            return false;
+        }
+        remove(record.accountNumber());
+        remove(record.id());
+        int position = records();
+        if (position >= capacity) {
+            throw new IllegalStateException("Account directory is full");
+        }
+        int at = recordsAt + RECORD_BYTES * position;
+        buffer.putLong(at + ID, record.id());
+        buffer.putLong(at + CUSTOMER_ID, record.customerId());
+        buffer.put(at + ACCOUNT_TYPE, (byte) record.accountType());
+        buffer.put(at + OWNER_TYPE, (byte) record.ownerType());
+        buffer.put(at + NUMBER_LENGTH, (byte) key.length);
+        buffer.put(at + NUMBER, key);
+        buffer.put(at + LIVE, (byte) 1);
+        buffer.putInt(RECORDS_AT, position + 1);
+
+        int mask = slots - 1;
+        int slot = mix(record.accountNumber().hashCode()) & mask;
+        while (slotValue(numberSlotsAt, slot) > 0) {
+            slot = (slot + 1) & mask;
+        }
+        INT.setRelease(buffer, numberSlotsAt + 4 * slot, position + 1);
+        slot = mix(Long.hashCode(record.id())) & mask;
+        while (slotValue(idSlotsAt, slot) > 0) {
+            slot = (slot + 1) & mask;
+        }
+        INT.setRelease(buffer, idSlotsAt + 4 * slot, position + 1);
+
+        buffer.putInt(LIVE_AT, live() + 1);
+        buffer.putLong(ID_SUM_AT, idSum() + record.id());
+        return true;
+    }
+
+    /**
+     * Remove the record with this number, if any.
+     */
+    void remove(String accountNumber) {
+        Record record = find(accountNumber);
+        if (record != null) {
+            remove(record.id());
+        }
+    }
+
+    /**
+     * Remove the record with this id, if any.
+     */
+    void remove(long accountId) {
+        int mask = slots - 1;
+        for (int slot = mix(Long.hashCode(accountId)) & mask, probes = 0; probes < slots;
+             slot = (slot + 1) & mask, probes++) {
+            int value = slotValue(idSlotsAt, slot);
+            if (value == EMPTY) {
+                return;
+            }
+            if (value == REMOVED) {
+                continue;
+            }
+            int at = recordsAt + RECORD_BYTES * (value - 1);
+            if (buffer.get(at + LIVE) == 1 && buffer.getLong(at + ID) == accountId) {
+                String accountNumber = number(at);
+                buffer.put(at + LIVE, (byte) 0);
+                INT.setRelease(buffer, idSlotsAt + 4 * slot, REMOVED);
+                clearNumberSlot(accountNumber, value);
+                buffer.putInt(LIVE_AT, live() - 1);
+                buffer.putLong(ID_SUM_AT, idSum() - accountId);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Visit every live record in the order they were added.
+     */
+    void forEach(Consumer<Record> action) {
+        int records = records();
+        for (int position = 0; position < records; position++) {
+            int at = recordsAt + RECORD_BYTES * position;
+            if (buffer.get(at + LIVE) == 1) {
+                action.accept(read(at));
+            }
+        }
+    }
+
+    /**
+     * Write changes through and mark the file as closed cleanly.
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        buffer.putInt(STATE_AT, STATE_CLOSED);
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * Release the file without marking it closed cleanly, as when it is being replaced.
+     */
+    void abandon() throws IOException {
+        channel.close();
+    }
+
+    private void clearNumberSlot(String accountNumber, int value) {
+        int mask = slots - 1;
+        for (int slot = mix(accountNumber.hashCode()) & mask, probes = 0; probes < slots;
+             slot = (slot + 1) & mask, probes++) {
+            int current = slotValue(numberSlotsAt, slot);
+            if (current == EMPTY) {
+                return;
+            }
+            if (current == value) {
+                INT.setRelease(buffer, numberSlotsAt + 4 * slot, REMOVED);
+                return;
+            }
+        }
+    }
+
+    private int slotValue(int tableAt, int slot) {
+        return (int) INT.getAcquire(buffer, tableAt + 4 * slot);
+    }
+
+    private Record read(int at) {
+        return new Record(buffer.getLong(at + ID), number(at), buffer.getLong(at + CUSTOMER_ID),
+            buffer.get(at + ACCOUNT_TYPE), buffer.get(at + OWNER_TYPE));
+    }
+
+    private String number(int at) {
+        byte[] bytes = new byte[buffer.get(at + NUMBER_LENGTH)];
+        buffer.get(at + NUMBER, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean numberEquals(int at, byte[] key) {
+        if (buffer.get(at + NUMBER_LENGTH) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(at + NUMBER + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Spread sequential ids and similar numbers over the table
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+}
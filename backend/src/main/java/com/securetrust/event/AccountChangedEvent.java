@@ -0,0 +1,12 @@
+package com.securetrust.event;
+
+/**
+ * Published when an account is opened or closed.
+ */
+public record AccountChangedEvent(String accountNumber, Long customerId, Change change) {
+
+    public enum Change {
+        OPENED,
+        CLOSED
+    }
+}
@@ -0,0 +1,13 @@
+package com.securetrust.event;
+
+/**
+ * Published when a customer is created, updated or deleted.
+ */
+public record CustomerChangedEvent(Long customerId, Change change) {
+
+    public enum Change {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+}
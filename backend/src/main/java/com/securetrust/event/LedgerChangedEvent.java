@@ -0,0 +1,15 @@
+package com.securetrust.event;
+
+import java.util.List;
+
+/**
+ * Published when balances or transactions of the given accounts change.
+ * Listeners that act on committed data should use
+ * {@code @TransactionalEventListener} so they only see successful commits.
+ */
+public record LedgerChangedEvent(List<String> accountNumbers) {
+
+    public static LedgerChangedEvent of(String... accountNumbers) {
+        return new LedgerChangedEvent(List.of(accountNumbers));
+    }
+}
@@ -1,8 +1,14 @@
 package com.securetrust.model;
 
+import com.securetrust.dictionary.AccountReferenceConverter;
+import com.securetrust.dictionary.CategoryConverter;
+import com.securetrust.dictionary.DescriptionConverter;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
+// Indexes are defined by the migrations in db/migration. Type, category,
+// kept descriptions and reference account are stored as small codes and
+// entered descriptions inline (V3).
 @Entity
 @Table(name = "transaction")
 public class Transaction {
@@ -14,15 +20,23 @@ public class Transaction {
     @JoinColumn(name = "account_id", nullable = false)
     private Account account;
 
-    @Enumerated(EnumType.STRING)
+    @Convert(converter = TransactionTypeConverter.class)
     @Column(nullable = false)
     private TransactionType type;
 
     @Column(nullable = false)
     private Double amount;
 
+    // Entered text; null when the type's default text applies, see getDescription()
     private String description;
 
+    // Default text kept when the reference account was closed; written by LedgerDictionary only
+    @Convert(converter = DescriptionConverter.class)
+    @Column(name = "description_id", insertable = false, updatable = false)
+    private String keptDescription;
+
+    @Convert(converter = CategoryConverter.class)
+    @Column(name = "category_id")
     private String category;
 
     @Column(name = "transaction_date")
@@ -32,7 +46,8 @@ public class Transaction {
     private Double balanceAfter;
 
     // Reference account for transfers
-    @Column(name = "reference_account")
+    @Convert(converter = AccountReferenceConverter.class)
+    @Column(name = "reference_account_id")
     private String referenceAccount;
 
     // Getters and Setters
@@ -69,7 +84,8 @@ public class Transaction {
     }
 
     public String getDescription() {
-        return description;
+        String text = description != null ? description : keptDescription;
+        return type != null ? type.describe(text, referenceAccount) : text;
     }
 
     public void setDescription(String description) {
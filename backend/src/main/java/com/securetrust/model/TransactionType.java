@@ -1,19 +1,77 @@
 package com.securetrust.model;
 
 public enum TransactionType {
-    DEPOSIT("Deposit"),
-    WITHDRAWAL("Withdrawal"),
-    TRANSFER_OUT("Transfer Out"),
-    TRANSFER_IN("Transfer In"),
-    INTEREST("Interest");
+    DEPOSIT("Deposit", 1),
+    WITHDRAWAL("Withdrawal", 2),
+    TRANSFER_OUT("Transfer Out", 3),
+    TRANSFER_IN("Transfer In", 4),
+    INTEREST("Interest", 5);
+
+    /**
+     * Codes of the credit types, for SQL {@code IN} lists over the {@code type} column.
+     */
+    public static final String CREDIT_CODES = "1, 4, 5";
+
+    private static final TransactionType[] BY_CODE = new TransactionType[6];
+
+    static {
+        for (TransactionType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
 
     private final String displayName;
+    private final int code;
 
-    TransactionType(String displayName) {
+    TransactionType(String displayName, int code) {
         this.displayName = displayName;
+        this.code = code;
     }
 
     public String getDisplayName() {
         return displayName;
     }
+
+    /**
+     * Stored value of the {@code type} column. Codes are persisted and must never change.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    public static TransactionType fromCode(int code) {
+        TransactionType type = code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown transaction type code " + code);
+        }
+        return type;
+    }
+
+    /**
+     * Whether this type adds to the account balance.
+     */
+    public boolean isCredit() {
+        return this == DEPOSIT || this == TRANSFER_IN || this == INTEREST;
+    }
+
+    /**
+     * Text shown when a transaction has no description of its own, or
+     * {@code null} when the type has none. Default texts are not stored.
+     */
+    public String defaultDescription(String referenceAccount) {
+        return switch (this) {
+            case DEPOSIT -> "Deposit";
+            case WITHDRAWAL -> "Withdrawal";
+            case TRANSFER_OUT -> referenceAccount != null ? "Transfer to " + referenceAccount : null;
+            case TRANSFER_IN -> referenceAccount != null ? "Transfer from " + referenceAccount : null;
+            case INTEREST -> null;
+        };
+    }
+
+    /**
+     * {@code description}, or the default text when it is {@code null}.
+     */
+    public String describe(String description, String referenceAccount) {
+        return description != null ? description : defaultDescription(referenceAccount);
+    }
 }
@@ -0,0 +1,21 @@
+package com.securetrust.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores a {@link TransactionType} as its one-byte {@link TransactionType#getCode() code}.
+ */
+@Converter
+public class TransactionTypeConverter implements AttributeConverter<TransactionType, Byte> {
+
+    @Override
+    public Byte convertToDatabaseColumn(TransactionType type) {
+        return type != null ? (byte) type.getCode() : null;
+    }
+
+    @Override
+    public TransactionType convertToEntityAttribute(Byte code) {
+        return code != null ? TransactionType.fromCode(code) : null;
+    }
+}
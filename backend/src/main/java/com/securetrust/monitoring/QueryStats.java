@@ -0,0 +1,145 @@
+package com.securetrust.monitoring;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * JDBC statistics for a single unit of work (normally one HTTP request).
+ * Counts statements, rows fetched and time spent inside the driver, and keeps
+ * a per-SQL execution count so repeated identical statements (the usual N+1
+ * signature) can be reported.
+ *
+ * Statements run inside {@link #chunk} (one per chunk of a keyset-paginated
+ * read) count towards the totals but not towards repeats or the budget.
+ *
+ * The current instance is bound to the calling thread by {@link #begin()}.
+ * Counters are thread-safe so work fanned out to other threads can report
+ * into the same instance via {@link #bind(QueryStats)}.
+ */
+public final class QueryStats {
+
+    private static final ThreadLocal<QueryStats> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> IN_CHUNK = new ThreadLocal<>();
+
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder chunkStatements = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder jdbcNanos = new LongAdder();
+    private final Map<String, LongAdder> executionsBySql = new ConcurrentHashMap<>();
+
+    /**
+     * Start collecting statistics on the current thread.
+     */
+    public static QueryStats begin() {
+        QueryStats stats = new QueryStats();
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    /**
+     * Stop collecting on the current thread and return what was collected, or null.
+     */
+    public static QueryStats end() {
+        QueryStats stats = CURRENT.get();
+        CURRENT.remove();
+        return stats;
+    }
+
+    /**
+     * Statistics bound to the current thread, or null when nothing is being collected.
+     */
+    public static QueryStats current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind an existing instance to the current thread (or clear it when null).
+     */
+    public static void bind(QueryStats stats) {
+        if (stats == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(stats);
+        }
+    }
+
+    /**
+     * Run one chunk of a keyset-paginated read. Issuing its statements once per
+     * chunk is the design, not an N+1, so they are not reported as repeats.
+     */
+    public static <T> T chunk(Supplier<T> read) {
+        boolean outer = IN_CHUNK.get() != null;
+        IN_CHUNK.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            if (!outer) {
+                IN_CHUNK.remove();
+            }
+        }
+    }
+
+    void recordExecution(String sql, long nanos) {
+        statements.increment();
+        jdbcNanos.add(nanos);
+        if (IN_CHUNK.get() != null) {
+            chunkStatements.increment();
+        } else if (sql != null) {
+            executionsBySql.computeIfAbsent(sql, k -> new LongAdder()).increment();
+        }
+    }
+
+    void recordRow() {
+        rows.increment();
+    }
+
+    void recordFetchNanos(long nanos) {
+        jdbcNanos.add(nanos);
+    }
+
+    public long getStatementCount() {
+        return statements.sum();
+    }
+
+    /**
+     * Statements outside {@link #chunk}s, which are what the budget applies to.
+     */
+    public long getBudgetedStatementCount() {
+        return statements.sum() - chunkStatements.sum();
+    }
+
+    public long getRowCount() {
+        return rows.sum();
+    }
+
+    public long getJdbcNanos() {
+        return jdbcNanos.sum();
+    }
+
+    /**
+     * Statements executed at least {@code threshold} times, most frequent first.
+     */
+    public List<Map.Entry<String, Long>> repeatedStatements(int threshold) {
+        return executionsBySql.entrySet().stream()
+            .filter(e -> e.getValue().sum() >= threshold)
+            .map(e -> Map.entry(e.getKey(), e.getValue().sum()))
+            .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+            .toList();
+    }
+
+    String describeRepeats(int threshold) {
+        var repeats = repeatedStatements(threshold);
+        if (repeats.isEmpty()) {
+            return "No repeated statements.";
+        }
+        StringBuilder sb = new StringBuilder("Repeated statements:");
+        for (var e : repeats) {
+            sb.append("\n  ").append(e.getValue()).append("x ").append(e.getKey());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,151 @@
+package com.securetrust.monitoring;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * DataSource decorator that reports every statement executed through it to the
+ * {@link QueryStats} bound to the calling thread. When no statistics are being
+ * collected the proxies only pay for a thread-local lookup.
+ */
+public class QueryStatsDataSource extends DelegatingDataSource {
+
+    public QueryStatsDataSource(DataSource target) {
+        super(target);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrapConnection(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrapConnection(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    private static Connection wrapConnection(Connection target) {
+        return proxy(Connection.class, target, new ConnectionHandler(target));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Object target, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(QueryStatsDataSource.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private static final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return proxy;
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+
+            Object result = QueryStatsDataSource.invoke(target, method, args);
+            if (result instanceof CallableStatement cs) {
+                return proxy(CallableStatement.class, cs, new StatementHandler(cs, (String) args[0]));
+            }
+            if (result instanceof PreparedStatement ps) {
+                return proxy(PreparedStatement.class, ps, new StatementHandler(ps, (String) args[0]));
+            }
+            if (result instanceof Statement st) {
+                return proxy(Statement.class, st, new StatementHandler(st, null));
+            }
+            return result;
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final String preparedSql;
+
+        StatementHandler(Statement target, String preparedSql) {
+            this.target = target;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            QueryStats stats = QueryStats.current();
+            if (stats == null || !name.startsWith("execute")) {
+                Object result = QueryStatsDataSource.invoke(target, method, args);
+                return wrapResultSet(result, stats);
+            }
+
+            String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : preparedSql;
+            long start = System.nanoTime();
+            try {
+                Object result = QueryStatsDataSource.invoke(target, method, args);
+                return wrapResultSet(result, stats);
+            } finally {
+                stats.recordExecution(sql, System.nanoTime() - start);
+            }
+        }
+
+        private static Object wrapResultSet(Object result, QueryStats stats) {
+            if (stats != null && result instanceof ResultSet rs) {
+                return proxy(ResultSet.class, rs, new ResultSetHandler(rs, stats));
+            }
+            return result;
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final QueryStats stats;
+
+        ResultSetHandler(ResultSet target, QueryStats stats) {
+            this.target = target;
+            this.stats = stats;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!"next".equals(method.getName())) {
+                return QueryStatsDataSource.invoke(target, method, args);
+            }
+            long start = System.nanoTime();
+            boolean hasRow = target.next();
+            stats.recordFetchNanos(System.nanoTime() - start);
+            if (hasRow) {
+                stats.recordRow();
+            }
+            return hasRow;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.securetrust.monitoring;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Collects {@link QueryStats} for every HTTP request and logs a summary at
+ * DEBUG, which application.yml enables outside the {@code prod} profile.
+ * The totals, including statements issued while the view renders, are also
+ * sent as HTTP trailers ({@code X-Query-Count}, {@code X-Query-Rows},
+ * {@code X-Query-Time-Micros}) to clients that send {@code TE: trailers}.
+ * Requests that execute the same statement {@code repeat-threshold} times or
+ * more are reported as suspected N+1s; requests over {@code budget} statements
+ * are reported as budget violations. The per-chunk queries of streamed
+ * tables are exempt from both (see {@link QueryStats#chunk}).
+ */
+@Component
+@ConditionalOnProperty(name = "securetrust.query-stats.enabled", havingValue = "true", matchIfMissing = true)
+public class QueryStatsFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryStatsFilter.class);
+
+    public static final String QUERY_COUNT_TRAILER = "X-Query-Count";
+    public static final String ROW_COUNT_TRAILER = "X-Query-Rows";
+    public static final String JDBC_TIME_TRAILER = "X-Query-Time-Micros";
+
+    private final int repeatThreshold;
+    private final int budget;
+
+    public QueryStatsFilter(@Value("${securetrust.query-stats.repeat-threshold:5}") int repeatThreshold,
+                            @Value("${securetrust.query-stats.budget:50}") int budget) {
+        this.repeatThreshold = repeatThreshold;
+        this.budget = budget;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        QueryStats stats = QueryStats.begin();
+        if (acceptsTrailers(request)) {
+            // Read when the response completes, after the view has rendered
+            response.setTrailerFields(() -> Map.of(
+                QUERY_COUNT_TRAILER, Long.toString(stats.getStatementCount()),
+                ROW_COUNT_TRAILER, Long.toString(stats.getRowCount()),
+                JDBC_TIME_TRAILER, Long.toString(stats.getJdbcNanos() / 1_000)));
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            QueryStats.end();
+            report(request, stats);
+        }
+    }
+
+    private static boolean acceptsTrailers(HttpServletRequest request) {
+        String te = request.getHeader("TE");
+        return te != null && te.toLowerCase(Locale.ROOT).contains("trailers")
+            && !"HTTP/1.0".equals(request.getProtocol());
+    }
+
+    private void report(HttpServletRequest request, QueryStats stats) {
+        long count = stats.getStatementCount();
+        if (count == 0) {
+            return;
+        }
+        String target = request.getMethod() + " " + request.getRequestURI();
+        log.debug("{}: {} statements, {} rows, {} ms in JDBC",
+            target, count, stats.getRowCount(), stats.getJdbcNanos() / 1_000_000);
+
+        var repeats = stats.repeatedStatements(repeatThreshold);
+        if (!repeats.isEmpty()) {
+            log.warn("Suspected N+1 in {}: {}", target, stats.describeRepeats(repeatThreshold));
+        }
+        long budgeted = stats.getBudgetedStatementCount();
+        if (budgeted > budget) {
+            log.warn("{} exceeded its query budget: {} statements (budget {})", target, budgeted, budget);
+        }
+    }
+}
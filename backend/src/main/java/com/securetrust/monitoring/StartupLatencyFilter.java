@@ -0,0 +1,120 @@
+package com.securetrust.monitoring;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records request latency during the first {@code window} after the
+ * application starts accepting traffic, per handler mapping, and logs
+ * percentiles once the window has passed. Used to compare startups with and
+ * without the JIT warm-up.
+ */
+@Component
+public class StartupLatencyFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupLatencyFilter.class);
+
+    private static final int MAX_SAMPLES = 100_000;
+
+    /**
+     * Latency of one route in the window, in milliseconds.
+     */
+    public record Summary(int count, double p50, double p95, double p99, double max) { }
+
+    private final long windowNanos;
+    private final Map<String, Samples> samples = new ConcurrentHashMap<>();
+    private final AtomicBoolean reported = new AtomicBoolean();
+    private volatile long readyAt;
+
+    public StartupLatencyFilter(@Value("${securetrust.warm-up.latency-window:PT1M}") Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    @EventListener
+    public void onReadiness(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC && readyAt == 0) {
+            readyAt = System.nanoTime();
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long ready = readyAt;
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            long end = System.nanoTime();
+            if (ready != 0 && start - ready < windowNanos) {
+                Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                String route = request.getMethod() + " " + (pattern != null ? pattern : request.getRequestURI());
+                samples.computeIfAbsent(route, key -> new Samples()).add(end - start);
+            } else if (ready != 0 && reported.compareAndSet(false, true)) {
+                summaries().forEach((route, summary) -> log.info(
+                    "First {} s after ready, {}: {} requests, p50 {} ms, p95 {} ms, p99 {} ms, max {} ms",
+                    windowNanos / 1_000_000_000, route, summary.count(), summary.p50(), summary.p95(),
+                    summary.p99(), summary.max()));
+            }
+        }
+    }
+
+    /**
+     * Percentiles per route recorded so far, ordered by route.
+     */
+    public Map<String, Summary> summaries() {
+        Map<String, Summary> result = new TreeMap<>();
+        samples.forEach((route, recorded) -> result.put(route, recorded.summary()));
+        return result;
+    }
+
+    private static final class Samples {
+
+        private long[] nanos = new long[64];
+        private int size;
+
+        synchronized void add(long value) {
+            if (size == MAX_SAMPLES) {
+                return;
+            }
+            if (size == nanos.length) {
+                nanos = Arrays.copyOf(nanos, Math.min(size * 2, MAX_SAMPLES));
+            }
+            nanos[size++] = value;
+        }
+
+        synchronized Summary summary() {
+            long[] sorted = Arrays.copyOf(nanos, size);
+            Arrays.sort(sorted);
+            return new Summary(size, millis(sorted, 0.50), millis(sorted, 0.95), millis(sorted, 0.99),
+                millis(sorted, 1.0));
+        }
+
+        private static double millis(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return Math.round(sorted[Math.max(0, index)] / 10_000.0) / 100.0;
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package com.securetrust.offboarding;
+
+import com.securetrust.dictionary.LedgerDictionary;
+import com.securetrust.event.AccountChangedEvent;
+import com.securetrust.event.CustomerChangedEvent;
+import com.securetrust.event.LedgerChangedEvent;
+import com.securetrust.model.TransactionType;
+import com.securetrust.service.ConcurrencyLimiter;
+import com.securetrust.sharding.Shards;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Closes accounts and deletes customers in the background, with set-based
+ * statements instead of loading and deleting every entity through JPA.
+ *
+ * Submitting marks the accounts as closing and then checks the usual rules
+ * (an account with a positive balance cannot be closed, nor a customer whose
+ * accounts hold money in total). From the mark on, {@link #checkOpen} makes
+ * deposits, withdrawals, transfers and interest refuse the accounts, and
+ * {@link #checkCustomerOpen} stops new accounts for the customer. An operation
+ * that passed {@link #checkOpen} before the mark counts as in flight on the
+ * account until its transaction completes. Jobs run one at a time on a single
+ * thread. For each account the job:
+ *
+ * <ol>
+ *   <li>waits until no operation is in flight on the account;</li>
+ *   <li>in one short transaction, locks the account row and checks that its
+ *       balance and transaction count are still the ones the rules were
+ *       checked against. Nothing has been deleted yet, so an account that
+ *       changed is left as it was and the job fails;</li>
+ *   <li>deletes the account's transactions, {@code chunk-rows} per statement;</li>
+ *   <li>stores the default text of the transfers of other accounts that
+ *       reference it, and clears those references, in chunks likewise;</li>
+ *   <li>in one short transaction, locks the account row again, checks that
+ *       the balance is unchanged and that no transaction belongs to or
+ *       references the account any more, and deletes its standing orders and
+ *       then the account. An account that changed is kept and the job fails;
+ *       submitting it again deletes what was added.</li>
+ * </ol>
+ *
+ * Every statement commits on its own and runs as batch work of the
+ * {@link ConcurrencyLimiter}, waiting while interactive traffic is heavy,
+ * with {@code chunk-pause} between statements, so other accounts are never
+ * blocked for longer than one chunk. A customer is deleted after its last
+ * account. Deleted transactions are not archived: like the JPA delete this
+ * replaces, the live rows go, and months already in the archive keep theirs.
+ *
+ * On a sharded ledger each step runs on the account's shard, except that the
+ * references to it are cleared on every shard. An account with a transfer
+ * between shards still in doubt (see {@code CrossShardTransfers}), either
+ * held on it or staged for it, fails both checks like an account that changed.
+ *
+ * A job cut short by shutdown after the check leaves an empty account with
+ * part of its history deleted; submitting it again finishes the job. Finished
+ * jobs are kept for {@link #jobs()} up to {@code keep-jobs}.
+ */
+@Component
+public class Offboarding {
+
+    private static final Logger log = LoggerFactory.getLogger(Offboarding.class);
+
+    private static final Duration BUSY_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration IN_FLIGHT_POLL = Duration.ofMillis(10);
+
+    public enum Kind { ACCOUNT, CUSTOMER }
+
+    public enum State { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    /**
+     * Progress of one job. {@code transactions} is the number of rows the
+     * accounts held when the job started, {@code transactionsDeleted} how many
+     * of them are gone so far.
+     */
+    public record Job(long id, Kind kind, String target, State state, int accounts, int accountsClosed,
+                      long transactions, long transactionsDeleted, long referencesCleared,
+                      LocalDateTime submittedAt, LocalDateTime finishedAt, String error) { }
+
+    private record AccountRef(long id, String accountNumber, double balance) { }
+
+    private static final String ACCOUNT_SQL = "SELECT id, account_number, balance FROM account ";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final LedgerDictionary dictionary;
+    private final Shards shards;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int chunkRows;
+    private final Duration chunkPause;
+    private final int keepJobs;
+    private final ExecutorService executor;
+
+    private final Set<String> closingAccounts = ConcurrentHashMap.newKeySet();
+    // Operations past checkOpen whose transaction has not completed, by account; marks are made
+    // and checked inside compute on the account's key, so the two never interleave
+    private final Map<String, Integer> inFlight = new ConcurrentHashMap<>();
+    private final Set<Long> closingCustomers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong jobIds = new AtomicLong();
+    // Insertion ordered; guarded by itself
+    private final Map<Long, Progress> jobs = new LinkedHashMap<>();
+    private volatile boolean running = true;
+
+    public Offboarding(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                       LedgerDictionary dictionary, Shards shards, ConcurrencyLimiter concurrencyLimiter,
+                       ApplicationEventPublisher eventPublisher,
+                       @Value("${securetrust.offboarding.chunk-rows:1000}") int chunkRows,
+                       @Value("${securetrust.offboarding.chunk-pause:PT0.01S}") Duration chunkPause,
+                       @Value("${securetrust.offboarding.keep-jobs:100}") int keepJobs) {
+        if (chunkRows < 1 || keepJobs < 1) {
+            throw new IllegalArgumentException("securetrust.offboarding.chunk-rows and keep-jobs must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.dictionary = dictionary;
+        this.shards = shards;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.eventPublisher = eventPublisher;
+        this.chunkRows = chunkRows;
+        this.chunkPause = chunkPause;
+        this.keepJobs = keepJobs;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("offboarding-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newSingleThreadExecutor(threadFactory);
+    }
+
+    /**
+     * Reject operations on an account that is being closed. Called inside the
+     * operation's transaction, which then holds off closing the account until
+     * it completes.
+     */
+    public void checkOpen(String accountNumber) {
+        if (!enter(accountNumber)) {
+            throw new IllegalArgumentException("Account " + accountNumber + " is being closed");
+        }
+    }
+
+    /**
+     * Like {@link #checkOpen}, but returns false instead of throwing.
+     */
+    public boolean enter(String accountNumber) {
+        boolean[] open = {false};
+        inFlight.compute(accountNumber, (number, count) -> {
+            if (closingAccounts.contains(number)) {
+                return count;
+            }
+            open[0] = true;
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                return count;
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    inFlight.computeIfPresent(number, (key, left) -> left > 1 ? left - 1 : null);
+                }
+            });
+            return count == null ? 1 : count + 1;
+        });
+        return open[0];
+    }
+
+    /**
+     * Reject new accounts for a customer that is being deleted.
+     */
+    public void checkCustomerOpen(Long customerId) {
+        if (customerId != null && closingCustomers.contains(customerId)) {
+            throw new IllegalArgumentException("Customer is being deleted");
+        }
+    }
+
+    /**
+     * Check that an account may be closed and start closing it.
+     */
+    public Job closeAccount(String accountNumber) {
+        int shard = shards.ofAccount(accountNumber);
+        // Marked first, so no operation starts on a balance the rules have already passed
+        if (!mark(accountNumber)) {
+            throw new IllegalStateException("Account " + accountNumber + " is already being closed");
+        }
+        List<AccountRef> found = shards.on(shard, () -> jdbcTemplate.query(ACCOUNT_SQL + "WHERE account_number = ?",
+            (rs, row) -> new AccountRef(rs.getLong(1), rs.getString(2), rs.getDouble(3)), accountNumber));
+        if (found.isEmpty() || found.get(0).balance() > 0) {
+            closingAccounts.remove(accountNumber);
+            throw new IllegalArgumentException(found.isEmpty() ? "Account not found"
+                : "Cannot close account with positive balance. Please withdraw funds first.");
+        }
+        AccountRef account = found.get(0);
+        Long customerId = shards.on(shard, () -> jdbcTemplate.queryForObject(
+            "SELECT customer_id FROM account WHERE id = ?", Long.class, account.id()));
+        return submit(new Progress(Kind.ACCOUNT, accountNumber, null, customerId, List.of(account)));
+    }
+
+    /**
+     * Check that a customer may be deleted and start closing its accounts and deleting it.
+     */
+    public Job deleteCustomer(Long customerId) {
+        int shard = shards.ofCustomerId(customerId);
+        Integer customers = shards.on(shard, () -> jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM customer WHERE id = ?", Integer.class, customerId));
+        if (customers == null || customers == 0) {
+            throw new IllegalArgumentException("Customer not found");
+        }
+        if (!closingCustomers.add(customerId)) {
+            throw new IllegalStateException("Customer is already being deleted");
+        }
+        // Marked first, so no account can be opened after this list is read
+        List<String> numbers = shards.on(shard, () -> jdbcTemplate.queryForList(
+            "SELECT account_number FROM account WHERE customer_id = ?", String.class, customerId));
+        List<String> marked = new ArrayList<>();
+        for (String number : numbers) {
+            if (!mark(number)) {
+                closingAccounts.removeAll(marked);
+                closingCustomers.remove(customerId);
+                throw new IllegalStateException("Account " + number + " is already being closed");
+            }
+            marked.add(number);
+        }
+        // Balances read after the marks, as in closeAccount
+        List<AccountRef> accounts = shards.on(shard, () -> jdbcTemplate.query(
+            ACCOUNT_SQL + "WHERE customer_id = ? ORDER BY id",
+            (rs, row) -> new AccountRef(rs.getLong(1), rs.getString(2), rs.getDouble(3)), customerId));
+        if (accounts.stream().mapToDouble(AccountRef::balance).sum() > 0) {
+            closingAccounts.removeAll(marked);
+            closingCustomers.remove(customerId);
+            throw new IllegalArgumentException("Cannot delete customer with account balance. Please close all accounts first.");
+        }
+        return submit(new Progress(Kind.CUSTOMER, String.valueOf(customerId), customerId, customerId, accounts));
+    }
+
+    /**
+     * Queued, running and recently finished jobs, oldest first.
+     */
+    public List<Job> jobs() {
+        synchronized (jobs) {
+            return jobs.values().stream().map(Progress::snapshot).toList();
+        }
+    }
+
+    public Job job(long id) {
+        synchronized (jobs) {
+            Progress progress = jobs.get(id);
+            if (progress == null) {
+                throw new IllegalArgumentException("Offboarding job not found");
+            }
+            return progress.snapshot();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // Stops at the next chunk; no interrupt, which would close the embedded database
+        running = false;
+        executor.shutdown();
+    }
+
+    private boolean mark(String accountNumber) {
+        boolean[] added = {false};
+        inFlight.compute(accountNumber, (number, count) -> {
+            added[0] = closingAccounts.add(number);
+            return count;
+        });
+        return added[0];
+    }
+
+    private Job submit(Progress progress) {
+        synchronized (jobs) {
+            jobs.put(progress.id, progress);
+            trimJobs();
+        }
+        executor.execute(() -> run(progress));
+        return progress.snapshot();
+    }
+
+    private void trimJobs() {
+        var finished = jobs.values().iterator();
+        int excess = jobs.size() - keepJobs;
+        while (excess > 0 && finished.hasNext()) {
+            Progress oldest = finished.next();
+            if (oldest.state == State.COMPLETED || oldest.state == State.FAILED) {
+                finished.remove();
+                excess--;
+            }
+        }
+    }
+
+    private void run(Progress progress) {
+        progress.state = State.RUNNING;
+        long start = System.nanoTime();
+        List<String> remaining = new ArrayList<>(progress.accounts.stream().map(AccountRef::accountNumber).toList());
+        try {
+            for (AccountRef account : progress.accounts) {
+                long rows = shards.on(shards.ofAccountId(account.id()), () -> count(account.id()));
+                progress.counted.put(account.id(), rows);
+                progress.transactions += rows;
+            }
+            for (AccountRef account : progress.accounts) {
+                close(account, progress);
+                closingAccounts.remove(account.accountNumber());
+                remaining.remove(account.accountNumber());
+                progress.accountsClosed++;
+                eventPublisher.publishEvent(new AccountChangedEvent(account.accountNumber(), progress.customerId,
+                    AccountChangedEvent.Change.CLOSED));
+                eventPublisher.publishEvent(LedgerChangedEvent.of(account.accountNumber()));
+            }
+            if (progress.deletedCustomer != null) {
+                shards.run(shards.ofCustomerId(progress.deletedCustomer),
+                    () -> deleteCustomerRow(progress.deletedCustomer));
+                eventPublisher.publishEvent(new CustomerChangedEvent(progress.deletedCustomer,
+                    CustomerChangedEvent.Change.DELETED));
+            }
+            progress.state = State.COMPLETED;
+            log.info("Offboarding job {} ({} {}) finished: {} accounts, {} transactions, {} references in {} ms",
+                progress.id, progress.kind, progress.target, progress.accountsClosed, progress.transactionsDeleted,
+                progress.referencesCleared, (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            progress.error = e.getMessage();
+            progress.state = State.FAILED;
+            log.warn("Offboarding job {} ({} {}) failed", progress.id, progress.kind, progress.target, e);
+        } finally {
+            closingAccounts.removeAll(remaining);
+            if (progress.deletedCustomer != null) {
+                closingCustomers.remove(progress.deletedCustomer);
+            }
+            progress.finishedAt = LocalDateTime.now();
+        }
+    }
+
+    private void close(AccountRef account, Progress progress) {
+        int shard = shards.ofAccountId(account.id());
+        while (inFlight.containsKey(account.accountNumber())) {
+            if (!running) {
+                throw new IllegalStateException("Stopped by shutdown");
+            }
+            sleep(IN_FLIGHT_POLL);
+        }
+        // With no operation in flight and none admitted, the account cannot change after this check
+        String problem = shards.on(shard, () -> admitted(() -> transactionTemplate.execute(status -> {
+            List<Double> balance = jdbcTemplate.queryForList(
+                "SELECT balance FROM account WHERE id = ? FOR UPDATE", Double.class, account.id());
+            if (balance.isEmpty()) {
+                return "Account " + account.accountNumber() + " no longer exists";
+            }
+            if (balance.get(0) != account.balance() || count(account.id()) != progress.counted.get(account.id())
+                    || transfersInDoubt(account.accountNumber())) {
+                return "Account " + account.accountNumber() + " changed while it was being closed; nothing was deleted";
+            }
+            return null;
+        })));
+        if (problem != null) {
+            throw new IllegalStateException(problem);
+        }
+
+        int deleted;
+        do {
+            deleted = shards.on(shard, () -> chunk(() -> jdbcTemplate.update(
+                "DELETE FROM transaction WHERE account_id = ? LIMIT " + chunkRows, account.id())));
+            progress.transactionsDeleted += deleted;
+        } while (deleted == chunkRows);
+
+        for (int referencing = 0; referencing < shards.count(); referencing++) {
+            int on = referencing;
+            for (TransactionType type : List.of(TransactionType.TRANSFER_OUT, TransactionType.TRANSFER_IN)) {
+                int kept;
+                do {
+                    kept = shards.on(on, () -> chunk(() -> dictionary.keepTransferDescriptions(
+                        account.id(), account.accountNumber(), type, chunkRows)));
+                    progress.referencesCleared += kept;
+                } while (kept == chunkRows);
+            }
+            int cleared;
+            do {
+                cleared = shards.on(on, () -> chunk(() -> jdbcTemplate.update(
+                    "UPDATE transaction SET reference_account_id = NULL WHERE reference_account_id = ? LIMIT "
+                        + chunkRows, account.id())));
+                progress.referencesCleared += cleared;
+            } while (cleared == chunkRows);
+        }
+
+        problem = shards.on(shard, () -> admitted(() -> transactionTemplate.execute(status -> {
+            List<Double> balance = jdbcTemplate.queryForList(
+                "SELECT balance FROM account WHERE id = ? FOR UPDATE", Double.class, account.id());
+            if (balance.isEmpty()) {
+                return null;
+            }
+            Long rows = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM transaction WHERE account_id = ? OR reference_account_id = ?",
+                Long.class, account.id(), account.id());
+            if (balance.get(0) != account.balance() || rows == null || rows > 0
+                    || transfersInDoubt(account.accountNumber())) {
+                return "Account " + account.accountNumber() + " changed while it was being closed; "
+                    + "its history is partly deleted";
+            }
+            jdbcTemplate.update("DELETE FROM standing_order WHERE from_account_id = ? OR to_account_id = ?",
+                account.id(), account.id());
+            jdbcTemplate.update("DELETE FROM account WHERE id = ?", account.id());
+            return null;
+        })));
+        if (problem != null) {
+            throw new IllegalStateException(problem);
+        }
+        dictionary.forgetAccount(account.id(), account.accountNumber());
+    }
+
+    private void deleteCustomerRow(long customerId) {
+        String problem = admitted(() -> transactionTemplate.execute(status -> {
+            Integer accounts = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM account WHERE customer_id = ?", Integer.class, customerId);
+            if (accounts != null && accounts > 0) {
+                status.setRollbackOnly();
+                return "Customer has an account opened while it was being deleted";
+            }
+            jdbcTemplate.update("DELETE FROM customer WHERE id = ?", customerId);
+            return null;
+        }));
+        if (problem != null) {
+            throw new IllegalStateException(problem);
+        }
+    }
+
+    // Transfers between shards that may still debit or credit the account
+    private boolean transfersInDoubt(String accountNumber) {
+        Long pending = jdbcTemplate.queryForObject(
+            "SELECT (SELECT COUNT(*) FROM transfer_credit WHERE to_account = ?) "
+                + "+ (SELECT COUNT(*) FROM transfer_log WHERE from_account = ? AND state = 'PREPARED')",
+            Long.class, accountNumber, accountNumber);
+        return pending != null && pending > 0;
+    }
+
+    private long count(long accountId) {
+        Long rows = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM transaction WHERE account_id = ?", Long.class, accountId);
+        return rows != null ? rows : 0;
+    }
+
+    // One statement as batch work, then a pause for the traffic it may have held up
+    private int chunk(Supplier<Integer> statement) {
+        int rows = admitted(statement);
+        sleep(chunkPause);
+        return rows;
+    }
+
+    private <T> T admitted(Supplier<T> work) {
+        while (true) {
+            if (!running) {
+                throw new IllegalStateException("Stopped by shutdown");
+            }
+            try {
+                return concurrencyLimiter.call(ConcurrencyLimiter.Lane.BATCH, work);
+            } catch (ConcurrencyLimiter.LimitExceededException busy) {
+                sleep(BUSY_BACKOFF);
+            }
+        }
+    }
+
+    private static void sleep(Duration pause) {
+        if (pause.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(pause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        }
+    }
+
+    private final class Progress {
+
+        final long id = jobIds.incrementAndGet();
+        final Kind kind;
+        final String target;
+        final Long deletedCustomer;
+        final Long customerId;
+        final List<AccountRef> accounts;
+        // Transaction rows per account id when the job started, checked before anything is deleted
+        final Map<Long, Long> counted = new ConcurrentHashMap<>();
+        final LocalDateTime submittedAt = LocalDateTime.now();
+        volatile State state = State.QUEUED;
+        volatile int accountsClosed;
+        volatile long transactions;
+        volatile long transactionsDeleted;
+        volatile long referencesCleared;
+        volatile LocalDateTime finishedAt;
+        volatile String error;
+
+        Progress(Kind kind, String target, Long deletedCustomer, Long customerId, List<AccountRef> accounts) {
+            this.kind = kind;
+            this.target = target;
+            this.deletedCustomer = deletedCustomer;
+            this.customerId = customerId;
+            this.accounts = accounts;
+        }
+
+        Job snapshot() {
+            return new Job(id, kind, target, state, accounts.size(), accountsClosed, transactions,
+                transactionsDeleted, referencesCleared, submittedAt, finishedAt, error);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.securetrust.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Appends events as JSON lines to {@code <directory>/transactions-<date>.jsonl}
+ * and forces each batch to disk before it counts as delivered.
+ */
+@Component
+@ConditionalOnProperty(name = "securetrust.outbox.sink", havingValue = "file", matchIfMissing = true)
+public class FileOutboxSink implements OutboxSink {
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+
+    public FileOutboxSink(ObjectMapper objectMapper,
+                          @Value("${securetrust.outbox.file.directory:./outbox}") String directory) {
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(directory);
+    }
+
+    @Override
+    public String name() {
+        return "file:" + directory;
+    }
+
+    @Override
+    public void deliver(List<OutboxEvent> batch) throws IOException {
+        StringBuilder lines = new StringBuilder(batch.size() * 256);
+        for (OutboxEvent event : batch) {
+            lines.append(objectMapper.writeValueAsString(event)).append('\n');
+        }
+        Files.createDirectories(directory);
+        Path file = directory.resolve("transactions-" + LocalDate.now() + ".jsonl");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.securetrust.outbox;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import java.time.LocalDateTime;
+
+/**
+ * One outbox row as handed to a sink. {@code eventId} increases with every
+ * event of an account, so consumers can drop the duplicates that
+ * at-least-once delivery may produce. {@code payload} is JSON.
+ */
+public record OutboxEvent(long eventId, String account, String type, LocalDateTime createdAt,
+                          @JsonRawValue String payload) { }
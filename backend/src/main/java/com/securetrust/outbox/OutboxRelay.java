@@ -0,0 +1,284 @@
+package com.securetrust.outbox;
+
+import com.securetrust.config.StartupOrder;
+import com.securetrust.sharding.ShardMap;
+import com.securetrust.sharding.Shards;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Moves committed outbox events to the {@link OutboxSink}.
+ *
+ * A single thread reads up to {@code batch-size} events in id order. A batch
+ * that is not full is held back until its oldest event is {@code linger} old
+ * or enough further events have committed to fill it, trading a little
+ * latency for fewer, larger deliveries. Events are deleted only after the
+ * sink has accepted the batch, and by id, so an event that committed late
+ * with a lower id is picked up by the next read rather than lost. A crash
+ * between delivery and delete delivers the batch again: delivery is at least
+ * once, and consumers drop duplicates by event id. A failed delivery is
+ * retried with the same events after an exponential backoff of up to
+ * {@code max-backoff}.
+ *
+ * On a sharded ledger a batch is filled from one shard after another, each in
+ * id order, starting one shard further on after every delivery so that no
+ * shard waits behind a busy one. An account's events all come from its own
+ * shard, so they are still delivered in order.
+ */
+@Component
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private static final int LAG_SAMPLES = 10_000;
+    private static final long MIN_BACKOFF_MILLIS = 100;
+
+    private static final String SELECT =
+        "SELECT id, account_number, event_type, created_at, payload FROM outbox_event ORDER BY id LIMIT ?";
+
+    private static final RowMapper<OutboxEvent> EVENT = (rs, row) -> new OutboxEvent(
+        rs.getLong(1), rs.getString(2), rs.getString(3), rs.getTimestamp(4).toLocalDateTime(), rs.getString(5));
+
+    /**
+     * Relay state. {@code pending} events are committed but not yet delivered;
+     * lag is measured from the commit of an event to the sink accepting it,
+     * over the last 10,000 events.
+     */
+    public record Status(boolean enabled, String sink, long pending, long oldestPendingMillis, long delivered,
+                         long batches, long failures, String lastError, int lastBatchSize,
+                         long lagP50Millis, long lagP99Millis, long lagMaxMillis) { }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Shards shards;
+    private final OutboxSink sink;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration linger;
+    private final Duration pollInterval;
+    private final Duration maxBackoff;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition committed = lock.newCondition();
+    private long committedSinceRead;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile String lastError;
+    private volatile int lastBatchSize;
+    private final long[] lags = new long[LAG_SAMPLES];
+    private long lagCount;
+
+    // Shard the next read starts on; relay thread only
+    private int firstShard;
+
+    private Thread thread;
+    private volatile boolean running;
+
+    public OutboxRelay(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, Shards shards,
+                       OutboxSink sink,
+                       @Value("${securetrust.outbox.enabled:true}") boolean enabled,
+                       @Value("${securetrust.outbox.batch-size:500}") int batchSize,
+                       @Value("${securetrust.outbox.linger:PT0.2S}") Duration linger,
+                       @Value("${securetrust.outbox.poll-interval:PT1S}") Duration pollInterval,
+                       @Value("${securetrust.outbox.max-backoff:PT30S}") Duration maxBackoff) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("securetrust.outbox.batch-size must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.shards = shards;
+        this.sink = sink;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.linger = linger;
+        this.pollInterval = pollInterval;
+        this.maxBackoff = maxBackoff;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(StartupOrder.LOAD)
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        thread = Thread.ofPlatform().name("outbox-relay").daemon().start(this::relayLoop);
+        log.info("Outbox relay to {}: batches of {}, linger {}", sink.name(), batchSize, linger);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+            thread = null;
+        }
+    }
+
+    /**
+     * Called after a transaction with outbox events has committed.
+     */
+    void wakeUp(int events) {
+        lock.lock();
+        try {
+            committedSinceRead += events;
+            committed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void relayLoop() {
+        long backoff = 0;
+        while (running) {
+            try {
+                if (backoff > 0) {
+                    Thread.sleep(backoff);
+                }
+                List<OutboxEvent> batch = read();
+                if (batch.isEmpty()) {
+                    awaitCommits(1, pollInterval.toNanos());
+                    continue;
+                }
+                if (batch.size() < batchSize) {
+                    long age = System.currentTimeMillis() - epochMillis(batch.get(0).createdAt());
+                    long remaining = linger.toMillis() - age;
+                    if (remaining > 0 && awaitCommits(batchSize - batch.size(), remaining * 1_000_000)) {
+                        continue;
+                    }
+                    if (remaining > 0) {
+                        batch = read();
+                    }
+                }
+                sink.deliver(batch);
+                remove(batch);
+                backoff = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                lastError = e.getClass().getSimpleName() + ": " + e.getMessage();
+                backoff = Math.min(maxBackoff.toMillis(), Math.max(MIN_BACKOFF_MILLIS, backoff * 2));
+                log.warn("Outbox delivery to {} failed, retrying in {} ms: {}", sink.name(), backoff, lastError);
+            }
+        }
+    }
+
+    private List<OutboxEvent> read() {
+        lock.lock();
+        try {
+            committedSinceRead = 0;
+        } finally {
+            lock.unlock();
+        }
+        List<OutboxEvent> batch = new ArrayList<>();
+        for (int i = 0; i < shards.count() && batch.size() < batchSize; i++) {
+            int rows = batchSize - batch.size();
+            batch.addAll(shards.on((firstShard + i) % shards.count(), () -> jdbcTemplate.query(SELECT, EVENT, rows)));
+        }
+        return batch;
+    }
+
+    /**
+     * Wait until at least {@code events} more have committed or the timeout
+     * passes. Returns true if they did.
+     */
+    private boolean awaitCommits(long events, long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = timeoutNanos;
+            while (committedSinceRead < events && nanos > 0) {
+                nanos = committed.awaitNanos(nanos);
+            }
+            return committedSinceRead >= events;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(List<OutboxEvent> batch) {
+        Map<Integer, List<Object[]>> ids = new TreeMap<>();
+        for (OutboxEvent event : batch) {
+            int shard = shards.isSharded() ? ShardMap.shardOfId(event.eventId()) : Shards.HOME;
+            ids.computeIfAbsent(shard, key -> new ArrayList<>()).add(new Object[] {event.eventId()});
+        }
+        ids.forEach((shard, shardIds) -> shards.run(shard, () -> transactionTemplate.executeWithoutResult(status ->
+            jdbcTemplate.batchUpdate("DELETE FROM outbox_event WHERE id = ?", shardIds))));
+        firstShard = (firstShard + 1) % shards.count();
+
+        long now = System.currentTimeMillis();
+        synchronized (lags) {
+            for (OutboxEvent event : batch) {
+                lags[(int) (lagCount++ % LAG_SAMPLES)] = Math.max(0, now - epochMillis(event.createdAt()));
+            }
+        }
+        delivered.addAndGet(batch.size());
+        batches.incrementAndGet();
+        lastBatchSize = batch.size();
+    }
+
+    public Status status() {
+        long pending = 0;
+        long oldestPendingMillis = 0;
+        if (enabled) {
+            pending = shards.sumLong(() ->
+                jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox_event", Long.class));
+            Timestamp oldest = shards.readEach(() -> jdbcTemplate.queryForObject(
+                    "SELECT MIN(created_at) FROM outbox_event", Timestamp.class)).stream()
+                .filter(Objects::nonNull)
+                .min(Timestamp::compareTo)
+                .orElse(null);
+            if (oldest != null) {
+                oldestPendingMillis = Math.max(0, System.currentTimeMillis() - oldest.getTime());
+            }
+        }
+        long[] sorted;
+        synchronized (lags) {
+            sorted = Arrays.copyOf(lags, (int) Math.min(lagCount, LAG_SAMPLES));
+        }
+        Arrays.sort(sorted);
+        return new Status(enabled, sink.name(), pending, oldestPendingMillis, delivered.get(), batches.get(),
+            failures.get(), lastError, lastBatchSize, percentile(sorted, 0.50), percentile(sorted, 0.99),
+            sorted.length == 0 ? 0 : sorted[sorted.length - 1]);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    private static long epochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,19 @@
+package com.securetrust.outbox;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Downstream destination of the outbox. Selected with
+ * {@code securetrust.outbox.sink}.
+ */
+public interface OutboxSink {
+
+    String name();
+
+    /**
+     * Deliver a batch, in order, returning only once the destination holds
+     * it durably. A batch that fails is offered again, whole.
+     */
+    void deliver(List<OutboxEvent> batch) throws IOException;
+}
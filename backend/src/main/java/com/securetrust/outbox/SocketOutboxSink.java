@@ -0,0 +1,107 @@
+package com.securetrust.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Streams events as JSON lines over TCP, standing in for a message broker.
+ * Each batch ends with {@code END <last event id>} and counts as delivered
+ * once the consumer answers {@code ACK <last event id>}; see
+ * {@code scripts/OutboxConsumer.java}. A failed exchange drops the
+ * connection and the next attempt reconnects.
+ */
+@Component
+@ConditionalOnProperty(name = "securetrust.outbox.sink", havingValue = "socket")
+public class SocketOutboxSink implements OutboxSink {
+
+    private final ObjectMapper objectMapper;
+    private final String host;
+    private final int port;
+    private final int timeoutMillis;
+    private Socket socket;
+    private BufferedWriter writer;
+    private BufferedReader reader;
+
+    public SocketOutboxSink(ObjectMapper objectMapper,
+                            @Value("${securetrust.outbox.socket.host:localhost}") String host,
+                            @Value("${securetrust.outbox.socket.port:9099}") int port,
+                            @Value("${securetrust.outbox.socket.timeout:PT5S}") Duration timeout) {
+        this.objectMapper = objectMapper;
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = (int) timeout.toMillis();
+    }
+
+    @Override
+    public String name() {
+        return "socket:" + host + ":" + port;
+    }
+
+    @Override
+    public synchronized void deliver(List<OutboxEvent> batch) throws IOException {
+        long last = batch.get(batch.size() - 1).eventId();
+        try {
+            connect();
+            for (OutboxEvent event : batch) {
+                writer.write(objectMapper.writeValueAsString(event));
+                writer.write('\n');
+            }
+            writer.write("END " + last + "\n");
+            writer.flush();
+            String reply = reader.readLine();
+            if (!("ACK " + last).equals(reply)) {
+                throw new IOException("Expected ACK " + last + " from " + name() + ", got " + reply);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void connect() throws IOException {
+        if (socket != null) {
+            return;
+        }
+        Socket connection = new Socket();
+        try {
+            connection.connect(new InetSocketAddress(host, port), timeoutMillis);
+            connection.setSoTimeout(timeoutMillis);
+            connection.setTcpNoDelay(true);
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        socket = connection;
+        writer = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8),
+            64 * 1024);
+        reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    @PreDestroy
+    synchronized void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to deliver on it
+            }
+            socket = null;
+            writer = null;
+            reader = null;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.securetrust.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.securetrust.model.Transaction;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write side of the outbox: every ledger transaction becomes an
+ * {@code outbox_event} row committed atomically with it.
+ *
+ * Events are collected for the surrounding database transaction and inserted
+ * in one batch just before it commits, after the pending balance updates have
+ * been flushed. The account rows are locked by then, so two transactions on
+ * the same account insert their events in the order they commit.
+ */
+@Component
+public class TransactionOutbox {
+
+    private static final String INSERT =
+        "INSERT INTO outbox_event (account_number, event_type, payload, created_at) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final OutboxRelay relay;
+    private final boolean enabled;
+
+    public TransactionOutbox(JdbcTemplate jdbcTemplate, EntityManager entityManager, ObjectMapper objectMapper,
+                             OutboxRelay relay, @Value("${securetrust.outbox.enabled:true}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.relay = relay;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Queue a saved transaction for publication. Must be called inside the
+     * database transaction that saved it.
+     */
+    public void transactionCreated(Transaction transaction) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Outbox events must be written inside a transaction");
+        }
+        pending().add(new Object[] {
+            transaction.getAccount().getAccountNumber(),
+            transaction.getType().name(),
+            payload(transaction),
+            Timestamp.valueOf(LocalDateTime.now())
+        });
+    }
+
+    private List<Object[]> pending() {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = (List<Object[]>) TransactionSynchronizationManager.getResource(this);
+        if (rows != null) {
+            return rows;
+        }
+        List<Object[]> created = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(this, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                entityManager.flush();
+                jdbcTemplate.batchUpdate(INSERT, created);
+            }
+
+            @Override
+            public void afterCommit() {
+                relay.wakeUp(created.size());
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResource(TransactionOutbox.this);
+            }
+        });
+        return created;
+    }
+
+    private String payload(Transaction transaction) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("transactionId", transaction.getId());
+        fields.put("accountNumber", transaction.getAccount().getAccountNumber());
+        fields.put("type", transaction.getType().name());
+        fields.put("amount", transaction.getAmount());
+        fields.put("balanceAfter", transaction.getBalanceAfter());
+        fields.put("description", transaction.getDescription());
+        fields.put("category", transaction.getCategory());
+        fields.put("referenceAccount", transaction.getReferenceAccount());
+        fields.put("transactionDate", transaction.getTransactionDate());
+        try {
+            return objectMapper.writeValueAsString(fields);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize transaction " + transaction.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.securetrust.profiling;
+
+import com.securetrust.model.AccountType;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.function.Function;
+
+/**
+ * JFR event for one banking operation: a deposit, withdrawal, transfer,
+ * interest payment or account opening, timed from the caller's point of view
+ * (including any wait for a group commit).
+ *
+ * Use {@link #record}; when no recording has the event enabled it runs the
+ * operation without timing it.
+ */
+@Name("com.securetrust.BankingOperation")
+@Label("Banking Operation")
+@Category({"SecureTrust", "Banking"})
+@Description("A deposit, withdrawal, transfer, interest payment or account opening")
+@StackTrace(false)
+public class BankingOperationEvent extends Event {
+
+    public static final String COMPLETED = "COMPLETED";
+    public static final String REJECTED = "REJECTED";
+    public static final String FAILED = "FAILED";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Account Type")
+    String accountType;
+
+    @Label("Amount")
+    double amount;
+
+    @Label("Outcome")
+    @Description("COMPLETED, REJECTED by a business rule, or FAILED")
+    String outcome;
+
+    @Label("Rows Written")
+    int rows;
+
+    /**
+     * Run {@code body} as {@code operation}, which fills in the account type and
+     * rows written on the event it is given.
+     */
+    public static <T> T record(String operation, Double amount, Function<BankingOperationEvent, T> body) {
+        BankingOperationEvent event = new BankingOperationEvent();
+        if (!event.isEnabled()) {
+            return body.apply(event);
+        }
+        event.operation = operation;
+        event.amount = amount != null ? amount : 0;
+        event.begin();
+        try {
+            T result = body.apply(event);
+            event.outcome = COMPLETED;
+            return result;
+        } catch (IllegalArgumentException e) {
+            event.outcome = REJECTED;
+            throw e;
+        } catch (RuntimeException | Error e) {
+            event.outcome = FAILED;
+            throw e;
+        } finally {
+            event.commit();
+        }
+    }
+
+    public void accountType(AccountType type) {
+        this.accountType = type != null ? type.name() : null;
+    }
+
+    public void rows(int rows) {
+        this.rows = rows;
+    }
+}
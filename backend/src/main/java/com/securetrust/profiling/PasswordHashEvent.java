@@ -0,0 +1,55 @@
+package com.securetrust.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.function.Supplier;
+
+/**
+ * JFR event for one BCrypt hash or verification, including any wait for a
+ * hashing thread.
+ */
+@Name("com.securetrust.PasswordHash")
+@Label("Password Hash")
+@Category({"SecureTrust", "Security"})
+@Description("A BCrypt hash or password verification")
+@StackTrace(false)
+public class PasswordHashEvent extends Event {
+
+    @Label("Operation")
+    @Description("HASH or VERIFY")
+    String operation;
+
+    @Label("Outcome")
+    @Description("COMPLETED, MATCH, NO_MATCH or FAILED")
+    String outcome;
+
+    @Label("Offloaded")
+    @Description("Run on the hashing pool rather than the caller's thread")
+    boolean offloaded;
+
+    /**
+     * Run {@code body}; a {@code Boolean} result is recorded as MATCH or NO_MATCH.
+     */
+    public static <T> T record(String operation, boolean offloaded, Supplier<T> body) {
+        PasswordHashEvent event = new PasswordHashEvent();
+        if (!event.isEnabled()) {
+            return body.get();
+        }
+        event.operation = operation;
+        event.offloaded = offloaded;
+        event.outcome = "FAILED";
+        event.begin();
+        try {
+            T result = body.get();
+            event.outcome = result instanceof Boolean matched ? (matched ? "MATCH" : "NO_MATCH") : "COMPLETED";
+            return result;
+        } finally {
+            event.commit();
+        }
+    }
+}
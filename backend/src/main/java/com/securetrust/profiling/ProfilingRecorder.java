@@ -0,0 +1,136 @@
+package com.securetrust.profiling;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * One on-demand JDK Flight Recorder recording: the JDK's {@code default}
+ * settings (about 1% overhead) plus the {@link BankingOperationEvent} and
+ * {@link PasswordHashEvent} events. The recording keeps at most
+ * {@code max-age} or {@code max-size} of data, whichever is reached first,
+ * and discards older chunks, so it can be left running.
+ *
+ * While no recording runs the banking events are disabled and cost a
+ * single flag check.
+ */
+@Component
+public class ProfilingRecorder {
+
+    private static final Logger log = LoggerFactory.getLogger(ProfilingRecorder.class);
+
+    /**
+     * State of the current or last recording. {@code sizeBytes} is the data
+     * kept on disk so far.
+     */
+    public record Status(String state, Instant startTime, Duration maxAge, long maxSizeBytes, Duration duration,
+                         long sizeBytes) { }
+
+    private final Path directory;
+    private final Duration defaultMaxAge;
+    private final long defaultMaxSizeBytes;
+    private Recording recording;
+
+    public ProfilingRecorder(@Value("${securetrust.profiling.directory:./recordings}") String directory,
+                             @Value("${securetrust.profiling.max-age:PT30M}") Duration maxAge,
+                             @Value("${securetrust.profiling.max-size-mb:100}") long maxSizeMb) {
+        this.directory = Paths.get(directory);
+        this.defaultMaxAge = maxAge;
+        this.defaultMaxSizeBytes = maxSizeMb * 1024 * 1024;
+    }
+
+    /**
+     * Start recording. {@code null} arguments take the configured bounds; a
+     * {@code duration} stops the recording by itself once it has passed.
+     */
+    public synchronized Status start(Duration maxAge, Long maxSizeMb, Duration duration) {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            throw new IllegalStateException("A recording is already running");
+        }
+        Duration age = maxAge != null ? maxAge : defaultMaxAge;
+        long size = maxSizeMb != null ? maxSizeMb * 1024 * 1024 : defaultMaxSizeBytes;
+        if (age.isNegative() || age.isZero() || size <= 0 || (duration != null && duration.isNegative())) {
+            throw new IllegalArgumentException("Recording bounds must be positive");
+        }
+        Recording next;
+        try {
+            next = new Recording(Configuration.getConfiguration("default"));
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("JFR default settings are not available", e);
+        }
+        next.setName("securetrust");
+        next.setToDisk(true);
+        next.setMaxAge(age);
+        next.setMaxSize(size);
+        next.setDuration(duration);
+        next.enable(BankingOperationEvent.class).withoutStackTrace();
+        next.enable(PasswordHashEvent.class).withoutStackTrace();
+        if (recording != null) {
+            recording.close();
+        }
+        recording = next;
+        recording.start();
+        log.info("Flight recording started (max age {}, max size {} MB, duration {})",
+            age, size / (1024 * 1024), duration != null ? duration : "until stopped");
+        return status();
+    }
+
+    public synchronized Status stop() {
+        if (recording == null || recording.getState() != RecordingState.RUNNING) {
+            throw new IllegalStateException("No recording is running");
+        }
+        recording.stop();
+        log.info("Flight recording stopped ({} bytes)", recording.getSize());
+        return status();
+    }
+
+    public synchronized Status status() {
+        if (recording == null) {
+            return new Status(RecordingState.NEW.name(), null, defaultMaxAge, defaultMaxSizeBytes, null, 0);
+        }
+        return new Status(recording.getState().name(), recording.getStartTime(), recording.getMaxAge(),
+            recording.getMaxSize(), recording.getDuration(), recording.getSize());
+    }
+
+    /**
+     * Write what the current or last recording holds to a file, replacing the
+     * previous dump, and return it. A running recording keeps running.
+     */
+    public synchronized Path dump() {
+        if (recording == null || recording.getState() == RecordingState.CLOSED) {
+            throw new IllegalStateException("Nothing has been recorded");
+        }
+        try {
+            Files.createDirectories(directory);
+            Path file = directory.resolve("securetrust.jfr");
+            Path temporary = directory.resolve("securetrust.jfr.tmp");
+            recording.dump(temporary);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @PreDestroy
+    synchronized void close() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+}
@@ -0,0 +1,496 @@
+package com.securetrust.reconciliation;
+
+import com.securetrust.archive.ArchivedTransaction;
+import com.securetrust.archive.TransactionArchive;
+import com.securetrust.model.TransactionType;
+import com.securetrust.sharding.Shards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ledger reconciliation and integrity audit.
+ *
+ * The account id range is cut into chunks that a pool of workers claims one at
+ * a time. Each chunk is read with a single forward-only query returning every
+ * account joined to its transactions, ordered by account, so the balance and
+ * the rows of an account come from the same statement snapshot. For every
+ * account the {@code balanceAfter} values must form an unbroken chain (each one
+ * the previous plus the signed amount) and the last must equal
+ * {@code account.balance}. Archived months are read from the
+ * {@link TransactionArchive} ahead of the table rows.
+ *
+ * Transfers are matched on the fly: a TRANSFER_OUT and its TRANSFER_IN add +1
+ * and -1 to a counter keyed by (from account, to account, amount), and keys
+ * that reach zero are dropped, so only unmatched legs remain at the end.
+ * Transfers booked after the run started are left out of the matching.
+ * Closing an account clears the reference of the transfers to and from it
+ * and keeps their default text, which names it; such a leg is listed as
+ * {@link Kind#TRANSFER_CLOSED_ACCOUNT} and not counted as a discrepancy.
+ *
+ * All findings are written to
+ * {@code <directory>/reconciliation-<timestamp>.csv}; only the first few are
+ * returned with the report. Amounts are compared in whole cents.
+ */
+@Component
+@Lazy(false)
+public class LedgerReconciliation {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerReconciliation.class);
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int SAMPLE_SIZE = 100;
+    private static final long NO_BALANCE = Long.MIN_VALUE;
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private static final String SCAN_SQL =
+        "SELECT a.id, a.account_number, a.balance, t.id, t.type, t.amount, t.balance_after, t.reference_account_id, "
+            + "d.text "
+            + "FROM account a LEFT JOIN transaction t ON t.account_id = a.id "
+            + "LEFT JOIN transaction_description d ON d.id = t.description_id "
+            + "WHERE a.id >= ? AND a.id < ? "
+            + "ORDER BY a.id";
+
+    /**
+     * Kinds of ledger inconsistency. {@link #TRANSFER_CLOSED_ACCOUNT} is
+     * informational: it is listed but not counted in the report's total.
+     */
+    public enum Kind {
+        MISSING_BALANCE_AFTER,
+        CHAIN_BREAK,
+        BALANCE_MISMATCH,
+        TRANSFER_UNKNOWN_ACCOUNT,
+        TRANSFER_UNMATCHED,
+        TRANSFER_CLOSED_ACCOUNT;
+
+        public boolean isDiscrepancy() {
+            return this != TRANSFER_CLOSED_ACCOUNT;
+        }
+    }
+
+    /**
+     * One finding. {@code transactionId} is {@code null} for account-level findings.
+     */
+    public record Discrepancy(Kind kind, String accountNumber, Long transactionId, String detail) { }
+
+    /**
+     * Outcome of a run; {@code discrepancies} lists at most the first hundred findings
+     * and {@code total} counts those of a discrepancy kind.
+     */
+    public record Report(long accounts, long transactions, long total, Map<Kind, Long> byKind,
+                         List<Discrepancy> discrepancies, int failedChunks, long elapsedMillis,
+                         double transactionsPerSecond, String file) { }
+
+    private record TransferKey(long fromAccountId, long toAccountId, long cents) { }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionArchive archive;
+    private final Shards shards;
+    private final Path directory;
+    private final int workers;
+    private final int chunkAccounts;
+    private final ReentrantLock running = new ReentrantLock();
+
+    public LedgerReconciliation(JdbcTemplate jdbcTemplate, TransactionArchive archive, Shards shards,
+                                @Value("${securetrust.reconciliation.directory:./reconciliation}") String directory,
+                                @Value("${securetrust.reconciliation.workers:0}") int workers,
+                                @Value("${securetrust.reconciliation.chunk-accounts:1000}") int chunkAccounts) {
+        if (chunkAccounts < 1) {
+            throw new IllegalArgumentException("securetrust.reconciliation.chunk-accounts must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.archive = archive;
+        this.shards = shards;
+        this.directory = Paths.get(directory);
+        this.workers = workers > 0 ? workers : Math.min(4, Runtime.getRuntime().availableProcessors());
+        this.chunkAccounts = chunkAccounts;
+    }
+
+    @Scheduled(cron = "${securetrust.reconciliation.cron:0 0 4 * * *}")
+    public void runScheduled() {
+        if (shards.isSharded()) {
+            log.info("Ledger reconciliation skipped: not available on a sharded ledger");
+            return;
+        }
+        Report report = run();
+        if (report.total() > 0) {
+            log.warn("Ledger reconciliation found {} discrepancies {}, see {}",
+                report.total(), report.byKind(), report.file());
+        }
+    }
+
+    /**
+     * Reconcile every account against its ledger.
+     */
+    public Report run() {
+        shards.requireSingle("Ledger reconciliation");
+        if (!running.tryLock()) {
+            throw new IllegalStateException("A ledger reconciliation is already in progress");
+        }
+        try {
+            return reconcile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            running.unlock();
+        }
+    }
+
+    private Report reconcile() throws IOException {
+        long start = System.currentTimeMillis();
+        Files.createDirectories(directory);
+        Path file = directory.resolve("reconciliation-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".csv");
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+        Map<String, Long> accountIds = new HashMap<>();
+        Map<Long, String> accountNumbers = new HashMap<>();
+        jdbcTemplate.query("SELECT id, account_number FROM account", (ResultSet rs) -> {
+            accountIds.put(rs.getString(2), rs.getLong(1));
+            accountNumbers.put(rs.getLong(1), rs.getString(2));
+        });
+        Long highWater = jdbcTemplate.queryForObject("SELECT MAX(id) FROM transaction", Long.class);
+        Run run = new Run(accountIds, accountNumbers, highWater != null ? highWater : 0);
+
+        int failed = 0;
+        Findings findings = new Findings(temporary);
+        try (findings) {
+            run.findings = findings;
+            if (!accountIds.isEmpty()) {
+                long first = accountNumbers.keySet().stream().mapToLong(Long::longValue).min().orElseThrow();
+                long last = accountNumbers.keySet().stream().mapToLong(Long::longValue).max().orElseThrow();
+                failed = scanChunks(run, first, last);
+            }
+            for (Map.Entry<TransferKey, Integer> open : run.transfers.entrySet()) {
+                TransferKey key = open.getKey();
+                int count = open.getValue();
+                String from = accountNumbers.get(key.fromAccountId());
+                String to = accountNumbers.get(key.toAccountId());
+                String amount = formatCents(key.cents());
+                if (count > 0) {
+                    findings.add(new Discrepancy(Kind.TRANSFER_UNMATCHED, from, null,
+                        count + " transfer(s) of " + amount + " to " + to + " without a matching transfer in"));
+                } else {
+                    findings.add(new Discrepancy(Kind.TRANSFER_UNMATCHED, to, null,
+                        -count + " transfer(s) of " + amount + " from " + from + " without a matching transfer out"));
+                }
+            }
+            run.findings = null;
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        Report report = new Report(run.accounts.get(), run.transactions.get(), findings.total,
+            findings.byKind, findings.sample, failed, elapsed, run.transactions.get() * 1000.0 / elapsed,
+            file.toAbsolutePath().normalize().toString());
+        log.info("Ledger reconciliation: {} accounts, {} transactions, {} discrepancies, {} failed chunks "
+                + "in {} ms ({} transactions/s, {} workers)", report.accounts(), report.transactions(),
+            report.total(), failed, elapsed, String.format("%.0f", report.transactionsPerSecond()), workers);
+        return report;
+    }
+
+    private int scanChunks(Run run, long first, long last) {
+        int failed = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(workers,
+            new CustomizableThreadFactory("reconciliation-"));
+        try {
+            List<Future<?>> chunks = new ArrayList<>();
+            for (long from = first; from <= last; from += chunkAccounts) {
+                long lower = from;
+                long upper = Math.min(last + 1, from + chunkAccounts);
+                chunks.add(executor.submit(() -> scan(run, lower, upper)));
+            }
+            for (Future<?> future : chunks) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    log.error("Ledger reconciliation chunk failed", e.getCause());
+                    failed++;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Ledger reconciliation interrupted", e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return failed;
+    }
+
+    private void scan(Run run, long from, long to) {
+        ChunkHandler handler = new ChunkHandler(run);
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(SCAN_SQL, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            statement.setLong(1, from);
+            statement.setLong(2, to);
+            return statement;
+        }, handler);
+        handler.finishCurrent();
+    }
+
+    // The account a transfer's default text names, or null when the text is not the default
+    private static String namedAccount(TransactionType type, String description) {
+        String prefix = type.defaultDescription("");
+        return description != null && description.startsWith(prefix) && description.length() > prefix.length()
+            ? description.substring(prefix.length()) : null;
+    }
+
+    private static String formatCents(long cents) {
+        return String.format("%.2f", cents / 100.0);
+    }
+
+    private static long cents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    /**
+     * State shared by the workers of one run.
+     */
+    private final class Run {
+
+        final Map<String, Long> accountIds;
+        final Map<Long, String> accountNumbers;
+        final long highWater;
+        final Map<TransferKey, Integer> transfers = new ConcurrentHashMap<>();
+        final AtomicLong accounts = new AtomicLong();
+        final AtomicLong transactions = new AtomicLong();
+        Findings findings;
+
+        Run(Map<String, Long> accountIds, Map<Long, String> accountNumbers, long highWater) {
+            this.accountIds = accountIds;
+            this.accountNumbers = accountNumbers;
+            this.highWater = highWater;
+        }
+
+        /**
+         * {@code description} is the leg's stored text, which is the kept
+         * default text once the reference account is closed.
+         */
+        void transfer(String accountNumber, long accountId, long transactionId, TransactionType type,
+                      long amountCents, String referenceAccount, String description) {
+            if (transactionId > highWater) {
+                return;
+            }
+            Long reference = referenceAccount != null ? accountIds.get(referenceAccount) : null;
+            if (reference == null) {
+                // Accounts are only deleted by closing them; archived legs still carry the number
+                String closed = referenceAccount != null ? referenceAccount : namedAccount(type, description);
+                if (closed != null && !accountIds.containsKey(closed)) {
+                    findings.add(new Discrepancy(Kind.TRANSFER_CLOSED_ACCOUNT, accountNumber, transactionId,
+                        type.getDisplayName() + " references closed account " + closed));
+                    return;
+                }
+                findings.add(new Discrepancy(Kind.TRANSFER_UNKNOWN_ACCOUNT, accountNumber, transactionId,
+                    type.getDisplayName() + (referenceAccount != null
+                        ? " references unknown account " + referenceAccount : " references no account")));
+                return;
+            }
+            TransferKey key = type == TransactionType.TRANSFER_OUT
+                ? new TransferKey(accountId, reference, amountCents)
+                : new TransferKey(reference, accountId, amountCents);
+            transfers.merge(key, type == TransactionType.TRANSFER_OUT ? 1 : -1,
+                (a, b) -> a + b == 0 ? null : a + b);
+        }
+    }
+
+    /**
+     * Consumes one chunk's rows. An account's transactions are buffered as
+     * primitive columns, put in id order and checked when the account id
+     * changes; transfer legs are matched as they are read.
+     */
+    private final class ChunkHandler implements RowCallbackHandler {
+
+        private final Run run;
+
+        private long accountId = -1;
+        private String accountNumber;
+        private long balance;
+        private int size;
+        private long[] ids = new long[64];
+        private byte[] types = new byte[64];
+        private long[] amounts = new long[64];
+        private long[] balances = new long[64];
+
+        ChunkHandler(Run run) {
+            this.run = run;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long id = rs.getLong(1);
+            if (id != accountId) {
+                finishCurrent();
+                accountId = id;
+                accountNumber = rs.getString(2);
+                balance = cents(rs.getDouble(3));
+                for (ArchivedTransaction row : archive.history(accountId)) {
+                    add(row.id(), row.type(), row.amount(), row.balanceAfter(), row.referenceAccount(),
+                        row.description());
+                }
+            }
+            long transactionId = rs.getLong(4);
+            if (!rs.wasNull()) {
+                Long reference = rs.getObject(8, Long.class);
+                add(transactionId, TransactionType.fromCode(rs.getInt(5)), rs.getDouble(6),
+                    rs.getObject(7, Double.class), reference != null ? run.accountNumbers.get(reference) : null,
+                    rs.getString(9));
+            }
+        }
+
+        void finishCurrent() {
+            if (accountId < 0) {
+                return;
+            }
+            run.accounts.incrementAndGet();
+            run.transactions.addAndGet(size);
+            sortById();
+
+            // The first recorded balanceAfter opens the chain; the account may predate its ledger
+            long expected = NO_BALANCE;
+            for (int i = 0; i < size; i++) {
+                TransactionType type = TransactionType.values()[types[i]];
+                if (expected != NO_BALANCE) {
+                    expected += type.isCredit() ? amounts[i] : -amounts[i];
+                }
+                if (balances[i] == NO_BALANCE) {
+                    run.findings.add(new Discrepancy(Kind.MISSING_BALANCE_AFTER, accountNumber, ids[i],
+                        type.getDisplayName() + " of " + formatCents(amounts[i]) + " has no balance after"));
+                    continue;
+                }
+                if (expected != NO_BALANCE && expected != balances[i]) {
+                    run.findings.add(new Discrepancy(Kind.CHAIN_BREAK, accountNumber, ids[i],
+                        "expected balance after " + formatCents(expected) + ", recorded "
+                            + formatCents(balances[i])));
+                }
+                expected = balances[i];
+            }
+            if (expected != NO_BALANCE && expected != balance) {
+                run.findings.add(new Discrepancy(Kind.BALANCE_MISMATCH, accountNumber, null,
+                    "balance " + formatCents(balance) + ", ledger ends at " + formatCents(expected)));
+            }
+            size = 0;
+            accountId = -1;
+        }
+
+        private void add(long id, TransactionType type, double amount, Double balanceAfter, String reference,
+                         String description) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                types = Arrays.copyOf(types, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                balances = Arrays.copyOf(balances, capacity);
+            }
+            ids[size] = id;
+            types[size] = (byte) type.ordinal();
+            amounts[size] = cents(amount);
+            balances[size] = balanceAfter != null ? cents(balanceAfter) : NO_BALANCE;
+            size++;
+            if (type == TransactionType.TRANSFER_OUT || type == TransactionType.TRANSFER_IN) {
+                run.transfer(accountNumber, accountId, id, type, amounts[size - 1], reference, description);
+            }
+        }
+
+        // Rows normally arrive in id order already; only reorder when they do not
+        private void sortById() {
+            for (int i = 1; i < size; i++) {
+                if (ids[i] < ids[i - 1]) {
+                    Integer[] order = new Integer[size];
+                    Arrays.setAll(order, k -> k);
+                    Arrays.sort(order, (a, b) -> Long.compare(ids[a], ids[b]));
+                    long[] sortedIds = new long[ids.length];
+                    byte[] sortedTypes = new byte[types.length];
+                    long[] sortedAmounts = new long[amounts.length];
+                    long[] sortedBalances = new long[balances.length];
+                    for (int k = 0; k < size; k++) {
+                        sortedIds[k] = ids[order[k]];
+                        sortedTypes[k] = types[order[k]];
+                        sortedAmounts[k] = amounts[order[k]];
+                        sortedBalances[k] = balances[order[k]];
+                    }
+                    ids = sortedIds;
+                    types = sortedTypes;
+                    amounts = sortedAmounts;
+                    balances = sortedBalances;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Discrepancy CSV shared by the workers; keeps per-kind counts and the
+     * first findings for the report.
+     */
+    private static final class Findings implements AutoCloseable {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final BufferedWriter out;
+        private final Map<Kind, Long> byKind = new EnumMap<>(Kind.class);
+        private final List<Discrepancy> sample = new ArrayList<>();
+        private long total;
+
+        Findings(Path path) throws IOException {
+            this.out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+            out.write("kind,account,transaction_id,detail\n");
+        }
+
+        void add(Discrepancy discrepancy) {
+            lock.lock();
+            try {
+                out.write(discrepancy.kind() + "," + discrepancy.accountNumber() + ","
+                    + (discrepancy.transactionId() != null ? discrepancy.transactionId() : "") + ","
+                    + discrepancy.detail().replace(',', ';') + "\n");
+                byKind.merge(discrepancy.kind(), 1L, Long::sum);
+                if (sample.size() < SAMPLE_SIZE) {
+                    sample.add(discrepancy);
+                }
+                if (discrepancy.kind().isDiscrepancy()) {
+                    total++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
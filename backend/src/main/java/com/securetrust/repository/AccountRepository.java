@@ -2,10 +2,19 @@ package com.securetrust.repository;
 
 import com.securetrust.model.Account;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import java.util.List;
 import java.util.Optional;
 
 public interface AccountRepository extends JpaRepository<Account, Long> {
+    // Explicit so the foreign key is compared directly; the derived query joins customer first
+    @Query("SELECT a FROM Account a WHERE a.customer.id = :customerId")
     List<Account> findByCustomerId(Long customerId);
     Optional<Account> findByAccountNumber(String accountNumber);
+    
+    @Query("SELECT COALESCE(SUM(a.balance), 0) FROM Account a")
+    Double sumBalances();
+    
+    @Query("SELECT a.accountType, SUM(a.balance) FROM Account a GROUP BY a.accountType")
+    List<Object[]> sumBalancesByAccountType();
 }
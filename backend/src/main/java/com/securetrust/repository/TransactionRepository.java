@@ -3,6 +3,7 @@ package com.securetrust.repository;
 import com.securetrust.model.Transaction;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
@@ -14,4 +15,12 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     List<Transaction> findByCustomerId(Long customerId);
     
     List<Transaction> findTop10ByOrderByTransactionDateDesc();
+    
+    @Query("SELECT t FROM Transaction t WHERE t.account.accountNumber = :accountNumber "
+        + "AND t.transactionDate >= :from AND t.transactionDate < :to ORDER BY t.transactionDate DESC")
+    List<Transaction> findByAccountNumberBetween(String accountNumber, LocalDateTime from, LocalDateTime to);
+    
+    @Query("SELECT t FROM Transaction t WHERE t.account.customer.id = :customerId "
+        + "AND t.transactionDate >= :from AND t.transactionDate < :to ORDER BY t.transactionDate DESC")
+    List<Transaction> findByCustomerIdBetween(Long customerId, LocalDateTime from, LocalDateTime to);
 }
@@ -0,0 +1,67 @@
+package com.securetrust.risk;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Count and sum of events over a sliding time window, kept in a ring of
+ * fixed-width time buckets. Each slot holds an immutable bucket that is
+ * replaced by compare-and-set, so writers never block and a slot left over
+ * from an earlier lap of the ring is simply overwritten by the next write.
+ */
+final class SlidingWindowCounter {
+
+    record Totals(int count, long amount) { }
+
+    private record Bucket(long epoch, int count, long amount) { }
+
+    private final long bucketMillis;
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    SlidingWindowCounter(int bucketCount, long bucketMillis) {
+        this.bucketMillis = bucketMillis;
+        this.buckets = new AtomicReferenceArray<>(bucketCount);
+    }
+
+    /**
+     * Add {@code count} events totalling {@code amount} at {@code timestamp}.
+     * Negative values undo an earlier add made at the same timestamp.
+     */
+    void add(long timestamp, int count, long amount) {
+        long epoch = timestamp / bucketMillis;
+        int slot = (int) Math.floorMod(epoch, (long) buckets.length());
+        while (true) {
+            Bucket current = buckets.get(slot);
+            Bucket next;
+            if (current != null && current.epoch() == epoch) {
+                next = new Bucket(epoch, current.count() + count, current.amount() + amount);
+            } else if (current == null || current.epoch() < epoch) {
+                next = new Bucket(epoch, count, amount);
+            } else {
+                // The slot already belongs to a later lap; this event has left every window
+                return;
+            }
+            if (buckets.compareAndSet(slot, current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Totals for the buckets overlapping the {@code windowMillis} ending at {@code now}.
+     */
+    Totals totals(long now, long windowMillis) {
+        long newest = now / bucketMillis;
+        long span = Math.min(buckets.length(), (windowMillis + bucketMillis - 1) / bucketMillis);
+        long oldest = newest - span + 1;
+        int count = 0;
+        long amount = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && bucket.epoch() >= oldest && bucket.epoch() <= newest) {
+                count += bucket.count();
+                amount += bucket.amount();
+            }
+        }
+        return new Totals(count, amount);
+    }
+}
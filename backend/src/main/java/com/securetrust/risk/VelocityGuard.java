@@ -0,0 +1,277 @@
+package com.securetrust.risk;
+
+import com.securetrust.archive.TransactionArchive;
+import com.securetrust.config.StartupOrder;
+import com.securetrust.model.TransactionType;
+import com.securetrust.sharding.Shards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Velocity and new-payee checks for withdrawals and outgoing transfers.
+ *
+ * Decisions are made from in-memory per-account {@link SlidingWindowCounter}s
+ * and known-payee sets, so the debit path gains no database query. Counters
+ * are seeded from the transaction table once at startup and then maintained
+ * by {@link #authorize}, which reserves the debit immediately and releases it
+ * again if the surrounding transaction rolls back. On a sharded ledger they
+ * are seeded from every shard; a payee on another shard than the account
+ * paying it is named through the account numbers of all shards.
+ */
+@Component
+public class VelocityGuard {
+
+    private static final Logger log = LoggerFactory.getLogger(VelocityGuard.class);
+
+    private static final int BUCKETS = 60;
+
+    /**
+     * Outcome of a check. {@code reasons} lists every rule that declined the debit.
+     */
+    public record Decision(boolean allowed, List<String> reasons) {
+        static final Decision ALLOW = new Decision(true, List.of());
+    }
+
+    private static final class AccountActivity {
+        final SlidingWindowCounter debits;
+        final Set<String> payees = ConcurrentHashMap.newKeySet();
+        // Held by authorize from check to count, so concurrent debits cannot both pass on the same headroom
+        final ReentrantLock lock = new ReentrantLock();
+
+        AccountActivity(long bucketMillis) {
+            this.debits = new SlidingWindowCounter(BUCKETS, bucketMillis);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionArchive archive;
+    private final Shards shards;
+    private final boolean enabled;
+    private final Duration maxWindow;
+    private final long bucketMillis;
+    private final Map<String, AccountActivity> accounts = new ConcurrentHashMap<>();
+    private volatile VelocityRules rules;
+
+    public VelocityGuard(JdbcTemplate jdbcTemplate, TransactionArchive archive, Shards shards,
+                         @Value("${securetrust.velocity.enabled:true}") boolean enabled,
+                         @Value("${securetrust.velocity.max-window:PT24H}") Duration maxWindow,
+                         @Value("${securetrust.velocity.window:PT24H}") Duration window,
+                         @Value("${securetrust.velocity.max-debits:20}") int maxDebits,
+                         @Value("${securetrust.velocity.max-debit-amount:100000}") double maxDebitAmount,
+                         @Value("${securetrust.velocity.new-payee-threshold:20000}") double newPayeeThreshold) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.archive = archive;
+        this.shards = shards;
+        this.enabled = enabled;
+        this.maxWindow = maxWindow;
+        this.bucketMillis = Math.max(1, maxWindow.toMillis() / BUCKETS);
+        apply(new VelocityRules(maxDebits, maxDebitAmount, window, newPayeeThreshold));
+    }
+
+    public VelocityRules getRules() {
+        return rules;
+    }
+
+    /**
+     * Replace the active rules. The window cannot exceed the configured
+     * {@code max-window}, which fixes the counters' bucket width.
+     */
+    public void setRules(VelocityRules rules) {
+        apply(rules);
+    }
+
+    private void apply(VelocityRules rules) {
+        if (rules.window().compareTo(maxWindow) > 0) {
+            throw new IllegalArgumentException("Velocity window cannot exceed " + maxWindow);
+        }
+        this.rules = rules;
+        log.info("Velocity rules: {}", rules);
+    }
+
+    /**
+     * Evaluate a debit against the current rules without recording it.
+     */
+    public Decision check(String accountNumber, double amount, String referenceAccount) {
+        if (!enabled) {
+            return Decision.ALLOW;
+        }
+        return evaluate(accounts.get(accountNumber), amount, referenceAccount);
+    }
+
+    private Decision evaluate(AccountActivity activity, double amount, String referenceAccount) {
+        VelocityRules current = rules;
+        List<String> reasons = null;
+
+        if (current.maxDebits() > 0 || current.maxDebitAmount() > 0) {
+            SlidingWindowCounter.Totals totals = activity == null
+                ? new SlidingWindowCounter.Totals(0, 0)
+                : activity.debits.totals(System.currentTimeMillis(), current.window().toMillis());
+            if (current.maxDebits() > 0 && totals.count() + 1 > current.maxDebits()) {
+                reasons = add(reasons, "more than " + current.maxDebits() + " debits within "
+                    + describe(current.window()));
+            }
+            if (current.maxDebitAmount() > 0 && totals.amount() + toCents(amount) > toCents(current.maxDebitAmount())) {
+                reasons = add(reasons, String.format("debits would exceed BWP %,.2f within %s",
+                    current.maxDebitAmount(), describe(current.window())));
+            }
+        }
+
+        if (referenceAccount != null && current.newPayeeThreshold() > 0 && amount > current.newPayeeThreshold()
+                && (activity == null || !activity.payees.contains(referenceAccount))) {
+            reasons = add(reasons, String.format("first transfer to %s exceeds BWP %,.2f",
+                referenceAccount, current.newPayeeThreshold()));
+        }
+
+        return reasons == null ? Decision.ALLOW : new Decision(false, List.copyOf(reasons));
+    }
+
+    /**
+     * Check a debit and, if allowed, count it against the account, both under
+     * the account's lock. Inside a transaction the debit is released again on
+     * rollback and the payee only becomes known on commit.
+     */
+    public void authorize(String accountNumber, double amount, String referenceAccount) {
+        if (!enabled) {
+            return;
+        }
+        AccountActivity activity = activity(accountNumber);
+        long now = System.currentTimeMillis();
+        long cents = toCents(amount);
+        activity.lock.lock();
+        try {
+            Decision decision = evaluate(activity, amount, referenceAccount);
+            if (!decision.allowed()) {
+                log.info("Declined debit of {} from {}: {}", amount, accountNumber, decision.reasons());
+                throw new IllegalArgumentException("Transaction declined: " + String.join("; ", decision.reasons()));
+            }
+            activity.debits.add(now, 1, cents);
+        } finally {
+            activity.lock.unlock();
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (referenceAccount != null) {
+                activity.payees.add(referenceAccount);
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    if (referenceAccount != null) {
+                        activity.payees.add(referenceAccount);
+                    }
+                } else {
+                    activity.debits.add(now, -1, -cents);
+                }
+            }
+        });
+    }
+
+    /**
+     * Seed counters and known payees from committed transactions. Payees paid
+     * only in archived months are read from the {@link TransactionArchive}.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(StartupOrder.LOAD)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Timestamp since = new Timestamp(start - maxWindow.toMillis());
+        Map<Long, String> accountNumbers = new HashMap<>();
+        if (shards.isSharded() || archive.archivedBefore() != null) {
+            shards.readEach(() -> {
+                jdbcTemplate.query("SELECT id, account_number FROM account",
+                    rs -> {
+                        accountNumbers.put(rs.getLong(1), rs.getString(2));
+                    });
+                return null;
+            });
+        }
+        shards.readEach(() -> {
+            jdbcTemplate.query(
+                "SELECT a.account_number, t.amount, t.transaction_date FROM transaction t "
+                    + "JOIN account a ON a.id = t.account_id "
+                    + "WHERE t.type IN (" + TransactionType.WITHDRAWAL.getCode() + ", "
+                    + TransactionType.TRANSFER_OUT.getCode() + ") AND t.transaction_date >= ?",
+                rs -> {
+                    activity(rs.getString(1)).debits.add(rs.getTimestamp(3).getTime(), 1, toCents(rs.getDouble(2)));
+                },
+                since);
+            // Without the join on a sharded ledger, where the payee may be on another shard
+            if (!shards.isSharded()) {
+                jdbcTemplate.query(
+                    "SELECT DISTINCT a.account_number, r.account_number FROM transaction t "
+                        + "JOIN account a ON a.id = t.account_id "
+                        + "JOIN account r ON r.id = t.reference_account_id "
+                        + "WHERE t.type = " + TransactionType.TRANSFER_OUT.getCode(),
+                    rs -> {
+                        activity(rs.getString(1)).payees.add(rs.getString(2));
+                    });
+            } else {
+                jdbcTemplate.query(
+                    "SELECT DISTINCT a.account_number, t.reference_account_id FROM transaction t "
+                        + "JOIN account a ON a.id = t.account_id "
+                        + "WHERE t.type = " + TransactionType.TRANSFER_OUT.getCode()
+                        + " AND t.reference_account_id IS NOT NULL",
+                    rs -> {
+                        String payee = accountNumbers.get(rs.getLong(2));
+                        if (payee != null) {
+                            activity(rs.getString(1)).payees.add(payee);
+                        }
+                    });
+            }
+            return null;
+        });
+        if (archive.archivedBefore() != null) {
+            archive.forEach(row -> {
+                String accountNumber = accountNumbers.get(row.accountId());
+                if (row.type() == TransactionType.TRANSFER_OUT && row.referenceAccount() != null
+                        && accountNumber != null) {
+                    activity(accountNumber).payees.add(row.referenceAccount());
+                }
+            });
+        }
+        log.info("Velocity counters seeded for {} accounts in {} ms",
+            accounts.size(), System.currentTimeMillis() - start);
+    }
+
+    private AccountActivity activity(String accountNumber) {
+        return accounts.computeIfAbsent(accountNumber, key -> new AccountActivity(bucketMillis));
+    }
+
+    private static List<String> add(List<String> reasons, String reason) {
+        List<String> list = reasons == null ? new ArrayList<>(3) : reasons;
+        list.add(reason);
+        return list;
+    }
+
+    private static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    private static String describe(Duration window) {
+        return window.toString().substring(2).toLowerCase();
+    }
+}
@@ -0,0 +1,23 @@
+package com.securetrust.risk;
+
+import java.time.Duration;
+
+/**
+ * Limits enforced by {@link VelocityGuard}. A limit of zero disables that rule.
+ *
+ * @param maxDebits         most withdrawals and outgoing transfers per account within {@code window}
+ * @param maxDebitAmount    most BWP debited per account within {@code window}
+ * @param window            length of the sliding window
+ * @param newPayeeThreshold largest first transfer allowed to an account not paid before
+ */
+public record VelocityRules(int maxDebits, double maxDebitAmount, Duration window, double newPayeeThreshold) {
+
+    public VelocityRules {
+        if (maxDebits < 0 || maxDebitAmount < 0 || newPayeeThreshold < 0) {
+            throw new IllegalArgumentException("Velocity limits cannot be negative");
+        }
+        if (window == null || window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Velocity window must be positive");
+        }
+    }
+}
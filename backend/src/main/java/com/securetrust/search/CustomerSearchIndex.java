@@ -0,0 +1,293 @@
+package com.securetrust.search;
+
+import com.securetrust.config.StartupOrder;
+import com.securetrust.event.AccountChangedEvent;
+import com.securetrust.event.CustomerChangedEvent;
+import com.securetrust.sharding.Shards;
+import com.securetrust.model.CustomerType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * In-memory prefix index over customers and their accounts for typeahead search.
+ *
+ * Every searchable term (each word of the full name, the full name itself,
+ * email, phone number, customer ID and account numbers) is stored in a
+ * concurrent skip list as {@code term + '\0' + id}. A prefix query is a
+ * {@code subMap} range scan that stops after {@code limit} distinct customers,
+ * so its cost depends on the result size, not on the number of customers.
+ *
+ * The index is loaded at startup, from every shard of a sharded ledger, and
+ * kept current from committed customer and account changes. Each shard's
+ * customer id range is cut into chunks that a pool of workers reads and
+ * indexes, so the reads of one chunk overlap with those of the others.
+ */
+@Component
+public class CustomerSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerSearchIndex.class);
+
+    private static final char SEPARATOR = '\0';
+    private static final int MAX_LIMIT = 50;
+
+    private static final String CUSTOMER_COLUMNS =
+        "SELECT id, customer_id, first_name, surname, company_name, customer_type, email, phone_number FROM customer";
+
+    /**
+     * One typeahead suggestion. {@code matched} is the indexed term the query matched.
+     */
+    public record Hit(long id, String customerId, String name, String email, List<String> accountNumbers,
+                      String matched) { }
+
+    private record Document(long id, String customerId, String name, String email, String phone,
+                            List<String> accountNumbers) { }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Shards shards;
+    private final int loadWorkers;
+    private final int loadChunk;
+    private final ConcurrentSkipListMap<String, Document> terms = new ConcurrentSkipListMap<>();
+    private final Map<Long, Document> documents = new ConcurrentHashMap<>();
+
+    // Customers changed while the initial load was running, re-read once it finishes
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private volatile boolean loading = true;
+
+    public CustomerSearchIndex(JdbcTemplate jdbcTemplate, Shards shards,
+                               @Value("${securetrust.customer-search.load-workers:0}") int loadWorkers,
+                               @Value("${securetrust.customer-search.load-chunk:10000}") int loadChunk) {
+        if (loadChunk < 1) {
+            throw new IllegalArgumentException("securetrust.customer-search.load-chunk must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.shards = shards;
+        this.loadWorkers = loadWorkers > 0 ? loadWorkers : Math.min(4, Runtime.getRuntime().availableProcessors());
+        this.loadChunk = loadChunk;
+    }
+
+    /**
+     * Return up to {@code limit} customers with a term starting with {@code query},
+     * ordered by the matched term.
+     */
+    public List<Hit> search(String query, int limit) {
+        String prefix = normalize(query);
+        if (prefix.isEmpty()) {
+            return List.of();
+        }
+        int max = Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        ConcurrentNavigableMap<String, Document> range = terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        Set<Long> seen = new HashSet<>();
+        List<Hit> hits = new ArrayList<>(max);
+        for (Map.Entry<String, Document> entry : range.entrySet()) {
+            Document document = entry.getValue();
+            if (!seen.add(document.id())) {
+                continue;
+            }
+            String key = entry.getKey();
+            String matched = key.substring(0, key.lastIndexOf(SEPARATOR));
+            hits.add(new Hit(document.id(), document.customerId(), document.name(), document.email(),
+                document.accountNumbers(), matched));
+            if (hits.size() == max) {
+                break;
+            }
+        }
+        return hits;
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(StartupOrder.LOAD)
+    public void load() {
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(loadWorkers,
+            new CustomizableThreadFactory("search-load-"));
+        try {
+            List<Future<?>> chunks = new ArrayList<>();
+            for (int shard = 0; shard < shards.count(); shard++) {
+                int on = shard;
+                long[] range = shards.read(on, () -> jdbcTemplate.queryForObject(
+                    "SELECT MIN(id), MAX(id) FROM customer",
+                    (rs, row) -> rs.getObject(1) != null ? new long[] {rs.getLong(1), rs.getLong(2)} : null));
+                if (range == null) {
+                    continue;
+                }
+                for (long from = range[0]; from <= range[1]; from += loadChunk) {
+                    long lower = from;
+                    long upper = Math.min(range[1] + 1, from + loadChunk);
+                    chunks.add(executor.submit(() -> shards.read(on, () -> loadRange(lower, upper))));
+                }
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Customer search index failed to load", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Customer search index load interrupted", e);
+        } finally {
+            // Chunks left running after a failure finish on their own; an interrupt could close H2
+            executor.shutdown();
+        }
+        loading = false;
+        reindexDirty();
+        log.info("Customer search index loaded {} customers ({} terms) in {} ms",
+            documents.size(), terms.size(), System.currentTimeMillis() - start);
+    }
+
+    // Customers with ids in [from, to), indexed as their rows are read
+    private Void loadRange(long from, long to) {
+        Map<Long, List<String>> accountNumbers = new HashMap<>();
+        jdbcTemplate.query("SELECT customer_id, account_number FROM account WHERE customer_id >= ? AND customer_id < ?",
+            rs -> {
+                accountNumbers.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(rs.getString(2));
+            }, from, to);
+        jdbcTemplate.query(CUSTOMER_COLUMNS + " WHERE id >= ? AND id < ?",
+            rs -> {
+                put(document(rs, accountNumbers.getOrDefault(rs.getLong("id"), List.of())));
+            }, from, to);
+        return null;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCustomerChanged(CustomerChangedEvent event) {
+        markDirty(event.customerId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountChanged(AccountChangedEvent event) {
+        markDirty(event.customerId());
+    }
+
+    private void markDirty(Long customerId) {
+        if (customerId == null) {
+            return;
+        }
+        dirty.add(customerId);
+        if (!loading) {
+            reindexDirty();
+        }
+    }
+
+    private void reindexDirty() {
+        for (Long id : dirty) {
+            if (dirty.remove(id)) {
+                reindex(id);
+            }
+        }
+    }
+
+    /**
+     * Re-read one customer and its accounts and replace its index entries.
+     */
+    private void reindex(long id) {
+        List<Document> found = shards.read(shards.ofCustomerId(id), () -> {
+            List<String> accounts = jdbcTemplate.queryForList(
+                "SELECT account_number FROM account WHERE customer_id = ?", String.class, id);
+            return jdbcTemplate.query(CUSTOMER_COLUMNS + " WHERE id = ?", (rs, row) -> document(rs, accounts), id);
+        });
+        if (found.isEmpty()) {
+            remove(id);
+        } else {
+            put(found.get(0));
+        }
+    }
+
+    // Term updates run inside compute so concurrent writes to one customer cannot interleave
+    private void put(Document document) {
+        documents.compute(document.id(), (id, previous) -> {
+            if (previous != null) {
+                terms(previous).forEach(term -> terms.remove(key(term, id)));
+            }
+            terms(document).forEach(term -> terms.put(key(term, id), document));
+            return document;
+        });
+    }
+
+    private void remove(long id) {
+        documents.computeIfPresent(id, (documentId, previous) -> {
+            terms(previous).forEach(term -> terms.remove(key(term, documentId)));
+            return null;
+        });
+    }
+
+    private static Document document(ResultSet rs, List<String> accountNumbers) throws SQLException {
+        String customerId = rs.getString("customer_id");
+        String firstName = rs.getString("first_name");
+        String surname = rs.getString("surname");
+        String companyName = rs.getString("company_name");
+        String email = rs.getString("email");
+        String phone = rs.getString("phone_number");
+        boolean company = CustomerType.COMPANY.name().equals(rs.getString("customer_type"));
+        String name = company && companyName != null && !companyName.isEmpty()
+            ? companyName
+            : String.join(" ", nonNull(firstName), nonNull(surname)).trim();
+        return new Document(rs.getLong("id"), customerId, name, email, phone, accountNumbers);
+    }
+
+    // Derived on demand rather than stored, which keeps the index to one string per term
+    private static Set<String> terms(Document document) {
+        Set<String> termSet = new LinkedHashSet<>();
+        addTerm(termSet, document.name());
+        for (String word : document.name().split("\\s+")) {
+            addTerm(termSet, word);
+        }
+        addTerm(termSet, document.email());
+        addTerm(termSet, document.customerId());
+        addTerm(termSet, document.phone());
+        if (document.phone() != null) {
+            addTerm(termSet, document.phone().replaceAll("\\D", ""));
+        }
+        document.accountNumbers().forEach(accountNumber -> addTerm(termSet, accountNumber));
+        return termSet;
+    }
+
+    private static void addTerm(Set<String> termSet, String value) {
+        String term = normalize(value);
+        if (!term.isEmpty()) {
+            termSet.add(term);
+        }
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT).replace(SEPARATOR, ' ');
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String key(String term, long id) {
+        return term + SEPARATOR + id;
+    }
+}
@@ -1,12 +1,20 @@
 package com.securetrust.service;
 
+import com.securetrust.event.AccountChangedEvent;
 import com.securetrust.model.Account;
 import com.securetrust.model.AccountType;
 import com.securetrust.model.Customer;
+import com.securetrust.offboarding.Offboarding;
+import com.securetrust.profiling.BankingOperationEvent;
 import com.securetrust.repository.AccountRepository;
 import com.securetrust.repository.CustomerRepository;
+import com.securetrust.service.ConcurrencyLimiter.Lane;
+import com.securetrust.sharding.ShardMap;
+import com.securetrust.sharding.Shards;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -15,11 +23,23 @@ public class AccountService {
     
     private final AccountRepository accountRepository;
     private final CustomerRepository customerRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final Offboarding offboarding;
+    private final Shards shards;
+    private final TransactionTemplate transactionTemplate;
     private final AtomicLong accountCounter = new AtomicLong(100);
     
-    public AccountService(AccountRepository accountRepository, CustomerRepository customerRepository) {
+    public AccountService(AccountRepository accountRepository, CustomerRepository customerRepository,
+                          ApplicationEventPublisher eventPublisher, ConcurrencyLimiter concurrencyLimiter,
+                          Offboarding offboarding, Shards shards, PlatformTransactionManager transactionManager) {
         this.accountRepository = accountRepository;
         this.customerRepository = customerRepository;
+        this.eventPublisher = eventPublisher;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.offboarding = offboarding;
+        this.shards = shards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
     
     /**
@@ -27,13 +47,26 @@ public class AccountService {
      * Validates business rules based on account type:
      * - Investment accounts require minimum BWP 500 initial deposit
      * - Cheque accounts require employer information
+     * The account is opened on the customer's shard, and on a sharded ledger
+     * its number names that shard.
      */
-    @Transactional
     public Account openAccount(Long customerId, AccountType accountType, Double initialDeposit, 
                                String branch, String employer, String employerAddress) {
-        
+        return concurrencyLimiter.call(Lane.INTERACTIVE, () ->
+            shards.on(shards.ofCustomerId(customerId), () -> transactionTemplate.execute(status ->
+                BankingOperationEvent.record("OPEN_ACCOUNT", initialDeposit, event -> {
+                    event.accountType(accountType);
+                    return createAccount(customerId, accountType, initialDeposit, branch, employer, employerAddress,
+                        event);
+                }))));
+    }
+    
+    private Account createAccount(Long customerId, AccountType accountType, Double initialDeposit,
+                                  String branch, String employer, String employerAddress,
+                                  BankingOperationEvent event) {
         Customer customer = customerRepository.findById(customerId)
             .orElseThrow(() -> new IllegalArgumentException("Customer not found"));
+        offboarding.checkCustomerOpen(customerId);
         
         // Validate initial deposit for Investment account
         if (accountType == AccountType.INVESTMENT && (initialDeposit == null || initialDeposit < 500.0)) {
@@ -66,11 +99,11 @@ public class AccountService {
                 prefix = "ACC";
         }
         
-        String accountNumber = prefix + String.format("%03d", accountCounter.incrementAndGet());
+        String accountNumber = accountNumber(prefix);
         
         // Ensure unique account number
         while (accountRepository.findByAccountNumber(accountNumber).isPresent()) {
-            accountNumber = prefix + String.format("%03d", accountCounter.incrementAndGet());
+            accountNumber = accountNumber(prefix);
         }
         
         Account account = new Account();
@@ -85,21 +118,24 @@ public class AccountService {
             account.setEmployerAddress(employerAddress);
         }
         
-        return accountRepository.save(account);
+        Account saved = accountRepository.save(account);
+        event.rows(1);
+        eventPublisher.publishEvent(new AccountChangedEvent(accountNumber, customerId, AccountChangedEvent.Change.OPENED));
+        return saved;
+    }
+    
+    private String accountNumber(String prefix) {
+        long sequence = accountCounter.incrementAndGet();
+        return shards.isSharded()
+            ? ShardMap.accountNumber(prefix, shards.current(), sequence)
+            : prefix + String.format("%03d", sequence);
     }
     
     /**
-     * Close an account (soft delete - set balance to 0).
+     * Close an account: its balance must not be positive. The account and its
+     * transactions are deleted in the background; the job reports progress.
      */
-    @Transactional
-    public void closeAccount(String accountNumber) {
-        Account account = accountRepository.findByAccountNumber(accountNumber)
-            .orElseThrow(() -> new IllegalArgumentException("Account not found"));
-        
-        if (account.getBalance() > 0) {
-            throw new IllegalArgumentException("Cannot close account with positive balance. Please withdraw funds first.");
-        }
-        
-        accountRepository.delete(account);
+    public Offboarding.Job closeAccount(String accountNumber) {
+        return concurrencyLimiter.call(Lane.INTERACTIVE, () -> offboarding.closeAccount(accountNumber));
     }
 }
@@ -2,6 +2,7 @@ package com.securetrust.service;
 
 import com.securetrust.model.Customer;
 import com.securetrust.repository.CustomerRepository;
+import com.securetrust.sharding.Shards;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
@@ -10,10 +11,12 @@ import java.util.Optional;
 public class AuthService {
     private final CustomerRepository customerRepository;
     private final PasswordService passwordService;
+    private final Shards shards;
     
-    public AuthService(CustomerRepository customerRepository, PasswordService passwordService) {
+    public AuthService(CustomerRepository customerRepository, PasswordService passwordService, Shards shards) {
         this.customerRepository = customerRepository;
         this.passwordService = passwordService;
+        this.shards = shards;
     }
     
     public boolean login(String email, String password) {
@@ -25,7 +28,7 @@ public class AuthService {
     }
     
     public Optional<Customer> loginAsCustomer(String email, String password) {
-        Optional<Customer> customer = customerRepository.findByEmail(email);
+        Optional<Customer> customer = findByEmail(email);
         if (customer.isPresent() && customer.get().getPassword() != null) {
             if (passwordService.verifyPassword(password, customer.get().getPassword())) {
                 return customer;
@@ -33,4 +36,13 @@ public class AuthService {
         }
         return Optional.empty();
     }
+    
+    /**
+     * The customer with this email, on whichever shard it lives.
+     */
+    public Optional<Customer> findByEmail(String email) {
+        return shards.readEach(() -> customerRepository.findByEmail(email)).stream()
+            .flatMap(Optional::stream)
+            .findFirst();
+    }
 }
@@ -0,0 +1,283 @@
+package com.securetrust.service;
+
+import com.securetrust.archive.ArchivedTransaction;
+import com.securetrust.archive.TransactionArchive;
+import com.securetrust.event.AccountChangedEvent;
+import com.securetrust.event.LedgerChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Balance-over-time series for charts, downsampled on the server.
+ *
+ * An account's {@code balance_after} history is read straight into primitive
+ * arrays (no entities) and kept in a small per-account cache. A committed
+ * ledger change marks the account stale, cached or not, and the next request
+ * re-reads only the recent end of the series and replaces it; a change
+ * committed while the account was first loading is picked up the same way.
+ * Each request then binary-searches
+ * the requested range and reduces it with Largest-Triangle-Three-Buckets,
+ * which keeps the peaks and troughs a line chart needs while returning a fixed
+ * number of points however busy the account is. Months moved to the {@link TransactionArchive} are read
+ * from there when an account is first loaded.
+ */
+@Service
+public class BalanceHistoryService {
+
+    private static final int FETCH_SIZE = 1000;
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    /**
+     * Points of a balance series; {@code timestamps} are epoch milliseconds.
+     */
+    public record BalanceSeries(String accountNumber, int sourcePoints, long[] timestamps, double[] balances) { }
+
+    // Full history of one account in time order as of readAt (epoch ms); replaced on refresh, never mutated
+    private record History(long accountId, long readAt, long[] timestamps, double[] balances, int size) { }
+
+    private static final class Entry {
+        final History history;
+        volatile long lastAccess = System.nanoTime();
+
+        Entry(History history) {
+            this.history = history;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionArchive archive;
+    private final int cacheAccounts;
+    private final long refreshWindowMillis;
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    // At most one number per account; an uncached account's mark is cleared when it is loaded
+    private final Set<String> stale = ConcurrentHashMap.newKeySet();
+
+    public BalanceHistoryService(JdbcTemplate jdbcTemplate, TransactionArchive archive,
+                                 @Value("${securetrust.balance-history.cache-accounts:500}") int cacheAccounts,
+                                 @Value("${securetrust.balance-history.refresh-window:PT1M}") Duration refreshWindow) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.archive = archive;
+        this.cacheAccounts = cacheAccounts;
+        this.refreshWindowMillis = refreshWindow.toMillis();
+    }
+
+    /**
+     * Balance after each transaction of the account in {@code [from, to)},
+     * downsampled to at most {@code maxPoints} points.
+     */
+    public BalanceSeries history(String accountNumber, LocalDateTime from, LocalDateTime to, int maxPoints) {
+        if (maxPoints < 3) {
+            throw new IllegalArgumentException("At least 3 points are required");
+        }
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("Start of the range must be before its end");
+        }
+
+        History history = current(accountNumber);
+        int start = lowerBound(history.timestamps(), history.size(), Timestamp.valueOf(from).getTime());
+        int end = lowerBound(history.timestamps(), history.size(), Timestamp.valueOf(to).getTime());
+        return downsample(accountNumber, history.timestamps(), history.balances(), start, end - start, maxPoints);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLedgerChanged(LedgerChangedEvent event) {
+        // Whether cached or not: the account may be loading, and the load may have missed the change
+        stale.addAll(event.accountNumbers());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountChanged(AccountChangedEvent event) {
+        cache.remove(event.accountNumber());
+        stale.remove(event.accountNumber());
+    }
+
+    private History current(String accountNumber) {
+        Entry entry = cache.get(accountNumber);
+        History history;
+        if (entry == null) {
+            // Cleared before the query, so a change it misses marks the account again
+            stale.remove(accountNumber);
+            history = loadAll(accountNumber);
+        } else if (stale.remove(accountNumber)) {
+            history = refresh(entry.history);
+        } else {
+            entry.lastAccess = System.nanoTime();
+            return entry.history;
+        }
+
+        if (!cache.containsKey(accountNumber) && cache.size() >= cacheAccounts) {
+            cache.entrySet().stream()
+                .min(Comparator.comparingLong(e -> e.getValue().lastAccess))
+                .ifPresent(eldest -> cache.remove(eldest.getKey(), eldest.getValue()));
+        }
+        cache.put(accountNumber, new Entry(history));
+        return history;
+    }
+
+    private History loadAll(String accountNumber) {
+        List<Long> ids = jdbcTemplate.queryForList(
+            "SELECT id FROM account WHERE account_number = ?", Long.class, accountNumber);
+        if (ids.isEmpty()) {
+            throw new IllegalArgumentException("Account not found");
+        }
+        long accountId = ids.get(0);
+        long readAt = System.currentTimeMillis();
+        SeriesBuffer rows = new SeriesBuffer();
+        LocalDateTime archivedBefore = archive.archivedBefore();
+        if (archivedBefore != null) {
+            for (ArchivedTransaction row : archive.history(accountId)) {
+                if (row.balanceAfter() != null) {
+                    rows.add(row.transactionDate(), row.balanceAfter());
+                }
+            }
+        }
+        query(rows,
+            "SELECT t.transaction_date, t.balance_after FROM transaction t "
+                + "WHERE t.account_id = ? AND t.transaction_date >= ? AND t.balance_after IS NOT NULL "
+                + "ORDER BY t.transaction_date",
+            accountId, Timestamp.valueOf(archivedBefore != null ? archivedBefore : BEGINNING));
+        return new History(accountId, readAt, rows.timestamps, rows.balances, rows.size);
+    }
+
+    /**
+     * Re-read the rows stamped within {@code refresh-window} before
+     * {@code history} was read, and everything after, and replace that end of
+     * the series with them. Neither ids nor stamps follow commit order: a row
+     * gets both before its transaction commits, so a row committed after the
+     * last read can sort before rows that read returned. The window covers the
+     * time between stamping a row and committing it.
+     */
+    private History refresh(History history) {
+        long readAt = System.currentTimeMillis();
+        long cutoff = history.readAt() - refreshWindowMillis;
+        SeriesBuffer rows = query(new SeriesBuffer(),
+            "SELECT t.transaction_date, t.balance_after FROM transaction t "
+                + "WHERE t.account_id = ? AND t.transaction_date >= ? AND t.balance_after IS NOT NULL "
+                + "ORDER BY t.transaction_date",
+            history.accountId(), new Timestamp(cutoff));
+
+        int kept = lowerBound(history.timestamps(), history.size(), cutoff);
+        int size = kept + rows.size;
+        long[] timestamps = Arrays.copyOf(history.timestamps(), size);
+        double[] balances = Arrays.copyOf(history.balances(), size);
+        System.arraycopy(rows.timestamps, 0, timestamps, kept, rows.size);
+        System.arraycopy(rows.balances, 0, balances, kept, rows.size);
+        return new History(history.accountId(), readAt, timestamps, balances, size);
+    }
+
+    private SeriesBuffer query(SeriesBuffer buffer, String sql, Object... parameters) {
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(sql);
+            statement.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            return statement;
+        }, rs -> {
+            buffer.add(rs.getTimestamp(1).getTime(), rs.getDouble(2));
+        });
+        return buffer;
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets over {@code x[offset, offset + length)}: keep the
+     * first and last point and, from each of the {@code threshold - 2} buckets in
+     * between, the point forming the largest triangle with the previously kept point
+     * and the average of the next bucket.
+     */
+    static BalanceSeries downsample(String accountNumber, long[] x, double[] y, int offset, int length,
+                                    int threshold) {
+        if (length <= threshold) {
+            return new BalanceSeries(accountNumber, length,
+                Arrays.copyOfRange(x, offset, offset + length), Arrays.copyOfRange(y, offset, offset + length));
+        }
+
+        long[] sampledX = new long[threshold];
+        double[] sampledY = new double[threshold];
+        double bucketSize = (double) (length - 2) / (threshold - 2);
+        int last = offset + length - 1;
+
+        int kept = offset;
+        sampledX[0] = x[offset];
+        sampledY[0] = y[offset];
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int start = offset + (int) (bucket * bucketSize) + 1;
+            int end = offset + (int) ((bucket + 1) * bucketSize) + 1;
+
+            int nextEnd = Math.min(offset + (int) ((bucket + 2) * bucketSize) + 1, last + 1);
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = end; i < nextEnd; i++) {
+                avgX += x[i];
+                avgY += y[i];
+            }
+            avgX /= nextEnd - end;
+            avgY /= nextEnd - end;
+
+            double keptX = x[kept];
+            double keptY = y[kept];
+            double maxArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((keptX - avgX) * (y[i] - keptY) - (keptX - x[i]) * (avgY - keptY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+
+            sampledX[bucket + 1] = x[chosen];
+            sampledY[bucket + 1] = y[chosen];
+            kept = chosen;
+        }
+
+        sampledX[threshold - 1] = x[last];
+        sampledY[threshold - 1] = y[last];
+        return new BalanceSeries(accountNumber, length, sampledX, sampledY);
+    }
+
+    // First index in sorted[0, size) whose value is >= key
+    private static int lowerBound(long[] sorted, int size, long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Growable primitive arrays for the rows of one query
+    private static final class SeriesBuffer {
+        long[] timestamps = new long[256];
+        double[] balances = new double[256];
+        int size;
+
+        void add(long timestamp, double balance) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                balances = Arrays.copyOf(balances, size * 2);
+            }
+            timestamps[size] = timestamp;
+            balances[size] = balance;
+            size++;
+        }
+    }
+}
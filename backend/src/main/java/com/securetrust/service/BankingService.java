@@ -1,32 +1,116 @@
 package com.securetrust.service;
 
+import com.securetrust.directory.AccountDirectory;
+import com.securetrust.event.LedgerChangedEvent;
 import com.securetrust.model.Account;
+import com.securetrust.model.AccountType;
+import com.securetrust.model.CustomerType;
 import com.securetrust.model.Transaction;
 import com.securetrust.model.TransactionType;
+import com.securetrust.offboarding.Offboarding;
+import com.securetrust.outbox.TransactionOutbox;
+import com.securetrust.profiling.BankingOperationEvent;
 import com.securetrust.repository.AccountRepository;
 import com.securetrust.repository.TransactionRepository;
+import com.securetrust.risk.VelocityGuard;
+import com.securetrust.service.ConcurrencyLimiter.Lane;
+import com.securetrust.sharding.CrossShardTransfers;
+import com.securetrust.sharding.Shards;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Service
 public class BankingService {
     
     private final AccountRepository accountRepository;
     private final TransactionRepository transactionRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final VelocityGuard velocityGuard;
+    private final GroupCommitter groupCommitter;
+    private final TransactionOutbox outbox;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final Offboarding offboarding;
+    private final AccountDirectory accountDirectory;
+    private final Shards shards;
+    private final CrossShardTransfers crossShardTransfers;
+    private final TransactionTemplate transactionTemplate;
     
-    public BankingService(AccountRepository accountRepository, TransactionRepository transactionRepository) {
+    public BankingService(AccountRepository accountRepository, TransactionRepository transactionRepository,
+                          ApplicationEventPublisher eventPublisher, VelocityGuard velocityGuard,
+                          GroupCommitter groupCommitter, TransactionOutbox outbox,
+                          ConcurrencyLimiter concurrencyLimiter, Offboarding offboarding,
+                          AccountDirectory accountDirectory, Shards shards, CrossShardTransfers crossShardTransfers,
+                          PlatformTransactionManager transactionManager) {
         this.accountRepository = accountRepository;
         this.transactionRepository = transactionRepository;
+        this.eventPublisher = eventPublisher;
+        this.velocityGuard = velocityGuard;
+        this.groupCommitter = groupCommitter;
+        this.outbox = outbox;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.offboarding = offboarding;
+        this.accountDirectory = accountDirectory;
+        this.shards = shards;
+        this.crossShardTransfers = crossShardTransfers;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
     
-    @Transactional
+    /*
+     * Deposits, withdrawals and transfers run through the GroupCommitter, which
+     * may apply them together with other requests in one transaction. They must
+     * therefore check every rule, throwing IllegalArgumentException, before
+     * changing any account. Each is recorded as a BankingOperationEvent, and
+     * each is admitted by the ConcurrencyLimiter's interactive lane first.
+     *
+     * On a sharded ledger each runs on the shard of its account; a transfer
+     * between accounts on different shards goes through CrossShardTransfers,
+     * and the amounts its prepared transfers hold are not available to
+     * withdrawals and transfers from the source account.
+     */
+    
     public Transaction deposit(String accountNumber, Double amount, String description) {
+        return concurrencyLimiter.call(Lane.INTERACTIVE, () -> BankingOperationEvent.record("DEPOSIT", amount,
+            event -> shards.on(shards.ofAccount(accountNumber),
+                () -> groupCommitter.execute(() -> applyDeposit(accountNumber, amount, description, event)))));
+    }
+    
+    public Transaction withdraw(String accountNumber, Double amount, String description) {
+        return concurrencyLimiter.call(Lane.INTERACTIVE, () -> BankingOperationEvent.record("WITHDRAWAL", amount,
+            event -> shards.on(shards.ofAccount(accountNumber),
+                () -> groupCommitter.execute(() -> applyWithdrawal(accountNumber, amount, description, event)))));
+    }
+    
+    public void transfer(String fromAccountNumber, String toAccountNumber, Double amount, String description) {
+        concurrencyLimiter.run(Lane.INTERACTIVE, () -> BankingOperationEvent.record("TRANSFER", amount, event -> {
+            int source = shards.ofAccount(fromAccountNumber);
+            if (source != shards.ofAccount(toAccountNumber)) {
+                crossShardTransfers.transfer(fromAccountNumber, toAccountNumber, amount, description, event);
+                return null;
+            }
+            return shards.on(source, () -> groupCommitter.execute(() -> {
+                applyTransfer(fromAccountNumber, toAccountNumber, amount, description, event);
+                return null;
+            }));
+        }));
+    }
+    
+    private Transaction applyDeposit(String accountNumber, Double amount, String description,
+                                     BankingOperationEvent event) {
         if (amount <= 0) {
             throw new IllegalArgumentException("Deposit amount must be positive");
         }
         
         Account account = accountRepository.findByAccountNumber(accountNumber)
             .orElseThrow(() -> new IllegalArgumentException("Account not found"));
+        event.accountType(account.getAccountType());
+        offboarding.checkOpen(accountNumber);
         
         account.setBalance(account.getBalance() + amount);
         accountRepository.save(account);
@@ -35,31 +119,40 @@ public class BankingService {
         transaction.setAccount(account);
         transaction.setType(TransactionType.DEPOSIT);
         transaction.setAmount(amount);
-        transaction.setDescription(description != null ? description : "Deposit");
+        transaction.setDescription(description);
         transaction.setCategory("Deposit");
         transaction.setBalanceAfter(account.getBalance());
         
-        return transactionRepository.save(transaction);
+        Transaction saved = transactionRepository.save(transaction);
+        outbox.transactionCreated(saved);
+        event.rows(2);
+        eventPublisher.publishEvent(LedgerChangedEvent.of(accountNumber));
+        return saved;
     }
     
-    @Transactional
-    public Transaction withdraw(String accountNumber, Double amount, String description) {
+    private Transaction applyWithdrawal(String accountNumber, Double amount, String description,
+                                        BankingOperationEvent event) {
         if (amount <= 0) {
             throw new IllegalArgumentException("Withdrawal amount must be positive");
         }
         
+        double held = held(accountNumber);
         Account account = accountRepository.findByAccountNumber(accountNumber)
             .orElseThrow(() -> new IllegalArgumentException("Account not found"));
+        event.accountType(account.getAccountType());
+        offboarding.checkOpen(accountNumber);
         
         // Savings accounts do not allow withdrawals per assignment requirements
         if (account.getAccountType() == com.securetrust.model.AccountType.SAVINGS) {
             throw new IllegalArgumentException("Withdrawals are not allowed from Savings accounts");
         }
         
-        if (account.getBalance() < amount) {
+        if (account.getBalance() - held < amount) {
             throw new IllegalArgumentException("Insufficient funds");
         }
         
+        velocityGuard.authorize(accountNumber, amount, null);
+        
         account.setBalance(account.getBalance() - amount);
         accountRepository.save(account);
         
@@ -67,15 +160,19 @@ public class BankingService {
         transaction.setAccount(account);
         transaction.setType(TransactionType.WITHDRAWAL);
         transaction.setAmount(amount);
-        transaction.setDescription(description != null ? description : "Withdrawal");
+        transaction.setDescription(description);
         transaction.setCategory("Withdrawal");
         transaction.setBalanceAfter(account.getBalance());
         
-        return transactionRepository.save(transaction);
+        Transaction saved = transactionRepository.save(transaction);
+        outbox.transactionCreated(saved);
+        event.rows(2);
+        eventPublisher.publishEvent(LedgerChangedEvent.of(accountNumber));
+        return saved;
     }
     
-    @Transactional
-    public void transfer(String fromAccountNumber, String toAccountNumber, Double amount, String description) {
+    private void applyTransfer(String fromAccountNumber, String toAccountNumber, Double amount, String description,
+                               BankingOperationEvent event) {
         if (amount <= 0) {
             throw new IllegalArgumentException("Transfer amount must be positive");
         }
@@ -84,16 +181,23 @@ public class BankingService {
             throw new IllegalArgumentException("Cannot transfer to the same account");
         }
         
+        // Locks both rows, in the same order for transfers either way between them
+        double held = shards.isSharded() ? crossShardTransfers.held(fromAccountNumber, toAccountNumber) : 0;
         Account fromAccount = accountRepository.findByAccountNumber(fromAccountNumber)
             .orElseThrow(() -> new IllegalArgumentException("Source account not found"));
+        event.accountType(fromAccount.getAccountType());
         
         Account toAccount = accountRepository.findByAccountNumber(toAccountNumber)
             .orElseThrow(() -> new IllegalArgumentException("Destination account not found"));
+        offboarding.checkOpen(fromAccountNumber);
+        offboarding.checkOpen(toAccountNumber);
         
-        if (fromAccount.getBalance() < amount) {
+        if (fromAccount.getBalance() - held < amount) {
             throw new IllegalArgumentException("Insufficient funds");
         }
         
+        velocityGuard.authorize(fromAccountNumber, amount, toAccountNumber);
+        
         // Debit from source account
         fromAccount.setBalance(fromAccount.getBalance() - amount);
         accountRepository.save(fromAccount);
@@ -102,11 +206,11 @@ public class BankingService {
         debitTxn.setAccount(fromAccount);
         debitTxn.setType(TransactionType.TRANSFER_OUT);
         debitTxn.setAmount(amount);
-        debitTxn.setDescription(description != null ? description : "Transfer to " + toAccountNumber);
+        debitTxn.setDescription(description);
         debitTxn.setCategory("Transfer");
         debitTxn.setBalanceAfter(fromAccount.getBalance());
         debitTxn.setReferenceAccount(toAccountNumber);
-        transactionRepository.save(debitTxn);
+        outbox.transactionCreated(transactionRepository.save(debitTxn));
         
         // Credit to destination account
         toAccount.setBalance(toAccount.getBalance() + amount);
@@ -116,17 +220,27 @@ public class BankingService {
         creditTxn.setAccount(toAccount);
         creditTxn.setType(TransactionType.TRANSFER_IN);
         creditTxn.setAmount(amount);
-        creditTxn.setDescription(description != null ? description : "Transfer from " + fromAccountNumber);
+        creditTxn.setDescription(description);
         creditTxn.setCategory("Transfer");
         creditTxn.setBalanceAfter(toAccount.getBalance());
         creditTxn.setReferenceAccount(fromAccountNumber);
-        transactionRepository.save(creditTxn);
+        outbox.transactionCreated(transactionRepository.save(creditTxn));
+        event.rows(4);
+        
+        eventPublisher.publishEvent(LedgerChangedEvent.of(fromAccountNumber, toAccountNumber));
+    }
+    
+    // Held by transfers to other shards; read first, as it locks the account row
+    private double held(String accountNumber) {
+        return shards.isSharded() ? crossShardTransfers.held(accountNumber) : 0;
     }
     
     public Double getAccountBalance(String accountNumber) {
-        Account account = accountRepository.findByAccountNumber(accountNumber)
-            .orElseThrow(() -> new IllegalArgumentException("Account not found"));
-        return account.getBalance();
+        return shards.read(shards.ofAccount(accountNumber), () -> {
+            Account account = accountRepository.findByAccountNumber(accountNumber)
+                .orElseThrow(() -> new IllegalArgumentException("Account not found"));
+            return account.getBalance();
+        });
     }
     
     /**
@@ -139,10 +253,16 @@ public class BankingService {
      *   - Company customers: 7.5% monthly interest
      * Cheque accounts: 0% (no interest - as per assignment)
      */
-    @Transactional
     public Transaction payInterest(String accountNumber) {
+        return concurrencyLimiter.call(Lane.BATCH, () ->
+            shards.on(shards.ofAccount(accountNumber), () -> transactionTemplate.execute(status ->
+                BankingOperationEvent.record("INTEREST", null, event -> applyInterest(accountNumber, event)))));
+    }
+    
+    private Transaction applyInterest(String accountNumber, BankingOperationEvent event) {
         Account account = accountRepository.findByAccountNumber(accountNumber)
             .orElseThrow(() -> new IllegalArgumentException("Account not found"));
+        event.accountType(account.getAccountType());
         
         double interestRate;
         String rateDescription;
@@ -154,7 +274,7 @@ public class BankingService {
                 break;
             case SAVINGS:
                 // Check if customer is company or individual
-                if (account.getCustomer().isCompany()) {
+                if (isCompany(account)) {
                     interestRate = 0.075; // 7.5% monthly for companies as per assignment
                     rateDescription = "7.5% (Company)";
                 } else {
@@ -169,7 +289,7 @@ public class BankingService {
                 break;
         }
         
-        if (interestRate == 0 || account.getBalance() <= 0) {
+        if (interestRate == 0 || account.getBalance() <= 0 || !offboarding.enter(accountNumber)) {
             return null; // No interest to pay
         }
         
@@ -185,22 +305,63 @@ public class BankingService {
         transaction.setCategory("Interest");
         transaction.setBalanceAfter(account.getBalance());
         
-        return transactionRepository.save(transaction);
+        Transaction saved = transactionRepository.save(transaction);
+        outbox.transactionCreated(saved);
+        event.rows(2);
+        eventPublisher.publishEvent(LedgerChangedEvent.of(accountNumber));
+        return saved;
+    }
+
+    // Owner type from the account directory; the customer entity only when the directory cannot say
+    private boolean isCompany(Account account) {
+        AccountDirectory.Entry entry = accountDirectory.find(account.getId());
+        if (entry != null && entry.ownerType() != null) {
+            return entry.ownerType() == CustomerType.COMPANY;
+        }
+        return account.getCustomer().isCompany();
     }
     
     /**
-     * Pay interest to all eligible accounts in the system.
+     * Pay interest to all eligible accounts in the system, as one batch
+     * operation of the ConcurrencyLimiter. A sharded ledger pays each shard's
+     * accounts in a transaction and batch operation of their own.
      */
-    @Transactional
     public int payInterestToAllAccounts() {
-        var accounts = accountRepository.findAll();
         int count = 0;
-        for (Account account : accounts) {
-            Transaction txn = payInterest(account.getAccountNumber());
-            if (txn != null) {
-                count++;
-            }
+        for (Map.Entry<Integer, List<String>> shard : interestBearingAccounts().entrySet()) {
+            count += concurrencyLimiter.call(Lane.BATCH, () -> shards.on(shard.getKey(), () ->
+                transactionTemplate.execute(status -> BankingOperationEvent.record("INTEREST_RUN", null, event -> {
+                    int paid = 0;
+                    for (String accountNumber : shard.getValue()) {
+                        Transaction txn = payInterest(accountNumber);
+                        if (txn != null) {
+                            paid++;
+                        }
+                    }
+                    event.rows(2 * paid);
+                    return paid;
+                }))));
         }
         return count;
     }
+    
+    // Read from the account directory when it is ready, instead of loading every account and its customer
+    private Map<Integer, List<String>> interestBearingAccounts() {
+        Map<Integer, List<String>> accountNumbers = new TreeMap<>();
+        accountNumbers.put(Shards.HOME, new ArrayList<>());
+        boolean listed = accountDirectory.forEach(entry -> {
+            if (entry.accountType() != AccountType.CHEQUE) {
+                add(accountNumbers, entry.accountNumber());
+            }
+        });
+        if (!listed) {
+            shards.readEach(accountRepository::findAll).forEach(accounts ->
+                accounts.forEach(account -> add(accountNumbers, account.getAccountNumber())));
+        }
+        return accountNumbers;
+    }
+    
+    private void add(Map<Integer, List<String>> byShard, String accountNumber) {
+        byShard.computeIfAbsent(shards.ofAccount(accountNumber), shard -> new ArrayList<>()).add(accountNumber);
+    }
 }
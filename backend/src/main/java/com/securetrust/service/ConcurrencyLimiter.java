@@ -0,0 +1,209 @@
+package com.securetrust.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive concurrency limits on the {@link BankingService} and
+ * {@link AccountService} entry points.
+ *
+ * Work is split into two lanes. Interactive work (deposits, withdrawals,
+ * transfers, opening and closing accounts) has priority. Batch work (the
+ * interest run, standing order batches) is only admitted while the
+ * interactive lane has room.
+ *
+ * Each lane limits how many operations may be in progress at once and adjusts
+ * that limit from the latency of the operations it completes (AIMD). While
+ * operations finish within the lane's {@code latency-target} and the lane is
+ * at least half full, the limit grows by one for every limit's worth of them.
+ * When an operation takes longer than the target, the limit shrinks by
+ * {@code backoff}, at most once per such latency. When the database slows
+ * down, the lanes shrink, and extra requests fail at once with a
+ * {@link LimitExceededException} instead of queueing for connections.
+ *
+ * Nested calls on a thread that already holds a permit (the interest run
+ * paying each account, a standing order transfer) run under that permit.
+ * Every entry point takes its permit before it starts its transaction (or
+ * hands the operation to the group committer), so a call that is shed has
+ * not taken a connection.
+ */
+@Component
+public class ConcurrencyLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+    public enum Lane { INTERACTIVE, BATCH }
+
+    /**
+     * Current state of one lane. {@code rejected} counts operations shed since startup.
+     */
+    public record LaneStatus(Lane lane, int limit, int inFlight, long admitted, long rejected, long slow,
+                             double lastLatencyMillis, long latencyTargetMillis) { }
+
+    /**
+     * Thrown when a lane is full; an {@link IllegalStateException}, so it surfaces like any other conflict.
+     */
+    public static final class LimitExceededException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        LimitExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private static final ThreadLocal<Lane> HELD = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final Map<Lane, LaneLimit> lanes = new EnumMap<>(Lane.class);
+
+    public ConcurrencyLimiter(
+            @Value("${securetrust.concurrency-limits.enabled:true}") boolean enabled,
+            @Value("${securetrust.concurrency-limits.backoff:0.9}") double backoff,
+            @Value("${securetrust.concurrency-limits.interactive.initial:20}") int interactiveInitial,
+            @Value("${securetrust.concurrency-limits.interactive.min:4}") int interactiveMin,
+            @Value("${securetrust.concurrency-limits.interactive.max:200}") int interactiveMax,
+            @Value("${securetrust.concurrency-limits.interactive.latency-target:PT0.25S}") Duration interactiveTarget,
+            @Value("${securetrust.concurrency-limits.batch.initial:2}") int batchInitial,
+            @Value("${securetrust.concurrency-limits.batch.min:1}") int batchMin,
+            @Value("${securetrust.concurrency-limits.batch.max:4}") int batchMax,
+            @Value("${securetrust.concurrency-limits.batch.latency-target:PT30S}") Duration batchTarget) {
+        if (backoff <= 0 || backoff >= 1) {
+            throw new IllegalArgumentException("securetrust.concurrency-limits.backoff must be between 0 and 1");
+        }
+        this.enabled = enabled;
+        lanes.put(Lane.INTERACTIVE, new LaneLimit(Lane.INTERACTIVE, interactiveInitial, interactiveMin,
+            interactiveMax, interactiveTarget, backoff));
+        lanes.put(Lane.BATCH, new LaneLimit(Lane.BATCH, batchInitial, batchMin, batchMax, batchTarget, backoff));
+    }
+
+    /**
+     * Run {@code work} if {@code lane} has room, otherwise reject it with a
+     * {@link LimitExceededException} straight away.
+     */
+    public <T> T call(Lane lane, Supplier<T> work) {
+        if (!enabled || HELD.get() != null) {
+            return work.get();
+        }
+        LaneLimit limit = lanes.get(lane);
+        int inFlightAtStart = lane == Lane.BATCH
+            ? limit.tryAcquireBehind(lanes.get(Lane.INTERACTIVE))
+            : limit.tryAcquire();
+        if (inFlightAtStart < 0) {
+            throw new LimitExceededException(lane == Lane.BATCH
+                ? "Batch work is deferred while the bank is busy, please try again later"
+                : "Too many banking operations in progress, please try again in a moment");
+        }
+        HELD.set(lane);
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            HELD.remove();
+            limit.release(System.nanoTime() - start, inFlightAtStart);
+        }
+    }
+
+    public void run(Lane lane, Runnable work) {
+        call(lane, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public List<LaneStatus> status() {
+        return lanes.values().stream().map(LaneLimit::status).toList();
+    }
+
+    private static final class LaneLimit {
+
+        private final Lane lane;
+        private final int min;
+        private final int max;
+        private final long targetNanos;
+        private final double backoff;
+        private double limit;
+        private int inFlight;
+        private long admitted;
+        private long rejected;
+        private long slow;
+        private long lastLatencyNanos;
+        private long lastDecreaseNanos;
+
+        LaneLimit(Lane lane, int initial, int min, int max, Duration target, double backoff) {
+            if (min < 1 || max < min || initial < min || initial > max) {
+                throw new IllegalArgumentException("securetrust.concurrency-limits." + lane.name().toLowerCase()
+                    + " needs 1 <= min <= initial <= max");
+            }
+            this.lane = lane;
+            this.min = min;
+            this.max = max;
+            this.targetNanos = target.toNanos();
+            this.backoff = backoff;
+            this.limit = initial;
+            this.lastDecreaseNanos = System.nanoTime();
+        }
+
+        /**
+         * Take a permit and return the number in flight before it, or -1 when the lane is full.
+         */
+        synchronized int tryAcquire() {
+            if (inFlight >= (int) limit) {
+                rejected++;
+                return -1;
+            }
+            admitted++;
+            return inFlight++;
+        }
+
+        /**
+         * Like {@link #tryAcquire}, but also only while {@code priority} has room.
+         */
+        int tryAcquireBehind(LaneLimit priority) {
+            boolean priorityFull;
+            synchronized (priority) {
+                priorityFull = priority.inFlight >= (int) priority.limit;
+            }
+            if (priorityFull) {
+                synchronized (this) {
+                    rejected++;
+                }
+                return -1;
+            }
+            return tryAcquire();
+        }
+
+        synchronized void release(long latencyNanos, int inFlightAtStart) {
+            inFlight--;
+            lastLatencyNanos = latencyNanos;
+            long now = System.nanoTime();
+            if (latencyNanos > targetNanos) {
+                slow++;
+                // Operations started before the last decrease already saw the smaller limit's effect
+                if (now - lastDecreaseNanos >= latencyNanos) {
+                    int before = (int) limit;
+                    limit = Math.max(min, limit * backoff);
+                    lastDecreaseNanos = now;
+                    if ((int) limit < before) {
+                        log.debug("{} concurrency limit {} -> {} after a {} ms operation", lane, before,
+                            (int) limit, latencyNanos / 1_000_000);
+                    }
+                }
+            } else if (inFlightAtStart * 2 >= (int) limit) {
+                limit = Math.min(max, limit + 1 / limit);
+            }
+        }
+
+        synchronized LaneStatus status() {
+            return new LaneStatus(lane, (int) limit, inFlight, admitted, rejected, slow,
+                lastLatencyNanos / 1_000_000.0, targetNanos / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.securetrust.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs ledger writes in a database transaction, optionally coalescing
+ * concurrent writes into one commit.
+ *
+ * With {@code securetrust.group-commit.enabled} off every operation gets its
+ * own transaction, as with {@code @Transactional}. With it on, callers queue
+ * their operation and block; a single committer thread takes up to
+ * {@code max-batch} queued operations, or whatever arrives within
+ * {@code max-wait-micros} of the first, and applies them one after another
+ * inside one transaction, so the commit and its log flush are paid once per
+ * batch. Each caller then receives its own result or exception.
+ *
+ * Operations must reject a request with {@link IllegalArgumentException}
+ * before changing anything; such a rule failure is handed back to its caller
+ * alone and the rest of the batch commits. Any other failure, including a
+ * failed commit, rolls the batch back and each operation is retried in a
+ * transaction of its own.
+ */
+@Component
+public class GroupCommitter {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupCommitter.class);
+
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Operation<?>> queue = new LinkedBlockingQueue<>();
+    private volatile Thread committer;
+
+    public GroupCommitter(PlatformTransactionManager transactionManager,
+                          @Value("${securetrust.group-commit.enabled:false}") boolean enabled,
+                          @Value("${securetrust.group-commit.max-batch:64}") int maxBatch,
+                          @Value("${securetrust.group-commit.max-wait-micros:500}") long maxWaitMicros) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("securetrust.group-commit.max-batch must be positive");
+        }
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+    }
+
+    @PostConstruct
+    void start() {
+        if (enabled) {
+            committer = Thread.ofPlatform().name("group-commit").daemon().start(this::commitLoop);
+            log.info("Group commit enabled: up to {} operations or {} us per transaction",
+                maxBatch, TimeUnit.NANOSECONDS.toMicros(maxWaitNanos));
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        Thread thread = committer;
+        committer = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        Operation<?> operation;
+        while ((operation = queue.poll()) != null) {
+            operation.result.completeExceptionally(new IllegalStateException("Application is shutting down"));
+        }
+    }
+
+    /**
+     * Run {@code operation} in a transaction and return its result. Calls made
+     * inside an existing transaction join it and are never queued; a rule
+     * failure then leaves that transaction usable, for its owner to commit or
+     * roll back.
+     */
+    public <T> T execute(Supplier<T> operation) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return operation.get();
+        }
+        if (committer == null) {
+            return transactionTemplate.execute(status -> operation.get());
+        }
+
+        Operation<T> queued = new Operation<>(operation);
+        queue.add(queued);
+        try {
+            return queued.result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Ledger write failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the ledger write", e);
+        }
+    }
+
+    private void commitLoop() {
+        List<Operation<?>> batch = new ArrayList<>(maxBatch);
+        while (committer != null) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    Operation<?> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Shutting down; anything already taken is still committed below
+            }
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Operation<?>> batch) {
+        long start = System.nanoTime();
+        Object[] results = new Object[batch.size()];
+        RuntimeException[] rejections = new RuntimeException[batch.size()];
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    try {
+                        results[i] = batch.get(i).operation.get();
+                    } catch (IllegalArgumentException e) {
+                        rejections[i] = e;
+                    }
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            log.warn("Group commit of {} operations failed, retrying them one by one", batch.size(), e);
+            batch.forEach(this::commitAlone);
+            return;
+        }
+        log.debug("Committed {} operations in {} us", batch.size(), (System.nanoTime() - start) / 1000);
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results[i], rejections[i]);
+        }
+    }
+
+    private void commitAlone(Operation<?> operation) {
+        try {
+            operation.complete(transactionTemplate.execute(status -> operation.operation.get()), null);
+        } catch (RuntimeException | Error e) {
+            operation.result.completeExceptionally(e);
+        }
+    }
+
+    private static final class Operation<T> {
+        final Supplier<T> operation;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Operation(Supplier<T> operation) {
+            this.operation = operation;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Object value, RuntimeException failure) {
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete((T) value);
+            }
+        }
+    }
+}
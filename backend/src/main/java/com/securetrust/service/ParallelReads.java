@@ -0,0 +1,210 @@
+package com.securetrust.service;
+
+import com.securetrust.datasource.ReplicaRoutingContext;
+import com.securetrust.monitoring.QueryStats;
+import com.securetrust.sharding.ShardContext;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs the independent reads behind one page concurrently, so the page waits
+ * for the slowest read instead of the sum of all of them.
+ *
+ * Each read runs on a small bounded pool in its own read-only transaction,
+ * with its own connection and persistence context. Entities come back
+ * detached, so a page may only use what was loaded eagerly or set on them.
+ * The caller's query statistics, replica routing and shard go with every read. When
+ * the queue is full the caller runs the read itself. A caller must not hold a
+ * transaction while it waits: each read needs a connection of its own.
+ *
+ * Overlapping reads only pays when they wait on I/O or there are cores to
+ * spare. On a single core with the embedded database it adds hand-offs
+ * under load, and threads can be set to 0 to run the reads one after
+ * another on the caller's thread.
+ *
+ * The reads of one {@link Batch} share a deadline
+ * (securetrust.parallel-reads.timeout), which is also the transaction timeout
+ * and so bounds every statement. When a read fails or the deadline passes,
+ * reads that have not started are cancelled and the first failure is thrown
+ * to the caller. Running reads are not interrupted, because an interrupt
+ * during file I/O closes an embedded H2 database; they stop at the statement
+ * timeout instead.
+ */
+@Service
+public class ParallelReads {
+
+    private final PlatformTransactionManager transactionManager;
+    private final Duration timeout;
+    // Null when threads is 0: reads run on the caller's thread
+    private final ThreadPoolExecutor executor;
+
+    public ParallelReads(PlatformTransactionManager transactionManager,
+                         @Value("${securetrust.parallel-reads.threads:4}") int threads,
+                         @Value("${securetrust.parallel-reads.queue:64}") int queue,
+                         @Value("${securetrust.parallel-reads.timeout:PT5S}") Duration timeout) {
+        if (threads < 0 || queue < 1) {
+            throw new IllegalArgumentException("securetrust.parallel-reads.threads must not be negative and "
+                + "queue must be positive");
+        }
+        this.transactionManager = transactionManager;
+        this.timeout = timeout;
+        if (threads > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("page-read-");
+            threadFactory.setDaemon(true);
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queue), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Start a set of reads sharing one deadline. Close it when the page is done with it.
+     */
+    public Batch batch() {
+        return new Batch(System.nanoTime() + timeout.toNanos());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // No interrupts, for the same reason as cancelled reads
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Reads submitted for one page.
+     */
+    public final class Batch implements AutoCloseable {
+
+        private final long deadline;
+        private final List<FutureTask<?>> tasks = new CopyOnWriteArrayList<>();
+        private volatile RuntimeException failure;
+
+        private Batch(long deadline) {
+            this.deadline = deadline;
+        }
+
+        /**
+         * Start {@code read} and return a handle to its result.
+         */
+        public <T> Read<T> submit(Supplier<T> read) {
+            QueryStats stats = QueryStats.current();
+            ReplicaRoutingContext routing = ReplicaRoutingContext.current();
+            Integer shard = ShardContext.current();
+            FutureTask<T> task = new FutureTask<>(() -> {
+                // The caller may run the read itself, so restore its context afterwards
+                QueryStats previousStats = QueryStats.current();
+                ReplicaRoutingContext previousRouting = ReplicaRoutingContext.current();
+                Integer previousShard = ShardContext.current();
+                QueryStats.bind(stats);
+                ReplicaRoutingContext.bind(routing);
+                ShardContext.bind(shard);
+                try {
+                    return inTransaction(read);
+                } catch (RuntimeException e) {
+                    fail(e);
+                    throw e;
+                } finally {
+                    QueryStats.bind(previousStats);
+                    ReplicaRoutingContext.bind(previousRouting);
+                    ShardContext.bind(previousShard);
+                }
+            });
+            tasks.add(task);
+            if (executor != null) {
+                executor.execute(task);
+            } else {
+                task.run();
+            }
+            return new Read<>(this, task);
+        }
+
+        /**
+         * Cancel whatever has not started yet.
+         */
+        @Override
+        public void close() {
+            tasks.forEach(task -> task.cancel(false));
+        }
+
+        private <T> T inTransaction(Supplier<T> read) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw timedOut();
+            }
+            TransactionTemplate template = new TransactionTemplate(transactionManager);
+            template.setReadOnly(true);
+            template.setTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + 999_999_999)));
+            return template.execute(status -> read.get());
+        }
+
+        private void fail(RuntimeException e) {
+            if (failure == null) {
+                failure = e;
+            }
+            close();
+        }
+
+        private IllegalStateException timedOut() {
+            return new IllegalStateException("Page reads did not finish within " + timeout.toMillis() + " ms");
+        }
+    }
+
+    /**
+     * Pending result of one read.
+     */
+    public static final class Read<T> {
+
+        private final Batch batch;
+        private final FutureTask<T> task;
+
+        private Read(Batch batch, FutureTask<T> task) {
+            this.batch = batch;
+            this.task = task;
+        }
+
+        /**
+         * Wait for the result until the batch deadline; rethrows the read's own failure, or
+         * the failure that cancelled it.
+         */
+        public T get() {
+            try {
+                return task.get(Math.max(0, batch.deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new IllegalStateException("Page read failed", e.getCause());
+            } catch (CancellationException e) {
+                RuntimeException failure = batch.failure;
+                throw failure != null ? failure : new IllegalStateException("Page read was cancelled", e);
+            } catch (TimeoutException e) {
+                IllegalStateException timedOut = batch.timedOut();
+                batch.fail(timedOut);
+                throw timedOut;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.close();
+                throw new IllegalStateException("Interrupted while waiting for page reads", e);
+            }
+        }
+    }
+}
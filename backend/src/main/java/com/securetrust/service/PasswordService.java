@@ -1,24 +1,82 @@
 package com.securetrust.service;
 
+import com.securetrust.profiling.PasswordHashEvent;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * BCrypt hashing and verification.
+ *
+ * A BCrypt round is tens of milliseconds of pure CPU. When requests run on
+ * virtual threads that would occupy a carrier thread and stall every other
+ * request scheduled on it, so in that mode the work is handed to a small pool
+ * of platform threads and the calling virtual thread parks until it is done.
+ */
 @Service
 public class PasswordService {
-    
+
     private final BCryptPasswordEncoder encoder = new BCryptPasswordEncoder();
-    
+    // Null when requests run on platform threads: hash on the caller's thread
+    private final ExecutorService hashingExecutor;
+
+    public PasswordService(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                           @Value("${securetrust.password.hashing-threads:0}") int hashingThreads) {
+        if (virtualThreads) {
+            int threads = hashingThreads > 0 ? hashingThreads : Runtime.getRuntime().availableProcessors();
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("bcrypt-");
+            threadFactory.setDaemon(true);
+            this.hashingExecutor = Executors.newFixedThreadPool(threads, threadFactory);
+        } else {
+            this.hashingExecutor = null;
+        }
+    }
+
     public String hashPassword(String plainPassword) {
         if (plainPassword == null || plainPassword.isEmpty()) {
             return null;
         }
-        return encoder.encode(plainPassword);
+        return PasswordHashEvent.record("HASH", hashingExecutor != null,
+            () -> compute(() -> encoder.encode(plainPassword)));
     }
-    
+
     public boolean verifyPassword(String plainPassword, String hashedPassword) {
         if (plainPassword == null || hashedPassword == null) {
             return false;
         }
-        return encoder.matches(plainPassword, hashedPassword);
+        return PasswordHashEvent.record("VERIFY", hashingExecutor != null,
+            () -> compute(() -> encoder.matches(plainPassword, hashedPassword)));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (hashingExecutor != null) {
+            hashingExecutor.shutdownNow();
+        }
+    }
+
+    private <T> T compute(Callable<T> work) {
+        try {
+            return hashingExecutor == null ? work.call() : hashingExecutor.submit(work).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing password", e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Password hashing failed", e);
+        }
     }
 }
@@ -0,0 +1,128 @@
+package com.securetrust.service;
+
+import com.securetrust.archive.ArchivedTransaction;
+import com.securetrust.archive.TransactionArchive;
+import com.securetrust.model.Account;
+import com.securetrust.model.Transaction;
+import com.securetrust.repository.AccountRepository;
+import com.securetrust.repository.TransactionRepository;
+import com.securetrust.sharding.Shards;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Transaction history across the hot table and the {@link TransactionArchive}.
+ *
+ * Rows from {@link TransactionArchive#archivedBefore()} onwards come from the
+ * table; the archive is only read when the requested range starts earlier.
+ * Archived rows are returned as detached {@link Transaction}s, newest first
+ * like the repository queries.
+ */
+@Service
+public class TransactionHistoryService {
+    
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(9999, 12, 31, 0, 0);
+    
+    private final TransactionRepository transactionRepository;
+    private final AccountRepository accountRepository;
+    private final TransactionArchive archive;
+    private final Shards shards;
+    
+    public TransactionHistoryService(TransactionRepository transactionRepository,
+                                     AccountRepository accountRepository,
+                                     TransactionArchive archive,
+                                     Shards shards) {
+        this.transactionRepository = transactionRepository;
+        this.accountRepository = accountRepository;
+        this.archive = archive;
+        this.shards = shards;
+    }
+    
+    /**
+     * The ten latest transactions of the ledger: on a sharded ledger, the
+     * latest of every shard's ten latest.
+     */
+    public List<Transaction> recentTransactions() {
+        if (!shards.isSharded()) {
+            return transactionRepository.findTop10ByOrderByTransactionDateDesc();
+        }
+        return shards.readEach(transactionRepository::findTop10ByOrderByTransactionDateDesc).stream()
+            .flatMap(List::stream)
+            .sorted(Comparator.comparing(Transaction::getTransactionDate).reversed())
+            .limit(10)
+            .toList();
+    }
+    
+    /**
+     * Transactions of an account dated in {@code [from, to)}; {@code null} bounds are open.
+     */
+    public List<Transaction> accountHistory(String accountNumber, LocalDateTime from, LocalDateTime to) {
+        LocalDateTime start = from != null ? from : BEGINNING;
+        LocalDateTime end = to != null ? to : END;
+        LocalDateTime archivedBefore = archive.archivedBefore();
+        
+        if (archivedBefore == null || !start.isBefore(archivedBefore)) {
+            return transactionRepository.findByAccountNumberBetween(accountNumber, start, end);
+        }
+        Account account = accountRepository.findByAccountNumber(accountNumber)
+            .orElseThrow(() -> new IllegalArgumentException("Account not found"));
+        List<Transaction> transactions = new ArrayList<>(end.isAfter(archivedBefore)
+            ? transactionRepository.findByAccountNumberBetween(accountNumber, archivedBefore, end)
+            : List.of());
+        List<ArchivedTransaction> archived = archive.history(account.getId(), start, min(end, archivedBefore));
+        for (int i = archived.size() - 1; i >= 0; i--) {
+            transactions.add(toTransaction(archived.get(i), account));
+        }
+        return transactions;
+    }
+    
+    /**
+     * Transactions of all of a customer's accounts dated in {@code [from, to)};
+     * {@code null} bounds are open.
+     */
+    public List<Transaction> customerHistory(Long customerId, LocalDateTime from, LocalDateTime to) {
+        LocalDateTime start = from != null ? from : BEGINNING;
+        LocalDateTime end = to != null ? to : END;
+        LocalDateTime archivedBefore = archive.archivedBefore();
+        
+        if (archivedBefore == null || !start.isBefore(archivedBefore)) {
+            return transactionRepository.findByCustomerIdBetween(customerId, start, end);
+        }
+        List<Transaction> transactions = new ArrayList<>(end.isAfter(archivedBefore)
+            ? transactionRepository.findByCustomerIdBetween(customerId, archivedBefore, end)
+            : List.of());
+        List<Transaction> older = new ArrayList<>();
+        for (Account account : accountRepository.findByCustomerId(customerId)) {
+            for (ArchivedTransaction row : archive.history(account.getId(), start, min(end, archivedBefore))) {
+                older.add(toTransaction(row, account));
+            }
+        }
+        older.sort(Comparator.comparing(Transaction::getTransactionDate).reversed());
+        transactions.addAll(older);
+        return transactions;
+    }
+    
+    private static Transaction toTransaction(ArchivedTransaction row, Account account) {
+        Transaction transaction = new Transaction();
+        transaction.setId(row.id());
+        transaction.setAccount(account);
+        transaction.setType(row.type());
+        transaction.setAmount(row.amount());
+        transaction.setDescription(row.description());
+        transaction.setCategory(row.category());
+        transaction.setTransactionDate(new Timestamp(row.transactionDate()).toLocalDateTime());
+        transaction.setBalanceAfter(row.balanceAfter());
+        transaction.setReferenceAccount(row.referenceAccount());
+        return transaction;
+    }
+    
+    private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
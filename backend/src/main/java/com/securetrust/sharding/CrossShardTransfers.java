@@ -0,0 +1,365 @@
+package com.securetrust.sharding;
+
+import com.securetrust.event.LedgerChangedEvent;
+import com.securetrust.model.Account;
+import com.securetrust.model.Transaction;
+import com.securetrust.model.TransactionType;
+import com.securetrust.offboarding.Offboarding;
+import com.securetrust.outbox.TransactionOutbox;
+import com.securetrust.profiling.BankingOperationEvent;
+import com.securetrust.repository.AccountRepository;
+import com.securetrust.repository.TransactionRepository;
+import com.securetrust.risk.VelocityGuard;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Transfers between accounts on different shards, which no database
+ * transaction can cover, as a two-phase commit coordinated by the source
+ * shard's {@code transfer_log}:
+ *
+ * <ol>
+ *   <li><b>Prepare</b> on the source: lock the account, check the usual rules
+ *       and log the transfer as PREPARED. From then on its amount is held:
+ *       withdrawals and transfers from the account only see the balance less
+ *       what is held.</li>
+ *   <li><b>Stage</b> on the destination: check that the account exists and is
+ *       open, and stage the credit in {@code transfer_credit}.</li>
+ *   <li><b>Commit</b> on the source: turn the log row COMMITTED and debit the
+ *       account in one transaction. This is the decision; once it commits the
+ *       transfer happens.</li>
+ *   <li><b>Apply</b> on the destination: credit the account and delete the
+ *       staged credit in one transaction.</li>
+ * </ol>
+ *
+ * A transfer that fails before the decision is aborted: its log row turns
+ * ABORTED and its staged credit, if any, is deleted. Every step commits before
+ * the next starts, so a crash leaves at most a PREPARED log row or a staged
+ * credit behind. {@link #recover()} resolves those once they are older than
+ * {@code in-doubt-timeout}: a PREPARED transfer is aborted, and a staged credit
+ * is applied if its transfer committed and deleted if it aborted. Decided log
+ * rows are kept for {@code keep-log}.
+ */
+@Component
+@Lazy(false)
+public class CrossShardTransfers {
+
+    private static final Logger log = LoggerFactory.getLogger(CrossShardTransfers.class);
+
+    private static final String PREPARED = "PREPARED";
+    private static final String COMMITTED = "COMMITTED";
+    private static final String ABORTED = "ABORTED";
+
+    private record Credit(String transferId, String toAccount, String fromAccount, double amount,
+                          String description) { }
+
+    private final Shards shards;
+    private final AccountRepository accountRepository;
+    private final TransactionRepository transactionRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Offboarding offboarding;
+    private final VelocityGuard velocityGuard;
+    private final TransactionOutbox outbox;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Duration inDoubtTimeout;
+    private final Duration keepLog;
+
+    public CrossShardTransfers(Shards shards, AccountRepository accountRepository,
+                               TransactionRepository transactionRepository, JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager, Offboarding offboarding,
+                               VelocityGuard velocityGuard, TransactionOutbox outbox,
+                               ApplicationEventPublisher eventPublisher,
+                               @Value("${securetrust.sharding.in-doubt-timeout:PT30S}") Duration inDoubtTimeout,
+                               @Value("${securetrust.sharding.keep-log:P7D}") Duration keepLog) {
+        this.shards = shards;
+        this.accountRepository = accountRepository;
+        this.transactionRepository = transactionRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.offboarding = offboarding;
+        this.velocityGuard = velocityGuard;
+        this.outbox = outbox;
+        this.eventPublisher = eventPublisher;
+        this.inDoubtTimeout = inDoubtTimeout;
+        this.keepLog = keepLog;
+    }
+
+    /**
+     * Transfer between accounts on different shards. Must not be called inside
+     * a transaction: each phase commits on its own shard.
+     */
+    public void transfer(String fromAccountNumber, String toAccountNumber, double amount, String description,
+                         BankingOperationEvent event) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Transfer amount must be positive");
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("A transfer between shards cannot run inside a transaction");
+        }
+        int source = shards.ofAccount(fromAccountNumber);
+        int target = shards.ofAccount(toAccountNumber);
+        String transferId = UUID.randomUUID().toString();
+
+        prepare(source, transferId, fromAccountNumber, toAccountNumber, amount, description, event);
+        try {
+            stage(target, transferId, fromAccountNumber, toAccountNumber, amount, description);
+        } catch (RuntimeException e) {
+            resolve(transferId, source, target);
+            throw e;
+        }
+        try {
+            commit(source, transferId, fromAccountNumber, toAccountNumber, amount, description);
+        } catch (RuntimeException e) {
+            resolve(transferId, source, target);
+            throw e;
+        }
+        try {
+            applyCredit(target, transferId);
+        } catch (RuntimeException e) {
+            // Decided: the credit stays staged and recovery applies it
+            log.warn("Transfer {} committed but its credit to {} is not applied yet", transferId, toAccountNumber, e);
+        }
+        event.rows(4);
+    }
+
+    /**
+     * Amount held on an account by its transfers still PREPARED. Locks the
+     * account row, so the balance read after it in the same transaction cannot
+     * be changed by a transfer being prepared, and the rows of
+     * {@code alsoLocked} with it, all in account number order so that two
+     * transfers between the same accounts cannot deadlock.
+     */
+    public double held(String accountNumber, String... alsoLocked) {
+        TreeSet<String> numbers = new TreeSet<>(List.of(alsoLocked));
+        numbers.add(accountNumber);
+        boolean found = false;
+        for (String number : numbers) {
+            List<Long> locked = jdbcTemplate.queryForList(
+                "SELECT id FROM account WHERE account_number = ? FOR UPDATE", Long.class, number);
+            found |= number.equals(accountNumber) && !locked.isEmpty();
+        }
+        if (!found) {
+            return 0;
+        }
+        Double held = jdbcTemplate.queryForObject(
+            "SELECT COALESCE(SUM(amount), 0) FROM transfer_log WHERE from_account = ? AND state = '" + PREPARED + "'",
+            Double.class, accountNumber);
+        return held != null ? held : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${securetrust.sharding.recovery-interval:PT10S}")
+    public void recover() {
+        if (!shards.isSharded()) {
+            return;
+        }
+        try {
+            int resolved = recover(LocalDateTime.now().minus(inDoubtTimeout));
+            if (resolved > 0) {
+                log.info("Resolved {} in-doubt transfers between shards", resolved);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Recovery of transfers between shards failed; retrying in the next run", e);
+        }
+    }
+
+    /**
+     * Resolve transfers started before {@code cutoff} and still in doubt, and
+     * purge decided log rows older than {@code keep-log}. Returns the number
+     * of transfers resolved.
+     */
+    int recover(LocalDateTime cutoff) {
+        int resolved = 0;
+        for (int shard = 0; shard < shards.count(); shard++) {
+            int source = shard;
+            List<Map<String, Object>> prepared = shards.on(source, () -> jdbcTemplate.queryForList(
+                "SELECT transfer_id, to_account FROM transfer_log WHERE state = '" + PREPARED + "' AND created_at < ?",
+                Timestamp.valueOf(cutoff)));
+            for (Map<String, Object> row : prepared) {
+                resolve((String) row.get("TRANSFER_ID"), source, shards.ofAccount((String) row.get("TO_ACCOUNT")));
+                resolved++;
+            }
+        }
+        for (int shard = 0; shard < shards.count(); shard++) {
+            int target = shard;
+            List<Map<String, Object>> staged = shards.on(target, () -> jdbcTemplate.queryForList(
+                "SELECT transfer_id, from_account FROM transfer_credit WHERE created_at < ?",
+                Timestamp.valueOf(cutoff)));
+            for (Map<String, Object> row : staged) {
+                if (resolve((String) row.get("TRANSFER_ID"), shards.ofAccount((String) row.get("FROM_ACCOUNT")),
+                        target)) {
+                    resolved++;
+                }
+            }
+        }
+        Timestamp purgeBefore = Timestamp.valueOf(LocalDateTime.now().minus(keepLog));
+        for (int shard = 0; shard < shards.count(); shard++) {
+            shards.run(shard, () -> jdbcTemplate.update(
+                "DELETE FROM transfer_log WHERE state <> '" + PREPARED + "' AND decided_at < ?", purgeBefore));
+        }
+        return resolved;
+    }
+
+    private void prepare(int source, String transferId, String fromAccountNumber, String toAccountNumber,
+                         double amount, String description, BankingOperationEvent event) {
+        shards.run(source, () -> transactionTemplate.executeWithoutResult(status -> {
+            Account account = lock(fromAccountNumber)
+                .orElseThrow(() -> new IllegalArgumentException("Source account not found"));
+            event.accountType(account.getAccountType());
+            offboarding.checkOpen(fromAccountNumber);
+            if (account.getBalance() - held(fromAccountNumber) < amount) {
+                throw new IllegalArgumentException("Insufficient funds");
+            }
+            VelocityGuard.Decision decision = velocityGuard.check(fromAccountNumber, amount, toAccountNumber);
+            if (!decision.allowed()) {
+                throw new IllegalArgumentException("Transaction declined: " + String.join("; ", decision.reasons()));
+            }
+            jdbcTemplate.update(
+                "INSERT INTO transfer_log (transfer_id, from_account, to_account, amount, description, state, "
+                    + "created_at) VALUES (?, ?, ?, ?, ?, '" + PREPARED + "', ?)",
+                transferId, fromAccountNumber, toAccountNumber, amount, description,
+                Timestamp.valueOf(LocalDateTime.now()));
+        }));
+    }
+
+    private void stage(int target, String transferId, String fromAccountNumber, String toAccountNumber,
+                       double amount, String description) {
+        shards.run(target, () -> transactionTemplate.executeWithoutResult(status -> {
+            Integer accounts = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM account WHERE account_number = ?", Integer.class, toAccountNumber);
+            if (accounts == null || accounts == 0) {
+                throw new IllegalArgumentException("Destination account not found");
+            }
+            offboarding.checkOpen(toAccountNumber);
+            jdbcTemplate.update(
+                "INSERT INTO transfer_credit (transfer_id, to_account, from_account, amount, description, created_at) "
+                    + "VALUES (?, ?, ?, ?, ?, ?)",
+                transferId, toAccountNumber, fromAccountNumber, amount, description,
+                Timestamp.valueOf(LocalDateTime.now()));
+        }));
+    }
+
+    private void commit(int source, String transferId, String fromAccountNumber, String toAccountNumber,
+                        double amount, String description) {
+        shards.run(source, () -> transactionTemplate.executeWithoutResult(status -> {
+            int decided = jdbcTemplate.update(
+                "UPDATE transfer_log SET state = '" + COMMITTED + "', decided_at = ? "
+                    + "WHERE transfer_id = ? AND state = '" + PREPARED + "'",
+                Timestamp.valueOf(LocalDateTime.now()), transferId);
+            if (decided == 0) {
+                throw new IllegalStateException("Transfer " + transferId + " was aborted before it could commit");
+            }
+            Account account = lockedAccount(fromAccountNumber);
+            velocityGuard.authorize(fromAccountNumber, amount, toAccountNumber);
+
+            account.setBalance(account.getBalance() - amount);
+            accountRepository.save(account);
+
+            Transaction debitTxn = new Transaction();
+            debitTxn.setAccount(account);
+            debitTxn.setType(TransactionType.TRANSFER_OUT);
+            debitTxn.setAmount(amount);
+            debitTxn.setDescription(description);
+            debitTxn.setCategory("Transfer");
+            debitTxn.setBalanceAfter(account.getBalance());
+            debitTxn.setReferenceAccount(toAccountNumber);
+            outbox.transactionCreated(transactionRepository.save(debitTxn));
+            eventPublisher.publishEvent(LedgerChangedEvent.of(fromAccountNumber));
+        }));
+    }
+
+    // Credit the destination with the staged credit, if it is still there
+    private void applyCredit(int target, String transferId) {
+        shards.run(target, () -> transactionTemplate.executeWithoutResult(status -> {
+            List<Credit> staged = jdbcTemplate.query(
+                "SELECT transfer_id, to_account, from_account, amount, description FROM transfer_credit "
+                    + "WHERE transfer_id = ? FOR UPDATE",
+                (rs, row) -> new Credit(rs.getString(1), rs.getString(2), rs.getString(3), rs.getDouble(4),
+                    rs.getString(5)),
+                transferId);
+            if (staged.isEmpty()) {
+                return;
+            }
+            Credit credit = staged.get(0);
+            jdbcTemplate.update("DELETE FROM transfer_credit WHERE transfer_id = ?", transferId);
+            Account account = lockedAccount(credit.toAccount());
+
+            account.setBalance(account.getBalance() + credit.amount());
+            accountRepository.save(account);
+
+            Transaction creditTxn = new Transaction();
+            creditTxn.setAccount(account);
+            creditTxn.setType(TransactionType.TRANSFER_IN);
+            creditTxn.setAmount(credit.amount());
+            creditTxn.setDescription(credit.description());
+            creditTxn.setCategory("Transfer");
+            creditTxn.setBalanceAfter(account.getBalance());
+            creditTxn.setReferenceAccount(credit.fromAccount());
+            outbox.transactionCreated(transactionRepository.save(creditTxn));
+            eventPublisher.publishEvent(LedgerChangedEvent.of(credit.toAccount()));
+        }));
+    }
+
+    /**
+     * Finish a transfer whose outcome the caller does not know: abort it if it
+     * is still PREPARED, then apply or discard its staged credit to match the
+     * decision. Returns false when the source no longer has its log row.
+     */
+    private boolean resolve(String transferId, int source, int target) {
+        String state = shards.on(source, () -> transactionTemplate.execute(status -> {
+            List<String> found = jdbcTemplate.queryForList(
+                "SELECT state FROM transfer_log WHERE transfer_id = ? FOR UPDATE", String.class, transferId);
+            if (found.isEmpty()) {
+                return null;
+            }
+            if (PREPARED.equals(found.get(0))) {
+                jdbcTemplate.update("UPDATE transfer_log SET state = '" + ABORTED + "', decided_at = ? "
+                    + "WHERE transfer_id = ?", Timestamp.valueOf(LocalDateTime.now()), transferId);
+                return ABORTED;
+            }
+            return found.get(0);
+        }));
+        if (state == null) {
+            log.warn("Transfer {} has a staged credit on shard {} but no log on shard {}; left for an operator",
+                transferId, target, source);
+            return false;
+        }
+        if (COMMITTED.equals(state)) {
+            applyCredit(target, transferId);
+        } else {
+            shards.run(target, () ->
+                jdbcTemplate.update("DELETE FROM transfer_credit WHERE transfer_id = ?", transferId));
+        }
+        return true;
+    }
+
+    private Account lockedAccount(String accountNumber) {
+        return lock(accountNumber).orElseThrow(() ->
+            new IllegalStateException("Account " + accountNumber + " of a decided transfer no longer exists"));
+    }
+
+    // Lock the row first, so the entity is read after any transfer holding it has committed
+    private Optional<Account> lock(String accountNumber) {
+        List<Long> locked = jdbcTemplate.queryForList(
+            "SELECT id FROM account WHERE account_number = ? FOR UPDATE", Long.class, accountNumber);
+        return locked.isEmpty() ? Optional.empty() : accountRepository.findById(locked.get(0));
+    }
+}
@@ -0,0 +1,37 @@
+package com.securetrust.sharding;
+
+/**
+ * Shard the current thread's database work is routed to.
+ *
+ * Bound by {@link Shards} for the duration of one unit of work; with nothing
+ * bound, work goes to the home shard.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    /**
+     * The bound shard, or null when none is.
+     */
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind a shard captured on another thread (or clear it when null).
+     */
+    public static void bind(Integer shard) {
+        if (shard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(shard);
+        }
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+}
@@ -0,0 +1,116 @@
+package com.securetrust.sharding;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Where customers, accounts and rows live when the ledger is sharded.
+ *
+ * A new customer is placed by a jump consistent hash of its customer ID, so
+ * adding shards sends new customers to them without changing where any
+ * earlier placement would have gone. Placement is only computed once: after
+ * that a customer's shard is read off its accounts' numbers and its rows' ids.
+ *
+ * <ul>
+ *   <li>Account numbers opened on a sharded ledger carry their shard after the
+ *       type prefix, as in {@code SAV3-000101}. Numbers without the shard
+ *       (every number issued before sharding) belong to the home shard.</li>
+ *   <li>Each shard hands out ids from its own range, starting at
+ *       {@code shard << 40}, so an id names its shard and ids never collide
+ *       across shards. The home shard's range starts at 1.</li>
+ * </ul>
+ */
+public final class ShardMap {
+
+    public static final int HOME = 0;
+
+    /**
+     * Upper bound on the number of shards; shard ranges stay far below {@code Long.MAX_VALUE}.
+     */
+    public static final int MAX_SHARDS = 1000;
+
+    private static final int ID_BITS = 40;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ShardMap() {
+    }
+
+    /**
+     * Shard of a new customer with this customer ID, out of {@code shards}.
+     */
+    public static int place(String customerId, int shards) {
+        if (shards < 1 || shards > MAX_SHARDS) {
+            throw new IllegalArgumentException("Shard count must be between 1 and " + MAX_SHARDS);
+        }
+        return jump(mix(fnv1a(customerId)), shards);
+    }
+
+    /**
+     * Account number for {@code sequence} on {@code shard}, e.g. {@code SAV3-000101}.
+     */
+    public static String accountNumber(String prefix, int shard, long sequence) {
+        return prefix + shard + "-" + String.format("%06d", sequence);
+    }
+
+    /**
+     * Shard named in an account number; the home shard when it names none.
+     */
+    public static int shardOfAccount(String accountNumber) {
+        int dash = accountNumber.indexOf('-');
+        if (dash < 2) {
+            return HOME;
+        }
+        int digits = dash;
+        while (digits > 0 && Character.isDigit(accountNumber.charAt(digits - 1))) {
+            digits--;
+        }
+        // Letters, then the shard's digits, then the dash
+        if (digits == 0 || digits == dash || dash - digits > 3
+                || !Character.isLetter(accountNumber.charAt(digits - 1))) {
+            return HOME;
+        }
+        return Integer.parseInt(accountNumber, digits, dash, 10);
+    }
+
+    /**
+     * First id the shard hands out for a customer, account, transaction or outbox event.
+     */
+    public static long firstId(int shard) {
+        return shard == HOME ? 1 : (long) shard << ID_BITS;
+    }
+
+    /**
+     * Shard that handed out an id.
+     */
+    public static int shardOfId(long id) {
+        return (int) (id >>> ID_BITS);
+    }
+
+    // Lamping and Veach, "A Fast, Minimal Memory, Consistent Hash Algorithm"
+    static int jump(long key, int buckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    private static long fnv1a(String value) {
+        long hash = FNV_OFFSET;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // SplitMix64 finalizer: customer IDs differ in their last characters only
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,218 @@
+package com.securetrust.sharding;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The shards of the ledger and the way work is sent to one of them.
+ *
+ * Shard 0, the home shard, is {@code spring.datasource}; it keeps the data
+ * of a ledger from before sharding and the demo customers. With
+ * {@code securetrust.sharding.enabled} the databases in
+ * {@code securetrust.sharding.urls} follow it as shards 1 to N-1. A customer
+ * lives on one shard with its accounts and their transactions, placed as set
+ * out in {@link ShardMap}.
+ *
+ * {@link #on} routes a piece of work to one shard. It does not start a
+ * transaction, but one started inside it runs on that shard, and work inside
+ * a transaction may only route to the shard the transaction runs on: a
+ * database transaction cannot span shards, so a write that would need one
+ * fails instead. {@link #read} and {@link #readEach} run reads in a read-only
+ * transaction of their own, which may be on another shard than the caller's.
+ *
+ * With a single shard everything runs as it is, on the only database.
+ */
+@Component
+public class Shards {
+
+    public static final int HOME = ShardMap.HOME;
+
+    private final ObjectProvider<PlatformTransactionManager> transactionManager;
+    private final List<String> urls;
+    private final List<DataSource> unpooled;
+    private volatile TransactionTemplate readOnly;
+
+    // The transaction manager is looked up on first use: the entity manager
+    // behind it needs the ledger dictionary, which needs this
+    public Shards(ObjectProvider<PlatformTransactionManager> transactionManager, DataSourceProperties properties,
+                  @Value("${securetrust.sharding.enabled:false}") boolean enabled,
+                  @Value("${securetrust.sharding.urls:}") List<String> urls) {
+        this.transactionManager = transactionManager;
+        List<String> all = new ArrayList<>();
+        all.add(properties.determineUrl());
+        if (enabled) {
+            urls.stream().map(String::trim).filter(url -> !url.isEmpty()).forEach(all::add);
+        }
+        if (all.size() > ShardMap.MAX_SHARDS) {
+            throw new IllegalArgumentException("At most " + ShardMap.MAX_SHARDS + " shards are supported");
+        }
+        this.urls = List.copyOf(all);
+        List<DataSource> dataSources = new ArrayList<>();
+        for (String url : this.urls) {
+            dataSources.add(properties.initializeDataSourceBuilder()
+                .type(SimpleDriverDataSource.class).url(url).build());
+        }
+        this.unpooled = List.copyOf(dataSources);
+    }
+
+    public int count() {
+        return urls.size();
+    }
+
+    public boolean isSharded() {
+        return urls.size() > 1;
+    }
+
+    public String url(int shard) {
+        return urls.get(shard);
+    }
+
+    /**
+     * The shard's database without a pool, for connections that must not wait on one.
+     */
+    public DataSource unpooled(int shard) {
+        return unpooled.get(shard);
+    }
+
+    /**
+     * Shard the current thread's work goes to.
+     */
+    public int current() {
+        Integer shard = ShardContext.current();
+        return shard != null ? shard : HOME;
+    }
+
+    /**
+     * Shard for a new customer.
+     */
+    public int placeCustomer(String customerId) {
+        return ShardMap.place(customerId, count());
+    }
+
+    public int ofAccount(String accountNumber) {
+        return isSharded() ? check(ShardMap.shardOfAccount(accountNumber), "Account not found") : HOME;
+    }
+
+    public int ofAccountId(long accountId) {
+        return isSharded() ? check(ShardMap.shardOfId(accountId), "Account not found") : HOME;
+    }
+
+    public int ofCustomerId(long customerId) {
+        return isSharded() ? check(ShardMap.shardOfId(customerId), "Customer not found") : HOME;
+    }
+
+    /**
+     * Refuse a feature that only works on a single database.
+     */
+    public void requireSingle(String feature) {
+        if (isSharded()) {
+            throw new IllegalStateException(
+                feature + " is not available on a sharded ledger (securetrust.sharding.enabled)");
+        }
+    }
+
+    /**
+     * Run {@code work} routed to {@code shard}.
+     */
+    public <T> T on(int shard, Supplier<T> work) {
+        if (!isSharded()) {
+            return work.get();
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            if (current() != shard) {
+                throw new IllegalStateException(
+                    "A transaction on shard " + current() + " cannot also work on shard " + shard);
+            }
+            return work.get();
+        }
+        Integer previous = ShardContext.current();
+        ShardContext.bind(shard);
+        try {
+            return work.get();
+        } finally {
+            ShardContext.bind(previous);
+        }
+    }
+
+    public void run(int shard, Runnable work) {
+        on(shard, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run {@code read} on {@code shard}, inside the current transaction if it
+     * is on that shard and in a read-only transaction of its own otherwise.
+     */
+    public <T> T read(int shard, Supplier<T> read) {
+        if (!isSharded()) {
+            return read.get();
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive() && current() == shard) {
+            return read.get();
+        }
+        Integer previous = ShardContext.current();
+        ShardContext.bind(shard);
+        try {
+            return readOnly().execute(status -> read.get());
+        } finally {
+            ShardContext.bind(previous);
+        }
+    }
+
+    /**
+     * Run {@code read} on every shard, as {@link #read}; the results in shard order.
+     */
+    public <T> List<T> readEach(Supplier<T> read) {
+        List<T> results = new ArrayList<>(count());
+        for (int shard = 0; shard < count(); shard++) {
+            results.add(read(shard, read));
+        }
+        return results;
+    }
+
+    /**
+     * Sum of a count read on every shard.
+     */
+    public long sumLong(Supplier<Long> read) {
+        return readEach(read).stream().mapToLong(value -> value != null ? value : 0).sum();
+    }
+
+    /**
+     * Sum of an amount read on every shard.
+     */
+    public double sumDouble(Supplier<Double> read) {
+        return readEach(read).stream().mapToDouble(value -> value != null ? value : 0).sum();
+    }
+
+    private int check(int shard, String notFound) {
+        if (shard < 0 || shard >= count()) {
+            throw new IllegalArgumentException(notFound);
+        }
+        return shard;
+    }
+
+    private TransactionTemplate readOnly() {
+        TransactionTemplate template = readOnly;
+        if (template == null) {
+            template = new TransactionTemplate(transactionManager.getObject());
+            template.setReadOnly(true);
+            template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            readOnly = template;
+        }
+        return template;
+    }
+}
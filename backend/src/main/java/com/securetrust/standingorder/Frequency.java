@@ -0,0 +1,22 @@
+package com.securetrust.standingorder;
+
+import java.time.LocalDateTime;
+
+public enum Frequency {
+    DAILY,
+    WEEKLY,
+    MONTHLY;
+
+    /**
+     * Time of occurrence {@code n} of a schedule starting at {@code first}.
+     * Counted from the start rather than from the previous occurrence, so a
+     * monthly order on the 31st returns to the 31st after a shorter month.
+     */
+    public LocalDateTime occurrence(LocalDateTime first, long n) {
+        return switch (this) {
+            case DAILY -> first.plusDays(n);
+            case WEEKLY -> first.plusWeeks(n);
+            case MONTHLY -> first.plusMonths(n);
+        };
+    }
+}
@@ -0,0 +1,21 @@
+package com.securetrust.standingorder;
+
+import java.time.LocalDateTime;
+
+/**
+ * A recurring transfer. {@code nextRunAt} is {@code null} once the order has
+ * ended; {@code failures} counts consecutive rejected occurrences.
+ */
+public record StandingOrder(long id, String fromAccount, String toAccount, double amount, String description,
+                            Frequency frequency, LocalDateTime firstRunAt, LocalDateTime endAt, int runs,
+                            LocalDateTime nextRunAt, Status status, int failures, LocalDateTime lastRunAt,
+                            String lastOutcome, LocalDateTime createdAt) {
+
+    public enum Status {
+        ACTIVE,
+        // Stopped after too many rejected occurrences in a row
+        SUSPENDED,
+        CANCELLED,
+        COMPLETED
+    }
+}
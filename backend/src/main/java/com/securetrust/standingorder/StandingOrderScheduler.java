@@ -0,0 +1,437 @@
+package com.securetrust.standingorder;
+
+import com.securetrust.config.StartupOrder;
+import com.securetrust.service.BankingService;
+import com.securetrust.service.ConcurrencyLimiter;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Executes standing orders when they fall due.
+ *
+ * Only the near-term schedule is held in memory, in a {@link TimingWheel}: a
+ * loader reads active orders due within {@code horizon} from the table in
+ * (next_run_at, id) order, continuing from where its last read stopped, and
+ * never holds more than {@code max-loaded} at a time. Orders created or
+ * rescheduled within the range already read go straight into the wheel. A
+ * ticker turns the wheel every {@code tick}; worker threads take the ready
+ * orders in batches of {@code batch-size} and run each batch in one database
+ * transaction through {@link BankingService#transfer}.
+ *
+ * After downtime the loader starts from the oldest due order, so missed
+ * occurrences are caught up oldest first; occurrences more than
+ * {@code catch-up} late are recorded as missed instead of being paid. When
+ * many orders fall due together, as at the start of a month, they wait in
+ * the table rather than in memory and are worked off at the pace of the
+ * workers, in due order.
+ *
+ * Each occurrence is claimed by advancing the order's run count with a
+ * compare-and-set in the same transaction as its transfer, so an order
+ * reaching the wheel twice is still paid once. A rejected transfer
+ * (insufficient funds, velocity limits) is recorded on the order, which
+ * moves on to its next occurrence and is suspended after
+ * {@code max-failures} rejections in a row. Any other failure rolls the
+ * batch back and each order is retried alone; one failing again is put back
+ * into the wheel for {@code retry-delay}.
+ *
+ * Each batch is batch work for the {@link ConcurrencyLimiter}. A batch the
+ * limiter turns away, while interactive traffic is heavy, goes back into the
+ * wheel for {@code retry-delay} without touching the database.
+ */
+@Component
+public class StandingOrderScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(StandingOrderScheduler.class);
+
+    private static final int WHEEL_LEVELS = 3;
+
+    /**
+     * Scheduler state. {@code held} counts orders in memory, {@code ready}
+     * those due and waiting for a worker, {@code lagMillis} how late the
+     * oldest of them is, and {@code loadedUntil} the position of the loader.
+     * {@code deferred} counts occurrences put back because the bank was busy.
+     */
+    public record Status(boolean enabled, int held, int ready, long lagMillis, LocalDateTime loadedUntil,
+                         long completed, long rejected, long missed, long failed, long deferred) { }
+
+    private record Due(long id, long dueMillis) { }
+
+    private enum Result { COMPLETED, REJECTED, MISSED, NOT_YET_DUE }
+
+    private record Outcome(long id, LocalDateTime next, Result result) { }
+
+    private final StandingOrderStore store;
+    private final BankingService bankingService;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration tick;
+    private final Duration horizon;
+    private final Duration refillInterval;
+    private final int maxLoaded;
+    private final int workers;
+    private final int batchSize;
+    private final Duration catchUp;
+    private final int maxFailures;
+    private final Duration retryDelay;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readyCondition = lock.newCondition();
+    private final TimingWheel wheel;
+    private StandingOrderStore.Key loadedUntil;
+    private long loadingBeforeMillis = -1;
+    private boolean lastLoadFull = true;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong missed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    public StandingOrderScheduler(StandingOrderStore store, BankingService bankingService,
+                                  ConcurrencyLimiter concurrencyLimiter,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${securetrust.standing-orders.enabled:true}") boolean enabled,
+                                  @Value("${securetrust.standing-orders.tick:PT1S}") Duration tick,
+                                  @Value("${securetrust.standing-orders.horizon:PT10M}") Duration horizon,
+                                  @Value("${securetrust.standing-orders.refill-interval:PT15S}")
+                                  Duration refillInterval,
+                                  @Value("${securetrust.standing-orders.max-loaded:200000}") int maxLoaded,
+                                  @Value("${securetrust.standing-orders.workers:2}") int workers,
+                                  @Value("${securetrust.standing-orders.batch-size:50}") int batchSize,
+                                  @Value("${securetrust.standing-orders.catch-up:P3D}") Duration catchUp,
+                                  @Value("${securetrust.standing-orders.max-failures:3}") int maxFailures,
+                                  @Value("${securetrust.standing-orders.retry-delay:PT1M}") Duration retryDelay) {
+        this.wheel = new TimingWheel(tick.toMillis(), WHEEL_LEVELS, System.currentTimeMillis());
+        if (horizon.toMillis() >= wheel.spanMillis() || retryDelay.toMillis() >= wheel.spanMillis()) {
+            throw new IllegalArgumentException("securetrust.standing-orders.horizon and retry-delay must be under "
+                + Duration.ofMillis(wheel.spanMillis()));
+        }
+        if (maxLoaded < 1 || workers < 1 || batchSize < 1 || maxFailures < 1) {
+            throw new IllegalArgumentException("securetrust.standing-orders limits must be positive");
+        }
+        this.store = store;
+        this.bankingService = bankingService;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.tick = tick;
+        this.horizon = horizon;
+        this.refillInterval = refillInterval;
+        this.maxLoaded = maxLoaded;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.catchUp = catchUp;
+        this.maxFailures = maxFailures;
+        this.retryDelay = retryDelay;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(StartupOrder.LOAD)
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        threads.add(Thread.ofPlatform().name("standing-order-wheel").daemon().start(this::tickLoop));
+        for (int i = 0; i < workers; i++) {
+            threads.add(Thread.ofPlatform().name("standing-order-" + i).daemon().start(this::workLoop));
+        }
+        log.info("Standing orders: {} ahead held in memory (at most {}), {} workers, batches of {}",
+            horizon, maxLoaded, workers, batchSize);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        threads.forEach(Thread::interrupt);
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        threads.clear();
+    }
+
+    public Status status() {
+        lock.lock();
+        try {
+            long oldest = wheel.oldestReadyMillis();
+            return new Status(enabled, wheel.size(), wheel.readyCount(),
+                oldest < 0 ? 0 : Math.max(0, System.currentTimeMillis() - oldest),
+                loadedUntil != null ? loadedUntil.time() : null,
+                completed.get(), rejected.get(), missed.get(), failed.get(), deferred.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put an order due at {@code next} into the wheel if the loader has
+     * already passed that point, or may be passing it now; otherwise the
+     * loader picks it up. Call only once the order's row is committed.
+     */
+    void schedule(long id, LocalDateTime next) {
+        if (!running) {
+            return;
+        }
+        long dueMillis = millis(next);
+        lock.lock();
+        try {
+            boolean loaded = loadedUntil != null && new StandingOrderStore.Key(next, id).compareTo(loadedUntil) <= 0;
+            if (loaded || (loadingBeforeMillis >= 0 && dueMillis < loadingBeforeMillis)) {
+                wheel.add(id, dueMillis);
+                readyCondition.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void tickLoop() {
+        long nextLoad = 0;
+        while (running) {
+            long now = System.currentTimeMillis();
+            lock.lock();
+            try {
+                wheel.advance(now);
+                if (wheel.readyCount() > 0) {
+                    readyCondition.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (now >= nextLoad || needsLoad()) {
+                load(now);
+                nextLoad = now + refillInterval.toMillis();
+            }
+            try {
+                Thread.sleep(tick.toMillis() - System.currentTimeMillis() % tick.toMillis());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // The last read stopped at max-loaded and enough has been worked off since
+    private boolean needsLoad() {
+        lock.lock();
+        try {
+            return lastLoadFull && wheel.size() <= maxLoaded / 2;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void load(long now) {
+        long beforeMillis = now + horizon.toMillis();
+        LocalDateTime before = local(beforeMillis);
+        StandingOrderStore.Key after;
+        int room;
+        lock.lock();
+        try {
+            after = loadedUntil;
+            room = maxLoaded - wheel.size();
+            if (room <= 0 || (after != null && !before.isAfter(after.time()))) {
+                lastLoadFull = room <= 0;
+                return;
+            }
+            loadingBeforeMillis = beforeMillis;
+        } finally {
+            lock.unlock();
+        }
+
+        List<StandingOrderStore.Key> due = null;
+        long start = System.nanoTime();
+        try {
+            due = store.due(after, before, room);
+        } catch (DataAccessException e) {
+            log.warn("Could not read due standing orders", e);
+        }
+
+        lock.lock();
+        try {
+            loadingBeforeMillis = -1;
+            if (due == null) {
+                return;
+            }
+            for (StandingOrderStore.Key key : due) {
+                wheel.add(key.id(), millis(key.time()));
+            }
+            if (due.size() == room) {
+                loadedUntil = due.get(due.size() - 1);
+                lastLoadFull = true;
+            } else {
+                // Everything due before the horizon is held; id 0 sorts before any order at that instant
+                loadedUntil = new StandingOrderStore.Key(before, 0);
+                lastLoadFull = false;
+            }
+            if (wheel.readyCount() > 0) {
+                readyCondition.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (due != null && !due.isEmpty()) {
+            log.debug("Loaded {} standing orders due before {} in {} ms", due.size(), before,
+                (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private void workLoop() {
+        List<Due> batch = new ArrayList<>(batchSize);
+        while (running) {
+            lock.lock();
+            try {
+                while (wheel.readyCount() == 0) {
+                    readyCondition.await(tick.toMillis(), TimeUnit.MILLISECONDS);
+                    if (!running) {
+                        return;
+                    }
+                }
+                wheel.poll(batchSize, (id, dueMillis) -> batch.add(new Due(id, dueMillis)));
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                concurrencyLimiter.run(ConcurrencyLimiter.Lane.BATCH, () -> execute(batch));
+            } catch (ConcurrencyLimiter.LimitExceededException busy) {
+                deferred.addAndGet(batch.size());
+                log.debug("Standing order batch of {} deferred for {}: {}", batch.size(), retryDelay,
+                    busy.getMessage());
+                batch.forEach(due -> retry(due.id()));
+            }
+            batch.clear();
+        }
+    }
+
+    private void execute(List<Due> batch) {
+        List<Outcome> outcomes = new ArrayList<>(batch.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Due due : batch) {
+                    outcomes.add(runOccurrence(due));
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Standing order batch of {} failed, retrying the orders one by one", batch.size(), e);
+            outcomes.clear();
+            for (Due due : batch) {
+                try {
+                    outcomes.add(transactionTemplate.execute(status -> runOccurrence(due)));
+                } catch (RuntimeException alone) {
+                    failed.incrementAndGet();
+                    log.warn("Standing order {} failed, retrying in {}", due.id(), retryDelay, alone);
+                    retry(due.id());
+                }
+            }
+        }
+        for (Outcome outcome : outcomes) {
+            if (outcome == null) {
+                continue;
+            }
+            switch (outcome.result()) {
+                case COMPLETED -> completed.incrementAndGet();
+                case REJECTED -> rejected.incrementAndGet();
+                case MISSED -> missed.incrementAndGet();
+                case NOT_YET_DUE -> { }
+            }
+            if (outcome.next() != null) {
+                schedule(outcome.id(), outcome.next());
+            }
+        }
+    }
+
+    private void retry(long id) {
+        lock.lock();
+        try {
+            wheel.add(id, System.currentTimeMillis() + retryDelay.toMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Runs inside the batch transaction. Returns null when there is nothing to
+     * do: the order was cancelled, deleted with its account, or its occurrence
+     * was already paid through another wheel entry.
+     */
+    private Outcome runOccurrence(Due due) {
+        StandingOrder order = store.find(due.id());
+        LocalDateTime now = LocalDateTime.now();
+        if (order == null || order.status() != StandingOrder.Status.ACTIVE || order.nextRunAt() == null) {
+            return null;
+        }
+        if (order.nextRunAt().isAfter(now)) {
+            // Not due yet: this entry is stale unless it is the one for the current occurrence
+            return millis(order.nextRunAt()) == due.dueMillis()
+                ? new Outcome(order.id(), order.nextRunAt(), Result.NOT_YET_DUE) : null;
+        }
+
+        LocalDateTime next = order.frequency().occurrence(order.firstRunAt(), order.runs() + 1L);
+        StandingOrder.Status status = StandingOrder.Status.ACTIVE;
+        if (order.endAt() != null && next.isAfter(order.endAt())) {
+            next = null;
+            status = StandingOrder.Status.COMPLETED;
+        }
+        if (!store.claim(order.id(), order.runs(), next, status, now)) {
+            return null;
+        }
+
+        Result result;
+        String outcome;
+        int failures = order.failures();
+        if (Duration.between(order.nextRunAt(), now).compareTo(catchUp) > 0) {
+            result = Result.MISSED;
+            outcome = "MISSED: due " + order.nextRunAt();
+        } else {
+            try {
+                bankingService.transfer(order.fromAccount(), order.toAccount(), order.amount(), order.description());
+                result = Result.COMPLETED;
+                outcome = result.name();
+                failures = 0;
+            } catch (IllegalArgumentException e) {
+                result = Result.REJECTED;
+                outcome = "REJECTED: " + e.getMessage();
+                failures++;
+                if (failures >= maxFailures && status == StandingOrder.Status.ACTIVE) {
+                    status = StandingOrder.Status.SUSPENDED;
+                    next = null;
+                    log.info("Standing order {} suspended after {} rejected occurrences", order.id(), failures);
+                }
+            }
+        }
+        store.recordOutcome(order.id(), outcome, failures, status);
+        return new Outcome(order.id(), next, result);
+    }
+
+    private static long millis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime local(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
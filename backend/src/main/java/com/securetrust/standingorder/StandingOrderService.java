@@ -0,0 +1,71 @@
+package com.securetrust.standingorder;
+
+import com.securetrust.dictionary.LedgerDictionary;
+import com.securetrust.sharding.Shards;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+@Service
+public class StandingOrderService {
+
+    private final StandingOrderStore store;
+    private final StandingOrderScheduler scheduler;
+    private final LedgerDictionary ledgerDictionary;
+    private final Shards shards;
+
+    public StandingOrderService(StandingOrderStore store, StandingOrderScheduler scheduler,
+                                LedgerDictionary ledgerDictionary, Shards shards) {
+        this.store = store;
+        this.scheduler = scheduler;
+        this.ledgerDictionary = ledgerDictionary;
+        this.shards = shards;
+    }
+
+    /**
+     * Set up a recurring transfer, first paid at {@code firstRunAt} (now when
+     * {@code null}) and last paid no later than {@code endAt}, if given.
+     */
+    public StandingOrder create(String fromAccountNumber, String toAccountNumber, Double amount, String description,
+                                Frequency frequency, LocalDateTime firstRunAt, LocalDateTime endAt) {
+        shards.requireSingle("Standing orders");
+        if (amount == null || !(amount > 0) || amount.isInfinite()) {
+            throw new IllegalArgumentException("Standing order amount must be positive");
+        }
+        if (fromAccountNumber.equals(toAccountNumber)) {
+            throw new IllegalArgumentException("Cannot transfer to the same account");
+        }
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        LocalDateTime first = firstRunAt != null ? firstRunAt.truncatedTo(ChronoUnit.SECONDS) : now;
+        if (first.isBefore(now)) {
+            throw new IllegalArgumentException("First payment cannot be in the past");
+        }
+        if (endAt != null && endAt.isBefore(first)) {
+            throw new IllegalArgumentException("End date is before the first payment");
+        }
+        long id = store.insert(ledgerDictionary.accountId(fromAccountNumber),
+            ledgerDictionary.accountId(toAccountNumber), amount, description, frequency, first, endAt);
+        scheduler.schedule(id, first);
+        return store.find(id);
+    }
+
+    public StandingOrder cancel(long id) {
+        if (!store.cancel(id)) {
+            throw new IllegalArgumentException("No active standing order " + id);
+        }
+        return store.find(id);
+    }
+
+    public StandingOrder find(long id) {
+        return store.find(id);
+    }
+
+    /**
+     * Orders paying from or into the account, oldest first.
+     */
+    public List<StandingOrder> forAccount(String accountNumber) {
+        return store.findByAccount(ledgerDictionary.accountId(accountNumber));
+    }
+}
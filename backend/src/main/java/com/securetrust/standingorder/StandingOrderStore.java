@@ -0,0 +1,136 @@
+package com.securetrust.standingorder;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * SQL behind the {@code standing_order} table.
+ */
+@Component
+class StandingOrderStore {
+
+    /**
+     * Position in the (next_run_at, id) order of active orders.
+     */
+    record Key(LocalDateTime time, long id) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key other) {
+            int byTime = time.compareTo(other.time);
+            return byTime != 0 ? byTime : Long.compare(id, other.id);
+        }
+    }
+
+    private static final String SELECT =
+        "SELECT o.id, f.account_number, t.account_number, o.amount, o.description, o.frequency, o.first_run_at, "
+            + "o.end_at, o.runs, o.next_run_at, o.status, o.failures, o.last_run_at, o.last_outcome, o.created_at "
+            + "FROM standing_order o "
+            + "JOIN account f ON f.id = o.from_account_id "
+            + "JOIN account t ON t.id = o.to_account_id ";
+
+    private static final String DUE_SQL =
+        "SELECT id, next_run_at FROM standing_order "
+            + "WHERE status = 'ACTIVE' AND next_run_at < ? ORDER BY next_run_at, id LIMIT ?";
+
+    private static final String DUE_AFTER_SQL =
+        "SELECT id, next_run_at FROM standing_order "
+            + "WHERE status = 'ACTIVE' AND next_run_at < ? AND (next_run_at, id) > (?, ?) "
+            + "ORDER BY next_run_at, id LIMIT ?";
+
+    private static final RowMapper<StandingOrder> ORDER = (rs, row) -> new StandingOrder(
+        rs.getLong(1), rs.getString(2), rs.getString(3), rs.getDouble(4), rs.getString(5),
+        Frequency.valueOf(rs.getString(6)), local(rs.getTimestamp(7)), local(rs.getTimestamp(8)), rs.getInt(9),
+        local(rs.getTimestamp(10)), StandingOrder.Status.valueOf(rs.getString(11)), rs.getInt(12),
+        local(rs.getTimestamp(13)), rs.getString(14), local(rs.getTimestamp(15)));
+
+    private static final RowMapper<Key> KEY = (rs, row) -> new Key(rs.getTimestamp(2).toLocalDateTime(), rs.getLong(1));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    StandingOrderStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    long insert(long fromAccountId, long toAccountId, double amount, String description, Frequency frequency,
+                LocalDateTime firstRunAt, LocalDateTime endAt) {
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO standing_order (from_account_id, to_account_id, amount, description, frequency, "
+                    + "first_run_at, end_at, runs, next_run_at, status, failures, created_at) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, 0, ?, 'ACTIVE', 0, ?)",
+                Statement.RETURN_GENERATED_KEYS);
+            statement.setLong(1, fromAccountId);
+            statement.setLong(2, toAccountId);
+            statement.setDouble(3, amount);
+            statement.setString(4, description);
+            statement.setString(5, frequency.name());
+            statement.setTimestamp(6, Timestamp.valueOf(firstRunAt));
+            statement.setTimestamp(7, endAt != null ? Timestamp.valueOf(endAt) : null);
+            statement.setTimestamp(8, Timestamp.valueOf(firstRunAt));
+            statement.setTimestamp(9, Timestamp.valueOf(LocalDateTime.now()));
+            return statement;
+        }, keys);
+        return keys.getKey().longValue();
+    }
+
+    StandingOrder find(long id) {
+        List<StandingOrder> found = jdbcTemplate.query(SELECT + "WHERE o.id = ?", ORDER, id);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    List<StandingOrder> findByAccount(long accountId) {
+        return jdbcTemplate.query(SELECT + "WHERE o.from_account_id = ? OR o.to_account_id = ? ORDER BY o.id",
+            ORDER, accountId, accountId);
+    }
+
+    boolean cancel(long id) {
+        return jdbcTemplate.update(
+            "UPDATE standing_order SET status = 'CANCELLED', next_run_at = NULL "
+                + "WHERE id = ? AND status IN ('ACTIVE', 'SUSPENDED')", id) == 1;
+    }
+
+    /**
+     * Up to {@code limit} active orders due before {@code before} and after
+     * {@code after} (from the start when {@code null}), in key order.
+     */
+    List<Key> due(Key after, LocalDateTime before, int limit) {
+        if (after == null) {
+            return jdbcTemplate.query(DUE_SQL, KEY, Timestamp.valueOf(before), limit);
+        }
+        return jdbcTemplate.query(DUE_AFTER_SQL, KEY, Timestamp.valueOf(before), Timestamp.valueOf(after.time()),
+            after.id(), limit);
+    }
+
+    /**
+     * Move an order from occurrence {@code runs} to the next, unless another
+     * execution has already done so; locks the row until the transaction ends.
+     */
+    boolean claim(long id, int runs, LocalDateTime nextRunAt, StandingOrder.Status status, LocalDateTime now) {
+        return jdbcTemplate.update(
+            "UPDATE standing_order SET runs = runs + 1, next_run_at = ?, status = ?, last_run_at = ? "
+                + "WHERE id = ? AND runs = ? AND status = 'ACTIVE'",
+            nextRunAt != null ? Timestamp.valueOf(nextRunAt) : null, status.name(), Timestamp.valueOf(now),
+            id, runs) == 1;
+    }
+
+    void recordOutcome(long id, String outcome, int failures, StandingOrder.Status status) {
+        jdbcTemplate.update(
+            "UPDATE standing_order SET last_outcome = ?, failures = ?, status = ?, "
+                + "next_run_at = CASE WHEN ? = 'ACTIVE' THEN next_run_at END WHERE id = ?",
+            outcome.length() > 255 ? outcome.substring(0, 255) : outcome, failures, status.name(), status.name(),
+            id);
+    }
+
+    private static LocalDateTime local(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
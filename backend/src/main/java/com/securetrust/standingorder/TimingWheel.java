@@ -0,0 +1,195 @@
+package com.securetrust.standingorder;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timing wheel of (id, due time) entries.
+ *
+ * Level 0 has a slot per tick; each level above has slots 64 times as wide,
+ * so {@code levels} levels cover 64^levels ticks ahead. An entry goes into the
+ * lowest level whose range reaches its due tick. When the wheel turns onto a
+ * slot of a higher level, that slot's entries are cascaded down into finer
+ * slots; entries of the level 0 slot for the current tick are due and move to
+ * a FIFO of ready entries, in due order per tick. Adding, turning one tick and
+ * taking a ready entry are constant time, however many entries are held.
+ *
+ * An entry becomes ready on the first tick that is not before its due time,
+ * never earlier. Entries are kept in primitive arrays, 16 bytes each. Not
+ * thread-safe.
+ */
+final class TimingWheel {
+
+    /**
+     * Receives ready entries.
+     */
+    interface Sink {
+        void accept(long id, long dueMillis);
+    }
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    private final long tickMillis;
+    private final int levels;
+    private final Bucket[][] slots;
+    private final Bucket ready = new Bucket();
+    private int readyHead;
+    private long currentTick;
+    private int scheduled;
+
+    TimingWheel(long tickMillis, int levels, long nowMillis) {
+        if (tickMillis <= 0 || levels < 1 || SLOT_BITS * levels > 40) {
+            throw new IllegalArgumentException("Invalid timing wheel shape");
+        }
+        this.tickMillis = tickMillis;
+        this.levels = levels;
+        this.slots = new Bucket[levels][SLOTS];
+        for (Bucket[] level : slots) {
+            Arrays.setAll(level, i -> new Bucket());
+        }
+        this.currentTick = Math.floorDiv(nowMillis, tickMillis);
+    }
+
+    /**
+     * How far ahead of the current tick entries can be added.
+     */
+    long spanMillis() {
+        return tickMillis << (SLOT_BITS * levels);
+    }
+
+    /**
+     * Add an entry; one already due is ready at once.
+     */
+    void add(long id, long dueMillis) {
+        if (!place(id, dueMillis)) {
+            throw new IllegalArgumentException("Due time is beyond the wheel's span of " + spanMillis() + " ms");
+        }
+    }
+
+    /**
+     * Turn the wheel up to {@code nowMillis}, making every entry due by then ready.
+     */
+    void advance(long nowMillis) {
+        long target = Math.floorDiv(nowMillis, tickMillis);
+        if (scheduled == 0 && target > currentTick) {
+            currentTick = target;
+            return;
+        }
+        while (currentTick < target) {
+            currentTick++;
+            // Coarsest first, so entries cascaded onto a finer slot being turned onto now are cascaded again
+            for (int level = levels - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(slots[level][slot(currentTick, level)]);
+                }
+            }
+            Bucket due = slots[0][slot(currentTick, 0)];
+            for (int i = 0; i < due.size; i++) {
+                ready.add(due.ids[i], due.dues[i]);
+            }
+            scheduled -= due.size;
+            due.clear();
+        }
+    }
+
+    /**
+     * Hand up to {@code max} ready entries to {@code sink}, oldest first, and
+     * return how many were handed over.
+     */
+    int poll(int max, Sink sink) {
+        int taken = 0;
+        while (taken < max && readyHead < ready.size) {
+            sink.accept(ready.ids[readyHead], ready.dues[readyHead]);
+            readyHead++;
+            taken++;
+        }
+        if (readyHead == ready.size) {
+            ready.clear();
+            readyHead = 0;
+        }
+        return taken;
+    }
+
+    /**
+     * Entries held, ready or not.
+     */
+    int size() {
+        return scheduled + ready.size - readyHead;
+    }
+
+    int readyCount() {
+        return ready.size - readyHead;
+    }
+
+    /**
+     * Due time of the oldest ready entry, or -1 when none is ready.
+     */
+    long oldestReadyMillis() {
+        return readyHead < ready.size ? ready.dues[readyHead] : -1;
+    }
+
+    private boolean place(long id, long dueMillis) {
+        long dueTick = Math.ceilDiv(dueMillis, tickMillis);
+        long delta = dueTick - currentTick;
+        if (delta <= 0) {
+            ready.add(id, dueMillis);
+            return true;
+        }
+        for (int level = 0; level < levels; level++) {
+            if (delta < 1L << (SLOT_BITS * (level + 1))) {
+                slots[level][slot(dueTick, level)].add(id, dueMillis);
+                scheduled++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void cascade(Bucket bucket) {
+        long[] ids = bucket.ids;
+        long[] dues = bucket.dues;
+        int size = bucket.size;
+        bucket.detach();
+        scheduled -= size;
+        for (int i = 0; i < size; i++) {
+            place(ids[i], dues[i]);
+        }
+    }
+
+    private static int slot(long tick, int level) {
+        return (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+    }
+
+    private static final class Bucket {
+
+        private static final int INITIAL_CAPACITY = 8;
+
+        long[] ids = new long[INITIAL_CAPACITY];
+        long[] dues = new long[INITIAL_CAPACITY];
+        int size;
+
+        void add(long id, long due) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                dues = Arrays.copyOf(dues, size * 2);
+            }
+            ids[size] = id;
+            dues[size] = due;
+            size++;
+        }
+
+        // Arrays grown by a burst are released rather than kept for the next lap
+        void clear() {
+            if (ids.length > INITIAL_CAPACITY * 8) {
+                detach();
+            }
+            size = 0;
+        }
+
+        void detach() {
+            ids = new long[INITIAL_CAPACITY];
+            dues = new long[INITIAL_CAPACITY];
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.securetrust.statement;
+
+import com.securetrust.archive.ArchivedTransaction;
+import com.securetrust.archive.TransactionArchive;
+import com.securetrust.dictionary.LedgerDictionary;
+import com.securetrust.model.TransactionType;
+import com.securetrust.sharding.Shards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Monthly statement batch.
+ *
+ * Accounts are split across workers by {@code id mod workers}; each worker
+ * reads its share with one forward-only query that returns every account
+ * joined to its transactions for the month, ordered by account, and writes a
+ * statement per account as the rows go by. Nothing but the current account's
+ * running totals is kept in memory, however many accounts or transactions the
+ * month has.
+ *
+ * Statements land in {@code <directory>/yyyy-MM/<account>.txt.gz}. Each file is
+ * written under a temporary name, moved into place and then appended to
+ * {@code manifest.partial}; a rerun skips accounts already listed there, so an
+ * interrupted run resumes where it stopped. A run without failures renames
+ * the manifest to {@code manifest.csv}.
+ *
+ * Months already moved to the {@link TransactionArchive} take their rows from
+ * the archive instead, and archived activity after the month is included in
+ * the closing balance arithmetic.
+ */
+@Component
+@Lazy(false)
+public class StatementJob {
+
+    private static final Logger log = LoggerFactory.getLogger(StatementJob.class);
+
+    private static final int FETCH_SIZE = 500;
+    private static final String PARTIAL_MANIFEST = "manifest.partial";
+    private static final String MANIFEST = "manifest.csv";
+
+    // The closing balance is the current balance less everything booked after the month
+    private static final String SCAN_SQL =
+        "SELECT a.id, a.account_number, a.account_type, a.balance, "
+            + "c.customer_id, c.customer_type, c.first_name, c.surname, c.company_name, "
+            + "COALESCE(l.later_net, 0), t.id, t.type, t.amount, t.transaction_date, t.description_id, t.balance_after, "
+            + "t.reference_account_id, t.description "
+            + "FROM account a "
+            + "JOIN customer c ON c.id = a.customer_id "
+            + "LEFT JOIN (SELECT account_id, "
+            + "  SUM(CASE WHEN type IN (" + TransactionType.CREDIT_CODES + ") THEN amount ELSE -amount END) later_net "
+            + "  FROM transaction WHERE transaction_date >= ? GROUP BY account_id) l ON l.account_id = a.id "
+            + "LEFT JOIN transaction t ON t.account_id = a.id AND t.transaction_date >= ? AND t.transaction_date < ? "
+            + "WHERE MOD(a.id, ?) = ? "
+            + "ORDER BY a.id, t.transaction_date, t.id";
+
+    /**
+     * Outcome of one run. {@code skipped} counts statements already written by an
+     * earlier, interrupted run of the same month.
+     */
+    public record Report(String month, int generated, int skipped, int failed, long elapsedMillis,
+                         double statementsPerSecond, String directory) { }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionArchive archive;
+    private final LedgerDictionary dictionary;
+    private final Shards shards;
+    private final Path directory;
+    private final int workers;
+    private final ReentrantLock running = new ReentrantLock();
+
+    public StatementJob(JdbcTemplate jdbcTemplate, TransactionArchive archive, LedgerDictionary dictionary,
+                        Shards shards,
+                        @Value("${securetrust.statements.directory:./statements}") String directory,
+                        @Value("${securetrust.statements.workers:0}") int workers) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.archive = archive;
+        this.dictionary = dictionary;
+        this.shards = shards;
+        this.directory = Paths.get(directory);
+        this.workers = workers > 0 ? workers : Math.min(4, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Scheduled(cron = "${securetrust.statements.cron:0 0 2 1 * *}")
+    public void runPreviousMonth() {
+        if (shards.isSharded()) {
+            log.info("Statements skipped: not available on a sharded ledger");
+            return;
+        }
+        run(YearMonth.now().minusMonths(1));
+    }
+
+    /**
+     * Generate the statements of {@code month}, resuming an earlier run if one
+     * was interrupted.
+     */
+    public Report run(YearMonth month) {
+        if (month.isAfter(YearMonth.now())) {
+            throw new IllegalArgumentException("Cannot generate statements for a future month");
+        }
+        shards.requireSingle("Statements");
+        if (!running.tryLock()) {
+            throw new IllegalStateException("A statement run is already in progress");
+        }
+        try {
+            return generate(month);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            running.unlock();
+        }
+    }
+
+    private Report generate(YearMonth month) throws IOException {
+        long start = System.currentTimeMillis();
+        Path monthDirectory = directory.resolve(month.toString());
+        Files.createDirectories(monthDirectory);
+
+        Path partial = monthDirectory.resolve(PARTIAL_MANIFEST);
+        Path manifest = monthDirectory.resolve(MANIFEST);
+        if (Files.exists(manifest) && !Files.exists(partial)) {
+            // Reopen a finished month so accounts opened since are added to it
+            Files.move(manifest, partial);
+        }
+        Set<String> done = completed(monthDirectory, partial);
+
+        Counters counters = new Counters();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("statement-"));
+        try (ManifestWriter manifestWriter = new ManifestWriter(partial)) {
+            List<Future<?>> partitions = new ArrayList<>(workers);
+            for (int k = 0; k < workers; k++) {
+                int partition = k;
+                partitions.add(executor.submit(() ->
+                    scan(month, monthDirectory, partition, done, manifestWriter, counters)));
+            }
+            for (Future<?> future : partitions) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    log.error("Statement partition failed for {}", month, e.getCause());
+                    counters.failed.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Statement run interrupted", e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (counters.failed.get() == 0) {
+            Files.move(partial, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        Report report = new Report(month.toString(), counters.generated.get(), done.size(), counters.failed.get(),
+            elapsed, counters.generated.get() * 1000.0 / elapsed,
+            monthDirectory.toAbsolutePath().normalize().toString());
+        log.info("Statements for {}: {} generated, {} already done, {} failed in {} ms ({} statements/s, {} workers)",
+            month, report.generated(), report.skipped(), report.failed(), elapsed,
+            String.format("%.1f", report.statementsPerSecond()), workers);
+        return report;
+    }
+
+    private void scan(YearMonth month, Path monthDirectory, int partition, Set<String> done,
+                      ManifestWriter manifest, Counters counters) {
+        Timestamp from = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+        Timestamp to = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+        PartitionHandler handler = new PartitionHandler(month, monthDirectory, done, manifest, counters, archive,
+            dictionary);
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(SCAN_SQL, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            statement.setTimestamp(1, to);
+            statement.setTimestamp(2, from);
+            statement.setTimestamp(3, to);
+            statement.setInt(4, workers);
+            statement.setInt(5, partition);
+            return statement;
+        }, handler);
+        handler.finishCurrent();
+    }
+
+    /**
+     * Accounts already listed in the partial manifest whose statement is in place.
+     * Entries whose file has gone missing are dropped from the manifest so the
+     * statement is written and listed again.
+     */
+    private static Set<String> completed(Path monthDirectory, Path partial) throws IOException {
+        Set<String> done = ConcurrentHashMap.newKeySet();
+        if (!Files.exists(partial)) {
+            return done;
+        }
+        List<String> lines = Files.readAllLines(partial, StandardCharsets.UTF_8);
+        List<String> kept = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comma = line.indexOf(',');
+            if (i == 0) {
+                kept.add(line);
+            } else if (comma > 0 && Files.exists(monthDirectory.resolve(fileName(line.substring(0, comma))))) {
+                done.add(line.substring(0, comma));
+                kept.add(line);
+            }
+        }
+        if (kept.size() < lines.size()) {
+            Path rewritten = partial.resolveSibling(PARTIAL_MANIFEST + ".tmp");
+            Files.write(rewritten, kept, StandardCharsets.UTF_8);
+            Files.move(rewritten, partial, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return done;
+    }
+
+    private static String fileName(String accountNumber) {
+        return accountNumber + ".txt.gz";
+    }
+
+    private static final class Counters {
+        final AtomicInteger generated = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+    }
+
+    /**
+     * Consumes one partition's rows. A change of account id finishes the previous
+     * statement; a statement that cannot be written is counted as failed and the
+     * scan moves on to the next account.
+     */
+    private static final class PartitionHandler implements RowCallbackHandler {
+
+        private final YearMonth month;
+        private final Path monthDirectory;
+        private final Set<String> done;
+        private final ManifestWriter manifest;
+        private final Counters counters;
+        private final TransactionArchive archive;
+        private final LedgerDictionary dictionary;
+        private final boolean archived;
+
+        private long accountId = -1;
+        private String accountNumber;
+        private Path temporary;
+        private StatementWriter writer;
+
+        PartitionHandler(YearMonth month, Path monthDirectory, Set<String> done, ManifestWriter manifest,
+                         Counters counters, TransactionArchive archive, LedgerDictionary dictionary) {
+            this.month = month;
+            this.monthDirectory = monthDirectory;
+            this.done = done;
+            this.manifest = manifest;
+            this.counters = counters;
+            this.archive = archive;
+            this.dictionary = dictionary;
+            this.archived = archive.isArchived(month);
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long id = rs.getLong(1);
+            if (id != accountId) {
+                finishCurrent();
+                accountId = id;
+                start(rs);
+            }
+            if (writer == null || archived || rs.getObject(11) == null) {
+                return;
+            }
+            TransactionType type = TransactionType.fromCode(rs.getInt(12));
+            String description = type.describe(
+                dictionary.description(rs.getString(18), rs.getObject(15, Integer.class)),
+                dictionary.accountNumber(rs.getObject(17, Long.class)));
+            try {
+                writer.add(type, rs.getDouble(13), rs.getTimestamp(14).toLocalDateTime(), description,
+                    rs.getObject(16, Double.class));
+            } catch (IOException e) {
+                abandon(e);
+            }
+        }
+
+        void finishCurrent() {
+            if (writer == null) {
+                return;
+            }
+            try {
+                StatementWriter.Summary summary = writer.finish();
+                Files.move(temporary, monthDirectory.resolve(fileName(accountNumber)),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                manifest.append(summary);
+                counters.generated.incrementAndGet();
+            } catch (IOException e) {
+                abandon(e);
+            }
+            writer = null;
+        }
+
+        private void start(ResultSet rs) throws SQLException {
+            accountNumber = rs.getString(2);
+            if (done.contains(accountNumber)) {
+                return;
+            }
+            String customerName = "COMPANY".equals(rs.getString(6)) && rs.getString(9) != null
+                ? rs.getString(9) : rs.getString(7) + " " + rs.getString(8);
+            double closingBalance = rs.getDouble(4) - rs.getDouble(10)
+                - archive.netFrom(accountId, month.plusMonths(1));
+            try {
+                temporary = monthDirectory.resolve(fileName(accountNumber) + ".tmp");
+                writer = new StatementWriter(temporary, month, accountNumber, rs.getString(3), rs.getString(5),
+                    customerName, closingBalance);
+                if (archived) {
+                    for (ArchivedTransaction row : archive.history(accountId, month.atDay(1).atStartOfDay(),
+                            month.plusMonths(1).atDay(1).atStartOfDay())) {
+                        writer.add(row.type(), row.amount(), new Timestamp(row.transactionDate()).toLocalDateTime(),
+                            row.description(), row.balanceAfter());
+                    }
+                }
+            } catch (IOException e) {
+                abandon(e);
+            }
+        }
+
+        private void abandon(IOException e) {
+            log.error("Could not write the {} statement for {}", month, accountNumber, e);
+            counters.failed.incrementAndGet();
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                    // Already failing; the temporary file is removed below
+                }
+            }
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // A stale temporary file is overwritten by the next run
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * Appends finished statements to the month's manifest, flushing each line so
+     * a crash never loses a statement that is already in place.
+     */
+    private static final class ManifestWriter implements AutoCloseable {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final BufferedWriter out;
+
+        ManifestWriter(Path path) throws IOException {
+            boolean created = !Files.exists(path);
+            this.out = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            if (created) {
+                out.write("account,file,transactions,opening_balance,closing_balance\n");
+                out.flush();
+            }
+        }
+
+        void append(StatementWriter.Summary summary) throws IOException {
+            String line = String.format("%s,%s,%d,%.2f,%.2f%n", summary.accountNumber(),
+                fileName(summary.accountNumber()), summary.transactions(), summary.openingBalance(),
+                summary.closingBalance());
+            lock.lock();
+            try {
+                out.write(line);
+                out.flush();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.securetrust.statement;
+
+import com.securetrust.model.TransactionType;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes one account's monthly statement as gzip-compressed text while its
+ * transactions stream past, so only the running totals are held in memory.
+ * The opening balance is derived from the closing balance and the month's net
+ * movement, which is why the summary follows the transaction lines.
+ */
+final class StatementWriter implements Closeable {
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    /**
+     * Figures recorded in the manifest for a finished statement.
+     */
+    record Summary(String accountNumber, int transactions, double openingBalance, double closingBalance) { }
+
+    private final BufferedWriter out;
+    private final String accountNumber;
+    private final double closingBalance;
+    private final int[] counts = new int[TransactionType.values().length];
+    private final double[] totals = new double[TransactionType.values().length];
+    private int transactions;
+    private double net;
+
+    StatementWriter(Path file, YearMonth month, String accountNumber, String accountType,
+                    String customerId, String customerName, double closingBalance) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(
+            new GZIPOutputStream(Files.newOutputStream(file), 8192), StandardCharsets.UTF_8));
+        this.accountNumber = accountNumber;
+        this.closingBalance = closingBalance;
+
+        out.write("SecureTrust Bank - Account Statement\n");
+        out.write("Account: " + accountNumber + " (" + accountType + ")\n");
+        out.write("Customer: " + customerId + " " + customerName + "\n");
+        out.write("Period: " + month.atDay(1) + " to " + month.atEndOfMonth() + "\n\n");
+        out.write("Date,Type,Description,Amount,Balance\n");
+    }
+
+    void add(TransactionType type, double amount, LocalDateTime date, String description, Double balanceAfter)
+            throws IOException {
+        double signed = type.isCredit() ? amount : -amount;
+        net += signed;
+        counts[type.ordinal()]++;
+        totals[type.ordinal()] += amount;
+        transactions++;
+
+        out.write(date.format(DATE_TIME));
+        out.write(',');
+        out.write(type.getDisplayName());
+        out.write(',');
+        out.write(csv(description));
+        out.write(',');
+        out.write(String.format("%+.2f", signed));
+        out.write(',');
+        out.write(balanceAfter != null ? String.format("%.2f", balanceAfter) : "");
+        out.write('\n');
+    }
+
+    Summary finish() throws IOException {
+        double openingBalance = closingBalance - net;
+        out.write('\n');
+        out.write(String.format("Opening balance: BWP %,.2f%n", openingBalance));
+        out.write(String.format("Closing balance: BWP %,.2f%n", closingBalance));
+        out.write("Totals:\n");
+        for (TransactionType type : TransactionType.values()) {
+            out.write(String.format("  %-12s %5d  BWP %,.2f%n", type.getDisplayName(), counts[type.ordinal()],
+                totals[type.ordinal()]));
+        }
+        out.close();
+        return new Summary(accountNumber, transactions, openingBalance, closingBalance);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,257 @@
+package com.securetrust.warmup;
+
+import com.securetrust.config.StartupOrder;
+import com.securetrust.service.BankingService;
+import jakarta.persistence.EntityManager;
+import org.apache.catalina.Container;
+import org.apache.catalina.Context;
+import org.apache.catalina.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Exercises the hot request paths before the application reports ready, so the
+ * JIT has compiled them by the time real traffic arrives.
+ *
+ * Spring Boot only moves readiness to {@code ACCEPTING_TRAFFIC} once every
+ * {@link ApplicationReadyEvent} listener has returned, and this one returns
+ * when warm-up is over. It runs last, as set out in {@link StartupOrder}, so
+ * the application's other ready listeners do not wait for it. Each round
+ * sends the main pages through the full HTTP stack (Tomcat, MVC, Thymeleaf,
+ * Hibernate) on a short-lived admin session created directly in Tomcat's
+ * session manager, posts a login and a transfer that are rejected before
+ * anything is written, and runs a deposit, withdrawal and transfer of 0.01
+ * between the two richest accounts inside a transaction that is flushed and
+ * then rolled back. Nothing is committed and
+ * no committed-change events are published.
+ *
+ * Rounds stop once the JIT has spent less than 5% of a round compiling for
+ * {@code settle-rounds} rounds in a row, or when {@code budget} runs out.
+ * No request is sent after the budget has run out, and each one times out
+ * when it would outlast it, so a stuck page cannot hold readiness back.
+ */
+@Component
+public class WarmUp {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmUp.class);
+
+    private static final int ITERATIONS_PER_ROUND = 10;
+    private static final int MIN_ROUNDS = 3;
+    private static final List<String> PAGES = List.of("/login", "/dashboard", "/transactions", "/customers");
+
+    /**
+     * Outcome of the warm-up. {@code compilationMillis} is the JIT time spent
+     * during warm-up, -1 when the JVM does not report it.
+     */
+    public record Report(boolean enabled, int rounds, boolean settled, long elapsedMillis, long compilationMillis,
+                         int requests, int writes, int failures) { }
+
+    private final BankingService bankingService;
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationAvailability availability;
+    private final boolean enabled;
+    private final Duration budget;
+    private final int settleRounds;
+    private volatile Report report;
+
+    public WarmUp(BankingService bankingService, EntityManager entityManager, JdbcTemplate jdbcTemplate,
+                  PlatformTransactionManager transactionManager, ApplicationAvailability availability,
+                  @Value("${securetrust.warm-up.enabled:true}") boolean enabled,
+                  @Value("${securetrust.warm-up.budget:PT30S}") Duration budget,
+                  @Value("${securetrust.warm-up.settle-rounds:3}") int settleRounds) {
+        this.bankingService = bankingService;
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.availability = availability;
+        this.enabled = enabled;
+        this.budget = budget;
+        this.settleRounds = settleRounds;
+        this.report = new Report(enabled, 0, false, 0, 0, 0, 0, 0);
+    }
+
+    public Report getReport() {
+        return report;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(StartupOrder.WARM_UP)
+    public void run(ApplicationReadyEvent event) {
+        if (!enabled) {
+            return;
+        }
+        WebServer server = event.getApplicationContext() instanceof WebServerApplicationContext web
+            ? web.getWebServer() : null;
+        Session session = server != null ? adminSession(server) : null;
+        if (session == null) {
+            log.warn("Warm-up skips HTTP requests: no embedded Tomcat to create a session in");
+        }
+        log.info("Warming up for at most {} s (readiness: {})", budget.toSeconds(), availability.getReadinessState());
+
+        Round round = new Round(server, session, richestAccounts());
+        CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+        boolean measurable = jit != null && jit.isCompilationTimeMonitoringSupported();
+        long compilationStart = measurable ? jit.getTotalCompilationTime() : 0;
+        long start = System.nanoTime();
+        long deadline = start + budget.toNanos();
+        int rounds = 0;
+        int quiet = 0;
+        try {
+            while (System.nanoTime() < deadline) {
+                long compiledBefore = measurable ? jit.getTotalCompilationTime() : 0;
+                long roundStart = System.nanoTime();
+                round.run(deadline);
+                rounds++;
+                long roundMillis = (System.nanoTime() - roundStart) / 1_000_000;
+                long compiledMillis = measurable ? jit.getTotalCompilationTime() - compiledBefore : roundMillis;
+                quiet = rounds >= MIN_ROUNDS && compiledMillis * 20 <= roundMillis ? quiet + 1 : 0;
+                log.debug("Warm-up round {}: {} ms, {} ms compiling", rounds, roundMillis, compiledMillis);
+                if (quiet >= settleRounds) {
+                    break;
+                }
+            }
+        } finally {
+            if (session != null) {
+                session.expire();
+            }
+        }
+
+        report = new Report(true, rounds, quiet >= settleRounds, (System.nanoTime() - start) / 1_000_000,
+            measurable ? jit.getTotalCompilationTime() - compilationStart : -1,
+            round.requests, round.writes, round.failures);
+        log.info("Warm-up {} after {} rounds in {} ms ({} ms compiling, {} requests, {} rolled-back writes, {} failures)",
+            report.settled() ? "settled" : "stopped at its budget", report.rounds(), report.elapsedMillis(),
+            report.compilationMillis(), report.requests(), report.writes(), report.failures());
+    }
+
+    // Sessions are created in Tomcat itself so no request can ask for one
+    private static Session adminSession(WebServer server) {
+        if (!(server instanceof TomcatWebServer tomcat)) {
+            return null;
+        }
+        for (Container child : tomcat.getTomcat().getHost().findChildren()) {
+            if (child instanceof Context context && context.getManager() != null) {
+                Session session = context.getManager().createSession(null);
+                session.setMaxInactiveInterval(60);
+                session.getSession().setAttribute("user", "warm-up");
+                session.getSession().setAttribute("isAdmin", true);
+                session.getSession().setAttribute("userType", "admin");
+                return session;
+            }
+        }
+        return null;
+    }
+
+    private List<String> richestAccounts() {
+        return jdbcTemplate.queryForList(
+            "SELECT account_number FROM account WHERE balance >= 1 ORDER BY balance DESC LIMIT 2", String.class);
+    }
+
+    private final class Round {
+
+        private final HttpClient client;
+        private final String baseUrl;
+        private final String cookie;
+        private final List<String> accounts;
+        int requests;
+        int writes;
+        int failures;
+
+        Round(WebServer server, Session session, List<String> accounts) {
+            this.client = session != null
+                ? HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build() : null;
+            this.baseUrl = server != null ? "http://localhost:" + server.getPort() : null;
+            this.cookie = session != null ? "JSESSIONID=" + session.getIdInternal() : null;
+            this.accounts = accounts;
+        }
+
+        void run(long deadline) {
+            for (int i = 0; i < ITERATIONS_PER_ROUND && System.nanoTime() < deadline; i++) {
+                if (client != null) {
+                    for (String page : PAGES) {
+                        send(HttpRequest.newBuilder(URI.create(baseUrl + page)).GET(), deadline);
+                    }
+                    send(post("/login", "email=warm-up%40invalid&password=warm-up"), deadline);
+                    send(post("/transactions/transfer", "fromAccount=warm-up&toAccount=warm-up&amount=0"), deadline);
+                }
+                if (accounts.size() == 2 && System.nanoTime() < deadline) {
+                    rolledBackWrites(accounts.get(0), accounts.get(1));
+                }
+            }
+        }
+
+        private HttpRequest.Builder post(String path, String form) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form));
+        }
+
+        // Not sent once the deadline has passed; a timeout counts as a failure
+        private void send(HttpRequest.Builder request, long deadline) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return;
+            }
+            requests++;
+            try {
+                HttpResponse<Void> response = client.send(
+                    request.header("Cookie", cookie).timeout(Duration.ofNanos(left)).build(),
+                    HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() >= 400) {
+                    failures++;
+                }
+            } catch (IOException e) {
+                failures++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures++;
+            }
+        }
+
+        // Flushed so the SQL runs too; a rule may reject an operation (savings
+        // accounts refuse withdrawals), which still exercises its checks, and
+        // the concurrency limiter may shed one when traffic arrives early
+        private void rolledBackWrites(String from, String to) {
+            transactionTemplate.executeWithoutResult(status -> {
+                status.setRollbackOnly();
+                write(() -> bankingService.deposit(to, 0.01, null));
+                write(() -> bankingService.withdraw(from, 0.01, null));
+                write(() -> bankingService.transfer(from, to, 0.01, null));
+                entityManager.flush();
+            });
+        }
+
+        private void write(Runnable operation) {
+            writes++;
+            try {
+                operation.run();
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                failures++;
+            }
+        }
+    }
+}
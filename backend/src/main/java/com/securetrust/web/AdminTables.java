@@ -0,0 +1,185 @@
+package com.securetrust.web;
+
+import com.securetrust.model.Account;
+import com.securetrust.model.AccountType;
+import com.securetrust.model.Customer;
+import com.securetrust.model.CustomerType;
+import com.securetrust.search.CustomerSearchIndex;
+import com.securetrust.sharding.ShardMap;
+import com.securetrust.sharding.Shards;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Rows of the large admin tables (customers, dashboard) as
+ * {@link ChunkedRows}, so the pages stream instead of loading every row into
+ * the model first, and the accounts offered by the transaction forms' account
+ * pickers, which are looked up as the user types rather than listed.
+ *
+ * Rows are read with plain JDBC into detached {@link Customer} and
+ * {@link Account} objects carrying only the columns the tables show, which
+ * keeps them out of the persistence context. A customer's accounts are read
+ * with one query per chunk of customers. Chunks are separate queries, so a
+ * page rendered while the ledger changes may mix rows from before and after.
+ *
+ * The tables are read while the view renders, after the handler's transaction
+ * has ended but while the request's open session still holds its connection.
+ * Each chunk runs in a read-only transaction that joins that session, so the
+ * page uses one connection rather than taking a second from the pool.
+ *
+ * On a sharded ledger a shard's ids all follow the previous shard's, so the
+ * customers are read shard after shard, a chunk continuing on the next shard
+ * where one runs out, and each in a read-only transaction on its shard.
+ */
+@Component
+public class AdminTables {
+
+    private static final String CUSTOMER_SQL =
+        "SELECT id, customer_id, first_name, surname, address, phone_number, email, customer_type, company_name, "
+            + "created_at FROM customer WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String CUSTOMER_ACCOUNT_SQL =
+        "SELECT id, customer_id, account_type, account_number, balance FROM account "
+            + "WHERE customer_id BETWEEN ? AND ? ORDER BY customer_id, id";
+    private static final int MAX_ACCOUNT_OPTIONS = 50;
+    private static final String ACCOUNT_OPTION_SQL =
+        "SELECT account_number, account_type, balance FROM account WHERE account_number IN ";
+
+    /**
+     * An account offered by an account picker, with its owner's display name.
+     */
+    public record AccountOption(String accountNumber, String accountType, double balance, String owner) { }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CustomerSearchIndex searchIndex;
+    private final Shards shards;
+    private final TransactionTemplate readOnly;
+    private final int chunkRows;
+
+    public AdminTables(JdbcTemplate jdbcTemplate, CustomerSearchIndex searchIndex, Shards shards,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${securetrust.admin-tables.chunk-rows:500}") int chunkRows) {
+        if (chunkRows < 1) {
+            throw new IllegalArgumentException("securetrust.admin-tables.chunk-rows must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.searchIndex = searchIndex;
+        this.shards = shards;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.chunkRows = chunkRows;
+    }
+
+    /**
+     * All customers in id order, each with its accounts.
+     */
+    public Iterable<Customer> customers() {
+        return new ChunkedRows<>(this::customerChunk, chunkRows);
+    }
+
+    /**
+     * Up to {@code limit} accounts of the customers matching {@code query} in the
+     * {@link CustomerSearchIndex}. When the query matched an account number, only
+     * that customer's accounts starting with it are offered.
+     */
+    public List<AccountOption> accountOptions(String query, int limit) {
+        int max = Math.max(1, Math.min(limit, MAX_ACCOUNT_OPTIONS));
+        String prefix = query.trim().toLowerCase(Locale.ROOT);
+        Map<String, String> owners = new LinkedHashMap<>();
+        hits:
+        for (CustomerSearchIndex.Hit hit : searchIndex.search(query, max)) {
+            boolean byNumber = hit.accountNumbers().stream()
+                .anyMatch(number -> number.toLowerCase(Locale.ROOT).equals(hit.matched()));
+            for (String number : hit.accountNumbers()) {
+                if (!byNumber || number.toLowerCase(Locale.ROOT).startsWith(prefix)) {
+                    owners.putIfAbsent(number, hit.name());
+                }
+                if (owners.size() == max) {
+                    break hits;
+                }
+            }
+        }
+        if (owners.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Integer, List<String>> byShard = new TreeMap<>();
+        owners.keySet().forEach(number ->
+            byShard.computeIfAbsent(shards.ofAccount(number), shard -> new ArrayList<>()).add(number));
+        Map<String, AccountOption> options = new HashMap<>();
+        byShard.forEach((shard, numbers) -> shards.read(shard, () -> {
+            jdbcTemplate.query(
+                ACCOUNT_OPTION_SQL + "(" + String.join(", ", Collections.nCopies(numbers.size(), "?")) + ")",
+                rs -> {
+                    String number = rs.getString(1);
+                    options.put(number, new AccountOption(number,
+                        AccountType.valueOf(rs.getString(2)).getDisplayName(), rs.getDouble(3), owners.get(number)));
+                }, numbers.toArray());
+            return null;
+        }));
+        // In the index's order; an account closed since it was indexed is left out
+        return owners.keySet().stream().map(options::get).filter(Objects::nonNull).toList();
+    }
+
+    private List<Customer> customerChunk(Customer last, int limit) {
+        long after = last == null ? 0 : last.getId();
+        List<Customer> chunk = new ArrayList<>(limit);
+        for (int shard = shards.isSharded() ? ShardMap.shardOfId(after) : Shards.HOME;
+                shard < shards.count() && chunk.size() < limit; shard++) {
+            int rows = limit - chunk.size();
+            chunk.addAll(shards.read(shard, () -> readOnly.execute(status -> customerChunk(after, rows))));
+        }
+        return chunk;
+    }
+
+    private List<Customer> customerChunk(long after, int limit) {
+        List<Customer> customers = jdbcTemplate.query(CUSTOMER_SQL, (rs, row) -> {
+            Customer customer = new Customer();
+            customer.setId(rs.getLong(1));
+            customer.setCustomerId(rs.getString(2));
+            customer.setFirstName(rs.getString(3));
+            customer.setSurname(rs.getString(4));
+            customer.setAddress(rs.getString(5));
+            customer.setPhoneNumber(rs.getString(6));
+            customer.setEmail(rs.getString(7));
+            String type = rs.getString(8);
+            customer.setCustomerType(type != null ? CustomerType.valueOf(type) : null);
+            customer.setCompanyName(rs.getString(9));
+            Timestamp createdAt = rs.getTimestamp(10);
+            customer.setCreatedAt(createdAt != null ? createdAt.toLocalDateTime() : null);
+            customer.setAccounts(new ArrayList<>());
+            return customer;
+        }, after, limit);
+        if (customers.isEmpty()) {
+            return customers;
+        }
+
+        Map<Long, Customer> byId = new HashMap<>();
+        customers.forEach(customer -> byId.put(customer.getId(), customer));
+        jdbcTemplate.query(CUSTOMER_ACCOUNT_SQL, rs -> {
+            Account account = new Account();
+            account.setId(rs.getLong(1));
+            account.setAccountType(AccountType.valueOf(rs.getString(3)));
+            account.setAccountNumber(rs.getString(4));
+            account.setBalance(rs.getDouble(5));
+            Customer customer = byId.get(rs.getLong(2));
+            if (customer != null) {
+                customer.getAccounts().add(account);
+            }
+        }, customers.get(0).getId(), customers.get(customers.size() - 1).getId());
+        return customers;
+    }
+}
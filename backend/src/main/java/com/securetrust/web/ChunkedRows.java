@@ -0,0 +1,98 @@
+package com.securetrust.web;
+
+import com.securetrust.monitoring.QueryStats;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Table rows for a streamed view, read one chunk at a time as the template
+ * iterates them.
+ *
+ * Nothing is queried until the template reaches the table. The response is
+ * flushed then, so everything rendered above the table reaches the client
+ * before the first query runs, and again after every chunk. Only one chunk
+ * is held at a time, and each chunk is a separate keyset query. Every
+ * iteration starts over with a fresh query.
+ */
+public final class ChunkedRows<T> implements Iterable<T> {
+
+    /**
+     * Fetches the rows following {@code last} (null for the first chunk), at most {@code limit} of them.
+     */
+    @FunctionalInterface
+    public interface ChunkQuery<T> {
+        List<T> next(T last, int limit);
+    }
+
+    private final ChunkQuery<T> query;
+    private final int chunkRows;
+
+    public ChunkedRows(ChunkQuery<T> query, int chunkRows) {
+        if (chunkRows < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.query = query;
+        this.chunkRows = chunkRows;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        flush();
+        return new Iterator<>() {
+            private List<T> chunk = read(null);
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                if (position < chunk.size()) {
+                    return true;
+                }
+                if (chunk.size() < chunkRows) {
+                    return false;
+                }
+                flush();
+                chunk = read(chunk.get(chunk.size() - 1));
+                position = 0;
+                return !chunk.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return chunk.get(position++);
+            }
+        };
+    }
+
+    // One query per chunk is expected, so QueryStats does not report it as an N+1
+    private List<T> read(T last) {
+        return QueryStats.chunk(() -> query.next(last, chunkRows));
+    }
+
+    // Push what has been rendered so far; stops the rendering if the client has gone away
+    private static void flush() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes servletAttributes)) {
+            return;
+        }
+        HttpServletResponse response = servletAttributes.getResponse();
+        if (response == null) {
+            return;
+        }
+        try {
+            response.flushBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.securetrust.web;
+
+import com.securetrust.datasource.ReplicaRoutingContext;
+import com.securetrust.datasource.ReplicaRoutingDataSource;
+import com.securetrust.event.AccountChangedEvent;
+import com.securetrust.event.CustomerChangedEvent;
+import com.securetrust.event.LedgerChangedEvent;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Output cache for the summary widgets in {@code fragments/widgets.html}.
+ *
+ * Each widget is cached as rendered HTML per role and locale. A hit skips both
+ * the model supplier (the repository calls) and template evaluation. Entries
+ * never expire on their own; they are dropped when the service layer reports
+ * a committed change that affects them.
+ *
+ * A miss renders on the caller's transaction and connection. It is only
+ * stored when the request reads from the primary: a render from a replica
+ * that has not caught up with the commit that just invalidated the widget
+ * would otherwise stay cached until the next change. Handlers call
+ * {@link #prepare} before their first query, which pins the request to the
+ * primary when one of its widgets is missing.
+ */
+@Component
+public class FragmentCache {
+
+    private static final String TEMPLATE = "fragments/widgets";
+
+    /**
+     * Cached widgets and the fragment that renders each of them.
+     */
+    public enum Widget {
+        DASHBOARD_STATS("dashboard-stats", true),
+        RECENT_TRANSACTIONS("recent-transactions", false),
+        BALANCE_CHART("balance-chart", false),
+        CUSTOMER_STATS("customer-stats", true);
+
+        private final String fragment;
+        private final boolean dependsOnCustomers;
+
+        Widget(String fragment, boolean dependsOnCustomers) {
+            this.fragment = fragment;
+            this.dependsOnCustomers = dependsOnCustomers;
+        }
+    }
+
+    private record Key(Widget widget, String role, Locale locale) { }
+
+    private final ITemplateEngine templateEngine;
+    private final boolean replicated;
+    private final Map<Key, byte[]> entries = new ConcurrentHashMap<>();
+    // Bumped on every invalidation so a render that raced with a commit is not stored
+    private final AtomicLong generation = new AtomicLong();
+
+    public FragmentCache(ITemplateEngine templateEngine, ObjectProvider<ReplicaRoutingDataSource> replicaRouting) {
+        this.templateEngine = templateEngine;
+        this.replicated = replicaRouting.getIfAvailable() != null;
+    }
+
+    /**
+     * Pin the rest of the request to the primary if any of {@code widgets} is
+     * not cached. Must run before the request's first query, as the connection
+     * is chosen when it is first used. Does nothing without replica routing,
+     * where {@link com.securetrust.datasource.ReadYourWritesFilter} is not
+     * there to clear the pin at the end of the request.
+     */
+    public void prepare(String role, Widget... widgets) {
+        if (!replicated) {
+            return;
+        }
+        Locale locale = LocaleContextHolder.getLocale();
+        for (Widget widget : widgets) {
+            if (!entries.containsKey(new Key(widget, role, locale))) {
+                ReplicaRoutingContext.pinToPrimary();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Return the rendered widget, rendering it from {@code model} on a miss.
+     */
+    public String render(Widget widget, String role, Supplier<Map<String, Object>> model) {
+        Locale locale = LocaleContextHolder.getLocale();
+        Key key = new Key(widget, role, locale);
+        byte[] cached = entries.get(key);
+        if (cached != null) {
+            return new String(cached, StandardCharsets.UTF_8);
+        }
+
+        long renderGeneration = generation.get();
+        String html = templateEngine.process(TEMPLATE, Set.of(widget.fragment), new Context(locale, model.get()));
+        if (readsFromPrimary() && generation.get() == renderGeneration) {
+            byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+            entries.put(key, bytes);
+            if (generation.get() != renderGeneration) {
+                entries.remove(key, bytes);
+            }
+        }
+        return html;
+    }
+
+    // Invalidated after prepare() found the widget cached, a request may render it from a replica
+    private boolean readsFromPrimary() {
+        ReplicaRoutingContext routing = ReplicaRoutingContext.current();
+        return !replicated || routing != null && routing.isPrimaryOnly();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLedgerChanged(LedgerChangedEvent event) {
+        invalidateAll();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountChanged(AccountChangedEvent event) {
+        invalidateAll();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCustomerChanged(CustomerChangedEvent event) {
+        generation.incrementAndGet();
+        entries.keySet().removeIf(key -> key.widget().dependsOnCustomers);
+    }
+
+    private void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+}
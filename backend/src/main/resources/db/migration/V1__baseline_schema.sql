@@ -0,0 +1,46 @@
+-- Baseline schema, as previously generated by Hibernate (ddl-auto: update).
+-- Every statement is IF NOT EXISTS so that databases created that way are
+-- adopted unchanged: Flyway baselines them at version 0 and then runs this.
+
+CREATE TABLE IF NOT EXISTS customer (
+    id            BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    address       VARCHAR(255),
+    company_name  VARCHAR(255),
+    created_at    TIMESTAMP(6),
+    customer_id   VARCHAR(255),
+    customer_type VARCHAR(255) CHECK (customer_type IN ('INDIVIDUAL', 'COMPANY')),
+    email         VARCHAR(255),
+    first_name    VARCHAR(255),
+    password      VARCHAR(255),
+    phone_number  VARCHAR(255),
+    surname       VARCHAR(255),
+    CONSTRAINT uk_customer_customer_id UNIQUE (customer_id)
+);
+
+CREATE TABLE IF NOT EXISTS account (
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    account_number   VARCHAR(255) NOT NULL,
+    account_type     VARCHAR(255) NOT NULL CHECK (account_type IN ('SAVINGS', 'INVESTMENT', 'CHEQUE')),
+    balance          DOUBLE PRECISION NOT NULL,
+    branch           VARCHAR(255),
+    employer         VARCHAR(255),
+    employer_address VARCHAR(255),
+    opened_at        TIMESTAMP(6),
+    customer_id      BIGINT NOT NULL,
+    CONSTRAINT uk_account_account_number UNIQUE (account_number),
+    CONSTRAINT fk_account_customer FOREIGN KEY (customer_id) REFERENCES customer (id)
+);
+
+CREATE TABLE IF NOT EXISTS transaction (
+    id                BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    amount            DOUBLE PRECISION NOT NULL,
+    balance_after     DOUBLE PRECISION,
+    category          VARCHAR(255),
+    description       VARCHAR(255),
+    reference_account VARCHAR(255),
+    transaction_date  TIMESTAMP(6),
+    type              VARCHAR(255) NOT NULL
+        CHECK (type IN ('DEPOSIT', 'WITHDRAWAL', 'TRANSFER_OUT', 'TRANSFER_IN', 'INTEREST')),
+    account_id        BIGINT NOT NULL,
+    CONSTRAINT fk_transaction_account FOREIGN KEY (account_id) REFERENCES account (id)
+);
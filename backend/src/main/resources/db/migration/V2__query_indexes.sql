@@ -0,0 +1,9 @@
+-- Indexes behind the repository queries; QueryPlanTest checks none of them
+-- falls back to a table scan. The transaction indexes are created by V3,
+-- which rebuilds that table.
+
+-- Accounts of a customer
+CREATE INDEX IF NOT EXISTS idx_account_customer ON account (customer_id);
+
+-- Customer login
+CREATE INDEX IF NOT EXISTS idx_customer_email ON customer (email);
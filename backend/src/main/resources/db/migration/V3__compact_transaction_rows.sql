@@ -0,0 +1,88 @@
+-- Compact transaction rows: the repeating strings move out of every row.
+--   type              enum name      -> TINYINT code (TransactionType.getCode())
+--   category          free text      -> category_id, transaction_category dictionary
+--   description       free text      -> kept inline; NULL when it is the default text
+--                                       for the type, which is rebuilt when the row
+--                                       is rendered
+--   reference_account account number -> reference_account_id, the account's id
+--
+-- Entered descriptions are mostly one-off texts and stay in the row. The
+-- transaction_description dictionary codes only the default transfer text kept
+-- in description_id when the reference account is closed, which recurs on
+-- every transfer to or from that account (LedgerDictionary.keepTransferDescriptions).
+--
+-- The table is rebuilt with INSERT ... SELECT rather than altered in place:
+-- one pass over the rows instead of a copy per added or dropped column plus an
+-- UPDATE, and the indexes are built once at the end.
+
+CREATE TABLE transaction_category (
+    id   INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    CONSTRAINT uk_transaction_category_name UNIQUE (name)
+);
+
+CREATE TABLE transaction_description (
+    id   INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    text VARCHAR(255) NOT NULL,
+    CONSTRAINT uk_transaction_description_text UNIQUE (text)
+);
+
+INSERT INTO transaction_category (name) VALUES ('Deposit'), ('Withdrawal'), ('Transfer'), ('Interest');
+INSERT INTO transaction_category (name)
+    SELECT DISTINCT category FROM transaction
+    WHERE category IS NOT NULL AND category NOT IN (SELECT name FROM transaction_category);
+
+CREATE TABLE transaction_compact (
+    id                   BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    amount               DOUBLE PRECISION NOT NULL,
+    balance_after        DOUBLE PRECISION,
+    transaction_date     TIMESTAMP(6),
+    account_id           BIGINT NOT NULL,
+    type                 TINYINT NOT NULL CONSTRAINT ck_transaction_type CHECK (type BETWEEN 1 AND 5),
+    category_id          INTEGER,
+    description_id       INTEGER,
+    reference_account_id BIGINT,
+    description          VARCHAR(255)
+);
+
+INSERT INTO transaction_compact
+    SELECT t.id, t.amount, t.balance_after, t.transaction_date, t.account_id,
+           CASE t.type
+               WHEN 'DEPOSIT' THEN 1
+               WHEN 'WITHDRAWAL' THEN 2
+               WHEN 'TRANSFER_OUT' THEN 3
+               WHEN 'TRANSFER_IN' THEN 4
+               WHEN 'INTEREST' THEN 5
+           END,
+           c.id, NULL, r.id,
+           -- Default texts are not stored; a transfer to an account that no longer
+           -- exists keeps its text because the number could not be looked up again
+           CASE WHEN (t.type = 'DEPOSIT' AND t.description = 'Deposit')
+                  OR (t.type = 'WITHDRAWAL' AND t.description = 'Withdrawal')
+                  OR (t.type = 'TRANSFER_OUT' AND r.id IS NOT NULL AND t.description = 'Transfer to ' || t.reference_account)
+                  OR (t.type = 'TRANSFER_IN' AND r.id IS NOT NULL AND t.description = 'Transfer from ' || t.reference_account)
+                THEN NULL
+                ELSE t.description
+           END
+    FROM transaction t
+    LEFT JOIN transaction_category c ON c.name = t.category
+    LEFT JOIN account r ON r.account_number = t.reference_account;
+
+DROP TABLE transaction;
+ALTER TABLE transaction_compact RENAME TO transaction;
+EXECUTE IMMEDIATE 'ALTER TABLE transaction ALTER COLUMN id RESTART WITH '
+    || (SELECT COALESCE(MAX(id), 0) + 1 FROM transaction);
+
+-- Account history, newest first, and date-bounded reads of one account
+-- (balance history, archiving, statements)
+CREATE INDEX idx_transaction_account_date_desc ON transaction (account_id, transaction_date DESC);
+-- Latest transactions across all accounts, and date-range reads without an account
+CREATE INDEX idx_transaction_date ON transaction (transaction_date DESC);
+ALTER TABLE transaction ADD CONSTRAINT fk_transaction_account
+    FOREIGN KEY (account_id) REFERENCES account (id);
+-- Closing an account first keeps the default text of the transfers that
+-- reference it in their description_id (Offboarding)
+ALTER TABLE transaction ADD CONSTRAINT fk_transaction_reference_account
+    FOREIGN KEY (reference_account_id) REFERENCES account (id) ON DELETE SET NULL;
+-- category_id and description_id get no foreign keys: dictionary entries are
+-- never deleted, and H2 would add an index on each of those columns
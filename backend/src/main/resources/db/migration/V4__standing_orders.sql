@@ -0,0 +1,34 @@
+-- Standing orders: recurring transfers between two accounts.
+--
+-- Occurrence n (counted from 0) falls at first_run_at plus n periods of
+-- frequency; runs is the number of occurrences already processed and
+-- next_run_at the time of occurrence runs, or NULL once the order is over.
+-- Executing an occurrence advances runs with a compare-and-set, so an
+-- occurrence is never paid twice.
+
+CREATE TABLE standing_order (
+    id              BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    from_account_id BIGINT NOT NULL,
+    to_account_id   BIGINT NOT NULL,
+    amount          DOUBLE PRECISION NOT NULL CONSTRAINT ck_standing_order_amount CHECK (amount > 0),
+    description     VARCHAR(255),
+    frequency       VARCHAR(16) NOT NULL
+        CONSTRAINT ck_standing_order_frequency CHECK (frequency IN ('DAILY', 'WEEKLY', 'MONTHLY')),
+    first_run_at    TIMESTAMP(6) NOT NULL,
+    end_at          TIMESTAMP(6),
+    runs            INTEGER DEFAULT 0 NOT NULL,
+    next_run_at     TIMESTAMP(6),
+    status          VARCHAR(16) NOT NULL
+        CONSTRAINT ck_standing_order_status CHECK (status IN ('ACTIVE', 'SUSPENDED', 'CANCELLED', 'COMPLETED')),
+    failures        INTEGER DEFAULT 0 NOT NULL,
+    last_run_at     TIMESTAMP(6),
+    last_outcome    VARCHAR(255),
+    created_at      TIMESTAMP(6) NOT NULL,
+    CONSTRAINT fk_standing_order_from_account FOREIGN KEY (from_account_id) REFERENCES account (id) ON DELETE CASCADE,
+    CONSTRAINT fk_standing_order_to_account FOREIGN KEY (to_account_id) REFERENCES account (id) ON DELETE CASCADE
+);
+
+-- The scheduler reads active orders in (next_run_at, id) order from a keyset position
+CREATE INDEX idx_standing_order_due ON standing_order (status, next_run_at, id);
+CREATE INDEX idx_standing_order_from_account ON standing_order (from_account_id);
+CREATE INDEX idx_standing_order_to_account ON standing_order (to_account_id);
@@ -0,0 +1,15 @@
+-- Transactional outbox: one row per ledger transaction, written in the same
+-- database transaction as the balance change and deleted by the relay once
+-- the downstream sink has acknowledged it.
+--
+-- Rows are delivered in id order. An account's events get increasing ids in
+-- commit order, because they are inserted after the account row is updated
+-- and so after any earlier transaction on that account has committed.
+
+CREATE TABLE outbox_event (
+    id             BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    account_number VARCHAR(255) NOT NULL,
+    event_type     VARCHAR(64) NOT NULL,
+    payload        VARCHAR(4000) NOT NULL,
+    created_at     TIMESTAMP(6) NOT NULL
+);
@@ -0,0 +1,56 @@
+-- Sharding (ShardMap, ShardingConfig). Every shard runs the same migrations;
+-- ${shard-index} and ${shard-first-id} differ per shard and are 0 and 1 for an
+-- unsharded database, which is the home shard if it is ever sharded.
+
+CREATE TABLE shard_info (
+    shard_index INTEGER NOT NULL
+);
+INSERT INTO shard_info (shard_index) VALUES (${shard-index});
+
+-- Each shard hands out ids from its own range, so ids are unique across
+-- shards and name the shard they came from; existing rows keep theirs
+EXECUTE IMMEDIATE 'ALTER TABLE customer ALTER COLUMN id RESTART WITH '
+    || GREATEST(${shard-first-id}, (SELECT COALESCE(MAX(id), 0) + 1 FROM customer));
+EXECUTE IMMEDIATE 'ALTER TABLE account ALTER COLUMN id RESTART WITH '
+    || GREATEST(${shard-first-id}, (SELECT COALESCE(MAX(id), 0) + 1 FROM account));
+EXECUTE IMMEDIATE 'ALTER TABLE transaction ALTER COLUMN id RESTART WITH '
+    || GREATEST(${shard-first-id}, (SELECT COALESCE(MAX(id), 0) + 1 FROM transaction));
+EXECUTE IMMEDIATE 'ALTER TABLE outbox_event ALTER COLUMN id RESTART WITH '
+    || GREATEST(${shard-first-id}, (SELECT COALESCE(MAX(id), 0) + 1 FROM outbox_event));
+
+-- A transfer between shards references an account in another database, so a
+-- sharded ledger drops fk_transaction_reference_account (ShardingConfig);
+-- an unsharded database keeps it
+
+-- Transfers between shards (CrossShardTransfers). The source shard's log is the
+-- coordinator: a transfer commits when its row there turns COMMITTED, in the
+-- same database transaction as the debit. While PREPARED its amount is held
+-- on the source account.
+CREATE TABLE transfer_log (
+    transfer_id  VARCHAR(36) PRIMARY KEY,
+    from_account VARCHAR(255) NOT NULL,
+    to_account   VARCHAR(255) NOT NULL,
+    amount       DOUBLE PRECISION NOT NULL CONSTRAINT ck_transfer_log_amount CHECK (amount > 0),
+    description  VARCHAR(255),
+    state        VARCHAR(16) NOT NULL
+        CONSTRAINT ck_transfer_log_state CHECK (state IN ('PREPARED', 'COMMITTED', 'ABORTED')),
+    created_at   TIMESTAMP(6) NOT NULL,
+    decided_at   TIMESTAMP(6)
+);
+-- In-doubt transfers for recovery, and decided ones to purge
+CREATE INDEX idx_transfer_log_state_created ON transfer_log (state, created_at);
+-- Amounts held on an account
+CREATE INDEX idx_transfer_log_from_account ON transfer_log (from_account, state);
+
+-- A credit staged on the destination shard, applied once the source has
+-- committed and deleted in the same database transaction
+CREATE TABLE transfer_credit (
+    transfer_id  VARCHAR(36) PRIMARY KEY,
+    to_account   VARCHAR(255) NOT NULL,
+    from_account VARCHAR(255) NOT NULL,
+    amount       DOUBLE PRECISION NOT NULL,
+    description  VARCHAR(255),
+    created_at   TIMESTAMP(6) NOT NULL
+);
+CREATE INDEX idx_transfer_credit_created ON transfer_credit (created_at);
+CREATE INDEX idx_transfer_credit_to_account ON transfer_credit (to_account);
@@ -0,0 +1,121 @@
+package com.securetrust.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+class ReplicaRoutingDataSourceTest {
+
+    private final DataSource primary = mock(DataSource.class);
+    private final DataSource first = mock(DataSource.class);
+    private final DataSource firstStandby = mock(DataSource.class);
+    private final DataSource second = mock(DataSource.class);
+    private final DataSource secondStandby = mock(DataSource.class);
+    private ReplicaRoutingDataSource.Replica replica1;
+    private ReplicaRoutingDataSource.Replica replica2;
+    private ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void setUp() {
+        ReplicaRoutingContext.clear();
+        replica1 = new ReplicaRoutingDataSource.Replica("replica-1", first, firstStandby);
+        replica2 = new ReplicaRoutingDataSource.Replica("replica-2", second, secondStandby);
+        routing = new ReplicaRoutingDataSource(primary, List.of(replica1, replica2), Duration.ofSeconds(5));
+        routing.afterPropertiesSet();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        ReplicaRoutingContext.clear();
+    }
+
+    @Test
+    void writesGoToThePrimary() {
+        replica1.promoteStandby(System.currentTimeMillis());
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+
+        assertSame(primary, routing.determineTargetDataSource());
+    }
+
+    @Test
+    void readsFallBackToThePrimaryUntilAReplicaHasSynced() {
+        assertSame(primary, routing.determineTargetDataSource());
+    }
+
+    @Test
+    void readsGoToTheDatabaseTheLastSyncWasLoadedInto() {
+        replica1.promoteStandby(System.currentTimeMillis());
+
+        assertSame(firstStandby, routing.determineTargetDataSource());
+        assertSame(first, replica1.getStandby());
+    }
+
+    @Test
+    void readsAreSpreadOverFreshReplicas() {
+        long now = System.currentTimeMillis();
+        replica1.promoteStandby(now);
+        replica2.promoteStandby(now);
+
+        Set<DataSource> targets = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            targets.add(routing.determineTargetDataSource());
+        }
+        assertEquals(Set.of(firstStandby, secondStandby), targets);
+    }
+
+    @Test
+    void staleReplicaFailsOverToAFreshOne() {
+        long now = System.currentTimeMillis();
+        replica1.promoteStandby(now - 60_000);
+        replica2.promoteStandby(now);
+
+        for (int i = 0; i < 4; i++) {
+            assertSame(secondStandby, routing.determineTargetDataSource());
+        }
+    }
+
+    @Test
+    void readsGoToThePrimaryWhenEveryReplicaIsStale() {
+        long now = System.currentTimeMillis();
+        replica1.promoteStandby(now - 60_000);
+        replica2.promoteStandby(now - 60_000);
+
+        assertSame(primary, routing.determineTargetDataSource());
+    }
+
+    @Test
+    void requestPinnedToThePrimaryNeverReadsFromAReplica() {
+        replica1.promoteStandby(System.currentTimeMillis());
+        ReplicaRoutingContext.pinToPrimary();
+
+        assertSame(primary, routing.determineTargetDataSource());
+    }
+
+    @Test
+    void readYourWritesSkipsReplicasSyncedBeforeTheWrite() {
+        long now = System.currentTimeMillis();
+        replica1.promoteStandby(now - 1_000);
+        replica2.promoteStandby(now);
+        ReplicaRoutingContext.requireSyncedSince(now - 500);
+
+        for (int i = 0; i < 4; i++) {
+            assertSame(secondStandby, routing.determineTargetDataSource());
+        }
+
+        ReplicaRoutingContext.requireSyncedSince(now + 1);
+        assertSame(primary, routing.determineTargetDataSource());
+    }
+}
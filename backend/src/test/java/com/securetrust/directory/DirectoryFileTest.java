@@ -0,0 +1,216 @@
+package com.securetrust.directory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectoryFileTest {
+
+    // Tables in the order they follow the 64-byte header
+    private static final int NUMBER_TABLE = 0;
+    private static final int ID_TABLE = 1;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsRecordsByNumberAndById() throws IOException {
+        try (DirectoryFile file = DirectoryFile.create(directory.resolve("accounts.dir"), 16)) {
+            file.put(record(1, "SAV001", 10));
+            file.put(record(2, "CHQ001", 20));
+
+            assertEquals(record(1, "SAV001", 10), file.find("SAV001"));
+            assertEquals(record(2, "CHQ001", 20), file.find(2));
+            assertNull(file.find("INV001"));
+            assertNull(file.find(3));
+            assertEquals(2, file.live());
+            assertEquals(3, file.idSum());
+        }
+    }
+
+    @Test
+    void putReplacesTheRecordWithTheSameNumber() throws IOException {
+        try (DirectoryFile file = DirectoryFile.create(directory.resolve("accounts.dir"), 16)) {
+            file.put(record(1, "SAV001", 10));
+            file.put(record(2, "SAV001", 20));
+
+            assertEquals(record(2, "SAV001", 20), file.find("SAV001"));
+            assertNull(file.find(1));
+            assertEquals(1, file.live());
+            assertEquals(2, file.records());
+            assertEquals(2, file.idSum());
+        }
+    }
+
+    @Test
+    void putReplacesTheRecordWithTheSameId() throws IOException {
+        try (DirectoryFile file = DirectoryFile.create(directory.resolve("accounts.dir"), 16)) {
+            file.put(record(1, "SAV001", 10));
+            file.put(record(1, "SAV009", 10));
+
+            assertNull(file.find("SAV001"));
+            assertEquals("SAV009", file.find(1).accountNumber());
+            assertEquals(1, file.live());
+            assertEquals(1, file.idSum());
+        }
+    }
+
+    @Test
+    void numberTooLongForARecordIsNotStored() throws IOException {
+        String tooLong = "X".repeat(DirectoryFile.NUMBER_BYTES + 1);
+        try (DirectoryFile file = DirectoryFile.create(directory.resolve("accounts.dir"), 16)) {
+            file.put(record(1, "SAV001", 10));
+
+            assertFalse(file.put(record(1, tooLong, 10)));
+            assertNull(file.find(tooLong));
+            // The record it would have replaced is gone, so the caller looks the id up elsewhere
+            assertNull(file.find(1));
+            assertEquals(0, file.live());
+        }
+    }
+
+    @Test
+    void slotOfAReplacedRecordIsReused() throws IOException {
+        Path byNumber = directory.resolve("by-number.dir");
+        try (DirectoryFile file = DirectoryFile.create(byNumber, 16)) {
+            for (long id = 1; id <= 10; id++) {
+                file.put(record(id, "SAV001", 10));
+            }
+            assertEquals(10, file.find("SAV001").id());
+        }
+        Path byId = directory.resolve("by-id.dir");
+        try (DirectoryFile file = DirectoryFile.create(byId, 16)) {
+            for (int i = 1; i <= 10; i++) {
+                file.put(record(1, "SAV0" + (10 + i), 10));
+            }
+            file.remove(1);
+            file.put(record(1, "CHQ001", 10));
+            assertEquals("CHQ001", file.find(1).accountNumber());
+        }
+
+        // Each replacement took the slot its predecessor left, so no removed markers pile up
+        ByteBuffer numbers = ByteBuffer.wrap(Files.readAllBytes(byNumber));
+        assertEquals(1, count(numbers, NUMBER_TABLE, 1));
+        assertEquals(0, count(numbers, NUMBER_TABLE, -1));
+        ByteBuffer ids = ByteBuffer.wrap(Files.readAllBytes(byId));
+        assertEquals(1, count(ids, ID_TABLE, 1));
+        assertEquals(0, count(ids, ID_TABLE, -1));
+    }
+
+    @Test
+    void hasRoomUntilCapacityRecordsHaveBeenAdded() throws IOException {
+        try (DirectoryFile file = DirectoryFile.create(directory.resolve("accounts.dir"), 4)) {
+            assertEquals(4, file.capacity());
+            for (long id = 1; id <= 4; id++) {
+                assertTrue(file.hasRoom());
+                file.put(record(id, "SAV00" + id, 10));
+            }
+            assertFalse(file.hasRoom());
+            assertThrows(IllegalStateException.class, () -> file.put(record(5, "SAV005", 10)));
+
+            // Records are only appended, so removing one does not make room
+            file.remove(1);
+            assertFalse(file.hasRoom());
+            assertEquals(3, file.live());
+        }
+    }
+
+    @Test
+    void forEachVisitsLiveRecordsInTheOrderTheyWereAdded() throws IOException {
+        try (DirectoryFile file = DirectoryFile.create(directory.resolve("accounts.dir"), 16)) {
+            file.put(record(1, "SAV001", 10));
+            file.put(record(2, "SAV002", 10));
+            file.put(record(3, "SAV003", 10));
+            file.put(record(4, "SAV004", 10));
+            file.remove("SAV002");
+            file.put(record(3, "SAV003", 30));
+
+            List<Long> ids = new ArrayList<>();
+            file.forEach(found -> ids.add(found.id()));
+            assertEquals(List.of(1L, 4L, 3L), ids);
+        }
+    }
+
+    @Test
+    void reopensWithItsRecordsAfterClose() throws IOException {
+        Path path = directory.resolve("accounts.dir");
+        try (DirectoryFile file = DirectoryFile.create(path, 16)) {
+            file.put(record(1, "SAV001", 10));
+            file.put(record(2, "CHQ001", 20));
+            file.remove(1);
+            assertFalse(file.closedCleanly());
+        }
+
+        DirectoryFile reopened = DirectoryFile.open(path);
+        assertNotNull(reopened);
+        try (reopened) {
+            assertTrue(reopened.closedCleanly());
+            assertEquals(16, reopened.capacity());
+            assertEquals(2, reopened.records());
+            assertEquals(1, reopened.live());
+            assertEquals(2, reopened.idSum());
+            assertNull(reopened.find("SAV001"));
+            assertEquals(record(2, "CHQ001", 20), reopened.find(2));
+
+            reopened.markOpen();
+            assertFalse(reopened.closedCleanly());
+        }
+    }
+
+    @Test
+    void abandonedFileIsNotClosedCleanly() throws IOException {
+        Path path = directory.resolve("accounts.dir");
+        DirectoryFile file = DirectoryFile.create(path, 16);
+        file.put(record(1, "SAV001", 10));
+        file.abandon();
+
+        DirectoryFile reopened = DirectoryFile.open(path);
+        assertNotNull(reopened);
+        try (reopened) {
+            assertFalse(reopened.closedCleanly());
+        }
+        // Closing it marks it clean again
+        try (DirectoryFile again = DirectoryFile.open(path)) {
+            assertTrue(again.closedCleanly());
+        }
+    }
+
+    @Test
+    void openIgnoresMissingAndForeignFiles() throws IOException {
+        assertNull(DirectoryFile.open(directory.resolve("missing.dir")));
+
+        Path foreign = directory.resolve("foreign.dir");
+        Files.write(foreign, new byte[128]);
+        assertNull(DirectoryFile.open(foreign));
+    }
+
+    private static DirectoryFile.Record record(long id, String accountNumber, long customerId) {
+        return new DirectoryFile.Record(id, accountNumber, customerId, 1, 1);
+    }
+
+    // Slots of one table that are in use (sign 1) or mark a removed record (sign -1)
+    private static int count(ByteBuffer file, int table, int sign) {
+        int slots = file.getInt(8);
+        int tableAt = 64 + table * 4 * slots;
+        int found = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            if (Integer.signum(file.getInt(tableAt + 4 * slot)) == sign) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,59 @@
+package com.securetrust.monitoring;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Renders each page against the demo data and checks it stays within its
+ * query budget. The request filters are left out so the budget covers the
+ * handler and the view, including rows streamed while it renders.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc(addFilters = false)
+@ActiveProfiles("test")
+class PageQueryBudgetTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @ParameterizedTest(name = "{0} within {1} statements")
+    @CsvSource({
+        "/dashboard, 6",
+        "/customers, 4",
+        "/customers/1, 4",
+        "/transactions, 2",
+        "/settings, 0",
+        "/notifications, 0"
+    })
+    void adminPageStaysWithinBudget(String page, int budget) throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute("user", "admin@securetrust.com");
+        session.setAttribute("isAdmin", true);
+        session.setAttribute("userType", "admin");
+
+        QueryBudget.assertWithinBudget(budget,
+            () -> mockMvc.perform(get(page).session(session)).andExpect(status().isOk()));
+    }
+
+    @Test
+    void customerPortalStaysWithinBudget() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute("user", "john.doe@securetrust.com");
+        session.setAttribute("isAdmin", false);
+        session.setAttribute("userType", "customer");
+        session.setAttribute("customerId", 1L);
+
+        QueryBudget.assertWithinBudget(4,
+            () -> mockMvc.perform(get("/customer-portal").session(session)).andExpect(status().isOk()));
+    }
+}
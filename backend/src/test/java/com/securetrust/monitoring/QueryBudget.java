@@ -0,0 +1,36 @@
+package com.securetrust.monitoring;
+
+/**
+ * Page-level query budget checks: runs a unit of work under its own
+ * {@link QueryStats} and fails when it issues more statements than allowed.
+ * Statements run inside {@link QueryStats#chunk} do not count.
+ */
+public final class QueryBudget {
+
+    @FunctionalInterface
+    public interface Work {
+        void run() throws Exception;
+    }
+
+    private QueryBudget() {
+    }
+
+    /**
+     * Run {@code work} and fail with an {@link AssertionError} when it issued
+     * more than {@code maxStatements} statements.
+     */
+    public static QueryStats assertWithinBudget(int maxStatements, Work work) throws Exception {
+        QueryStats previous = QueryStats.current();
+        QueryStats stats = QueryStats.begin();
+        try {
+            work.run();
+        } finally {
+            QueryStats.bind(previous);
+        }
+        if (stats.getBudgetedStatementCount() > maxStatements) {
+            throw new AssertionError("Query budget exceeded: " + stats.getBudgetedStatementCount()
+                + " statements issued, budget is " + maxStatements + ". " + stats.describeRepeats(2));
+        }
+        return stats;
+    }
+}
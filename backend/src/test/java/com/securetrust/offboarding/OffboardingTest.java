@@ -0,0 +1,128 @@
+package com.securetrust.offboarding;
+
+import com.securetrust.model.AccountType;
+import com.securetrust.service.AccountService;
+import com.securetrust.service.BankingService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class OffboardingTest {
+
+    // John Doe, from the demo data
+    private static final long CUSTOMER = 1;
+
+    @Autowired
+    private Offboarding offboarding;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private BankingService bankingService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void closingDeletesTheHistoryAndKeepsTheTextOfTransfersThatReferenceTheAccount() throws InterruptedException {
+        String source = open(500);
+        String closing = open(0);
+        bankingService.transfer(source, closing, 100.0, null);
+        bankingService.transfer(source, closing, 25.0, "Rent");
+        bankingService.transfer(closing, source, 60.0, null);
+        bankingService.withdraw(closing, 65.0, null);
+        long closingId = id(closing);
+        long sourceId = id(source);
+
+        Offboarding.Job job = await(offboarding.closeAccount(closing));
+
+        assertEquals(Offboarding.State.COMPLETED, job.state(), job.error());
+        assertEquals(4, job.transactions());
+        assertEquals(4, job.transactionsDeleted());
+        assertEquals(0, count("SELECT COUNT(*) FROM transaction WHERE account_id = ?", closingId));
+        assertEquals(0, count("SELECT COUNT(*) FROM account WHERE id = ?", closingId));
+        assertEquals(0, count("SELECT COUNT(*) FROM transaction WHERE reference_account_id = ?", closingId));
+
+        // The default texts named the closed account, so they are kept in the dictionary; an entered one stays inline
+        List<String> texts = jdbcTemplate.queryForList(
+            "SELECT COALESCE(t.description, d.text) FROM transaction t "
+                + "LEFT JOIN transaction_description d ON d.id = t.description_id "
+                + "WHERE t.account_id = ? ORDER BY t.id", String.class, sourceId);
+        assertEquals(List.of("Transfer to " + closing, "Rent", "Transfer from " + closing), texts);
+        assertEquals(2, count("SELECT COUNT(*) FROM transaction "
+            + "WHERE account_id = ? AND description IS NULL AND description_id IS NOT NULL", sourceId));
+    }
+
+    @Test
+    void balanceChangedAfterSubmittingFailsTheJobAndDeletesNothing() throws InterruptedException {
+        String source = open(500);
+        String closing = open(0);
+        bankingService.transfer(source, closing, 10.0, null);
+        bankingService.withdraw(closing, 10.0, null);
+        long closingId = id(closing);
+
+        // An operation that passed checkOpen before the account was marked changes it while the job waits
+        Offboarding.Job[] submitted = new Offboarding.Job[1];
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            offboarding.checkOpen(closing);
+            submitted[0] = offboarding.closeAccount(closing);
+            jdbcTemplate.update("UPDATE account SET balance = balance + 5 WHERE id = ?", closingId);
+        });
+        Offboarding.Job job = await(submitted[0]);
+
+        assertEquals(Offboarding.State.FAILED, job.state());
+        assertTrue(job.error().endsWith("nothing was deleted"), job.error());
+        assertEquals(0, job.transactionsDeleted());
+        assertEquals(0, job.referencesCleared());
+        assertEquals(5.0, bankingService.getAccountBalance(closing));
+        assertEquals(2, count("SELECT COUNT(*) FROM transaction WHERE account_id = ?", closingId));
+        assertEquals(1, count("SELECT COUNT(*) FROM transaction WHERE reference_account_id = ?", closingId));
+
+        // No longer being closed
+        bankingService.deposit(closing, 1.0, null);
+        assertEquals(6.0, bankingService.getAccountBalance(closing));
+    }
+
+    private String open(double initialDeposit) {
+        return accountService.openAccount(CUSTOMER, AccountType.CHEQUE, initialDeposit, null, "Acme", "Gaborone")
+            .getAccountNumber();
+    }
+
+    private long id(String accountNumber) {
+        return jdbcTemplate.queryForObject("SELECT id FROM account WHERE account_number = ?", Long.class,
+            accountNumber);
+    }
+
+    private long count(String sql, Object... args) {
+        return jdbcTemplate.queryForObject(sql, Long.class, args);
+    }
+
+    private Offboarding.Job await(Offboarding.Job submitted) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (System.nanoTime() < deadline) {
+            Offboarding.Job job = offboarding.job(submitted.id());
+            if (job.state() == Offboarding.State.COMPLETED || job.state() == Offboarding.State.FAILED) {
+                return job;
+            }
+            Thread.sleep(10);
+        }
+        return fail("Offboarding job " + submitted.id() + " did not finish");
+    }
+}
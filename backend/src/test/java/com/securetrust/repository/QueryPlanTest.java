@@ -0,0 +1,157 @@
+package com.securetrust.repository;
+
+import com.securetrust.monitoring.QueryStats;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.repository.core.RepositoryInformation;
+import org.springframework.data.repository.support.Repositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Query-plan regression test for the Spring Data repositories.
+ *
+ * Every query method declared on a repository interface is called once with
+ * placeholder arguments inside a rolled-back, read-only transaction. The SQL
+ * it issues is captured through {@link QueryStats} and passed to
+ * {@code EXPLAIN}; a plan that reads any table with a full scan fails the
+ * method's test.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class QueryPlanTest {
+
+    private static final String TABLE_SCAN = ".tableScan";
+
+    // Whole-table aggregates for the dashboard, scanned by design
+    private static final Set<String> ALLOWED_SCANS =
+        Set.of("AccountRepository.sumBalances", "AccountRepository.sumBalancesByAccountType");
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TestFactory
+    List<DynamicTest> repositoryQueriesUseIndexes() {
+        Repositories repositories = new Repositories(context);
+        List<DynamicTest> tests = new ArrayList<>();
+        for (Class<?> domainType : repositories) {
+            RepositoryInformation information = repositories.getRequiredRepositoryInformation(domainType);
+            Object repository = repositories.getRepositoryFor(domainType).orElseThrow();
+            for (Method method : information.getQueryMethods()) {
+                String name = information.getRepositoryInterface().getSimpleName() + "." + method.getName();
+                if (method.isAnnotationPresent(Modifying.class) || ALLOWED_SCANS.contains(name)) {
+                    continue;
+                }
+                tests.add(DynamicTest.dynamicTest(name, () -> {
+                    List<String> statements = capture(repository, method);
+                    assertFalse(statements.isEmpty(), "No SQL captured for " + name);
+                    for (String sql : statements) {
+                        String plan = explain(sql);
+                        assertFalse(plan.contains(TABLE_SCAN), () -> name + " scans a whole table:\n" + plan);
+                    }
+                }));
+            }
+        }
+        assertTrue(tests.size() > 0, "No repository query methods found");
+        return tests;
+    }
+
+    // Distinct statements issued by one call of the method
+    private List<String> capture(Object repository, Method method) {
+        Object[] arguments = new Object[method.getParameterCount()];
+        Class<?>[] types = method.getParameterTypes();
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = sample(types[i]);
+        }
+
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        QueryStats previous = QueryStats.current();
+        QueryStats stats = QueryStats.begin();
+        try {
+            readOnly.executeWithoutResult(status -> {
+                status.setRollbackOnly();
+                try {
+                    method.invoke(repository, arguments);
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    throw new IllegalStateException("Could not call " + method, e);
+                }
+            });
+        } finally {
+            QueryStats.bind(previous);
+        }
+        return stats.repeatedStatements(1).stream().map(Map.Entry::getKey).toList();
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement("EXPLAIN " + sql);
+            int parameters = statement.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameters; i++) {
+                statement.setObject(i, null);
+            }
+            return statement;
+        }, rs -> {
+            StringBuilder plan = new StringBuilder();
+            while (rs.next()) {
+                plan.append(rs.getString(1));
+            }
+            return plan.toString();
+        });
+    }
+
+    // Values that match no row
+    private static Object sample(Class<?> type) {
+        if (type == Long.class || type == long.class) {
+            return -1L;
+        }
+        if (type == Integer.class || type == int.class) {
+            return -1;
+        }
+        if (type == Double.class || type == double.class) {
+            return -1.0;
+        }
+        if (type == String.class) {
+            return "";
+        }
+        if (type == LocalDateTime.class) {
+            return LocalDateTime.now();
+        }
+        if (type == LocalDate.class) {
+            return LocalDate.now();
+        }
+        if (Pageable.class.isAssignableFrom(type)) {
+            return PageRequest.of(0, 10);
+        }
+        if (type.isEnum()) {
+            return type.getEnumConstants()[0];
+        }
+        throw new IllegalArgumentException("No placeholder value for parameters of type " + type.getName());
+    }
+}
@@ -0,0 +1,102 @@
+package com.securetrust.risk;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SlidingWindowCounterTest {
+
+    private static final long BUCKET = 1_000;
+
+    @Test
+    void sumsTheEventsInsideTheWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(10, BUCKET);
+        counter.add(0, 1, 100);
+        counter.add(2_500, 1, 200);
+        counter.add(4_999, 2, 300);
+
+        assertEquals(new SlidingWindowCounter.Totals(4, 600), counter.totals(4_999, 5_000));
+        // Buckets 2..4 only
+        assertEquals(new SlidingWindowCounter.Totals(3, 500), counter.totals(4_999, 3_000));
+    }
+
+    @Test
+    void eventsLeaveTheWindowAsItSlides() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(10, BUCKET);
+        counter.add(0, 1, 100);
+        counter.add(3_000, 1, 200);
+
+        assertEquals(new SlidingWindowCounter.Totals(1, 200), counter.totals(4_000, 2_000));
+        assertEquals(new SlidingWindowCounter.Totals(0, 0), counter.totals(9_000, 2_000));
+    }
+
+    @Test
+    void slotFromAnEarlierLapIsOverwritten() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(4, BUCKET);
+        counter.add(1_000, 5, 500);
+        // Same slot, one lap later
+        counter.add(5_000, 1, 10);
+
+        assertEquals(new SlidingWindowCounter.Totals(1, 10), counter.totals(5_000, 4_000));
+    }
+
+    @Test
+    void lateEventForASlotAlreadyOnALaterLapIsDropped() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(4, BUCKET);
+        counter.add(5_000, 1, 10);
+        counter.add(1_000, 5, 500);
+
+        assertEquals(new SlidingWindowCounter.Totals(1, 10), counter.totals(5_000, 4_000));
+    }
+
+    @Test
+    void negativeAddUndoesAnEarlierAdd() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(10, BUCKET);
+        counter.add(2_000, 1, 100);
+        counter.add(2_000, 1, 250);
+        counter.add(2_000, -1, -250);
+
+        assertEquals(new SlidingWindowCounter.Totals(1, 100), counter.totals(2_000, 5_000));
+    }
+
+    @Test
+    void windowIsCappedAtTheRing() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(4, BUCKET);
+        counter.add(0, 1, 1);
+        counter.add(4_000, 1, 1);
+
+        assertEquals(new SlidingWindowCounter.Totals(1, 1), counter.totals(4_000, 60_000));
+    }
+
+    @Test
+    void concurrentAddsAreAllCounted() throws InterruptedException {
+        SlidingWindowCounter counter = new SlidingWindowCounter(10, BUCKET);
+        int threads = 8;
+        int addsPerThread = 10_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < addsPerThread; i++) {
+                    counter.add(i % 3 * BUCKET, 1, 2);
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        int total = threads * addsPerThread;
+        assertEquals(new SlidingWindowCounter.Totals(total, 2L * total), counter.totals(2_000, 3_000));
+    }
+}
@@ -0,0 +1,137 @@
+package com.securetrust.risk;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VelocityGuardTest {
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static VelocityGuard guard(int maxDebits, double maxDebitAmount, double newPayeeThreshold) {
+        return new VelocityGuard(null, null, null, true, Duration.ofHours(24), Duration.ofHours(1),
+            maxDebits, maxDebitAmount, newPayeeThreshold);
+    }
+
+    @Test
+    void declinesTheDebitOverTheCountLimit() {
+        VelocityGuard guard = guard(3, 0, 0);
+        for (int i = 0; i < 3; i++) {
+            guard.authorize("CHQ001", 10, null);
+        }
+
+        IllegalArgumentException declined =
+            assertThrows(IllegalArgumentException.class, () -> guard.authorize("CHQ001", 10, null));
+        assertTrue(declined.getMessage().contains("more than 3 debits"));
+        // Other accounts have their own counters
+        guard.authorize("CHQ002", 10, null);
+    }
+
+    @Test
+    void declinesTheDebitOverTheAmountLimit() {
+        VelocityGuard guard = guard(0, 1_000, 0);
+        guard.authorize("CHQ001", 600, null);
+        guard.authorize("CHQ001", 400, null);
+
+        VelocityGuard.Decision decision = guard.check("CHQ001", 0.01, null);
+        assertFalse(decision.allowed());
+        assertEquals(1, decision.reasons().size());
+    }
+
+    @Test
+    void largeFirstTransferToAPayeeIsDeclined() {
+        VelocityGuard guard = guard(0, 0, 5_000);
+
+        assertFalse(guard.check("CHQ001", 6_000, "SAV001").allowed());
+        guard.authorize("CHQ001", 100, "SAV001");
+        assertTrue(guard.check("CHQ001", 6_000, "SAV001").allowed());
+        assertFalse(guard.check("CHQ001", 6_000, "SAV002").allowed());
+    }
+
+    @Test
+    void rolledBackDebitIsReleased() {
+        VelocityGuard guard = guard(1, 0, 5_000);
+        TransactionSynchronizationManager.initSynchronization();
+        guard.authorize("CHQ001", 100, "SAV001");
+        assertFalse(guard.check("CHQ001", 100, null).allowed());
+
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertTrue(guard.check("CHQ001", 100, null).allowed());
+        // The payee only becomes known on commit
+        assertFalse(guard.check("CHQ001", 6_000, "SAV001").allowed());
+    }
+
+    @Test
+    void committedTransferMakesThePayeeKnown() {
+        VelocityGuard guard = guard(0, 0, 5_000);
+        TransactionSynchronizationManager.initSynchronization();
+        guard.authorize("CHQ001", 100, "SAV001");
+        assertFalse(guard.check("CHQ001", 6_000, "SAV001").allowed());
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertTrue(guard.check("CHQ001", 6_000, "SAV001").allowed());
+    }
+
+    @Test
+    void concurrentDebitsCannotShareTheSameHeadroom() throws InterruptedException {
+        VelocityGuard guard = guard(5, 0, 0);
+        int threads = 16;
+        AtomicInteger allowed = new AtomicInteger();
+        AtomicInteger declined = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                    guard.authorize("CHQ001", 10, null);
+                    allowed.incrementAndGet();
+                } catch (IllegalArgumentException e) {
+                    declined.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(5, allowed.get());
+        assertEquals(threads - 5, declined.get());
+    }
+
+    @Test
+    void windowCannotExceedTheMaximum() {
+        VelocityGuard guard = guard(1, 0, 0);
+
+        assertThrows(IllegalArgumentException.class,
+            () -> guard.setRules(new VelocityRules(1, 0, Duration.ofHours(25), 0)));
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+}
@@ -0,0 +1,87 @@
+package com.securetrust.service;
+
+import com.securetrust.service.BalanceHistoryService.BalanceSeries;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BalanceHistoryDownsampleTest {
+
+    private static long[] times(int n) {
+        long[] x = new long[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = 1_000L * i;
+        }
+        return x;
+    }
+
+    @Test
+    void shortRangeIsReturnedAsIs() {
+        long[] x = times(10);
+        double[] y = new double[10];
+        Arrays.setAll(y, i -> i * 2.0);
+
+        BalanceSeries series = BalanceHistoryService.downsample("CHQ001", x, y, 2, 5, 5);
+
+        assertEquals(5, series.sourcePoints());
+        assertArrayEquals(Arrays.copyOfRange(x, 2, 7), series.timestamps());
+        assertArrayEquals(Arrays.copyOfRange(y, 2, 7), series.balances());
+    }
+
+    @Test
+    void keepsThresholdPointsIncludingTheEndsInTimeOrder() {
+        int n = 10_000;
+        long[] x = times(n);
+        double[] y = new double[n];
+        Arrays.setAll(y, i -> Math.sin(i / 50.0) * 1_000);
+
+        BalanceSeries series = BalanceHistoryService.downsample("CHQ001", x, y, 0, n, 100);
+
+        assertEquals(n, series.sourcePoints());
+        assertEquals(100, series.timestamps().length);
+        assertEquals(100, series.balances().length);
+        assertEquals(x[0], series.timestamps()[0]);
+        assertEquals(x[n - 1], series.timestamps()[99]);
+        for (int i = 1; i < 100; i++) {
+            assertTrue(series.timestamps()[i] > series.timestamps()[i - 1], "timestamps must increase");
+        }
+    }
+
+    @Test
+    void keepsAnIsolatedSpikeAndTrough() {
+        int n = 5_000;
+        long[] x = times(n);
+        double[] y = new double[n];
+        Arrays.fill(y, 500);
+        y[1_234] = 90_000;
+        y[3_210] = -40_000;
+
+        BalanceSeries series = BalanceHistoryService.downsample("CHQ001", x, y, 0, n, 20);
+
+        double max = Arrays.stream(series.balances()).max().orElseThrow();
+        double min = Arrays.stream(series.balances()).min().orElseThrow();
+        assertEquals(90_000, max);
+        assertEquals(-40_000, min);
+    }
+
+    @Test
+    void samplesOnlyTheRequestedRange() {
+        int n = 1_000;
+        long[] x = times(n);
+        double[] y = new double[n];
+        Arrays.setAll(y, i -> i);
+
+        BalanceSeries series = BalanceHistoryService.downsample("CHQ001", x, y, 200, 300, 10);
+
+        assertEquals(300, series.sourcePoints());
+        assertEquals(x[200], series.timestamps()[0]);
+        assertEquals(x[499], series.timestamps()[9]);
+        for (long t : series.timestamps()) {
+            assertTrue(t >= x[200] && t <= x[499]);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.securetrust.service;
+
+import com.securetrust.event.LedgerChangedEvent;
+import com.securetrust.model.Account;
+import com.securetrust.model.Transaction;
+import com.securetrust.model.TransactionType;
+import com.securetrust.repository.AccountRepository;
+import com.securetrust.repository.TransactionRepository;
+import com.securetrust.service.BalanceHistoryService.BalanceSeries;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class BalanceHistoryRefreshTest {
+
+    private static final LocalDateTime FROM = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private static final LocalDateTime TO = LocalDateTime.of(2100, 1, 1, 0, 0);
+
+    @Autowired
+    private BalanceHistoryService balanceHistory;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private ApplicationEventPublisher events;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void rowCommittedAfterALaterStampedRowIsMergedIntoPlace() {
+        Account account = accountRepository.findByAccountNumber("SAV003").orElseThrow();
+        LocalDateTime base = LocalDateTime.of(2030, 6, 1, 12, 0);
+        book(account, base, 100);
+        BalanceSeries before = balanceHistory.history("SAV003", FROM, TO, 1_000);
+
+        // Committed and read in this order, but the second was stamped first
+        book(account, base.plusMinutes(10), 300);
+        events.publishEvent(LedgerChangedEvent.of("SAV003"));
+        balanceHistory.history("SAV003", FROM, TO, 1_000);
+        book(account, base.plusMinutes(5), 200);
+        events.publishEvent(LedgerChangedEvent.of("SAV003"));
+        BalanceSeries after = balanceHistory.history("SAV003", FROM, TO, 1_000);
+
+        assertEquals(before.sourcePoints() + 2, after.sourcePoints());
+        int n = after.sourcePoints();
+        assertArrayEquals(new long[] {millis(base), millis(base.plusMinutes(5)), millis(base.plusMinutes(10))},
+            Arrays.copyOfRange(after.timestamps(), n - 3, n));
+        assertArrayEquals(new double[] {100, 200, 300},
+            Arrays.copyOfRange(after.balances(), n - 3, n));
+    }
+
+    @Test
+    void rowCommittedAfterARowWithAHigherIdIsMergedIntoPlace() throws Exception {
+        Account account = accountRepository.findByAccountNumber("SAV002").orElseThrow();
+        LocalDateTime base = LocalDateTime.of(2030, 7, 1, 12, 0);
+        CountDownLatch inserted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            // Gets its id first but commits last
+            Future<?> slow = writer.submit(() -> transaction.executeWithoutResult(status -> {
+                book(account, base, 100);
+                inserted.countDown();
+                await(release);
+            }));
+            await(inserted);
+            book(account, base.plusMinutes(5), 200);
+            events.publishEvent(LedgerChangedEvent.of("SAV002"));
+            BalanceSeries before = balanceHistory.history("SAV002", FROM, TO, 1_000);
+
+            release.countDown();
+            slow.get();
+            events.publishEvent(LedgerChangedEvent.of("SAV002"));
+            BalanceSeries after = balanceHistory.history("SAV002", FROM, TO, 1_000);
+
+            assertEquals(before.sourcePoints() + 1, after.sourcePoints());
+            int n = after.sourcePoints();
+            assertArrayEquals(new long[] {millis(base), millis(base.plusMinutes(5))},
+                Arrays.copyOfRange(after.timestamps(), n - 2, n));
+            assertArrayEquals(new double[] {100, 200}, Arrays.copyOfRange(after.balances(), n - 2, n));
+        } finally {
+            release.countDown();
+            writer.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS), "timed out");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void book(Account account, LocalDateTime at, double balanceAfter) {
+        Transaction transaction = new Transaction();
+        transaction.setAccount(account);
+        transaction.setType(TransactionType.DEPOSIT);
+        transaction.setAmount(1.0);
+        transaction.setBalanceAfter(balanceAfter);
+        transaction.setTransactionDate(at);
+        transactionRepository.save(transaction);
+    }
+
+    private static long millis(LocalDateTime time) {
+        return Timestamp.valueOf(time).getTime();
+    }
+}
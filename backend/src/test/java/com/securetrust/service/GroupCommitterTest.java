@@ -0,0 +1,220 @@
+package com.securetrust.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GroupCommitterTest {
+
+    private final RecordingTransactionManager transactions = new RecordingTransactionManager();
+    private final ExecutorService callers = Executors.newFixedThreadPool(16);
+    private GroupCommitter committer;
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        if (committer != null) {
+            committer.stop();
+        }
+    }
+
+    private GroupCommitter start(int maxBatch, long maxWaitMicros) {
+        committer = new GroupCommitter(transactions, true, maxBatch, maxWaitMicros);
+        committer.start();
+        return committer;
+    }
+
+    @Test
+    void disabledRunsEveryOperationInItsOwnTransaction() {
+        GroupCommitter direct = new GroupCommitter(transactions, false, 64, 500);
+
+        assertEquals(1, direct.execute(transactions.operation(() -> 1)));
+        assertEquals(2, direct.execute(transactions.operation(() -> 2)));
+        assertEquals(List.of(1, 1), transactions.committedSizes);
+    }
+
+    @Test
+    void concurrentOperationsShareACommitAndGetTheirOwnResults() throws Exception {
+        GroupCommitter committer = start(64, 200_000);
+
+        List<Integer> results = runConcurrently(12, i -> committer.execute(transactions.operation(() -> i)));
+
+        for (int i = 0; i < 12; i++) {
+            assertEquals(i, results.get(i));
+        }
+        assertEquals(12, transactions.committedSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(transactions.committedSizes.size() < 12, "expected batching, got " + transactions.committedSizes);
+    }
+
+    @Test
+    void batchesAreCappedAtMaxBatch() throws Exception {
+        GroupCommitter committer = start(3, 200_000);
+
+        runConcurrently(10, i -> committer.execute(transactions.operation(() -> i)));
+
+        assertEquals(10, transactions.committedSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(transactions.committedSizes.stream().allMatch(size -> size <= 3), transactions.committedSizes.toString());
+    }
+
+    @Test
+    void ruleFailureGoesToItsCallerAloneAndTheBatchCommits() throws Exception {
+        GroupCommitter committer = start(64, 200_000);
+
+        List<Object> outcomes = runConcurrently(6, i -> {
+            try {
+                return committer.execute(transactions.operation(() -> {
+                    if (i == 3) {
+                        throw new IllegalArgumentException("Insufficient funds");
+                    }
+                    return i;
+                }));
+            } catch (IllegalArgumentException e) {
+                return e;
+            }
+        });
+
+        assertInstanceOf(IllegalArgumentException.class, outcomes.get(3));
+        for (int i = 0; i < 6; i++) {
+            if (i != 3) {
+                assertEquals(i, outcomes.get(i));
+            }
+        }
+        assertEquals(0, transactions.rollbacks.get());
+    }
+
+    @Test
+    void otherFailureRollsTheBatchBackAndRetriesEachOperationAlone() throws Exception {
+        GroupCommitter committer = start(64, 200_000);
+        AtomicBoolean failedOnce = new AtomicBoolean();
+
+        List<Object> outcomes = runConcurrently(6, i -> {
+            try {
+                return committer.execute(transactions.operation(() -> {
+                    if (i == 2 && failedOnce.compareAndSet(false, true)) {
+                        throw new IllegalStateException("Deadlock");
+                    }
+                    return i;
+                }));
+            } catch (IllegalStateException e) {
+                return e;
+            }
+        });
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i, outcomes.get(i));
+        }
+        assertTrue(transactions.rollbacks.get() >= 1);
+        assertTrue(transactions.committedSizes.contains(1), "expected single-operation retries");
+    }
+
+    @Test
+    void failedCommitIsRetriedOperationByOperation() throws Exception {
+        GroupCommitter committer = start(64, 200_000);
+        transactions.failNextCommit.set(true);
+
+        List<Integer> results = runConcurrently(4, i -> committer.execute(transactions.operation(() -> i)));
+
+        assertEquals(List.of(0, 1, 2, 3), results);
+        assertEquals(4, transactions.committedSizes.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void callInsideATransactionJoinsItInsteadOfQueueing() {
+        GroupCommitter committer = start(64, 500);
+        TransactionTemplate outer = new TransactionTemplate(transactions);
+
+        Integer result = outer.execute(status -> committer.execute(transactions.operation(() -> 7)));
+
+        assertEquals(7, result);
+        assertEquals(List.of(1), transactions.committedSizes);
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T run(int index) throws Exception;
+    }
+
+    // Start all calls together and return their outcomes in index order
+    private <T> List<T> runConcurrently(int count, Call<T> call) throws Exception {
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            Callable<T> task = () -> {
+                ready.await();
+                return call.run(index);
+            };
+            futures.add(callers.submit(task));
+        }
+        ready.countDown();
+        List<T> outcomes = new ArrayList<>();
+        for (Future<T> future : futures) {
+            outcomes.add(future.get());
+        }
+        return outcomes;
+    }
+
+    /**
+     * Counts the operations run in each transaction and can fail a commit.
+     */
+    private static final class RecordingTransactionManager extends AbstractPlatformTransactionManager {
+
+        final List<Integer> committedSizes = new CopyOnWriteArrayList<>();
+        final AtomicInteger rollbacks = new AtomicInteger();
+        final AtomicBoolean failNextCommit = new AtomicBoolean();
+
+        <T> Supplier<T> operation(Supplier<T> body) {
+            return () -> {
+                T result = body.get();
+                ((AtomicInteger) TransactionSynchronizationManager.getResource(this)).incrementAndGet();
+                return result;
+            };
+        }
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            TransactionSynchronizationManager.bindResource(this, new AtomicInteger());
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            AtomicInteger operations = (AtomicInteger) TransactionSynchronizationManager.unbindResource(this);
+            if (failNextCommit.compareAndSet(true, false)) {
+                throw new TransactionSystemException("Commit failed");
+            }
+            committedSizes.add(operations.get());
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(this);
+            rollbacks.incrementAndGet();
+        }
+    }
+}
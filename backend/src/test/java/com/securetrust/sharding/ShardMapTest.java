@@ -0,0 +1,66 @@
+package com.securetrust.sharding;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardMapTest {
+
+    @Test
+    void placementIsStable() {
+        assertEquals(ShardMap.place("CUST123456", 4), ShardMap.place("CUST123456", 4));
+        assertEquals(ShardMap.HOME, ShardMap.place("CUST123456", 1));
+    }
+
+    @Test
+    void spreadsSequentialCustomerIdsEvenly() {
+        int[] placed = new int[4];
+        for (int i = 0; i < 40_000; i++) {
+            placed[ShardMap.place("CUST" + i, placed.length)]++;
+        }
+        for (int count : placed) {
+            assertTrue(Math.abs(count - 10_000) < 500, "uneven spread: " + count);
+        }
+    }
+
+    @Test
+    void anAddedShardOnlyTakesCustomersFromTheOthers() {
+        int moved = 0;
+        for (int i = 0; i < 10_000; i++) {
+            int before = ShardMap.place("CUST" + i, 4);
+            int after = ShardMap.place("CUST" + i, 5);
+            if (after != before) {
+                assertEquals(4, after);
+                moved++;
+            }
+        }
+        // About a fifth move to the new shard
+        assertTrue(moved > 1_500 && moved < 2_500, "moved " + moved);
+    }
+
+    @Test
+    void accountNumberNamesItsShard() {
+        assertEquals("SAV3-000101", ShardMap.accountNumber("SAV", 3, 101));
+        assertEquals(3, ShardMap.shardOfAccount("SAV3-000101"));
+        assertEquals(12, ShardMap.shardOfAccount(ShardMap.accountNumber("CHQ", 12, 7)));
+        assertEquals(0, ShardMap.shardOfAccount("CHQ0-000001"));
+    }
+
+    @Test
+    void numbersFromBeforeShardingBelongToTheHomeShard() {
+        assertEquals(ShardMap.HOME, ShardMap.shardOfAccount("CHQ001"));
+        assertEquals(ShardMap.HOME, ShardMap.shardOfAccount("SAV123"));
+        assertEquals(ShardMap.HOME, ShardMap.shardOfAccount("-000001"));
+        assertEquals(ShardMap.HOME, ShardMap.shardOfAccount("1234-000001"));
+    }
+
+    @Test
+    void idsNameTheShardThatHandedThemOut() {
+        assertEquals(1, ShardMap.firstId(ShardMap.HOME));
+        for (int shard = 0; shard < 8; shard++) {
+            assertEquals(shard, ShardMap.shardOfId(ShardMap.firstId(shard)));
+            assertEquals(shard, ShardMap.shardOfId(ShardMap.firstId(shard + 1) - 1));
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.securetrust.sharding;
+
+import com.securetrust.model.Account;
+import com.securetrust.model.AccountType;
+import com.securetrust.model.Customer;
+import com.securetrust.model.CustomerType;
+import com.securetrust.repository.CustomerRepository;
+import com.securetrust.service.AccountService;
+import com.securetrust.service.BankingService;
+import com.securetrust.statement.StatementJob;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The ledger sharded over three in-memory databases: the test profile's own
+ * (the home shard, seeded with the demo data) and two more.
+ */
+@SpringBootTest(properties = {
+    "securetrust.sharding.enabled=true",
+    "securetrust.sharding.urls=jdbc:h2:mem:shard1-${random.uuid};DB_CLOSE_DELAY=-1,"
+        + "jdbc:h2:mem:shard2-${random.uuid};DB_CLOSE_DELAY=-1",
+    "spring.jpa.open-in-view=false",
+    "securetrust.standing-orders.enabled=false",
+    // Recovery runs only when a test calls it
+    "securetrust.sharding.recovery-interval=P1D"
+})
+@ActiveProfiles("test")
+class ShardedLedgerTest {
+
+    private static final AtomicInteger customers = new AtomicInteger();
+
+    @Autowired
+    private Shards shards;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private BankingService bankingService;
+
+    @Autowired
+    private CrossShardTransfers crossShardTransfers;
+
+    @Autowired
+    private StatementJob statementJob;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void customerAccountsAndTransactionsLiveOnTheCustomersShard() {
+        Customer customer = customer(2);
+        Account account = open(customer, 100);
+        bankingService.deposit(account.getAccountNumber(), 25.0, null);
+
+        assertEquals(2, ShardMap.shardOfId(customer.getId()));
+        assertEquals(2, ShardMap.shardOfId(account.getId()));
+        assertEquals(2, ShardMap.shardOfAccount(account.getAccountNumber()));
+        assertEquals(1, count(2, "SELECT COUNT(*) FROM transaction WHERE account_id = ?", account.getId()));
+        for (int shard = 0; shard < 2; shard++) {
+            assertEquals(0, count(shard, "SELECT COUNT(*) FROM account WHERE account_number = ?",
+                account.getAccountNumber()));
+        }
+        assertEquals(125.0, bankingService.getAccountBalance(account.getAccountNumber()));
+    }
+
+    @Test
+    void transferWithinAShardCommitsOnIt() {
+        Customer customer = customer(1);
+        Account from = open(customer, 300);
+        Account to = open(customer, 0);
+
+        bankingService.transfer(from.getAccountNumber(), to.getAccountNumber(), 120.0, null);
+
+        assertEquals(180.0, bankingService.getAccountBalance(from.getAccountNumber()));
+        assertEquals(120.0, bankingService.getAccountBalance(to.getAccountNumber()));
+        assertEquals(0, count(1, "SELECT COUNT(*) FROM transfer_log WHERE from_account = ?", from.getAccountNumber()));
+    }
+
+    @Test
+    void transferBetweenShardsMovesTheAmountOnce() {
+        Account from = open(customer(1), 500);
+        Account to = open(customer(2), 100);
+        double total = totalBalance();
+
+        bankingService.transfer(from.getAccountNumber(), to.getAccountNumber(), 120.0, "Rent");
+
+        assertEquals(380.0, bankingService.getAccountBalance(from.getAccountNumber()));
+        assertEquals(220.0, bankingService.getAccountBalance(to.getAccountNumber()));
+        assertEquals(total, totalBalance(), 0.001);
+        assertEquals(1, count(1, "SELECT COUNT(*) FROM transfer_log WHERE from_account = ? AND state = 'COMMITTED'",
+            from.getAccountNumber()));
+        assertEquals(0, count(2, "SELECT COUNT(*) FROM transfer_credit WHERE to_account = ?", to.getAccountNumber()));
+        assertEquals(1, count(1, "SELECT COUNT(*) FROM transaction WHERE account_id = ? AND type = 3 "
+            + "AND reference_account_id = ?", from.getId(), to.getId()));
+        assertEquals(1, count(2, "SELECT COUNT(*) FROM transaction WHERE account_id = ? AND type = 4 "
+            + "AND reference_account_id = ?", to.getId(), from.getId()));
+    }
+
+    @Test
+    void transferFromAnAccountOpenedBeforeShardingReachesANewShard() {
+        Account to = open(customer(2), 0);
+        double before = bankingService.getAccountBalance("SAV001");
+
+        bankingService.transfer("SAV001", to.getAccountNumber(), 10.0, null);
+
+        assertEquals(before - 10.0, bankingService.getAccountBalance("SAV001"));
+        assertEquals(10.0, bankingService.getAccountBalance(to.getAccountNumber()));
+    }
+
+    @Test
+    void transferToAMissingAccountOnAnotherShardIsAborted() {
+        Account from = open(customer(1), 500);
+
+        assertThrows(IllegalArgumentException.class,
+            () -> bankingService.transfer(from.getAccountNumber(), "SAV2-999999", 50.0, null));
+
+        assertEquals(500.0, bankingService.getAccountBalance(from.getAccountNumber()));
+        assertEquals(1, count(1, "SELECT COUNT(*) FROM transfer_log WHERE from_account = ? AND state = 'ABORTED'",
+            from.getAccountNumber()));
+        assertEquals(0, count(2, "SELECT COUNT(*) FROM transfer_credit"));
+    }
+
+    @Test
+    void amountOfAPreparedTransferIsHeldUntilItIsResolved() {
+        Customer customer = customer(1);
+        Account from = open(customer, 500);
+        Account local = open(customer, 0);
+        String transferId = prepared(from, open(customer(2), 0), 450, LocalDateTime.now());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> bankingService.transfer(from.getAccountNumber(), local.getAccountNumber(), 100.0, null));
+
+        assertEquals(1, crossShardTransfers.recover(LocalDateTime.now().plusSeconds(1)));
+        assertEquals("ABORTED", state(1, transferId));
+        bankingService.transfer(from.getAccountNumber(), local.getAccountNumber(), 100.0, null);
+        assertEquals(400.0, bankingService.getAccountBalance(from.getAccountNumber()));
+    }
+
+    @Test
+    void recoveryAppliesCommittedCreditsAndDropsAbortedOnes() {
+        Account from = open(customer(1), 500);
+        Account to = open(customer(2), 0);
+        LocalDateTime crashed = LocalDateTime.now().minusMinutes(5);
+        // Crashed after the decision: the source was debited, the credit is still staged
+        String committed = prepared(from, to, 70, crashed);
+        stage(committed, from, to, 70, crashed);
+        shards.run(1, () -> jdbcTemplate.update(
+            "UPDATE transfer_log SET state = 'COMMITTED', decided_at = ? WHERE transfer_id = ?",
+            Timestamp.valueOf(crashed), committed));
+        // Crashed before it: nothing was debited
+        String inDoubt = prepared(from, to, 30, crashed);
+        stage(inDoubt, from, to, 30, crashed);
+
+        assertEquals(2, crossShardTransfers.recover(LocalDateTime.now().minusMinutes(1)));
+
+        assertEquals(70.0, bankingService.getAccountBalance(to.getAccountNumber()));
+        assertEquals("ABORTED", state(1, inDoubt));
+        assertEquals(0, count(2, "SELECT COUNT(*) FROM transfer_credit"));
+        assertEquals(0, crossShardTransfers.recover(LocalDateTime.now().minusMinutes(1)));
+        assertEquals(70.0, bankingService.getAccountBalance(to.getAccountNumber()));
+    }
+
+    @Test
+    void everyShardKnowsItsIndex() {
+        for (int shard = 0; shard < shards.count(); shard++) {
+            assertEquals(shard, count(shard, "SELECT shard_index FROM shard_info"));
+        }
+    }
+
+    @Test
+    void noShardKeepsTheReferenceForeignKey() {
+        for (int shard = 0; shard < shards.count(); shard++) {
+            assertEquals(0, count(shard, "SELECT COUNT(*) FROM information_schema.table_constraints "
+                + "WHERE constraint_name = 'FK_TRANSACTION_REFERENCE_ACCOUNT'"));
+        }
+    }
+
+    @Test
+    void featuresThatNeedOneDatabaseAreRefused() {
+        assertThrows(IllegalStateException.class, () -> statementJob.run(YearMonth.now().minusMonths(1)));
+    }
+
+    private Customer customer(int shard) {
+        String customerId;
+        do {
+            customerId = "SHARD" + customers.incrementAndGet();
+        } while (shards.placeCustomer(customerId) != shard);
+        Customer customer = new Customer();
+        customer.setCustomerId(customerId);
+        customer.setCustomerType(CustomerType.INDIVIDUAL);
+        customer.setFirstName("Test");
+        customer.setSurname(customerId);
+        customer.setEmail(customerId.toLowerCase() + "@example.com");
+        return shards.on(shards.placeCustomer(customerId), () -> customerRepository.save(customer));
+    }
+
+    private Account open(Customer customer, double balance) {
+        return accountService.openAccount(customer.getId(), AccountType.SAVINGS, balance, null, null, null);
+    }
+
+    private String prepared(Account from, Account to, double amount, LocalDateTime at) {
+        String transferId = UUID.randomUUID().toString();
+        shards.run(ShardMap.shardOfAccount(from.getAccountNumber()), () -> jdbcTemplate.update(
+            "INSERT INTO transfer_log (transfer_id, from_account, to_account, amount, state, created_at) "
+                + "VALUES (?, ?, ?, ?, 'PREPARED', ?)",
+            transferId, from.getAccountNumber(), to.getAccountNumber(), amount, Timestamp.valueOf(at)));
+        return transferId;
+    }
+
+    private void stage(String transferId, Account from, Account to, double amount, LocalDateTime at) {
+        shards.run(ShardMap.shardOfAccount(to.getAccountNumber()), () -> jdbcTemplate.update(
+            "INSERT INTO transfer_credit (transfer_id, to_account, from_account, amount, created_at) "
+                + "VALUES (?, ?, ?, ?, ?)",
+            transferId, to.getAccountNumber(), from.getAccountNumber(), amount, Timestamp.valueOf(at)));
+    }
+
+    private String state(int shard, String transferId) {
+        return shards.on(shard, () -> jdbcTemplate.queryForObject(
+            "SELECT state FROM transfer_log WHERE transfer_id = ?", String.class, transferId));
+    }
+
+    private long count(int shard, String sql, Object... args) {
+        return shards.on(shard, () -> jdbcTemplate.queryForObject(sql, Long.class, args));
+    }
+
+    private double totalBalance() {
+        return shards.sumDouble(() -> jdbcTemplate.queryForObject(
+            "SELECT COALESCE(SUM(balance), 0) FROM account", Double.class));
+    }
+}
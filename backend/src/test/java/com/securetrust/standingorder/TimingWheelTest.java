@@ -0,0 +1,137 @@
+package com.securetrust.standingorder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TimingWheelTest {
+
+    private static final long TICK = 1_000;
+
+    @Test
+    void entryIsReadyOnTheFirstTickNotBeforeItsDueTime() {
+        TimingWheel wheel = new TimingWheel(TICK, 3, 0);
+        wheel.add(1, 2_500);
+
+        wheel.advance(2_999);
+        assertEquals(0, wheel.readyCount());
+        assertEquals(1, wheel.size());
+
+        wheel.advance(3_000);
+        assertEquals(1, wheel.readyCount());
+        assertEquals(2_500, wheel.oldestReadyMillis());
+        assertEquals(List.of(1L), poll(wheel, 10));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void entryAlreadyDueIsReadyAtOnce() {
+        TimingWheel wheel = new TimingWheel(TICK, 3, 10_000);
+        wheel.add(7, 9_000);
+        wheel.add(8, 10_000);
+        wheel.add(9, 10_001);
+
+        assertEquals(2, wheel.readyCount());
+        assertEquals(3, wheel.size());
+        assertEquals(9_000, wheel.oldestReadyMillis());
+        assertEquals(List.of(7L, 8L), poll(wheel, 10));
+    }
+
+    @Test
+    void cascadesFromEveryLevelDownToItsDueTick() {
+        // Started off a slot boundary, so each entry crosses boundaries of the levels above it
+        long start = 60 * TICK;
+        TimingWheel wheel = new TimingWheel(TICK, 3, start);
+        assertEquals(64L * 64 * 64 * TICK, wheel.spanMillis());
+
+        long[] dues = {
+            start + 5 * TICK,                  // level 0
+            start + 100 * TICK,                // level 1
+            start + 5_000 * TICK,              // level 2
+            start + (64L * 64 * 64 - 1) * TICK // last tick of the span
+        };
+        for (int i = 0; i < dues.length; i++) {
+            wheel.add(i, dues[i]);
+        }
+        assertThrows(IllegalArgumentException.class, () -> wheel.add(99, start + 64L * 64 * 64 * TICK));
+
+        for (int i = 0; i < dues.length; i++) {
+            wheel.advance(dues[i] - 1);
+            assertEquals(0, wheel.readyCount(), "entry " + i + " ready early");
+            wheel.advance(dues[i]);
+            assertEquals(1, wheel.readyCount(), "entry " + i + " not ready on its tick");
+            assertEquals(dues[i], wheel.oldestReadyMillis());
+            assertEquals(List.of((long) i), poll(wheel, 10));
+            assertEquals(dues.length - 1 - i, wheel.size());
+        }
+    }
+
+    @Test
+    void readyEntriesComeOutInDueOrder() {
+        TimingWheel wheel = new TimingWheel(TICK, 3, 0);
+        wheel.add(1, 5_000);
+        wheel.add(2, 3_000);
+        wheel.add(3, 200_000);
+        wheel.add(4, 4_000);
+        wheel.add(5, 3_000);
+
+        wheel.advance(300_000);
+
+        assertEquals(List.of(2L, 5L, 4L, 1L, 3L), poll(wheel, 10));
+    }
+
+    @Test
+    void pollTakesAtMostMaxAndKeepsTheRestReady() {
+        TimingWheel wheel = new TimingWheel(TICK, 3, 0);
+        wheel.add(1, 1_000);
+        wheel.add(2, 2_000);
+        wheel.add(3, 3_000);
+        wheel.add(4, 9_000);
+        wheel.advance(3_000);
+
+        assertEquals(List.of(1L, 2L), poll(wheel, 2));
+        assertEquals(1, wheel.readyCount());
+        assertEquals(3_000, wheel.oldestReadyMillis());
+        assertEquals(2, wheel.size());
+
+        assertEquals(List.of(3L), poll(wheel, 2));
+        assertEquals(0, wheel.readyCount());
+        assertEquals(-1, wheel.oldestReadyMillis());
+        assertEquals(1, wheel.size());
+
+        // Entries made ready after a partial poll queue behind those left over
+        wheel.add(5, 1_500);
+        wheel.advance(9_000);
+        assertEquals(List.of(5L, 4L), poll(wheel, 10));
+    }
+
+    @Test
+    void emptyWheelJumpsStraightToTheNewTime() {
+        TimingWheel wheel = new TimingWheel(TICK, 2, 0);
+        long later = 1_000_000_000_000L;
+        wheel.advance(later);
+
+        // Within the span of the new time, not of the old one
+        wheel.add(1, later + 4_000);
+        wheel.advance(later + 4_000);
+        assertEquals(List.of(1L), poll(wheel, 10));
+    }
+
+    @Test
+    void rejectsShapesItCannotHold() {
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel(0, 3, 0));
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel(TICK, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel(TICK, 7, 0));
+    }
+
+    private static List<Long> poll(TimingWheel wheel, int max) {
+        List<Long> ids = new ArrayList<>();
+        int taken = wheel.poll(max, (id, dueMillis) -> ids.add(id));
+        assertEquals(ids.size(), taken);
+        return ids;
+    }
+}